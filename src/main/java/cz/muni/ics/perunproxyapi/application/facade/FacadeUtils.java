@@ -1,8 +1,8 @@
 package cz.muni.ics.perunproxyapi.application.facade;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.impl.AdaptersContainer;
@@ -137,9 +137,8 @@ public class FacadeUtils {
      */
     public static List<String> getRequiredStringListOption(@NonNull String key,@NonNull String method,
                                                        @NonNull JsonNode options) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
         List<String> values =
-                options.hasNonNull(key) ? Arrays.asList(mapper.treeToValue(options.get(key), String[].class)) : null;
+                options.hasNonNull(key) ? Arrays.asList(JsonCodec.treeToValue(options.get(key), String[].class)) : null;
 
         if (values == null) {
             log.error("Required option {} has not been found by method {}. " +
@@ -161,9 +160,8 @@ public class FacadeUtils {
      */
     public static List<Long> getRequiredLongListOption(@NonNull String key,@NonNull String method,
                                                        @NonNull JsonNode options) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
         List<Long> values =
-                options.hasNonNull(key) ? Arrays.asList(mapper.treeToValue(options.get(key), Long[].class)) : null;
+                options.hasNonNull(key) ? Arrays.asList(JsonCodec.treeToValue(options.get(key), Long[].class)) : null;
         if (values == null) {
             log.error("Required option {} has not been found by method {}. " +
                     "Check your configuration.", key, method);
@@ -3,7 +3,6 @@ package cz.muni.ics.perunproxyapi.application.facade.impl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.muni.ics.perunproxyapi.application.facade.FacadeUtils;
 import cz.muni.ics.perunproxyapi.application.facade.GuiFacade;
 import cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeConfiguration;
@@ -16,6 +15,7 @@ import cz.muni.ics.perunproxyapi.application.service.GuiService;
 import cz.muni.ics.perunproxyapi.application.service.RelyingPartyService;
 import cz.muni.ics.perunproxyapi.application.service.StatisticsService;
 import cz.muni.ics.perunproxyapi.application.service.models.StatsRawData;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.impl.AdaptersContainer;
@@ -107,7 +107,7 @@ public class GuiFacadeImpl implements GuiFacade {
             throw new ConfigurationException("Required option " + DISPLAYED_ATTRIBUTES + " not found by method "
                     + GET_LIST_OF_SPS);
         }
-        List<ListOfServicesDisplayedAttribute> displayedAttributes = new ObjectMapper()
+        List<ListOfServicesDisplayedAttribute> displayedAttributes = JsonCodec
                 .readValue(options.get(DISPLAYED_ATTRIBUTES).toString(), new TypeReference<>() {});
         ListOfServicesGuiParams params = new ListOfServicesGuiParams(
                 getListOfServicesParams(options), displayedAttributes);
@@ -125,7 +125,7 @@ public class GuiFacadeImpl implements GuiFacade {
             throw new ConfigurationException("Required option " + JSON_ATTRIBUTES + " not found by method "
                     + GET_LIST_OF_SPS_JSON);
         }
-        List<ListOfServicesJsonAttribute> jsonAttributes = new ObjectMapper()
+        List<ListOfServicesJsonAttribute> jsonAttributes = JsonCodec
                 .readValue(options.get(JSON_ATTRIBUTES).toString(), new TypeReference<>() {});
         ListOfServicesJsonParams params = new ListOfServicesJsonParams(
                 getListOfServicesParams(options), jsonAttributes);
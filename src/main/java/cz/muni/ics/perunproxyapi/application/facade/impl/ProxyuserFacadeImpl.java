@@ -2,12 +2,12 @@ package cz.muni.ics.perunproxyapi.application.facade.impl;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.muni.ics.perunproxyapi.application.facade.FacadeUtils;
 import cz.muni.ics.perunproxyapi.application.facade.ProxyuserFacade;
 import cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeConfiguration;
 import cz.muni.ics.perunproxyapi.application.service.ProxyUserService;
 import cz.muni.ics.perunproxyapi.ga4gh.service.Ga4ghService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.impl.AdaptersContainer;
@@ -58,6 +58,9 @@ public class ProxyuserFacadeImpl implements ProxyuserFacade {
     public static final String LOGIN_ATTRIBUTES = "login_attributes";
     public static final String CANDIDATE_MAPPER = "candidate_mapper";
 
+    private static final TypeReference<Map<String, UpdateAttributeMappingEntry>> UPDATE_ATTRIBUTE_MAPPING_TYPE =
+            new TypeReference<>() {};
+
     private final Map<String, JsonNode> methodConfigurations;
     private final AdaptersContainer adaptersContainer;
     private final ProxyUserService proxyUserService;
@@ -183,8 +186,12 @@ public class ProxyuserFacadeImpl implements ProxyuserFacade {
             throw new IllegalArgumentException("Required option has not been found");
         }
         JsonNode attributeMapper = options.get(ATTR_MAPPER);
-        Map<String, UpdateAttributeMappingEntry> mapper = new ObjectMapper()
-                .convertValue(attributeMapper, new TypeReference<>() {});
+        Map<String, UpdateAttributeMappingEntry> mapper;
+        try {
+            mapper = JsonCodec.treeToValue(attributeMapper, UPDATE_ATTRIBUTE_MAPPING_TYPE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid option " + ATTR_MAPPER, e);
+        }
         FullAdapter adapter = adaptersContainer.getRpcAdapter();
 
         final Map<String, String> externalToInternal = new HashMap<>();
@@ -6,6 +6,7 @@ import cz.muni.ics.perunproxyapi.application.facade.RelyingPartyFacade;
 import cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeConfiguration;
 import cz.muni.ics.perunproxyapi.application.service.ProxyUserService;
 import cz.muni.ics.perunproxyapi.application.service.RelyingPartyService;
+import cz.muni.ics.perunproxyapi.persistence.adapters.AdapterUtils;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.impl.AdaptersContainer;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.EntityNotFoundException;
@@ -22,6 +23,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 @Slf4j
@@ -73,19 +75,9 @@ public class RelyingPartyFacadeImpl implements RelyingPartyFacade {
         String resourceCapabilitiesAttrIdentifier = FacadeUtils.getStringOption(RESOURCE_CAPABILITIES, options);
         String facilityCapabilitiesAttrIdentifier = FacadeUtils.getStringOption(FACILITY_CAPABILITIES, options);
 
-        User user = proxyUserService.getUserByLogin(adapter, login);
-        if (user == null) {
-            throw new EntityNotFoundException("No user has been found for given login");
-        }
-
-        Facility facility = relyingPartyService.getFacilityByIdentifier(adapter, rpIdentifier);
-        if (facility == null || facility.getId() == null) {
-            throw new EntityNotFoundException("No service has been found for given identifier");
-        }
-
-        return relyingPartyService.getEntitlements(
-                adapter, facility.getId(), user.getPerunId(), prefix, authority, forwardedEntitlementsAttrIdentifier,
-                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier);
+        return relyingPartyService.getEntitlements(adapter, rpIdentifier, login, prefix, authority,
+                forwardedEntitlementsAttrIdentifier, resourceCapabilitiesAttrIdentifier,
+                facilityCapabilitiesAttrIdentifier);
     }
 
     @Override
@@ -102,19 +94,9 @@ public class RelyingPartyFacadeImpl implements RelyingPartyFacade {
         String resourceCapabilitiesAttrIdentifier = FacadeUtils.getStringOption(RESOURCE_CAPABILITIES, options);
         String facilityCapabilitiesAttrIdentifier = FacadeUtils.getStringOption(FACILITY_CAPABILITIES, options);
 
-        User user = proxyUserService.getUserByLogin(adapter, login);
-        if (user == null) {
-            throw new EntityNotFoundException("No user has been found for given login");
-        }
-
-        Facility facility = relyingPartyService.getFacilityByIdentifier(adapter, rpIdentifier);
-        if (facility == null || facility.getId() == null) {
-            throw new EntityNotFoundException("No service has been found for given identifier");
-        }
-
-        return relyingPartyService.getEntitlementsExtended(
-                adapter, facility.getId(), user.getPerunId(), prefix, authority, forwardedEntitlementsAttrIdentifier,
-                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier);
+        return relyingPartyService.getEntitlementsExtended(adapter, rpIdentifier, login, prefix, authority,
+                forwardedEntitlementsAttrIdentifier, resourceCapabilitiesAttrIdentifier,
+                facilityCapabilitiesAttrIdentifier);
     }
 
     @Override
@@ -129,12 +111,16 @@ public class RelyingPartyFacadeImpl implements RelyingPartyFacade {
         List<Long> testVoIds = FacadeUtils.getRequiredLongListOption(TEST_VO_IDS, HAS_ACCESS_TO_SERVICE, options);
         List<Long> prodVoIds = FacadeUtils.getRequiredLongListOption(PROD_VO_IDS, HAS_ACCESS_TO_SERVICE, options);
 
-        Facility facility = relyingPartyService.getFacilityByIdentifier(adapter, rpIdentifier);
+        CompletableFuture<Facility> facilityFuture = relyingPartyService.getFacilityByIdentifierAsync(adapter,
+                rpIdentifier);
+        CompletableFuture<User> userFuture = proxyUserService.getUserByLoginAsync(adapter, login);
+
+        Facility facility = AdapterUtils.awaitResult(facilityFuture);
         if (facility == null || facility.getId() == null) {
             throw new EntityNotFoundException("No facility has been found for given identifier");
         }
 
-        User user = proxyUserService.getUserByLogin(adapter, login);
+        User user = AdapterUtils.awaitResult(userFuture);
         if (user == null || user.getPerunId() == null) {
             throw new EntityNotFoundException("No user has been found for given login");
         }
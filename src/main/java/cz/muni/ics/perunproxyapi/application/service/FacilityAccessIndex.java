@@ -0,0 +1,240 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import cz.muni.ics.perunproxyapi.application.service.models.FacilityAccessDescriptor;
+import cz.muni.ics.perunproxyapi.application.service.properties.AccessIndexProperties;
+import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.ExpiringCache;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.FACILITY;
+
+/**
+ * Index of the data needed by the access checks. Access descriptors of the facilities are built on the first check
+ * and then rebuilt in the background each refresh interval, descriptors not used for {@link #IDLE_REFRESHES}
+ * intervals are dropped. VOs and groups where the user is a valid member are cached for a short time.
+ *
+ * Refresh interval 0 disables the index of facilities, the descriptors are built on each check. User TTL 0 disables
+ * the cache of the user memberships.
+ */
+@Component
+@Slf4j
+public class FacilityAccessIndex implements DisposableBean {
+
+    public static final int IDLE_REFRESHES = 12;
+
+    private static final int USER_CACHE_SIZE = 10000;
+
+    private final ConcurrentMap<DescriptorKey, IndexedDescriptor> descriptors = new ConcurrentHashMap<>();
+    private final ExpiringCache<UserKey, Set<Long>> userVoIds;
+    private final ExpiringCache<UserKey, Set<Long>> userGroupIds;
+    private final long refreshIntervalNanos;
+    private final ScheduledExecutorService refresher;
+
+    @Autowired
+    public FacilityAccessIndex(@NonNull AccessIndexProperties properties) {
+        this(Duration.ofMillis(properties.getFacilityRefreshInterval()),
+                Duration.ofMillis(properties.getUserMembershipsTtl()), true);
+    }
+
+    FacilityAccessIndex(@NonNull Duration refreshInterval, @NonNull Duration userMembershipsTtl,
+                        boolean backgroundRefresh)
+    {
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.userVoIds = new ExpiringCache<>(userMembershipsTtl, USER_CACHE_SIZE);
+        this.userGroupIds = new ExpiringCache<>(userMembershipsTtl, USER_CACHE_SIZE);
+        if (backgroundRefresh && isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("facility-access-index-");
+            threadFactory.setDaemon(true);
+            this.refresher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalNanos, refreshIntervalNanos,
+                    TimeUnit.NANOSECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * Get access descriptor of the facility.
+     * @param adapter Adapter to be used.
+     * @param facilityId Facility id.
+     * @param checkGroupMembershipAttrIdentifier Identifier for the checkGroupMembership attribute.
+     * @param isTestSpIdentifier Identifier for the isTestSp attribute.
+     * @return Descriptor of the facility.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public FacilityAccessDescriptor getDescriptor(@NonNull DataAdapter adapter,
+                                                  @NonNull Long facilityId,
+                                                  @NonNull String checkGroupMembershipAttrIdentifier,
+                                                  @NonNull String isTestSpIdentifier)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        DescriptorKey key = new DescriptorKey(adapter, facilityId, checkGroupMembershipAttrIdentifier,
+                isTestSpIdentifier);
+        if (!isEnabled()) {
+            return buildDescriptor(key);
+        }
+        IndexedDescriptor indexed = descriptors.get(key);
+        if (indexed == null) {
+            // descriptor built concurrently by another request wins, all the requests use the same one
+            IndexedDescriptor built = new IndexedDescriptor(buildDescriptor(key));
+            indexed = descriptors.putIfAbsent(key, built);
+            if (indexed == null) {
+                indexed = built;
+            }
+        }
+        indexed.lastUsed = System.nanoTime();
+        return indexed.descriptor;
+    }
+
+    /**
+     * Get ids of VOs where the user is a valid member.
+     * @param adapter Adapter to be used.
+     * @param userId User id.
+     * @return Set of VO ids (filled or empty).
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public Set<Long> getUserVoIds(@NonNull DataAdapter adapter, @NonNull Long userId)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        UserKey key = new UserKey(adapter, userId);
+        Set<Long> voIds = userVoIds.get(key);
+        if (voIds == null) {
+            voIds = immutable(adapter.getVoIdsWhereUserIsValidMember(userId));
+            userVoIds.put(key, voIds);
+        }
+        return voIds;
+    }
+
+    /**
+     * Get ids of groups where the user is a valid member.
+     * @param adapter Adapter to be used.
+     * @param userId User id.
+     * @return Set of group ids (filled or empty).
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public Set<Long> getUserGroupIds(@NonNull DataAdapter adapter, @NonNull Long userId)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        UserKey key = new UserKey(adapter, userId);
+        Set<Long> groupIds = userGroupIds.get(key);
+        if (groupIds == null) {
+            groupIds = immutable(adapter.getGroupIdsWhereUserIsValidMember(userId));
+            userGroupIds.put(key, groupIds);
+        }
+        return groupIds;
+    }
+
+    public boolean isEnabled() {
+        return refreshIntervalNanos > 0;
+    }
+
+    public int size() {
+        return descriptors.size();
+    }
+
+    /**
+     * Rebuild descriptors of all the indexed facilities, drop the ones which have not been used for a long time.
+     * When the descriptor cannot be rebuilt, the previous one is kept.
+     */
+    void refresh() {
+        long now = System.nanoTime();
+        for (Map.Entry<DescriptorKey, IndexedDescriptor> entry : descriptors.entrySet()) {
+            IndexedDescriptor indexed = entry.getValue();
+            if (now - indexed.lastUsed > IDLE_REFRESHES * refreshIntervalNanos) {
+                descriptors.remove(entry.getKey(), indexed);
+                continue;
+            }
+            try {
+                indexed.descriptor = buildDescriptor(entry.getKey());
+            } catch (PerunUnknownException | PerunConnectionException | RuntimeException e) {
+                log.warn("Could not refresh access descriptor of facility {}, keeping the previous one",
+                        entry.getKey().getFacilityId(), e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    private FacilityAccessDescriptor buildDescriptor(DescriptorKey key)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        DataAdapter adapter = key.getAdapter();
+        Map<String, PerunAttributeValue> values = adapter.getAttributesValues(FACILITY, key.getFacilityId(),
+                Arrays.asList(key.getIsTestSpIdentifier(), key.getCheckGroupMembershipAttrIdentifier()));
+        boolean testSp = isTrue(values.get(key.getIsTestSpIdentifier()));
+        boolean checkGroupMembership = isTrue(values.get(key.getCheckGroupMembershipAttrIdentifier()));
+        Set<Long> allowedGroupIds = checkGroupMembership
+                ? immutable(adapter.getAllowedGroupIds(key.getFacilityId()))
+                : Collections.emptySet();
+        return new FacilityAccessDescriptor(testSp, checkGroupMembership, allowedGroupIds);
+    }
+
+    private static boolean isTrue(PerunAttributeValue value) {
+        return value != null && value.valueAsBoolean();
+    }
+
+    private static Set<Long> immutable(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class DescriptorKey {
+        private final DataAdapter adapter;
+        private final Long facilityId;
+        private final String checkGroupMembershipAttrIdentifier;
+        private final String isTestSpIdentifier;
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class UserKey {
+        private final DataAdapter adapter;
+        private final Long userId;
+    }
+
+    private static final class IndexedDescriptor {
+        private volatile FacilityAccessDescriptor descriptor;
+        private volatile long lastUsed;
+
+        private IndexedDescriptor(FacilityAccessDescriptor descriptor) {
+            this.descriptor = descriptor;
+            this.lastUsed = System.nanoTime();
+        }
+    }
+
+}
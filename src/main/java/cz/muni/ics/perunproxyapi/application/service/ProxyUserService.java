@@ -17,6 +17,7 @@ import org.apache.commons.collections4.BidiMap;
 import javax.management.InvalidAttributeValueException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service layer for user related things. Purpose of this class is to execute correct methods on the given adapter.
@@ -124,6 +125,15 @@ public interface ProxyUserService {
     User getUserByLogin(@NonNull DataAdapter preferredAdapter, @NonNull String login)
             throws PerunUnknownException, PerunConnectionException;
 
+    /**
+     * Get user by login without blocking the calling thread.
+     * @param preferredAdapter Adapter for connection to be used.
+     * @param login Actual login of the user.
+     * @return Future of the user or null. Completes exceptionally with PerunUnknownException or
+     * PerunConnectionException when the call to Perun fails.
+     */
+    CompletableFuture<User> getUserByLoginAsync(@NonNull DataAdapter preferredAdapter, @NonNull String login);
+
     /**
      * Find user by given source IdP entityId and additional source identifiers.
      * !!!! Works only with LDAP adapter !!!!
@@ -149,7 +159,7 @@ public interface ProxyUserService {
      *               be replaced or appended and boolean flag if the internal name is used for searching.
      * @param externalToInternalMapping Map of external names to internal identifiers.
      * @param attrsToSearchBy Attributes by which to look for the correct identity.
-     * @return TRUE if updated, FALSE otherwise.
+     * @return TRUE if updated (or queued for write-behind), FALSE otherwise.
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
      */
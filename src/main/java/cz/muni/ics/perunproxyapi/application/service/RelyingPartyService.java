@@ -9,6 +9,7 @@ import lombok.NonNull;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service layer for RP related things. Purpose of this class is to execute correct methods on the given adapter.
@@ -19,11 +20,12 @@ import java.util.Set;
 public interface RelyingPartyService {
 
     /**
-     * Get entitlements based on the service user is trying to access.
+     * Get entitlements of the user identified by the login on the service identified by the RP identifier.
+     * Data of the user on the service are fetched by a single call of the adapter.
      *
      * @param adapter Adapter to be used.
-     * @param facilityId Id of the facility representing the service.
-     * @param userId Id of the user
+     * @param rpIdentifier Identifier of the RP (ClientID or EntityID).
+     * @param login Login of the user.
      * @param prefix Prefix to be prepended.
      * @param authority Authority issuing the entitlements.
      * @param forwardedEntitlementsAttrIdentifier Identifier of the attribute containing forwarded entitlements.
@@ -32,20 +34,22 @@ public interface RelyingPartyService {
      * @return List of AARC formatted entitlements (filled or empty).
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     * @throws EntityNotFoundException Thrown when no user or no service has been found.
      */
-    Set<String> getEntitlements(@NonNull DataAdapter adapter, @NonNull Long facilityId,
-                                 @NonNull Long userId, @NonNull String prefix, @NonNull String authority,
-                                 String forwardedEntitlementsAttrIdentifier,
-                                 String resourceCapabilitiesAttrIdentifier,
-                                 String facilityCapabilitiesAttrIdentifier)
-            throws PerunUnknownException, PerunConnectionException;
+    Set<String> getEntitlements(@NonNull DataAdapter adapter, @NonNull String rpIdentifier,
+                                @NonNull String login, @NonNull String prefix, @NonNull String authority,
+                                String forwardedEntitlementsAttrIdentifier,
+                                String resourceCapabilitiesAttrIdentifier,
+                                String facilityCapabilitiesAttrIdentifier)
+            throws PerunUnknownException, PerunConnectionException, EntityNotFoundException;
 
     /**
-     * Get extended entitlements based on the service user is trying to access.
+     * Get extended entitlements of the user identified by the login on the service identified by the RP identifier.
+     * Data of the user on the service are fetched by a single call of the adapter.
      *
      * @param adapter Adapter to be used.
-     * @param facilityId Id of the facility representing the service.
-     * @param userId Id of the user
+     * @param rpIdentifier Identifier of the RP (ClientID or EntityID).
+     * @param login Login of the user.
      * @param prefix Prefix to be prepended.
      * @param authority Authority issuing the entitlements.
      * @param forwardedEntitlementsAttrIdentifier Identifier of the attribute containing forwarded entitlements.
@@ -54,13 +58,14 @@ public interface RelyingPartyService {
      * @return List of AARC formatted entitlements (filled or empty).
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     * @throws EntityNotFoundException Thrown when no user or no service has been found.
      */
-    Set<String> getEntitlementsExtended(@NonNull DataAdapter adapter, @NonNull Long facilityId,
-                                        @NonNull Long userId, @NonNull String prefix, @NonNull String authority,
+    Set<String> getEntitlementsExtended(@NonNull DataAdapter adapter, @NonNull String rpIdentifier,
+                                        @NonNull String login, @NonNull String prefix, @NonNull String authority,
                                         String forwardedEntitlementsAttrIdentifier,
                                         String resourceCapabilitiesAttrIdentifier,
                                         String facilityCapabilitiesAttrIdentifier)
-            throws PerunUnknownException, PerunConnectionException;
+            throws PerunUnknownException, PerunConnectionException, EntityNotFoundException;
 
     /**
      * Get facility by identifier.
@@ -74,6 +79,17 @@ public interface RelyingPartyService {
     Facility getFacilityByIdentifier(@NonNull DataAdapter adapter, @NonNull String rpIdentifier)
             throws PerunUnknownException, PerunConnectionException;
 
+    /**
+     * Get facility by identifier without blocking the calling thread.
+     *
+     * @param adapter Adapter to be used.
+     * @param rpIdentifier Identifier of the RP (ClientID or EntityID).
+     * @return Future of the facility representing service or NULL. Completes exceptionally with
+     * PerunUnknownException or PerunConnectionException when the call to Perun fails.
+     */
+    CompletableFuture<Facility> getFacilityByIdentifierAsync(@NonNull DataAdapter adapter,
+                                                             @NonNull String rpIdentifier);
+
     /**
      * Check if user has access to the service.
      *
@@ -0,0 +1,211 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import cz.muni.ics.perunproxyapi.application.service.properties.IdentityIndexProperties;
+import cz.muni.ics.perunproxyapi.persistence.adapters.ExpiringCache;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValueAwareModel;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static cz.muni.ics.perunproxyapi.application.service.ServiceUtils.UES_VALUES_SEPARATOR;
+
+/**
+ * Index of the user identities (user ext sources) used to find the identity being updated without listing all
+ * the identities of the user and their attributes. Entries are keyed by the name of the ext source, identifier of
+ * the search attribute and a single part of its value and point to the identity of the given user. Entries are
+ * populated after the identity has been resolved and replaced when it is updated. Key shared by more identities
+ * is marked as ambiguous, the identity has to be resolved from Perun for such key until the marker expires.
+ * Indexed identity is used only while the user has the same identities from the ext source in Perun as when it has
+ * been indexed, so deleted or newly created identities make the identity to be resolved again.
+ *
+ * TTL 0 disables the index.
+ */
+@Component
+public class UserIdentityIndex {
+
+    private static final int MAX_SIZE = 100000;
+    private static final IndexedIdentity AMBIGUOUS = new IndexedIdentity(null, null, null);
+
+    private final ExpiringCache<IdentityKey, IndexedIdentity> identities;
+    private final ExpiringCache<Long, Set<IdentityKey>> keysByIdentity;
+
+    @Autowired
+    public UserIdentityIndex(@NonNull IdentityIndexProperties properties) {
+        this(Duration.ofMillis(properties.getTtl()));
+    }
+
+    UserIdentityIndex(@NonNull Duration ttl) {
+        this.identities = new ExpiringCache<>(ttl, MAX_SIZE);
+        this.keysByIdentity = new ExpiringCache<>(ttl, MAX_SIZE);
+    }
+
+    /**
+     * Find the identity of the user matching any of the search attribute values.
+     * @param userId Id of the user owning the identity.
+     * @param extSourceName Name of the ext source of the identity.
+     * @param userIdentities Current identities of the user in Perun.
+     * @param values Map of attribute identifiers to the new values.
+     * @param attrsToSearchBy Identifiers of the attributes used to find the identity.
+     * @return Indexed identity, NULL if none or more than one identity match the values, any of the values
+     * is ambiguous or the identities of the user from the ext source have changed since it has been indexed.
+     */
+    public UserExtSource find(@NonNull Long userId, @NonNull String extSourceName,
+                              @NonNull List<UserExtSource> userIdentities,
+                              @NonNull Map<String, JsonNode> values, @NonNull List<String> attrsToSearchBy)
+    {
+        if (!identities.isEnabled()) {
+            return null;
+        }
+        Set<Long> currentIdentityIds = identityIds(extSourceName, userIdentities);
+        UserExtSource found = null;
+        for (IdentityKey key : keys(extSourceName, values, attrsToSearchBy)) {
+            IndexedIdentity indexed = identities.get(key);
+            if (indexed == AMBIGUOUS) {
+                return null;
+            } else if (indexed == null || !userId.equals(indexed.userId)) {
+                continue;
+            } else if (!currentIdentityIds.equals(indexed.extSourceIdentityIds)) {
+                invalidate(indexed.userExtSource.getId());
+                return null;
+            }
+            if (found == null) {
+                found = indexed.userExtSource;
+            } else if (!found.getId().equals(indexed.userExtSource.getId())) {
+                return null;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Index the identity of the user under the search attribute values. Entries previously stored for the identity
+     * are replaced. Values already indexed for another identity are marked as ambiguous.
+     * @param userId Id of the user owning the identity.
+     * @param userExtSource Identity.
+     * @param userIdentities Current identities of the user in Perun.
+     * @param values Map of attribute identifiers to the new values.
+     * @param attrsToSearchBy Identifiers of the attributes used to find the identity.
+     */
+    public void put(@NonNull Long userId, @NonNull UserExtSource userExtSource,
+                    @NonNull List<UserExtSource> userIdentities,
+                    @NonNull Map<String, JsonNode> values, @NonNull List<String> attrsToSearchBy)
+    {
+        if (!identities.isEnabled() || userExtSource.getId() == null || userExtSource.getExtSource() == null) {
+            return;
+        }
+        invalidate(userExtSource.getId());
+        Set<IdentityKey> keys = keys(userExtSource.getExtSource().getName(), values, attrsToSearchBy);
+        if (keys.isEmpty()) {
+            return;
+        }
+        IndexedIdentity indexed = new IndexedIdentity(userId, userExtSource,
+                identityIds(userExtSource.getExtSource().getName(), userIdentities));
+        for (IdentityKey key : keys) {
+            IndexedIdentity current = identities.get(key);
+            if (current == null || current.isIdentity(userExtSource.getId())) {
+                identities.put(key, indexed);
+            } else {
+                identities.put(key, AMBIGUOUS);
+            }
+        }
+        keysByIdentity.put(userExtSource.getId(), keys);
+    }
+
+    /**
+     * Remove all the entries pointing to the identity. Ambiguity markers are kept.
+     * @param userExtSourceId Id of the identity.
+     */
+    public void invalidate(@NonNull Long userExtSourceId) {
+        Set<IdentityKey> keys = keysByIdentity.get(userExtSourceId);
+        if (keys != null) {
+            for (IdentityKey key : keys) {
+                IndexedIdentity current = identities.get(key);
+                if (current != null && current.isIdentity(userExtSourceId)) {
+                    identities.invalidate(key);
+                }
+            }
+            keysByIdentity.invalidate(userExtSourceId);
+        }
+    }
+
+    public boolean isEnabled() {
+        return identities.isEnabled();
+    }
+
+    public int size() {
+        return identities.size();
+    }
+
+    private static Set<Long> identityIds(String extSourceName, List<UserExtSource> userIdentities) {
+        Set<Long> ids = new HashSet<>();
+        for (UserExtSource identity : userIdentities) {
+            if (identity.getExtSource() != null && extSourceName.equals(identity.getExtSource().getName())) {
+                ids.add(identity.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static Set<IdentityKey> keys(String extSourceName, Map<String, JsonNode> values,
+                                         List<String> attrsToSearchBy)
+    {
+        if (extSourceName == null) {
+            return Collections.emptySet();
+        }
+        Set<IdentityKey> keys = new HashSet<>();
+        for (String attr : attrsToSearchBy) {
+            JsonNode value = values.get(attr);
+            if (PerunAttributeValueAwareModel.isNullValue(value)) {
+                continue;
+            }
+            if (value.isArray()) {
+                value.forEach(item -> addKeys(keys, extSourceName, attr, item.asText()));
+            } else {
+                addKeys(keys, extSourceName, attr, value.asText());
+            }
+        }
+        return keys;
+    }
+
+    private static void addKeys(Set<IdentityKey> keys, String extSourceName, String attr, String value) {
+        for (String part : value.split(UES_VALUES_SEPARATOR)) {
+            String normalized = part.trim();
+            if (StringUtils.hasText(normalized)) {
+                keys.add(new IdentityKey(extSourceName, attr, normalized));
+            }
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class IdentityKey {
+        private final String extSourceName;
+        private final String attrIdentifier;
+        private final String value;
+    }
+
+    @AllArgsConstructor
+    private static final class IndexedIdentity {
+        private final Long userId;
+        private final UserExtSource userExtSource;
+        // identities of the user from the same ext source when the identity has been indexed
+        private final Set<Long> extSourceIdentityIds;
+
+        private boolean isIdentity(Long userExtSourceId) {
+            return userExtSource != null && userExtSourceId.equals(userExtSource.getId());
+        }
+    }
+
+}
@@ -0,0 +1,352 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.application.service.properties.IdentityUpdatesProperties;
+import cz.muni.ics.perunproxyapi.persistence.adapters.ExpiringCache;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValueAwareModel;
+import cz.muni.ics.perunproxyapi.persistence.models.UpdateAttributeMappingEntry;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static cz.muni.ics.perunproxyapi.application.service.ServiceUtils.UES_VALUES_SEPARATOR;
+
+/**
+ * Writes the attributes of user identities (user ext sources) to Perun. Current attributes are read, new values
+ * are merged into them and only the attributes whose values have actually changed are written. When nothing has
+ * changed, the attributes are not written at all. Last access of the identity is updated at most once per the
+ * configured granularity.
+ *
+ * With non-zero write-behind window, updates are only queued and written in the background once the window
+ * elapses. Updates of the same identity arriving within the window are coalesced, the attributes are read and
+ * written only once. When the queue is full, the update is written by the calling thread (backpressure).
+ * Failures of the queued updates are logged and counted, the caller is not notified.
+ */
+@Component
+@Slf4j
+public class UserIdentityUpdater implements MeterBinder, DisposableBean {
+
+    public static final String UPDATES_METRIC = "identity.updates";
+    public static final String WRITES_METRIC = "identity.updates.writes";
+    public static final String PENDING_METRIC = "identity.updates.pending";
+
+    private static final int LAST_ACCESS_CACHE_SIZE = 100000;
+
+    private final ConcurrentMap<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+    private final ExpiringCache<Long, Boolean> lastAccessUpdates;
+    private final long windowNanos;
+    private final int maxPending;
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder queuedUpdates = new LongAdder();
+    private final LongAdder coalescedUpdates = new LongAdder();
+    private final LongAdder callerRunsUpdates = new LongAdder();
+    private final LongAdder failedUpdates = new LongAdder();
+    private final LongAdder attributeWrites = new LongAdder();
+    private final LongAdder skippedAttributeWrites = new LongAdder();
+    private final LongAdder lastAccessWrites = new LongAdder();
+    private final LongAdder skippedLastAccessWrites = new LongAdder();
+
+    @Autowired
+    public UserIdentityUpdater(@NonNull IdentityUpdatesProperties properties) {
+        this(Duration.ofMillis(properties.getWriteBehindWindow()), properties.getMaxPending(),
+                Duration.ofMillis(properties.getLastAccessGranularity()), true);
+    }
+
+    UserIdentityUpdater(@NonNull Duration window, int maxPending, @NonNull Duration lastAccessGranularity,
+                        boolean backgroundFlush)
+    {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Write-behind window cannot be negative");
+        } else if (maxPending < 1) {
+            throw new IllegalArgumentException("Max pending updates must be positive");
+        }
+        this.windowNanos = window.toNanos();
+        this.maxPending = maxPending;
+        this.lastAccessUpdates = new ExpiringCache<>(lastAccessGranularity, LAST_ACCESS_CACHE_SIZE);
+        if (backgroundFlush && isWriteBehind()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("identity-updates-");
+            threadFactory.setDaemon(true);
+            long period = Math.max(windowNanos / 2, TimeUnit.MILLISECONDS.toNanos(10));
+            this.flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.flusher.scheduleWithFixedDelay(this::flushDue, period, period, TimeUnit.NANOSECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Update attributes of the user identity. Without write-behind, the attributes are written immediately.
+     * @param adapter Adapter to be used.
+     * @param ues User identity to be updated.
+     * @param newValues New values of the attributes. Key is the internal identifier of the attribute.
+     * @param mapping Map of internal attribute names to the mapping entries (append only flags).
+     * @return TRUE if the update has been written or queued, FALSE if Perun has not updated the identity.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public boolean update(@NonNull FullAdapter adapter, @NonNull UserExtSource ues,
+                          @NonNull Map<String, JsonNode> newValues,
+                          @NonNull Map<String, UpdateAttributeMappingEntry> mapping)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        if (!isWriteBehind()) {
+            return this.write(new PendingUpdate(adapter, ues, mapping, newValues));
+        }
+
+        if (pending.size() >= maxPending && !pending.containsKey(ues.getId())) {
+            callerRunsUpdates.increment();
+            log.debug("Queue of identity updates is full, writing update of {} directly", ues.getId());
+            return this.write(new PendingUpdate(adapter, ues, mapping, newValues));
+        }
+
+        boolean[] coalesced = new boolean[1];
+        pending.merge(ues.getId(), new PendingUpdate(adapter, ues, mapping, newValues), (update, added) -> {
+            update.merge(mapping, newValues);
+            coalesced[0] = true;
+            return update;
+        });
+        if (coalesced[0]) {
+            coalescedUpdates.increment();
+        } else {
+            queuedUpdates.increment();
+        }
+        return true;
+    }
+
+    public boolean isWriteBehind() {
+        return windowNanos > 0;
+    }
+
+    public int getPendingUpdates() {
+        return pending.size();
+    }
+
+    /**
+     * Write all the queued updates regardless of the window.
+     */
+    public void flush() {
+        this.flush(true);
+    }
+
+    @Override
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        this.flush();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        registerCounter(registry, UPDATES_METRIC, queuedUpdates, "result", "queued",
+                "Identity updates queued for write-behind");
+        registerCounter(registry, UPDATES_METRIC, coalescedUpdates, "result", "coalesced",
+                "Identity updates merged into the update already queued for the same identity");
+        registerCounter(registry, UPDATES_METRIC, callerRunsUpdates, "result", "caller_runs",
+                "Identity updates written by the caller because the queue has been full");
+        registerCounter(registry, UPDATES_METRIC, failedUpdates, "result", "failed",
+                "Queued identity updates which have failed");
+        registerCounter(registry, WRITES_METRIC, attributeWrites, "type", "attributes",
+                "Writes of changed identity attributes to Perun");
+        registerCounter(registry, WRITES_METRIC, skippedAttributeWrites, "type", "attributes_skipped",
+                "Identity updates without any changed attribute");
+        registerCounter(registry, WRITES_METRIC, lastAccessWrites, "type", "last_access",
+                "Updates of the identity last access in Perun");
+        registerCounter(registry, WRITES_METRIC, skippedLastAccessWrites, "type", "last_access_skipped",
+                "Updates of the identity last access skipped within the granularity");
+        Gauge.builder(PENDING_METRIC, pending, Map::size)
+                .description("Identity updates waiting for write-behind")
+                .register(registry);
+    }
+
+    void flushDue() {
+        this.flush(false);
+    }
+
+    private void flush(boolean all) {
+        long now = System.nanoTime();
+        for (Map.Entry<Long, PendingUpdate> entry : pending.entrySet()) {
+            PendingUpdate update = entry.getValue();
+            if ((all || now - update.queuedAt >= windowNanos) && pending.remove(entry.getKey(), update)) {
+                try {
+                    if (!this.write(update)) {
+                        failedUpdates.increment();
+                    }
+                } catch (PerunUnknownException | PerunConnectionException | RuntimeException e) {
+                    failedUpdates.increment();
+                    log.warn("Could not write queued update of user ext source {}", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private boolean write(PendingUpdate update) throws PerunUnknownException, PerunConnectionException {
+        UserExtSource ues = update.ues;
+        Map<String, PerunAttribute> attributes = update.adapter.getAttributes(Entity.USER_EXT_SOURCE, ues.getId(),
+                new ArrayList<>(update.mapping.keySet()));
+
+        Map<String, JsonNode> originalValues = new HashMap<>();
+        for (Map.Entry<String, PerunAttribute> entry : attributes.entrySet()) {
+            if (entry.getValue() != null) {
+                JsonNode value = entry.getValue().getValue();
+                originalValues.put(entry.getKey(), value == null ? null : value.deepCopy());
+            }
+        }
+        // updates are applied in the order they have arrived, as if they were written one by one
+        for (Map<String, JsonNode> newValues : update.values) {
+            this.applyNewValues(attributes, newValues, update.mapping);
+        }
+
+        List<PerunAttribute> changed = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : originalValues.entrySet()) {
+            PerunAttribute attribute = attributes.get(entry.getKey());
+            boolean appendOnly = update.mapping.get(entry.getKey()).isAppendOnly();
+            if (!this.isSameValue(entry.getValue(), attribute.getValue(), appendOnly)) {
+                changed.add(attribute);
+            }
+        }
+
+        boolean attributesUpdated = true;
+        if (changed.isEmpty()) {
+            skippedAttributeWrites.increment();
+        } else {
+            attributesUpdated = update.adapter.setAttributes(Entity.USER_EXT_SOURCE, ues.getId(), changed);
+            attributeWrites.increment();
+        }
+
+        boolean lastAccessUpdated = true;
+        if (lastAccessUpdates.get(ues.getId()) != null) {
+            skippedLastAccessWrites.increment();
+        } else {
+            lastAccessUpdated = update.adapter.updateUserExtSourceLastAccess(ues);
+            lastAccessWrites.increment();
+            if (lastAccessUpdated) {
+                lastAccessUpdates.put(ues.getId(), Boolean.TRUE);
+            }
+        }
+        return attributesUpdated && lastAccessUpdated;
+    }
+
+    private void applyNewValues(Map<String, PerunAttribute> attributes, Map<String, JsonNode> newValues,
+                                Map<String, UpdateAttributeMappingEntry> mapping)
+    {
+        for (Map.Entry<String, PerunAttribute> e : attributes.entrySet()) {
+            String attrIdentifier = e.getKey();
+            PerunAttribute currentAttribute = e.getValue();
+            if (currentAttribute == null) {
+                continue;
+            }
+            JsonNode newValueToSet;
+            if (!newValues.containsKey(attrIdentifier)) {
+                if (mapping.get(attrIdentifier).isAppendOnly()) {
+                    continue;
+                } else {
+                    newValueToSet = JsonNodeFactory.instance.nullNode();
+                }
+            } else {
+                JsonNode newValue = newValues.get(attrIdentifier);
+                if (mapping.get(attrIdentifier).isAppendOnly()) {
+                    JsonNode oldValue = currentAttribute.getValue();
+                    if (PerunAttributeValueAwareModel.isNullValue(oldValue)) {
+                        newValueToSet = ServiceUtils.serializeValueForUes(newValue);
+                    } else {
+                        Set<String> parts = new HashSet<>();
+                        if (StringUtils.hasText(oldValue.textValue())) {
+                            parts.addAll(this.getPartsFromUesStringVal(oldValue));
+                        }
+                        parts.addAll(this.getPartsFromUesStringVal(ServiceUtils.serializeValueForUes(newValue)));
+                        newValueToSet = JsonNodeFactory.instance.textNode(String.join(UES_VALUES_SEPARATOR, parts));
+                    }
+                } else {
+                    newValueToSet = ServiceUtils.serializeValueForUes(newValue);
+                }
+            }
+            currentAttribute.setValue(currentAttribute.getType(), newValueToSet);
+        }
+    }
+
+    private boolean isSameValue(JsonNode oldValue, JsonNode newValue, boolean appendOnly) {
+        boolean oldNull = PerunAttributeValueAwareModel.isNullValue(oldValue);
+        boolean newNull = PerunAttributeValueAwareModel.isNullValue(newValue);
+        if (oldNull || newNull) {
+            return oldNull && newNull;
+        } else if (appendOnly && oldValue.isTextual() && newValue.isTextual()) {
+            // appended values are joined in no particular order
+            return new HashSet<>(this.getPartsFromUesStringVal(oldValue))
+                    .equals(new HashSet<>(this.getPartsFromUesStringVal(newValue)));
+        }
+        return Objects.equals(oldValue, newValue);
+    }
+
+    private Collection<String> getPartsFromUesStringVal(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return new HashSet<>();
+        }
+        return Arrays.asList(value.textValue().split(UES_VALUES_SEPARATOR));
+    }
+
+    private static void registerCounter(MeterRegistry registry, String name, LongAdder counter, String tagKey,
+                                        String tagValue, String description)
+    {
+        FunctionCounter.builder(name, counter, LongAdder::sum)
+                .tag(tagKey, tagValue)
+                .description(description)
+                .register(registry);
+    }
+
+    private static final class PendingUpdate {
+        private final FullAdapter adapter;
+        private final UserExtSource ues;
+        private final long queuedAt = System.nanoTime();
+        private final List<Map<String, JsonNode>> values = new ArrayList<>();
+        private Map<String, UpdateAttributeMappingEntry> mapping;
+
+        private PendingUpdate(FullAdapter adapter, UserExtSource ues, Map<String, UpdateAttributeMappingEntry> mapping,
+                              Map<String, JsonNode> newValues)
+        {
+            this.adapter = adapter;
+            this.ues = ues;
+            this.mapping = mapping;
+            this.values.add(newValues);
+        }
+
+        private void merge(Map<String, UpdateAttributeMappingEntry> mapping, Map<String, JsonNode> newValues) {
+            this.mapping = mapping;
+            this.values.add(newValues);
+        }
+    }
+
+}
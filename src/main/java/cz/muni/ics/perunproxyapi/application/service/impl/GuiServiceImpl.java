@@ -1,7 +1,6 @@
 package cz.muni.ics.perunproxyapi.application.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -10,6 +9,7 @@ import cz.muni.ics.perunproxyapi.application.facade.parameters.ListOfServicesGui
 import cz.muni.ics.perunproxyapi.application.facade.parameters.ListOfServicesJsonParams;
 import cz.muni.ics.perunproxyapi.application.facade.parameters.ListOfServicesParams;
 import cz.muni.ics.perunproxyapi.application.service.GuiService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
@@ -34,6 +34,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -73,7 +74,7 @@ public class GuiServiceImpl implements GuiService {
         Map<String, Integer> statistics = createCounterData(sac.getSamlCounter(), sac.getOidcCounter());
 
         json.set(SERVICES, getServicesJsonArray(sac.getServices(), params.getJsonAttributes()));
-        json.set(STATISTICS, new ObjectMapper().convertValue(statistics, ObjectNode.class));
+        json.set(STATISTICS, JsonCodec.<ObjectNode>valueToTree(statistics));
 
         return json;
     }
@@ -86,9 +87,14 @@ public class GuiServiceImpl implements GuiService {
         ServicesCounter oidcCounter = new ServicesCounter();
         ServicesCounter samlCounter = new ServicesCounter();
 
+        List<Long> facilityIds = facilities.stream()
+                .map(Facility::getId)
+                .collect(Collectors.toList());
+        Map<Long, Map<String, PerunAttributeValue>> facilitiesAttributes = params.getAdapter()
+                .getAttributesValues(Entity.FACILITY, facilityIds, new ArrayList<>(attrNames));
+
         for (Facility facility : facilities) {
-            Map<String, PerunAttributeValue> attributes = params.getAdapter()
-                    .getAttributesValues(Entity.FACILITY, facility.getId(), new ArrayList<>(attrNames));
+            Map<String, PerunAttributeValue> attributes = facilitiesAttributes.get(facility.getId());
             PerunAttributeValue protocol = attributes.get(params.getRpProtocolAttr());
             if (protocol != null && StringUtils.hasText(protocol.valueAsString())) {
                 if (SAML.equalsIgnoreCase(protocol.valueAsString())) {
@@ -1,9 +1,10 @@
 package cz.muni.ics.perunproxyapi.application.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import cz.muni.ics.perunproxyapi.application.service.ProxyUserService;
 import cz.muni.ics.perunproxyapi.application.service.ServiceUtils;
+import cz.muni.ics.perunproxyapi.application.service.UserIdentityIndex;
+import cz.muni.ics.perunproxyapi.application.service.UserIdentityUpdater;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
@@ -24,12 +25,12 @@ import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.BidiMap;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static cz.muni.ics.perunproxyapi.application.service.ServiceUtils.ATTR_NS_UES;
@@ -46,6 +48,17 @@ import static cz.muni.ics.perunproxyapi.application.service.ServiceUtils.UES_VAL
 @Slf4j
 public class ProxyUserServiceImpl implements ProxyUserService {
 
+    private final UserIdentityUpdater userIdentityUpdater;
+    private final UserIdentityIndex userIdentityIndex;
+
+    @Autowired
+    public ProxyUserServiceImpl(@NonNull UserIdentityUpdater userIdentityUpdater,
+                                @NonNull UserIdentityIndex userIdentityIndex)
+    {
+        this.userIdentityUpdater = userIdentityUpdater;
+        this.userIdentityIndex = userIdentityIndex;
+    }
+
     @Override
     public User findByExtLogins(@NonNull DataAdapter preferredAdapter, @NonNull String idpIdentifier,
                                 @NonNull List<String> userIdentifiers, List<String> attrIdentifiers)
@@ -131,6 +144,16 @@ public class ProxyUserServiceImpl implements ProxyUserService {
         return this.getUserWithAttributesByLogin(preferredAdapter, login, new ArrayList<>());
     }
 
+    @Override
+    public CompletableFuture<User> getUserByLoginAsync(@NonNull DataAdapter preferredAdapter,
+                                                       @NonNull String login)
+    {
+        if (!StringUtils.hasText(login)) {
+            throw new IllegalArgumentException("User login cannot be empty");
+        }
+        return preferredAdapter.getUserWithAttributesByLoginAsync(login, new ArrayList<>());
+    }
+
     @Override
     public User findByIdentifiers(@NonNull DataAdapter adapter,
                                   @NonNull String idpIdentifier,
@@ -165,19 +188,24 @@ public class ProxyUserServiceImpl implements ProxyUserService {
             internalToNewValues.put(externalToInternalMapping.get(entry.getKey()), entry.getValue());
         }
 
-        UserExtSource ues = this.getUserExtSourceUsingIdentityId(adapter, attrsToSearchBy,
-                internalToNewValues, login, identityId);
-        Map<String, PerunAttribute> userExtSourceAttrs = adapter.getAttributes(Entity.USER_EXT_SOURCE, ues.getId(),
-                        new ArrayList<>(internalToExternalWithOptions.keySet()));
+        User user = this.getUserByLogin(adapter, login);
+        if (user == null) {
+            throw new IllegalArgumentException("Could not find user with given login");
+        }
 
-        List<PerunAttribute> attributesToUpdateList = this.getAttributesToUpdate(userExtSourceAttrs,
-                internalToNewValues, internalToExternalWithOptions);
-        boolean attributesUpdated = true;
-        if (!attributesToUpdateList.isEmpty()) {
-            attributesUpdated = adapter.setAttributes(Entity.USER_EXT_SOURCE, ues.getId(), attributesToUpdateList);
+        // identities are listed each time, so the index is not used once any of them is deleted or created
+        List<UserExtSource> userIdentities = adapter.getUserExtSources(user.getPerunId());
+        UserExtSource ues = userIdentityIndex.find(user.getPerunId(), identityId, userIdentities,
+                internalToNewValues, attrsToSearchBy);
+        if (ues == null) {
+            ues = this.getUserExtSourceUsingIdentityId(adapter, attrsToSearchBy, internalToNewValues, userIdentities,
+                    identityId);
         }
-        boolean lastAccessUpdated = adapter.updateUserExtSourceLastAccess(ues);
-        return attributesUpdated && lastAccessUpdated;
+
+        boolean updated = userIdentityUpdater.update(adapter, ues, internalToNewValues,
+                internalToExternalWithOptions);
+        userIdentityIndex.put(user.getPerunId(), ues, userIdentities, internalToNewValues, attrsToSearchBy);
+        return updated;
     }
 
     @Override
@@ -249,15 +277,10 @@ public class ProxyUserServiceImpl implements ProxyUserService {
 
     private UserExtSource getUserExtSourceUsingIdentityId(@NonNull FullAdapter adapter, @NonNull List<String> uesAttrs,
                                                           @NonNull Map<String, JsonNode> internalIdentifiersToNewValues,
-                                                          @NonNull String login, @NonNull String identityId)
+                                                          @NonNull List<UserExtSource> uesList,
+                                                          @NonNull String identityId)
             throws PerunUnknownException, PerunConnectionException
     {
-        User user = this.getUserByLogin(adapter, login);
-        if (user == null) {
-            throw new IllegalArgumentException("Could not find user with given login");
-        }
-
-        List<UserExtSource> uesList = adapter.getUserExtSources(user.getPerunId());
         List<UserExtSource> withIdentityId = uesList.stream()
                 .filter(x -> Objects.equals(identityId, x.getExtSource().getName()))
                 .collect(Collectors.toList());
@@ -314,11 +337,16 @@ public class ProxyUserServiceImpl implements ProxyUserService {
                                                      @NonNull Map<String, JsonNode> internalIdentifiersToNewValuesMap)
             throws PerunUnknownException, PerunConnectionException
     {
+        List<Long> uesIds = uesList.stream()
+                .map(UserExtSource::getId)
+                .collect(Collectors.toList());
+        Map<Long, Map<String, PerunAttributeValue>> uesesAttributes = adapter.getAttributesValues(
+                Entity.USER_EXT_SOURCE, uesIds, uesAttrs);
+
         List<Integer> matchedIndexes = new ArrayList<>();
         int i = 0;
         for (UserExtSource ues : uesList) {
-            Map<String, PerunAttributeValue> uesAttributes = adapter.getAttributesValues(Entity.USER_EXT_SOURCE,
-                    ues.getId(), uesAttrs);
+            Map<String, PerunAttributeValue> uesAttributes = uesesAttributes.get(ues.getId());
             boolean equalValues = this.doUesAttributesMatch(uesAttributes, internalIdentifiersToNewValuesMap);
             if (equalValues) {
                 matchedIndexes.add(i);
@@ -377,51 +405,4 @@ public class ProxyUserServiceImpl implements ProxyUserService {
         return !Collections.disjoint(oldParts, newParts);
     }
 
-    private List<PerunAttribute> getAttributesToUpdate(@NonNull Map<String, PerunAttribute> oldValuesMap,
-                                                       @NonNull Map<String, JsonNode> newValuesMap,
-                                                       @NonNull Map<String, UpdateAttributeMappingEntry> internalToAttrMappingEntries)
-    {
-        List<PerunAttribute> attributesToUpdateList = new ArrayList<>();
-
-        for (Map.Entry<String, PerunAttribute> e : oldValuesMap.entrySet()) {
-            String attrIdentifier = e.getKey();
-            PerunAttribute currentAttribute = e.getValue();
-            JsonNode newValueToSet;
-            if (!newValuesMap.containsKey(attrIdentifier)) {
-                if (internalToAttrMappingEntries.get(attrIdentifier).isAppendOnly()) {
-                    continue;
-                } else {
-                    newValueToSet = JsonNodeFactory.instance.nullNode();
-                }
-            } else {
-                JsonNode newValue = newValuesMap.get(attrIdentifier);
-                if (internalToAttrMappingEntries.get(attrIdentifier).isAppendOnly()) {
-                    JsonNode oldValue = currentAttribute.getValue();
-                    if (PerunAttributeValueAwareModel.isNullValue(oldValue)) {
-                        newValueToSet = ServiceUtils.serializeValueForUes(newValue);
-                    } else {
-                        Set<String> parts = new HashSet<>();
-                        if (StringUtils.hasText(oldValue.textValue())) {
-                            parts.addAll(this.getPartsFromUesStringVal(oldValue));
-                        }
-                        parts.addAll(this.getPartsFromUesStringVal(ServiceUtils.serializeValueForUes(newValue)));
-                        newValueToSet = JsonNodeFactory.instance.textNode(String.join(UES_VALUES_SEPARATOR, parts));
-                    }
-                } else {
-                    newValueToSet = ServiceUtils.serializeValueForUes(newValue);
-                }
-            }
-            currentAttribute.setValue(currentAttribute.getType(), newValueToSet);
-            attributesToUpdateList.add(currentAttribute);
-        }
-        return attributesToUpdateList;
-    }
-
-    private Collection<String> getPartsFromUesStringVal(JsonNode value) {
-        if (value == null || value.isNull()) {
-            return new HashSet<>();
-        }
-        return Arrays.asList(value.textValue().split(UES_VALUES_SEPARATOR));
-    }
-
 }
@@ -1,7 +1,9 @@
 package cz.muni.ics.perunproxyapi.application.service.impl;
 
+import cz.muni.ics.perunproxyapi.application.service.FacilityAccessIndex;
 import cz.muni.ics.perunproxyapi.application.service.RelyingPartyService;
 import cz.muni.ics.perunproxyapi.application.service.ServiceUtils;
+import cz.muni.ics.perunproxyapi.application.service.models.FacilityAccessDescriptor;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.EntityNotFoundException;
@@ -10,19 +12,21 @@ import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
 import cz.muni.ics.perunproxyapi.persistence.models.Facility;
 import cz.muni.ics.perunproxyapi.persistence.models.Group;
 import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
+import cz.muni.ics.perunproxyapi.persistence.models.UserEntitlementData;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.yaml.snakeyaml.external.com.google.gdata.util.common.base.PercentEscaper;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
-import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.FACILITY;
-
 @Component
 @Slf4j
 public class RelyingPartyServiceImpl implements RelyingPartyService {
@@ -34,53 +38,56 @@ public class RelyingPartyServiceImpl implements RelyingPartyService {
     private static final String DISPLAY_NAME = "displayName";
     private static final String GROUP = "group";
 
+    private final FacilityAccessIndex facilityAccessIndex;
+
+    @Autowired
+    public RelyingPartyServiceImpl(@NonNull FacilityAccessIndex facilityAccessIndex) {
+        this.facilityAccessIndex = facilityAccessIndex;
+    }
+
     @Override
-    public Set<String> getEntitlements(@NonNull DataAdapter adapter, @NonNull Long facilityId,
-                                        @NonNull Long userId, @NonNull String prefix, @NonNull String authority,
-                                        String forwardedEntitlementsAttrIdentifier,
-                                        String resourceCapabilitiesAttrIdentifier,
-                                        String facilityCapabilitiesAttrIdentifier)
-            throws PerunUnknownException, PerunConnectionException
+    public Set<String> getEntitlements(@NonNull DataAdapter adapter, @NonNull String rpIdentifier,
+                                       @NonNull String login, @NonNull String prefix, @NonNull String authority,
+                                       String forwardedEntitlementsAttrIdentifier,
+                                       String resourceCapabilitiesAttrIdentifier,
+                                       String facilityCapabilitiesAttrIdentifier)
+            throws PerunUnknownException, PerunConnectionException, EntityNotFoundException
     {
-        Set<String> entitlements = new HashSet<>(
-                adapter.getForwardedEntitlements(userId, forwardedEntitlementsAttrIdentifier)
-        );
+        UserEntitlementData data = getUserEntitlementData(adapter, rpIdentifier, login,
+                forwardedEntitlementsAttrIdentifier, resourceCapabilitiesAttrIdentifier,
+                facilityCapabilitiesAttrIdentifier);
 
-        List<Group> groups = adapter.getUsersGroupsOnFacility(facilityId, userId);
-        if (groups == null || groups.isEmpty()) {
+        Set<String> entitlements = new HashSet<>(data.getForwardedEntitlements());
+        if (data.getGroups().isEmpty()) {
             return entitlements;
         }
 
-        List<String> groupEntitlements = ServiceUtils.wrapGroupEntitlements(groups, prefix, authority);
-        entitlements.addAll(groupEntitlements);
-
-        fillCapabilities(entitlements, adapter, facilityId, userId, groups, resourceCapabilitiesAttrIdentifier,
-                facilityCapabilitiesAttrIdentifier, prefix, authority);
+        entitlements.addAll(ServiceUtils.wrapGroupEntitlements(data.getGroups(), prefix, authority));
+        addCapabilities(entitlements, data.getCapabilities(), prefix, authority);
 
         return entitlements;
     }
 
     @Override
-    public Set<String> getEntitlementsExtended(@NonNull DataAdapter adapter, @NonNull Long facilityId,
-                                               @NonNull Long userId, @NonNull String prefix, @NonNull String authority,
+    public Set<String> getEntitlementsExtended(@NonNull DataAdapter adapter, @NonNull String rpIdentifier,
+                                               @NonNull String login, @NonNull String prefix,
+                                               @NonNull String authority,
                                                String forwardedEntitlementsAttrIdentifier,
                                                String resourceCapabilitiesAttrIdentifier,
                                                String facilityCapabilitiesAttrIdentifier)
-            throws PerunUnknownException, PerunConnectionException
+            throws PerunUnknownException, PerunConnectionException, EntityNotFoundException
     {
-        Set<String> entitlements = new HashSet<>(
-                adapter.getForwardedEntitlements(userId, forwardedEntitlementsAttrIdentifier)
-        );
+        UserEntitlementData data = getUserEntitlementData(adapter, rpIdentifier, login,
+                forwardedEntitlementsAttrIdentifier, resourceCapabilitiesAttrIdentifier,
+                facilityCapabilitiesAttrIdentifier);
 
-        List<Group> groups = adapter.getUsersGroupsOnFacility(facilityId, userId);
-        if (groups == null || groups.isEmpty()) {
+        Set<String> entitlements = new HashSet<>(data.getForwardedEntitlements());
+        if (data.getGroups().isEmpty()) {
             return entitlements;
         }
 
-        fillUuidEntitlements(entitlements, groups, prefix, authority);
-
-        fillCapabilities(entitlements, adapter, facilityId, userId, groups, resourceCapabilitiesAttrIdentifier,
-                facilityCapabilitiesAttrIdentifier, prefix, authority);
+        fillUuidEntitlements(entitlements, data.getGroups(), prefix, authority);
+        addCapabilities(entitlements, data.getCapabilities(), prefix, authority);
 
         return entitlements;
     }
@@ -91,6 +98,13 @@ public class RelyingPartyServiceImpl implements RelyingPartyService {
         return adapter.getFacilityByRpIdentifier(rpIdentifier);
     }
 
+    @Override
+    public CompletableFuture<Facility> getFacilityByIdentifierAsync(@NonNull DataAdapter adapter,
+                                                                    @NonNull String rpIdentifier)
+    {
+        return adapter.getFacilityByRpIdentifierAsync(rpIdentifier);
+    }
+
     @Override
     public boolean hasAccessToService(@NonNull DataAdapter adapter,
                                       @NonNull Long facilityId,
@@ -101,23 +115,19 @@ public class RelyingPartyServiceImpl implements RelyingPartyService {
                                       @NonNull String isTestSpIdentifier)
             throws PerunUnknownException, PerunConnectionException
     {
-
-        PerunAttributeValue isTestSpAttrValue = adapter.getAttributeValue(FACILITY, facilityId, isTestSpIdentifier);
-        boolean isTestSp = isTestSpAttrValue != null && isTestSpAttrValue.valueAsBoolean();
-        List<Long> voIds = isTestSp ? testVoIds : prodVoIds;
-        if (!adapter.isValidMemberOfAnyProvidedVo(userId, voIds)) {
+        FacilityAccessDescriptor descriptor = facilityAccessIndex.getDescriptor(adapter, facilityId,
+                checkGroupMembershipAttrIdentifier, isTestSpIdentifier);
+        List<Long> voIds = descriptor.isTestSp() ? testVoIds : prodVoIds;
+        if (Collections.disjoint(voIds, facilityAccessIndex.getUserVoIds(adapter, userId))) {
             return false;
         }
 
-        PerunAttributeValue attributeValue = adapter.getAttributeValue(FACILITY, facilityId,
-                checkGroupMembershipAttrIdentifier);
-        boolean checkGroupMembership = attributeValue != null && attributeValue.valueAsBoolean();
-        if (!checkGroupMembership) {
+        if (!descriptor.isCheckGroupMembership()) {
             return true;
         }
 
-        List<Group> groups = adapter.getFacilityGroupsWhereUserIsValidMember(userId, facilityId);
-        return !groups.isEmpty();
+        Set<Long> userGroupIds = facilityAccessIndex.getUserGroupIds(adapter, userId);
+        return !Collections.disjoint(descriptor.getAllowedGroupIds(), userGroupIds);
     }
 
     @Override
@@ -137,6 +147,28 @@ public class RelyingPartyServiceImpl implements RelyingPartyService {
         return env.valueAsString();
     }
 
+    private UserEntitlementData getUserEntitlementData(DataAdapter adapter, String rpIdentifier, String login,
+                                                       String forwardedEntitlementsAttrIdentifier,
+                                                       String resourceCapabilitiesAttrIdentifier,
+                                                       String facilityCapabilitiesAttrIdentifier)
+            throws PerunUnknownException, PerunConnectionException, EntityNotFoundException
+    {
+        if (!StringUtils.hasText(login)) {
+            throw new IllegalArgumentException("User login cannot be empty");
+        }
+
+        UserEntitlementData data = adapter.getUserEntitlementData(rpIdentifier, login,
+                forwardedEntitlementsAttrIdentifier, resourceCapabilitiesAttrIdentifier,
+                facilityCapabilitiesAttrIdentifier);
+        if (data.getUser() == null) {
+            throw new EntityNotFoundException("No user has been found for given login");
+        }
+        if (data.getFacility() == null || data.getFacility().getId() == null) {
+            throw new EntityNotFoundException("No service has been found for given identifier");
+        }
+        return data;
+    }
+
     private void fillUuidEntitlements(Set<String> entitlements, List<Group> userGroups, String prefix, String authority) {
         for (Group group : userGroups) {
             String entitlement = wrapGroupEntitlementToAARC(group.getUuid(), prefix, authority);
@@ -152,13 +184,9 @@ public class RelyingPartyServiceImpl implements RelyingPartyService {
         }
     }
 
-    private void fillCapabilities(Set<String> entitlements, DataAdapter adapter, Long facilityId, Long userId,
-                                  List<Group> groups, String resourceCapabilitiesAttrIdentifier,
-                                  String facilityCapabilitiesAttrIdentifier, String prefix, String authority)
-            throws PerunConnectionException, PerunUnknownException {
-        List<String> capabilities = adapter.getCapabilities(facilityId, userId, groups,
-                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier);
-
+    private void addCapabilities(Set<String> entitlements, List<String> capabilities, String prefix,
+                                 String authority)
+    {
         if (capabilities != null && !capabilities.isEmpty()) {
             entitlements.addAll(capabilities.stream()
                     .map(cap -> ServiceUtils.wrapCapabilityToAARC(cap, prefix, authority))
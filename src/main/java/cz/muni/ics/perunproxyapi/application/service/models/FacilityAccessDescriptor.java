@@ -0,0 +1,25 @@
+package cz.muni.ics.perunproxyapi.application.service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Set;
+
+/**
+ * Facility attributes relevant for the access checks. When the group membership is checked, the user has to be
+ * a valid member of one of the allowed groups. Otherwise the set of allowed groups is empty.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class FacilityAccessDescriptor {
+
+    private final boolean testSp;
+    private final boolean checkGroupMembership;
+    @NonNull private final Set<Long> allowedGroupIds;
+
+}
@@ -0,0 +1,24 @@
+package cz.muni.ics.perunproxyapi.application.service.properties;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties of the index of the data needed by the access checks.
+ */
+@Component
+@ConfigurationProperties(prefix = "access-index")
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class AccessIndexProperties {
+
+    private long facilityRefreshInterval = 300000;
+    private long userMembershipsTtl = 60000;
+
+}
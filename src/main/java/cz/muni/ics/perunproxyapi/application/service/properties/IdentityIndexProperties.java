@@ -0,0 +1,23 @@
+package cz.muni.ics.perunproxyapi.application.service.properties;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties of the index of the user identities.
+ */
+@Component
+@ConfigurationProperties(prefix = "identity-index")
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class IdentityIndexProperties {
+
+    private long ttl = 3600000;
+
+}
@@ -0,0 +1,25 @@
+package cz.muni.ics.perunproxyapi.application.service.properties;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties of the updates of the user identities.
+ */
+@Component
+@ConfigurationProperties(prefix = "identity-updates")
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class IdentityUpdatesProperties {
+
+    private long writeBehindWindow = 0;
+    private int maxPending = 10000;
+    private long lastAccessGranularity = 3600000;
+
+}
@@ -1,7 +1,6 @@
 package cz.muni.ics.perunproxyapi.ga4gh.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.nimbusds.jose.JOSEObjectType;
@@ -26,6 +25,7 @@ import cz.muni.ics.perunproxyapi.ga4gh.model.config.ElixirGa4ghConfig;
 import cz.muni.ics.perunproxyapi.ga4gh.model.PassportVisa;
 import cz.muni.ics.perunproxyapi.ga4gh.model.Signer;
 import cz.muni.ics.perunproxyapi.ga4gh.service.Ga4ghService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.InternalErrorException;
@@ -335,7 +335,7 @@ public class ElixirGa4ghService implements Ga4ghService {
                 if (contentType != null) {
                     if ("json".equals(contentType.getSubtype())) {
                         try {
-                            log.error(new ObjectMapper().readValue(body, JsonNode.class).path("message").asText());
+                            log.error(JsonCodec.readTree(body).path("message").asText());
                         } catch (IOException e) {
                             log.error("cannot parse error message from JSON", e);
                         }
@@ -390,9 +390,7 @@ public class ElixirGa4ghService implements Ga4ghService {
     }
 
     private void processPayload(PassportVisa visa, Payload payload) throws IOException {
-        ObjectMapper JSON_MAPPER = new ObjectMapper();
-
-        JsonNode doc = JSON_MAPPER.readValue(payload.toString(), JsonNode.class);
+        JsonNode doc = JsonCodec.readTree(payload.toString());
         checkVisaKey(visa, doc, SUB);
         checkVisaKey(visa, doc, EXP);
         checkVisaKey(visa, doc, ISS);
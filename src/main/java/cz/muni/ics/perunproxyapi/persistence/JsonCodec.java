@@ -0,0 +1,160 @@
+package cz.muni.ics.perunproxyapi.persistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared JSON codec. Holds single ObjectMapper and the readers and writers built from it, so the serializers and
+ * deserializers are resolved only once instead of on each call. Readers are cached per target type.
+ *
+ * ObjectMapper, ObjectReader and ObjectWriter are thread-safe once configured, the mapper must not be
+ * reconfigured after it has been obtained via {@link #getMapper()}.
+ */
+public final class JsonCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader JSON_NODE_READER = MAPPER.readerFor(JsonNode.class);
+    private static final ObjectReader OBJECT_NODE_READER = MAPPER.readerFor(ObjectNode.class);
+    private static final ObjectWriter WRITER = MAPPER.writer();
+    private static final ConcurrentMap<Type, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Get the shared mapper, i.e. for creation of parsers. Do not reconfigure it.
+     * @return Shared ObjectMapper.
+     */
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    /**
+     * Get reader for the given type.
+     * @param type Target type.
+     * @return Cached ObjectReader.
+     */
+    public static ObjectReader readerFor(@NonNull Class<?> type) {
+        if (JsonNode.class.equals(type)) {
+            return JSON_NODE_READER;
+        } else if (ObjectNode.class.equals(type)) {
+            return OBJECT_NODE_READER;
+        }
+        return cachedReader(type);
+    }
+
+    /**
+     * Get reader for the given generic type.
+     * @param type Reference to the target type.
+     * @return Cached ObjectReader.
+     */
+    public static ObjectReader readerFor(@NonNull TypeReference<?> type) {
+        return cachedReader(type.getType());
+    }
+
+    /**
+     * Get the shared writer.
+     * @return ObjectWriter.
+     */
+    public static ObjectWriter writer() {
+        return WRITER;
+    }
+
+    /**
+     * Parse JSON.
+     * @param json String containing JSON.
+     * @return Parsed JsonNode.
+     * @throws JsonProcessingException Thrown when the value is not a valid JSON.
+     */
+    public static JsonNode readTree(@NonNull String json) throws JsonProcessingException {
+        return JSON_NODE_READER.readValue(json);
+    }
+
+    /**
+     * Parse JSON object.
+     * @param json String containing JSON object.
+     * @return Parsed ObjectNode.
+     * @throws JsonProcessingException Thrown when the value is not a valid JSON object.
+     */
+    public static ObjectNode readObject(@NonNull String json) throws JsonProcessingException {
+        return OBJECT_NODE_READER.readValue(json);
+    }
+
+    /**
+     * Deserialize JSON into the value of the given type.
+     * @param json String containing JSON.
+     * @param type Reference to the target type.
+     * @param <T> Target type.
+     * @return Deserialized value.
+     * @throws JsonProcessingException Thrown when the value cannot be deserialized.
+     */
+    public static <T> T readValue(@NonNull String json, @NonNull TypeReference<T> type)
+            throws JsonProcessingException
+    {
+        return readerFor(type).readValue(json);
+    }
+
+    /**
+     * Convert JSON tree into the value of the given type.
+     * @param node JSON to be converted.
+     * @param type Target type.
+     * @param <T> Target type.
+     * @return Converted value.
+     * @throws IOException Thrown when the value cannot be converted.
+     */
+    public static <T> T treeToValue(@NonNull JsonNode node, @NonNull Class<T> type) throws IOException {
+        return readerFor(type).readValue(node);
+    }
+
+    /**
+     * Convert JSON tree into the value of the given generic type.
+     * @param node JSON to be converted.
+     * @param type Reference to the target type.
+     * @param <T> Target type.
+     * @return Converted value.
+     * @throws IOException Thrown when the value cannot be converted.
+     */
+    public static <T> T treeToValue(@NonNull JsonNode node, @NonNull TypeReference<T> type) throws IOException {
+        return readerFor(type).readValue(node);
+    }
+
+    /**
+     * Convert the value into JSON tree.
+     * @param value Value to be converted.
+     * @param <T> Type of the node.
+     * @return Value as JSON.
+     */
+    public static <T extends JsonNode> T valueToTree(Object value) {
+        return MAPPER.valueToTree(value);
+    }
+
+    /**
+     * Serialize the value as JSON string.
+     * @param value Value to be serialized.
+     * @return JSON string.
+     * @throws JsonProcessingException Thrown when the value cannot be serialized.
+     */
+    public static String writeValueAsString(Object value) throws JsonProcessingException {
+        return WRITER.writeValueAsString(value);
+    }
+
+    private static ObjectReader cachedReader(Type type) {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = READERS.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t)));
+        }
+        return reader;
+    }
+
+}
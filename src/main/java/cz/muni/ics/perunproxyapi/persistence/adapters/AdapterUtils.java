@@ -10,6 +10,9 @@ import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.USER;
 
@@ -100,4 +103,55 @@ public class AdapterUtils {
         return mapping.getRpcName();
     }
 
+    /**
+     * Execute the call in the current thread and wrap the result into completed future. Used as the default
+     * implementation of the asynchronous adapter methods.
+     * @param call Call to be executed.
+     * @return Future completed with the result of the call, or completed exceptionally with the exception thrown.
+     */
+    public static <T> CompletableFuture<T> completedCall(@NonNull AdapterCall<T> call) {
+        try {
+            return CompletableFuture.completedFuture(call.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Wait for the result of the asynchronous adapter method. Exceptions the future has been completed with are
+     * unwrapped and rethrown.
+     * @param future Future returned by the adapter.
+     * @return Result of the call.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public static <T> T awaitResult(@NonNull CompletableFuture<T> future)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            if (cause instanceof PerunUnknownException) {
+                throw (PerunUnknownException) cause;
+            } else if (cause instanceof PerunConnectionException) {
+                throw (PerunConnectionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PerunConnectionException("Error when contacting Perun", cause);
+        }
+    }
+
+    /**
+     * Call of the adapter method.
+     * @param <T> Type of the result.
+     */
+    @FunctionalInterface
+    public interface AdapterCall<T> {
+        T call() throws PerunUnknownException, PerunConnectionException;
+    }
+
 }
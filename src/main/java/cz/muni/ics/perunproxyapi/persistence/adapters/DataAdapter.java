@@ -8,12 +8,17 @@ import cz.muni.ics.perunproxyapi.persistence.models.Facility;
 import cz.muni.ics.perunproxyapi.persistence.models.Group;
 import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
 import cz.muni.ics.perunproxyapi.persistence.models.User;
+import cz.muni.ics.perunproxyapi.persistence.models.UserEntitlementData;
 import cz.muni.ics.perunproxyapi.persistence.models.Vo;
 import lombok.NonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Methods for fetching data.
@@ -103,6 +108,32 @@ public interface DataAdapter {
                                                          @NonNull List<String> attributes)
             throws PerunUnknownException, PerunConnectionException;
 
+    /**
+     * Get values of attributes for multiple entities of the same type. Default implementation fetches the values
+     * for each entity separately, adapters should override it to fetch the values in as few calls as possible.
+     * @param entity Entity enumeration value. Specifies Perun entity.
+     * @param entityIds IDs of the entities in Perun.
+     * @param attributes List of attribute names. Specifies what attributes we want to fetch.
+     * @return Map<Long, Map<String, PerunAttributeValue>>, key is ID of the entity, value is the map of attribute
+     * values as returned by the getAttributesValues() for single entity. Contains entry for each of the given IDs.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    default Map<Long, Map<String, PerunAttributeValue>> getAttributesValues(@NonNull Entity entity,
+                                                                            @NonNull Collection<Long> entityIds,
+                                                                            @NonNull List<String> attributes)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        Map<Long, Map<String, PerunAttributeValue>> result = new LinkedHashMap<>();
+        for (Long entityId : entityIds) {
+            if (!result.containsKey(entityId)) {
+                result.put(entityId, this.getAttributesValues(entity, entityId, attributes));
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Get value for a single attribute for given entity.
      * @param entity Entity enumeration value. Specifies Perun entity.
@@ -175,6 +206,50 @@ public interface DataAdapter {
                                  String facilityCapabilitiesAttrIdentifier)
             throws PerunConnectionException, PerunUnknownException;
 
+    /**
+     * Get data the entitlements of the user on the SP are built from. Default implementation looks up the user
+     * and the facility concurrently and then fetches forwarded entitlements, groups of the user on the facility
+     * and capabilities by the separate calls.
+     * @param rpIdentifier Identifier of the RP (ClientID or EntityID).
+     * @param login Login of the user.
+     * @param forwardedEntitlementsAttrIdentifier Identifier of the attribute containing forwarded entitlements.
+     * @param resourceCapabilitiesAttrIdentifier Identifier of the attribute containing the resource capabilities.
+     * @param facilityCapabilitiesAttrIdentifier Identifier of the attribute containing the facility capabilities.
+     * @return Data for the entitlements, user or facility is NULL when it has not been found.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    default UserEntitlementData getUserEntitlementData(@NonNull String rpIdentifier, @NonNull String login,
+                                                       String forwardedEntitlementsAttrIdentifier,
+                                                       String resourceCapabilitiesAttrIdentifier,
+                                                       String facilityCapabilitiesAttrIdentifier)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        CompletableFuture<User> userFuture = this.getUserWithAttributesByLoginAsync(login, new ArrayList<>());
+        CompletableFuture<Facility> facilityFuture = this.getFacilityByRpIdentifierAsync(rpIdentifier);
+        User user = AdapterUtils.awaitResult(userFuture);
+        Facility facility = AdapterUtils.awaitResult(facilityFuture);
+        if (facility != null && facility.getId() == null) {
+            facility = null;
+        }
+        if (user == null || facility == null) {
+            return new UserEntitlementData(user, facility, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        List<String> forwardedEntitlements = this.getForwardedEntitlements(user.getPerunId(),
+                forwardedEntitlementsAttrIdentifier);
+        List<Group> groups = this.getUsersGroupsOnFacility(facility.getId(), user.getPerunId());
+        if (groups == null || groups.isEmpty()) {
+            return new UserEntitlementData(user, facility, new ArrayList<>(), new ArrayList<>(),
+                    forwardedEntitlements);
+        }
+
+        List<String> capabilities = this.getCapabilities(facility.getId(), user.getPerunId(), groups,
+                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier);
+        return new UserEntitlementData(user, facility, groups,
+                capabilities == null ? new ArrayList<>() : capabilities, forwardedEntitlements);
+    }
+
     /**
      * Get user with attributes by given attribute name, login value and required user's attributes.
      * @param login Actual login of user.
@@ -201,46 +276,72 @@ public interface DataAdapter {
                            @NonNull List<String> attrIdentifiers);
 
     /**
-     * Get facility groups where user is valid member.
+     * Get voIds where user is valid member.
      *
      * @param userId User id.
-     * @param facilityId Facility id.
-     * @return List of facility groups where user is valid member (filled or empty).
+     * @return Set of vo ids (filled or empty).
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
      */
-    List<Group> getFacilityGroupsWhereUserIsValidMember(@NonNull Long userId, @NonNull Long facilityId)
-            throws PerunUnknownException, PerunConnectionException;
+    Set<Long> getVoIdsWhereUserIsValidMember(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException;
 
     /**
-     * Check if user if valid member of at least one of the given VOs.
+     * Get groupIds where user is valid member.
      *
      * @param userId User id.
-     * @param voIds List of VO ids.
-     * @return TRUE if user is valid member, otherwise FALSE.
+     * @return Set of group ids (filled or empty).
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
      */
-    boolean isValidMemberOfAnyProvidedVo(@NonNull Long userId, @NonNull List<Long> voIds) throws PerunUnknownException, PerunConnectionException;
+    Set<Long> getGroupIdsWhereUserIsValidMember(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException;
 
     /**
-     * Get voIds where user is valid member.
+     * Get ids of the groups allowed to access the facility (groups assigned to the resources of the facility).
      *
-     * @param userId User id.
-     * @return Set of vo ids (filled or empty).
+     * @param facilityId Facility id.
+     * @return Set of group ids (filled or empty).
      * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
      * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
      */
-    Set<Long> getVoIdsWhereUserIsValidMember(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException;
+    Set<Long> getAllowedGroupIds(@NonNull Long facilityId) throws PerunUnknownException, PerunConnectionException;
 
     /**
-     * Get groupIds where user is valid member.
-     *
-     * @param userId User id.
-     * @return Set of group ids (filled or empty).
-     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
-     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     * Asynchronous variant of the method getAttributesValues(). Default implementation calls the blocking method.
+     * @param entity Entity enumeration value. Specifies Perun entity.
+     * @param entityId ID of the entity in Perun.
+     * @param attributes List of attribute names. Specifies what attributes we want to fetch.
+     * @return Future of Map<String, PerunAttributeValue>, key is identifier of the attribute, value is the value
+     * of the attribute. Completes exceptionally with PerunUnknownException or PerunConnectionException.
      */
-    Set<Long> getGroupIdsWhereUserIsValidMember(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException;
+    default CompletableFuture<Map<String, PerunAttributeValue>> getAttributesValuesAsync(@NonNull Entity entity,
+                                                                                        @NonNull Long entityId,
+                                                                                        @NonNull List<String> attributes)
+    {
+        return AdapterUtils.completedCall(() -> this.getAttributesValues(entity, entityId, attributes));
+    }
+
+    /**
+     * Asynchronous variant of the method getFacilityByRpIdentifier(). Default implementation calls
+     * the blocking method.
+     * @param rpIdentifier Actual identifier of the RP (ClientID or EntityID)
+     * @return Future of found facility representing the RP or NULL. Completes exceptionally with
+     * PerunUnknownException or PerunConnectionException.
+     */
+    default CompletableFuture<Facility> getFacilityByRpIdentifierAsync(@NonNull String rpIdentifier) {
+        return AdapterUtils.completedCall(() -> this.getFacilityByRpIdentifier(rpIdentifier));
+    }
+
+    /**
+     * Asynchronous variant of the method getUserWithAttributesByLogin(). Default implementation calls
+     * the blocking method.
+     * @param login Actual login of user.
+     * @param attrIdentifiers List of attribute identifiers that should be fetched as well.
+     * @return Future of user or null. Completes exceptionally with PerunUnknownException or PerunConnectionException.
+     */
+    default CompletableFuture<User> getUserWithAttributesByLoginAsync(@NonNull String login,
+                                                                      @NonNull List<String> attrIdentifiers)
+    {
+        return AdapterUtils.completedCall(() -> this.getUserWithAttributesByLogin(login, attrIdentifiers));
+    }
 
 }
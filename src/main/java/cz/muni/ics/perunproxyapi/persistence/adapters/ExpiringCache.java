@@ -0,0 +1,144 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Simple thread-safe cache with entries expiring after the given time since they have been stored. Number of
+ * entries is bounded, when the cache is full, expired entries are removed first and then arbitrary entries
+ * are evicted. Entries are evicted in batches (a tenth of the max size), so the cache is scanned once per batch
+ * of the stored entries, not on each of them. NULL values are not cached.
+ *
+ * Cache with zero TTL is disabled, it does not store anything.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class ExpiringCache<K, V> {
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int maxSize;
+    private final int evictionBatch;
+    private final Object evictionLock = new Object();
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ExpiringCache(@NonNull Duration ttl, int maxSize) {
+        this(ttl, maxSize, System::nanoTime);
+    }
+
+    ExpiringCache(@NonNull Duration ttl, int maxSize, @NonNull LongSupplier clock) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("TTL cannot be negative");
+        } else if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.evictionBatch = Math.max(1, maxSize / 10);
+        this.clock = clock;
+    }
+
+    /**
+     * Get the value stored for the key.
+     * @param key Key.
+     * @return Stored value, NULL if the value is not present or has expired.
+     */
+    public V get(@NonNull K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.isExpired(clock.getAsLong())) {
+                hits.increment();
+                return entry.value;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store the value for the key. NULL values are ignored.
+     * @param key Key.
+     * @param value Value.
+     */
+    public void put(@NonNull K key, V value) {
+        if (value == null || !isEnabled()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict(now);
+        }
+        entries.put(key, new Entry<>(value, now + ttlNanos));
+    }
+
+    /**
+     * Remove the value stored for the key.
+     * @param key Key.
+     */
+    public void invalidate(@NonNull K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove all the stored values.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void evict(long now) {
+        synchronized (evictionLock) {
+            if (entries.size() < maxSize) {
+                // evicted by another thread meanwhile
+                return;
+            }
+            entries.values().removeIf(entry -> entry.isExpired(now));
+            Iterator<K> keys = entries.keySet().iterator();
+            while (entries.size() > maxSize - evictionBatch && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
+
+/**
+ * Set of primitive long values (i.e. IDs of Perun entities) backed by an open addressing hash table. Values are
+ * stored without boxing, methods accepting and returning primitive values should be preferred. Implements
+ * Set of Longs, so it can be returned wherever the Set is expected. NULL values are not permitted.
+ *
+ * Not thread-safe.
+ */
+public class LongHashSet extends AbstractSet<Long> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long EMPTY = 0L;
+
+    // zero marks an empty slot, presence of zero value is held separately
+    private long[] table;
+    private boolean containsZero;
+    private int size;
+    private int modCount;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size cannot be negative");
+        }
+        this.table = new long[tableSize(expectedSize)];
+    }
+
+    /**
+     * Add the value to the set.
+     * @param value Value.
+     * @return TRUE if the value has been added, FALSE if it has already been present.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+        } else {
+            int slot = slot(value);
+            while (table[slot] != EMPTY) {
+                if (table[slot] == value) {
+                    return false;
+                }
+                slot = next(slot);
+            }
+            table[slot] = value;
+            if ((size + 1) * 2 > table.length) {
+                resize(table.length * 2);
+            }
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Check presence of the value.
+     * @param value Value.
+     * @return TRUE if the set contains the value, FALSE otherwise.
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) {
+                return true;
+            }
+            slot = next(slot);
+        }
+        return false;
+    }
+
+    /**
+     * Remove the value from the set.
+     * @param value Value.
+     * @return TRUE if the value has been removed, FALSE if it has not been present.
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+        } else {
+            int slot = slot(value);
+            while (table[slot] != value) {
+                if (table[slot] == EMPTY) {
+                    return false;
+                }
+                slot = next(slot);
+            }
+            shiftBack(slot);
+        }
+        size--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Add all the values from the other set.
+     * @param values Values to be added.
+     * @return TRUE if the set has changed, FALSE otherwise.
+     */
+    public boolean addAll(LongHashSet values) {
+        boolean modified = false;
+        PrimitiveIterator.OfLong it = values.iterator();
+        while (it.hasNext()) {
+            modified |= add(it.nextLong());
+        }
+        return modified;
+    }
+
+    /**
+     * Get values as an array.
+     * @return Array of the values in no particular order.
+     */
+    public long[] toLongArray() {
+        long[] values = new long[size];
+        int i = 0;
+        PrimitiveIterator.OfLong it = iterator();
+        while (it.hasNext()) {
+            values[i++] = it.nextLong();
+        }
+        return values;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Long && contains(((Long) value).longValue());
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof Long && remove(((Long) value).longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        containsZero = false;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> values) {
+        boolean modified = false;
+        for (Object value : values) {
+            modified |= remove(value);
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> values) {
+        return removeIf(value -> !values.contains(value));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Long> filter) {
+        LongHashSet retained = new LongHashSet(size);
+        PrimitiveIterator.OfLong it = iterator();
+        while (it.hasNext()) {
+            long value = it.nextLong();
+            if (!filter.test(value)) {
+                retained.add(value);
+            }
+        }
+        if (retained.size == size) {
+            return false;
+        }
+        table = retained.table;
+        containsZero = retained.containsZero;
+        size = retained.size;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Iterator over the values in no particular order. Removal via iterator is not supported, use the remove
+     * methods of the set instead.
+     * @return Iterator.
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int slot = containsZero ? -1 : nextOccupied(0);
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return slot < table.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                } else if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long value = slot < 0 ? EMPTY : table[slot];
+                slot = nextOccupied(slot + 1);
+                return value;
+            }
+        };
+    }
+
+    private int nextOccupied(int from) {
+        int slot = from;
+        while (slot < table.length && table[slot] == EMPTY) {
+            slot++;
+        }
+        return slot;
+    }
+
+    private void shiftBack(int removed) {
+        // backward shift deletion keeps the probe sequences of the remaining values unbroken
+        int gap = removed;
+        int slot = next(gap);
+        while (table[slot] != EMPTY) {
+            int ideal = slot(table[slot]);
+            if (((slot - ideal) & (table.length - 1)) >= ((slot - gap) & (table.length - 1))) {
+                table[gap] = table[slot];
+                gap = slot;
+            }
+            slot = next(slot);
+        }
+        table[gap] = EMPTY;
+    }
+
+    private void resize(int newSize) {
+        long[] old = table;
+        table = new long[newSize];
+        for (long value : old) {
+            if (value != EMPTY) {
+                int slot = slot(value);
+                while (table[slot] != EMPTY) {
+                    slot = next(slot);
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private int slot(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (table.length - 1);
+    }
+
+    private int next(int slot) {
+        return (slot + 1) & (table.length - 1);
+    }
+
+    private static int tableSize(int expectedSize) {
+        int size = DEFAULT_CAPACITY;
+        while (size < expectedSize * 2L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+}
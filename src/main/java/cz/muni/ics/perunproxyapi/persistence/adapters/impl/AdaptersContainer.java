@@ -2,13 +2,15 @@ package cz.muni.ics.perunproxyapi.persistence.adapters.impl;
 
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap.LdapReplicaAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCallGuard;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import static cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeConfiguration.ADAPTER_LDAP;
-import static cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeConfiguration.ADAPTER_RPC;
 
 /**
  * Class containing different adapters. Autowire it anywhere you need to use adapters.
@@ -17,23 +19,59 @@ import static cz.muni.ics.perunproxyapi.application.facade.configuration.FacadeC
  */
 @Getter
 @Component
+@Slf4j
 public class AdaptersContainer {
 
     private final FullAdapter rpcAdapter;
     private final DataAdapter ldapAdapter;
+    private final RpcCallGuard rpcCallGuard;
+    private final LdapReplicaAdapterImpl ldapReplicaAdapter;
 
-    @Autowired
     public AdaptersContainer(@NonNull FullAdapter rpcAdapter,
                              @NonNull DataAdapter ldapAdapter) {
+        this(rpcAdapter, ldapAdapter, null, null);
+    }
+
+    public AdaptersContainer(@NonNull FullAdapter rpcAdapter,
+                             @NonNull DataAdapter ldapAdapter,
+                             RpcCallGuard rpcCallGuard) {
+        this(rpcAdapter, ldapAdapter, rpcCallGuard, null);
+    }
+
+    @Autowired
+    public AdaptersContainer(@NonNull FullAdapter rpcAdapter,
+                             @NonNull DataAdapter ldapAdapter,
+                             RpcCallGuard rpcCallGuard,
+                             LdapReplicaAdapterImpl ldapReplicaAdapter) {
         this.rpcAdapter = rpcAdapter;
         this.ldapAdapter = ldapAdapter;
+        this.rpcCallGuard = rpcCallGuard;
+        this.ldapReplicaAdapter = ldapReplicaAdapter;
+    }
+
+    /**
+     * Get LDAP adapter. When the local replica of LDAP is ready, adapter answering from the replica is returned.
+     * @return LDAP adapter.
+     */
+    public DataAdapter getLdapAdapter() {
+        if (ldapReplicaAdapter != null && ldapReplicaAdapter.isReady()) {
+            return ldapReplicaAdapter;
+        }
+        return ldapAdapter;
     }
 
+    /**
+     * Get adapter by name. When RPC is preferred, but it is unavailable (circuit breaker is open) and failover
+     * is enabled, LDAP adapter is returned instead.
+     * @param preferredAdapter Name of the adapter.
+     * @return Adapter to be used.
+     */
     public DataAdapter getPreferredAdapter(String preferredAdapter) {
-        if (preferredAdapter.toUpperCase().equals(ADAPTER_RPC)) {
-            return rpcAdapter;
-        } else if (preferredAdapter.toUpperCase().equals(ADAPTER_LDAP)) {
-            return ldapAdapter;
+        if (preferredAdapter.toUpperCase().equals(ADAPTER_LDAP)) {
+            return getLdapAdapter();
+        } else if (rpcCallGuard != null && rpcCallGuard.isFailoverToLdap() && !rpcCallGuard.isAvailable()) {
+            log.debug("Perun RPC is unavailable, using LDAP adapter instead");
+            return getLdapAdapter();
         }
 
         return rpcAdapter;
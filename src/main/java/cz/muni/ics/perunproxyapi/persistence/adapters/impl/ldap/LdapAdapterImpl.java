@@ -1,12 +1,13 @@
 package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.adapters.AdapterUtils;
 import cz.muni.ics.perunproxyapi.persistence.adapters.DataAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.LongHashSet;
 import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
 import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorLdap;
 import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
@@ -22,21 +23,22 @@ import cz.muni.ics.perunproxyapi.persistence.models.Facility;
 import cz.muni.ics.perunproxyapi.persistence.models.Group;
 import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
 import cz.muni.ics.perunproxyapi.persistence.models.User;
+import cz.muni.ics.perunproxyapi.persistence.models.UserEntitlementData;
 import cz.muni.ics.perunproxyapi.persistence.models.Vo;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.ldap.core.ContextMapper;
 import org.springframework.ldap.core.DirContextAdapter;
-import org.springframework.ldap.filter.AndFilter;
-import org.springframework.ldap.filter.EqualsFilter;
 import org.springframework.ldap.filter.Filter;
-import org.springframework.ldap.filter.OrFilter;
 import org.springframework.ldap.query.LdapQuery;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -44,10 +46,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.FACILITY;
@@ -59,7 +63,6 @@ import static cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue.S
 import static cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValueAwareModel.ARRAY_TYPE;
 import static cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValueAwareModel.BOOLEAN_TYPE;
 import static cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValueAwareModel.LARGE_ARRAY_LIST_TYPE;
-import static org.springframework.ldap.query.LdapQueryBuilder.query;
 import static org.springframework.ldap.query.SearchScope.ONELEVEL;
 import static org.springframework.ldap.query.SearchScope.SUBTREE;
 
@@ -122,9 +125,50 @@ public class LdapAdapterImpl implements DataAdapter {
     private final String[] PERUN_FACILITY_BEAN_ATTRIBUTES;
     private final String[] PERUN_USER_BEAN_ATTRIBUTES;
 
+    private static final int MAX_RESOLVED_ATTRIBUTES = 1000;
+
+    // QUERIES
+    private final LdapQueryTemplate USERS_BY_EPPNS_QUERY = LdapQueryTemplate.compile(OU_PEOPLE, null, null,
+            "(&(" + OBJECT_CLASS + '=' + PERUN_USER + "){0})");
+    private final LdapQueryTemplate USER_BY_LOGIN_QUERY;
+    private final LdapQueryTemplate USER_BY_IDENTIFIERS_QUERY;
+    private final LdapQueryTemplate GROUPS_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            PERUN_GROUP_BEAN_ATTRIBUTES, "(&(" + OBJECT_CLASS + '=' + PERUN_GROUP + "){0})");
+    private final LdapQueryTemplate GROUPS_OF_MEMBER_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            PERUN_GROUP_BEAN_ATTRIBUTES, "(&(" + OBJECT_CLASS + '=' + PERUN_GROUP + ")(" + UNIQUE_MEMBER + "={0}))");
+    private final LdapQueryTemplate GROUPS_OF_MEMBER_ON_RESOURCES_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            PERUN_GROUP_BEAN_ATTRIBUTES,
+            "(&(" + OBJECT_CLASS + '=' + PERUN_GROUP + ")(" + UNIQUE_MEMBER + "={0}){1})");
+    private final LdapQueryTemplate GROUP_BY_NAME_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            PERUN_GROUP_BEAN_ATTRIBUTES,
+            "(&(" + OBJECT_CLASS + '=' + PERUN_GROUP + ")(" + PERUN_UNIQUE_GROUP_NAME + "={0}))");
+    private final LdapQueryTemplate VO_BY_SHORT_NAME_QUERY = LdapQueryTemplate.compile(null, ONELEVEL,
+            PERUN_VO_BEAN_ATTRIBUTES, "(&(" + OBJECT_CLASS + '=' + PERUN_VO + ")(" + O + "={0}))");
+    private final LdapQueryTemplate VO_BY_ID_QUERY = LdapQueryTemplate.compile(null, ONELEVEL,
+            PERUN_VO_BEAN_ATTRIBUTES, "(&(" + OBJECT_CLASS + '=' + PERUN_VO + ")(" + PERUN_VO_ID + "={0}))");
+    private final LdapQueryTemplate FACILITIES_QUERY;
+    private final LdapQueryTemplate FACILITY_BY_RP_IDENTIFIER_QUERY;
+    private final LdapQueryTemplate RESOURCES_OF_FACILITY_QUERY = LdapQueryTemplate.compile(null, SUBTREE, null,
+            "(&(" + OBJECT_CLASS + '=' + PERUN_RESOURCE + "){0}(" + PERUN_FACILITY_DN + "={1}))");
+    private final LdapQueryTemplate ASSIGNED_RESOURCES_OF_FACILITY_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            null, "(&(" + OBJECT_CLASS + '=' + PERUN_RESOURCE + ")(" + ASSIGNED_GROUP_ID + "=*)("
+                    + PERUN_FACILITY_DN + "={0}))");
+    private final LdapQueryTemplate RESOURCE_IDS_OF_FACILITY_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            new String[] { PERUN_RESOURCE_ID },
+            "(&(" + OBJECT_CLASS + '=' + PERUN_RESOURCE + ")(" + PERUN_FACILITY_DN + "={0}))");
+    private final LdapQueryTemplate GROUP_IDS_OF_FACILITY_QUERY = LdapQueryTemplate.compile(null, SUBTREE,
+            new String[] { ASSIGNED_GROUP_ID },
+            "(&(" + OBJECT_CLASS + '=' + PERUN_RESOURCE + ")(" + PERUN_FACILITY_ID + "={0}))");
+    private final LdapQueryTemplate ENTITIES_QUERY = LdapQueryTemplate.compile(null, SUBTREE, null,
+            "(&(" + OBJECT_CLASS + "={0}){1})");
+
+    // resolved mappings and LDAP names of requested attributes, mappings do not change at runtime
+    private final Map<List<String>, ResolvedAttributes> resolvedAttributes = new ConcurrentHashMap<>();
+
     @NonNull private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
     @NonNull private final AttributeMappingService attributeMappingService;
     @NonNull private final PerunConnectorLdap connectorLdap;
+    @NonNull private final LdapEntitlementResolver entitlementResolver;
     @NonNull private final String baseDn;
 
     @NonNull private final String rpIdentifierAttr;
@@ -135,10 +179,12 @@ public class LdapAdapterImpl implements DataAdapter {
     public LdapAdapterImpl(@NonNull PerunConnectorLdap connectorLdap,
                            @NonNull AttributeMappingService attributeMappingService,
                            @NonNull LdapProperties ldapProperties,
-                           @NonNull AttributeMappingServiceProperties attributeMappingServiceProperties)
+                           @NonNull AttributeMappingServiceProperties attributeMappingServiceProperties,
+                           @NonNull LdapEntitlementResolver entitlementResolver)
     {
         this.connectorLdap = connectorLdap;
         this.attributeMappingService = attributeMappingService;
+        this.entitlementResolver = entitlementResolver;
         this.baseDn = ldapProperties.getBaseDn();
 
         try {
@@ -162,34 +208,35 @@ public class LdapAdapterImpl implements DataAdapter {
             this.PERUN_FACILITY_BEAN_ATTRIBUTES = new String[]{PERUN_FACILITY_ID, CN, DESCRIPTION, rpIdentifierAttr};
             this.PERUN_FACILITY_REQUIRED_ATTRIBUTES = new String[] { PERUN_FACILITY_ID, CN, rpIdentifierAttr };
         }
+
+        this.USER_BY_LOGIN_QUERY = LdapQueryTemplate.compile(OU_PEOPLE, ONELEVEL, null,
+                "(&(" + OBJECT_CLASS + '=' + PERUN_USER + ")(" + loginAttr + "={0}))");
+        this.USER_BY_IDENTIFIERS_QUERY = LdapQueryTemplate.compile(OU_PEOPLE, ONELEVEL, null,
+                "(&{0}(" + OBJECT_CLASS + '=' + PERUN_USER + "))");
+        this.FACILITIES_QUERY = LdapQueryTemplate.compile(null, ONELEVEL, PERUN_FACILITY_BEAN_ATTRIBUTES,
+                "(&(" + OBJECT_CLASS + '=' + PERUN_FACILITY + "){0})");
+        this.FACILITY_BY_RP_IDENTIFIER_QUERY = rpIdentifierAttr == null ? null
+                : LdapQueryTemplate.compile(null, ONELEVEL, PERUN_FACILITY_BEAN_ATTRIBUTES,
+                "(&(" + OBJECT_CLASS + '=' + PERUN_FACILITY + ")(" + rpIdentifierAttr + "={0}))");
     }
 
     @Override
     public User getPerunUser(@NonNull String idpEntityId, @NonNull List<String> uids, List<String> attrIdentifiers) {
-        OrFilter uidsOrFilter = new OrFilter();
-        for (String uid: uids) {
-            uidsOrFilter.or(new EqualsFilter(EDU_PERSON_PRINCIPAL_NAMES, uid));
-        }
-
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_USER))
-                .and(uidsOrFilter);
-
-        return this.getUser(filter, attrIdentifiers);
+        ResolvedAttributes resolved = this.resolveAttributes(attrIdentifiers);
+        LdapQuery query = USERS_BY_EPPNS_QUERY.query(resolved.userAttributes,
+                LdapQueryTemplate.anyOf(EDU_PERSON_PRINCIPAL_NAMES, uids));
+        ContextMapper<User> mapper = this.userWithAttributesMapper(resolved.ldapMappings);
+        return connectorLdap.searchForObject(query, mapper);
     }
 
     @Override
     public User findPerunUserById(@NonNull Long userId, List<String> attrIdentifiers) {
-        final Set<AttributeObjectMapping> finalMappings = this.getAttributeMappings(attrIdentifiers);
-        ContextMapper<User> mapper = this.userWithAttributesMapper(finalMappings);
-
-        Set<String> attributes = new HashSet<>();
-        attributes.addAll(Arrays.asList(PERUN_USER_REQUIRED_ATTRIBUTES));
-        attributes.addAll(Arrays.asList(this.getAttributesFromMappings(finalMappings)));
+        ResolvedAttributes resolved = this.resolveAttributes(attrIdentifiers);
+        ContextMapper<User> mapper = this.userWithAttributesMapper(resolved.ldapMappings);
 
         String dn = this.constructUserDn(userId, null);
         try {
-            return connectorLdap.lookup(dn, attributes.toArray(new String[] {}), mapper);
+            return connectorLdap.lookup(dn, resolved.userLookupAttributes, mapper);
         } catch (LookupException e) {
             log.debug("Caught LookupException, returning NULL", e);
             return null;
@@ -199,10 +246,7 @@ public class LdapAdapterImpl implements DataAdapter {
     @Override
     public List<Group> getUserGroups(@NonNull Long userId) {
         String uniqueMember = this.constructUserDn(userId, baseDn);
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP))
-                .and(new EqualsFilter(UNIQUE_MEMBER, uniqueMember));
-        return getGroups(filter);
+        return this.getGroups(GROUPS_OF_MEMBER_QUERY.query(uniqueMember));
     }
 
     @Override
@@ -218,25 +262,12 @@ public class LdapAdapterImpl implements DataAdapter {
         }
 
         Set<Long> groupIds = this.getGroupIdsAssignedToFacility(facility.getId());
-        List<Group> groups = this.getGroupsByIds(groupIds);
-        if (groups != null) {
-            return groups.stream().filter(Objects::nonNull).collect(Collectors.toList());
-        } else {
-            return new ArrayList<>();
-        }
+        return this.getGroupsByIds(groupIds);
     }
 
     @Override
     public Group getGroupByName(@NonNull Long voId, @NonNull String groupName) {
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP))
-                .and(new EqualsFilter(PERUN_UNIQUE_GROUP_NAME, groupName));
-
-        LdapQuery query = query()
-                .attributes(PERUN_GROUP_BEAN_ATTRIBUTES)
-                .searchScope(SUBTREE)
-                .filter(filter);
-
+        LdapQuery query = GROUP_BY_NAME_QUERY.query(groupName);
         ContextMapper<Group> mapper = this.groupMapper();
 
         return connectorLdap.searchForObject(query, mapper);
@@ -244,20 +275,12 @@ public class LdapAdapterImpl implements DataAdapter {
 
     @Override
     public Vo getVoByShortName(@NonNull String shortName) {
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_VO))
-                .and(new EqualsFilter(O, shortName));
-
-        return getVo(filter);
+        return this.getVo(VO_BY_SHORT_NAME_QUERY.query(shortName));
     }
 
     @Override
     public Vo getVoById(@NonNull Long id) {
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_VO))
-                .and(new EqualsFilter(PERUN_VO_ID, String.valueOf(id)));
-
-        return getVo(filter);
+        return this.getVo(VO_BY_ID_QUERY.query(id));
     }
 
     @Override
@@ -265,10 +288,10 @@ public class LdapAdapterImpl implements DataAdapter {
                                                                 @NonNull List<String> attrs) {
         Map<String, PerunAttributeValue> resultMap = new HashMap<>();
 
-        Set<AttributeObjectMapping> mappings = this.getMappingsForAttrNames(attrs);
-        String[] attributes = this.getAttributesFromMappings(mappings);
+        ResolvedAttributes resolved = this.resolveAttributes(attrs);
+        String[] attributes = resolved.ldapNames;
         if (attributes.length != 0) {
-            ContextMapper<Map<String, PerunAttributeValue>> mapper = this.attrsValuesMapper(mappings);
+            ContextMapper<Map<String, PerunAttributeValue>> mapper = this.attrsValuesMapper(resolved.mappings);
             String prefix = this.getPrefixForEntity(entity, entityId);
 
             try {
@@ -282,6 +305,51 @@ public class LdapAdapterImpl implements DataAdapter {
         return resultMap;
     }
 
+    @Override
+    public Map<Long, Map<String, PerunAttributeValue>> getAttributesValues(@NonNull Entity entity,
+                                                                           @NonNull Collection<Long> entityIds,
+                                                                           @NonNull List<String> attrs)
+    {
+        Map<Long, Map<String, PerunAttributeValue>> resultMap = new LinkedHashMap<>();
+        String objectClass = this.getObjectClassForEntity(entity);
+        String idAttribute = this.getIdAttributeForEntity(entity);
+        if (objectClass == null || idAttribute == null) {
+            entityIds.forEach(id -> resultMap.put(id, this.getAttributesValues(entity, id, attrs)));
+            return resultMap;
+        }
+
+        entityIds.forEach(id -> resultMap.put(id, new HashMap<>()));
+
+        ResolvedAttributes resolved = this.resolveAttributes(attrs);
+        String[] attributes = resolved.ldapNames;
+        if (attributes.length == 0 || resultMap.isEmpty()) {
+            return resultMap;
+        }
+
+        String[] queryAttributes = Arrays.copyOf(attributes, attributes.length + 1);
+        queryAttributes[attributes.length] = idAttribute;
+        LdapQuery query = ENTITIES_QUERY.query(queryAttributes, objectClass,
+                LdapQueryTemplate.anyOf(idAttribute, resultMap.keySet()));
+
+        ContextMapper<Map<String, PerunAttributeValue>> attrsMapper = this.attrsValuesMapper(resolved.mappings);
+        ContextMapper<Map.Entry<Long, Map<String, PerunAttributeValue>>> mapper = ctx -> {
+            DirContextAdapter context = (DirContextAdapter) ctx;
+            if (!checkHasAttributes(context, new String[] { idAttribute })) {
+                return null;
+            }
+            Long id = Long.valueOf(context.getStringAttribute(idAttribute));
+            return new AbstractMap.SimpleImmutableEntry<>(id, attrsMapper.mapFromContext(ctx));
+        };
+
+        for (Map.Entry<Long, Map<String, PerunAttributeValue>> entry : connectorLdap.search(query, mapper)) {
+            if (entry != null && resultMap.containsKey(entry.getKey())) {
+                resultMap.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return resultMap;
+    }
+
     @Override
     public PerunAttributeValue getAttributeValue(@NonNull Entity entity,
                                                  @NonNull Long entityId,
@@ -313,22 +381,10 @@ public class LdapAdapterImpl implements DataAdapter {
                     attributeName, mapping);
             throw new IllegalArgumentException("Cannot fetch unknown attribute");
         }
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_FACILITY))
-                .and(new EqualsFilter(attributeName, attrValue));
-        LdapQuery query = query()
-                .searchScope(ONELEVEL)
-                .attributes(PERUN_FACILITY_BEAN_ATTRIBUTES)
-                .filter(filter);
-
+        LdapQuery query = FACILITIES_QUERY.query(LdapQueryTemplate.equal(attributeName, attrValue));
         ContextMapper<Facility> mapper = this.facilityMapper();
 
-        List<Facility> facilities = connectorLdap.search(query, mapper);
-        if (facilities != null) {
-            return facilities.stream().filter(Objects::nonNull).collect(Collectors.toList());
-        } else {
-            return new ArrayList<>();
-        }
+        return this.searchNonNull(query, mapper);
     }
 
     @Override
@@ -337,14 +393,7 @@ public class LdapAdapterImpl implements DataAdapter {
         if (rpIdentifierAttr == null) {
             throw new ConfigurationException("RP Identifier attr is not set, check your configuration");
         }
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_FACILITY))
-                .and(new EqualsFilter(rpIdentifierAttr, rpIdentifier));
-        LdapQuery query = query()
-                .attributes(PERUN_FACILITY_BEAN_ATTRIBUTES)
-                .searchScope(ONELEVEL)
-                .filter(filter);
-
+        LdapQuery query = FACILITY_BY_RP_IDENTIFIER_QUERY.query(rpIdentifier);
         ContextMapper<Facility> mapper = this.facilityMapper();
 
         return connectorLdap.searchForObject(query, mapper);
@@ -357,34 +406,18 @@ public class LdapAdapterImpl implements DataAdapter {
             return new ArrayList<>();
         }
 
-        OrFilter resourceIdsFilter = new OrFilter();
-        for (Long id: facilityResourceIds) {
-            resourceIdsFilter.or(new EqualsFilter(ASSIGNED_TO_RESOURCE_ID, String.valueOf(id)));
-        }
-
         String uniqueMember = this.constructUserDn(userId, baseDn);
-        AndFilter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP))
-                .and(new EqualsFilter(UNIQUE_MEMBER, uniqueMember))
-                .and(resourceIdsFilter);
-
-        return getGroups(filter);
+        return this.getGroups(GROUPS_OF_MEMBER_ON_RESOURCES_QUERY.query(uniqueMember,
+                LdapQueryTemplate.anyOf(ASSIGNED_TO_RESOURCE_ID, facilityResourceIds)));
     }
 
     @Override
     public User getUserWithAttributesByLogin(@NonNull String login,
                                              @NonNull List<String> attrIdentifiers)
     {
-        final Set<AttributeObjectMapping> finalMappings = this.getAttributeMappings(attrIdentifiers);
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_USER))
-                .and(new EqualsFilter(loginAttr, login));
-        LdapQuery query  = query()
-                .base(OU_PEOPLE)
-                .searchScope(ONELEVEL)
-                .attributes(this.constructUserAttributes(finalMappings))
-                .filter(filter);
-        ContextMapper<User> mapper = this.userWithAttributesMapper(finalMappings);
+        ResolvedAttributes resolved = this.resolveAttributes(attrIdentifiers);
+        LdapQuery query = USER_BY_LOGIN_QUERY.query(resolved.userAttributes, login);
+        ContextMapper<User> mapper = this.userWithAttributesMapper(resolved.ldapMappings);
 
         User user = connectorLdap.searchForObject(query, mapper);
         if (user != null) {
@@ -401,6 +434,20 @@ public class LdapAdapterImpl implements DataAdapter {
         return AdapterUtils.getForwardedEntitlements(this, userId, entitlementsIdentifier);
     }
 
+    /**
+     * User is fetched with memberOf by a single search and joined with the cached index of the facility,
+     * see {@link LdapEntitlementResolver}.
+     */
+    @Override
+    public UserEntitlementData getUserEntitlementData(@NonNull String rpIdentifier, @NonNull String login,
+                                                      String forwardedEntitlementsAttrIdentifier,
+                                                      String resourceCapabilitiesAttrIdentifier,
+                                                      String facilityCapabilitiesAttrIdentifier)
+    {
+        return entitlementResolver.resolve(this, rpIdentifier, login, forwardedEntitlementsAttrIdentifier,
+                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier);
+    }
+
     @Override
     public List<String> getCapabilities(@NonNull Long facilityId, @NonNull Long userId,
                                         @NonNull List<Group> userGroupsOnFacility,
@@ -417,10 +464,7 @@ public class LdapAdapterImpl implements DataAdapter {
         Set<Long> groupIdsFromGNames = this.getGroupsByUniqueGroupNames(groupNames).stream()
                 .map(Group::getId).collect(Collectors.toSet());
 
-        OrFilter partialFilter = new OrFilter();
-        for (Long gid : groupIdsFromGNames) {
-            partialFilter.or(new EqualsFilter(ASSIGNED_GROUP_ID, String.valueOf(gid)));
-        }
+        Filter partialFilter = LdapQueryTemplate.anyOf(ASSIGNED_GROUP_ID, groupIdsFromGNames);
         return new ArrayList<>(this.getCapabilities(facilityId, resourceCapabilitiesAttrIdentifier,
                 facilityCapabilitiesAttrIdentifier, partialFilter));
     }
@@ -433,47 +477,25 @@ public class LdapAdapterImpl implements DataAdapter {
         if (additionalIdentifiersAttr == null) {
             throw new ConfigurationException("RP Identifier attr is not set, check your configuration");
         }
-        Set<AttributeObjectMapping> mappings = this.getAttributeMappings(attrIdentifiers);
-        OrFilter identifiersFilter = new OrFilter();
+        ResolvedAttributes resolved = this.resolveAttributes(attrIdentifiers);
+        List<String> nonEmptyIdentifiers = new ArrayList<>(identifiers.size());
         for (String identifier : identifiers) {
             if (StringUtils.hasText(identifier)) {
-                identifiersFilter.or(new EqualsFilter(additionalIdentifiersAttr, identifier));
+                nonEmptyIdentifiers.add(identifier);
             }
         }
-        AndFilter filter = new AndFilter()
-                .and(identifiersFilter)
-                .and(new EqualsFilter(OBJECT_CLASS,PERUN_USER));
+        LdapQuery ldapQuery = USER_BY_IDENTIFIERS_QUERY.query(resolved.userAttributes,
+                LdapQueryTemplate.anyOf(additionalIdentifiersAttr, nonEmptyIdentifiers));
 
-        LdapQuery ldapQuery = query()
-                .base(OU_PEOPLE)
-                .attributes(this.constructUserAttributes(mappings))
-                .searchScope(ONELEVEL)
-                .filter(filter);
-
-        ContextMapper<User> mapper = this.userWithAttributesMapper(mappings);
+        ContextMapper<User> mapper = this.userWithAttributesMapper(resolved.ldapMappings);
         return connectorLdap.searchForObject(ldapQuery, mapper);
     }
 
-    @Override
-    public List<Group> getFacilityGroupsWhereUserIsValidMember(@NonNull Long userId, @NonNull Long facilityId) {
-        Set<Long> allowedGroupsIds = this.getGroupIdsAssignedToFacility(facilityId);
-        Set<Long> userGroupIds = this.getGroupIdsWhereUserIsValidMember(userId);
-        allowedGroupsIds.retainAll(userGroupIds);
-        return this.getGroupsByIds(allowedGroupsIds);
-    }
-
-    @Override
-    public boolean isValidMemberOfAnyProvidedVo(@NonNull Long userId, @NonNull List<Long> voIds) {
-        Set<Long> memberVoIds = this.getVoIdsWhereUserIsValidMember(userId);
-
-        return !Collections.disjoint(voIds, memberVoIds);
-    }
-
     @Override
     public Set<Long> getVoIdsWhereUserIsValidMember(@NonNull Long userId) {
         PerunAttributeValue attributeValue = this.getAttributeValue(USER, userId, MEMBER_OF);
         if (attributeValue != null && attributeValue.valueAsList() != null) {
-            Set<Long> voIds = new HashSet<>();
+            LongHashSet voIds = new LongHashSet();
             for (String memberOfValue: attributeValue.valueAsList()) {
                 String[] parts = memberOfValue.split(",", 3);
                 String voId = parts[1];
@@ -483,23 +505,117 @@ public class LdapAdapterImpl implements DataAdapter {
             return voIds;
         }
 
-        return new HashSet<>();
+        return new LongHashSet();
     }
 
     @Override
     public Set<Long> getGroupIdsWhereUserIsValidMember(@NonNull Long userId) {
         PerunAttributeValue attributeValue = this.getAttributeValue(USER, userId, MEMBER_OF);
         if (attributeValue != null && attributeValue.valueAsList() != null) {
-            Set<Long> groupIds = new HashSet<>();
-            for (String memberOfValue: attributeValue.valueAsList()) {
-                String groupId = memberOfValue.split(",", 2)[0];
-                groupId = groupId.replace(PERUN_GROUP_ID + '=', "");
-                groupIds.add(Long.parseLong(groupId));
+            return this.groupIdsFromMemberOf(attributeValue.valueAsList());
+        }
+
+        return new LongHashSet();
+    }
+
+    @Override
+    public Set<Long> getAllowedGroupIds(@NonNull Long facilityId) {
+        return this.getGroupIdsAssignedToFacility(facilityId);
+    }
+
+    // methods used by the LdapEntitlementResolver
+
+    /**
+     * Find the user by login together with IDs of the groups where the user is a valid member, both are fetched
+     * by a single search (memberOf is read from the user entry).
+     * @param login Login of the user.
+     * @param attrIdentifiers Identifiers of the attributes to be fetched for the user.
+     * @return User with the group IDs, NULL if the user has not been found.
+     */
+    UserMemberships getUserMembershipsByLogin(@NonNull String login, @NonNull List<String> attrIdentifiers) {
+        ResolvedAttributes resolved = this.resolveAttributes(attrIdentifiers);
+        LdapQuery query = USER_BY_LOGIN_QUERY.query(resolved.userMembershipAttributes, login);
+        ContextMapper<User> userMapper = this.userWithAttributesMapper(resolved.ldapMappings);
+        ContextMapper<UserMemberships> mapper = ctx -> {
+            User user = userMapper.mapFromContext(ctx);
+            if (user == null) {
+                return null;
+            }
+            user.setLogin(login);
+            String[] memberOf = ((DirContextAdapter) ctx).getStringAttributes(MEMBER_OF);
+            Set<Long> groupIds = memberOf == null ? new LongHashSet()
+                    : this.groupIdsFromMemberOf(Arrays.asList(memberOf));
+            return new UserMemberships(user, groupIds);
+        };
+
+        return connectorLdap.searchForObject(query, mapper);
+    }
+
+    /**
+     * Get the resources of the facility with the IDs of the assigned groups and the capabilities, all the resources
+     * with assigned groups are fetched by a single search.
+     * @param facilityId ID of the facility.
+     * @param resourceCapabilitiesAttrIdentifier Identifier of the resource capabilities attribute, can be NULL.
+     * @return Resources of the facility (filled or empty).
+     */
+    List<ResourceAssignment> getFacilityResourceAssignments(@NonNull Long facilityId,
+                                                            String resourceCapabilitiesAttrIdentifier)
+    {
+        String capabilitiesAttr = null;
+        String[] attributes = new String[] { ASSIGNED_GROUP_ID };
+        if (StringUtils.hasText(resourceCapabilitiesAttrIdentifier)) {
+            AttributeObjectMapping mapping = this.getMappingForAttrName(resourceCapabilitiesAttrIdentifier);
+            if (mapping != null && StringUtils.hasText(mapping.getLdapName())) {
+                capabilitiesAttr = mapping.getLdapName();
+                attributes = new String[] { ASSIGNED_GROUP_ID, capabilitiesAttr };
             }
-            return groupIds;
         }
 
-        return new HashSet<>();
+        LdapQuery query = ASSIGNED_RESOURCES_OF_FACILITY_QUERY.query(attributes,
+                PERUN_FACILITY_ID + '=' + facilityId + ',' + baseDn);
+        String capabilitiesLdapName = capabilitiesAttr;
+        ContextMapper<ResourceAssignment> mapper = ctx -> {
+            DirContextAdapter context = (DirContextAdapter) ctx;
+            String[] assignedGroupIds = context.getStringAttributes(ASSIGNED_GROUP_ID);
+            if (assignedGroupIds == null || assignedGroupIds.length == 0) {
+                return null;
+            }
+            LongHashSet groupIds = new LongHashSet();
+            for (String id : assignedGroupIds) {
+                groupIds.add(Long.parseLong(id));
+            }
+            Set<String> capabilities = new HashSet<>();
+            // same as in the capabilities search, capabilities count only when both attributes are present
+            if (capabilitiesLdapName != null && checkHasAttributes(context, query.attributes())) {
+                capabilities.addAll(Arrays.asList(context.getStringAttributes(capabilitiesLdapName)));
+            }
+            return new ResourceAssignment(groupIds, capabilities);
+        };
+
+        return this.searchNonNull(query, mapper);
+    }
+
+    List<Group> getGroupsByIds(@NonNull Set<Long> groupIds) {
+        // used for all the groups assigned to the facility, which might be a lot of them
+        LdapQuery query = GROUPS_QUERY.query(LdapQueryTemplate.anyOf(PERUN_GROUP_ID, groupIds));
+        ContextMapper<Group> mapper = this.groupMapper();
+        List<Group> result = new ArrayList<>();
+        connectorLdap.searchPaged(query, mapper, found -> {
+            if (found != null) {
+                result.add(found);
+            }
+        });
+        return result;
+    }
+
+    Set<String> getFacilityCapabilities(@NonNull Long facilityId, @NonNull String capabilitiesAttrName) {
+        Set<String> result = new HashSet<>();
+        PerunAttributeValue attrVal = this.getAttributeValue(FACILITY, facilityId, capabilitiesAttrName);
+        if (attrVal != null && attrVal.valueAsList() != null) {
+            result = new HashSet<>(attrVal.valueAsList());
+        }
+
+        return result;
     }
 
     // private methods
@@ -518,33 +634,16 @@ public class LdapAdapterImpl implements DataAdapter {
         if (objects == null || objects.size() <= 0) {
             return result;
         } else {
-            AndFilter filter = new AndFilter();
-            if (objects.size() == 1) {
-                Object first = objects.toArray()[0];
-                filter.and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP))
-                        .and(new EqualsFilter(objectAttribute, String.valueOf(first)));
-            } else {
-                OrFilter partial = new OrFilter();
-                for (Object obj: objects) {
-                    partial.or(new EqualsFilter(objectAttribute, String.valueOf(obj)));
-                }
-                filter.and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP)).and(partial);
-            }
-
-            return this.getGroups(filter);
+            return this.getGroups(GROUPS_QUERY.query(LdapQueryTemplate.anyOf(objectAttribute, objects)));
         }
     }
 
     private Set<String> getCapabilities(@NonNull Long facilityId,
                                         String resourceCapabilitiesAttrName,
                                         String facilityCapabilitiesAttrIdentifier,
-                                        @NonNull OrFilter partialFilter)
+                                        @NonNull Filter partialFilter)
     {
         boolean includeFacilityCapabilities = false;
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_RESOURCE))
-                .and(partialFilter)
-                .and(new EqualsFilter(PERUN_FACILITY_DN, PERUN_FACILITY_ID + '=' + facilityId + ',' + baseDn));
         String[] attributes;
         AttributeObjectMapping capabilitiesMapping;
 
@@ -556,20 +655,19 @@ public class LdapAdapterImpl implements DataAdapter {
             capabilitiesMapping = null;
         }
 
-        LdapQuery query = query()
-                .attributes(attributes)
-                .searchScope(SUBTREE)
-                .filter(filter);
+        LdapQuery query = RESOURCES_OF_FACILITY_QUERY.query(attributes, partialFilter,
+                PERUN_FACILITY_ID + '=' + facilityId + ',' + baseDn);
         ContextMapper<Set<String>> mapper = this.capabilitiesMapper(capabilitiesMapping, query);
 
-        List<Set<String>> foundSets = connectorLdap.search(query, mapper);
-
         Set<String> capabilities = new HashSet<>();
-        if (foundSets != null && !foundSets.isEmpty()) {
-            // if the mapper returns at least one entry, user is member of some group assigned to the facility
-            includeFacilityCapabilities = true;
-            foundSets.stream().filter(Objects::nonNull).forEach(capabilities::addAll);
+        List<Set<String>> foundSets = connectorLdap.search(query, mapper);
+        for (Set<String> foundSet : foundSets) {
+            if (foundSet != null) {
+                capabilities.addAll(foundSet);
+            }
         }
+        // if the mapper returns at least one entry, user is member of some group assigned to the facility
+        includeFacilityCapabilities = !foundSets.isEmpty();
 
         if (StringUtils.hasText(facilityCapabilitiesAttrIdentifier) && includeFacilityCapabilities) {
             Set<String> facilityCapabilities = this.getFacilityCapabilities(facilityId,
@@ -596,16 +694,6 @@ public class LdapAdapterImpl implements DataAdapter {
         };
     }
 
-    private Set<String> getFacilityCapabilities(@NonNull Long facilityId, @NonNull String capabilitiesAttrName) {
-        Set<String> result = new HashSet<>();
-        PerunAttributeValue attrVal = this.getAttributeValue(FACILITY, facilityId, capabilitiesAttrName);
-        if (attrVal != null && attrVal.valueAsList() != null) {
-            result = new HashSet<>(attrVal.valueAsList());
-        }
-
-        return result;
-    }
-
     private String getPrefixForEntity(@NonNull Entity entity, @NonNull Long entityId) {
         String prefix = null;
         switch (entity) {
@@ -618,65 +706,59 @@ public class LdapAdapterImpl implements DataAdapter {
         return prefix;
     }
 
-    private List<Group> getGroupsByIds(@NonNull Set<Long> groupIds) {
-        OrFilter groupIdsFilter = new OrFilter();
-        for (Long gid: groupIds) {
-            groupIdsFilter.or(new EqualsFilter(PERUN_GROUP_ID, String.valueOf(gid)));
+    private String getObjectClassForEntity(@NonNull Entity entity) {
+        switch (entity) {
+            case USER: return PERUN_USER;
+            case VO: return PERUN_VO;
+            case GROUP: return PERUN_GROUP;
+            case FACILITY: return PERUN_FACILITY;
+            case RESOURCE: return PERUN_RESOURCE;
+            default: return null;
         }
+    }
 
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_GROUP))
-                .and(groupIdsFilter);
-
-        return this.getGroups(filter);
+    private String getIdAttributeForEntity(@NonNull Entity entity) {
+        switch (entity) {
+            case USER: return PERUN_USER_ID;
+            case VO: return PERUN_VO_ID;
+            case GROUP: return PERUN_GROUP_ID;
+            case FACILITY: return PERUN_FACILITY_ID;
+            case RESOURCE: return PERUN_RESOURCE_ID;
+            default: return null;
+        }
     }
 
     private Set<Long> getGroupIdsAssignedToFacility(@NonNull Long facilityId) {
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_RESOURCE))
-                .and(new EqualsFilter(PERUN_FACILITY_ID, String.valueOf(facilityId)));
-
-        LdapQuery query = query()
-                .attributes(ASSIGNED_GROUP_ID)
-                .searchScope(SUBTREE)
-                .filter(filter);
+        LdapQuery query = GROUP_IDS_OF_FACILITY_QUERY.query(facilityId);
 
-        ContextMapper<Set<Long>> mapper = ctx -> {
+        Set<Long> groupIds = new HashSet<>();
+        ContextMapper<String[]> mapper = ctx -> {
             DirContextAdapter context = (DirContextAdapter) ctx;
             if (!checkHasAttributes(context, query.attributes())) {
-                return new HashSet<>();
+                return null;
             }
-            Set<Long> groupIds = new HashSet<>();
-            String[] assignedGroupIds = context.getStringAttributes(ASSIGNED_GROUP_ID);
+            return context.getStringAttributes(ASSIGNED_GROUP_ID);
+        };
+
+        connectorLdap.searchPaged(query, mapper, assignedGroupIds -> {
             if (assignedGroupIds != null) {
                 for (String id: assignedGroupIds) {
                     groupIds.add(Long.valueOf(id));
                 }
             }
-
-            return groupIds;
-        };
-
-        List<Set<Long>> result = connectorLdap.search(query, mapper);
-        if (result != null) {
-            return this.flatten(result);
-        } else {
-            return new HashSet<>();
-        }
+        });
+        return groupIds;
     }
 
-    private List<Group> getGroups(@NonNull Filter filter) {
-        LdapQuery query = query()
-                .attributes(PERUN_GROUP_ID, CN, PERUN_UNIQUE_GROUP_NAME, PERUN_VO_ID, DESCRIPTION, PERUN_PARENT_GROUP_ID)
-                .searchScope(SUBTREE)
-                .filter(filter);
+    private List<Group> getGroups(@NonNull LdapQuery query) {
         ContextMapper<Group> mapper = this.groupMapper();
-        List<Group> groups = connectorLdap.search(query, mapper);
-        if (groups != null) {
-            return groups.stream().filter(Objects::nonNull).collect(Collectors.toList());
-        } else {
-            return new ArrayList<>();
-        }
+        return this.searchNonNull(query, mapper);
+    }
+
+    private <T> List<T> searchNonNull(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper) {
+        return connectorLdap.search(query, mapper).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     private boolean checkHasAttributes(DirContextAdapter ctx, String[] attributes) {
@@ -775,9 +857,8 @@ public class LdapAdapterImpl implements DataAdapter {
     }
 
     private ObjectNode getMapNodeJson(@NonNull String value) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readValue(value, ObjectNode.class);
+            return JsonCodec.readObject(value);
         } catch (IOException e) {
             throw new InconvertibleValueException("Could not parse value");
         }
@@ -791,33 +872,12 @@ public class LdapAdapterImpl implements DataAdapter {
         return arrayNode;
     }
 
-    private Vo getVo(Filter filter) {
-        LdapQuery query = query()
-                .attributes(PERUN_VO_BEAN_ATTRIBUTES)
-                .searchScope(ONELEVEL)
-                .filter(filter);
-
+    private Vo getVo(LdapQuery query) {
         ContextMapper<Vo> mapper = this.voMapper();
 
         return connectorLdap.searchForObject(query, mapper);
     }
 
-    private <T> Set<T> flatten(@NonNull List<Set<T>> sets) {
-        Set<T> flatSet = new HashSet<>();
-        sets.forEach(flatSet::addAll);
-        return flatSet;
-    }
-
-    private User getUser(Filter filter, List<String> attrIdentifiers) {
-        final Set<AttributeObjectMapping> finalMappings = this.getAttributeMappings(attrIdentifiers);
-        String[] attributes = this.constructUserAttributes(finalMappings);
-        LdapQuery query = query().base(OU_PEOPLE)
-                .attributes(attributes)
-                .filter(filter);
-        ContextMapper<User> mapper = this.userWithAttributesMapper(finalMappings);
-        return connectorLdap.searchForObject(query, mapper);
-    }
-
     private String[] constructUserAttributes(Set<AttributeObjectMapping> attrMappings) {
         String[] attrs;
         int i = 0;
@@ -840,14 +900,7 @@ public class LdapAdapterImpl implements DataAdapter {
     }
 
     private List<Long> getFacilityResourceIds(@NonNull Long facilityId) {
-        Filter filter = new AndFilter()
-                .and(new EqualsFilter(OBJECT_CLASS, PERUN_RESOURCE))
-                .and(new EqualsFilter(PERUN_FACILITY_DN, PERUN_FACILITY_ID + '=' + facilityId + ',' + baseDn));
-
-        LdapQuery query = query()
-                .attributes(PERUN_RESOURCE_ID)
-                .searchScope(SUBTREE)
-                .filter(filter);
+        LdapQuery query = RESOURCE_IDS_OF_FACILITY_QUERY.query(PERUN_FACILITY_ID + '=' + facilityId + ',' + baseDn);
 
         ContextMapper<Long> mapper = ctx -> {
             DirContextAdapter context = (DirContextAdapter) ctx;
@@ -858,12 +911,13 @@ public class LdapAdapterImpl implements DataAdapter {
             return Long.parseLong(context.getStringAttribute(PERUN_RESOURCE_ID));
         };
 
-        List<Long> ids = connectorLdap.search(query, mapper);
-        if (ids == null) {
-            return new ArrayList<>();
-        } else {
-            return ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Long id : connectorLdap.search(query, mapper)) {
+            if (id != null) {
+                ids.add(id);
+            }
         }
+        return new ArrayList<>(ids);
     }
 
     // mappers
@@ -988,8 +1042,31 @@ public class LdapAdapterImpl implements DataAdapter {
         };
     }
 
-    private Set<AttributeObjectMapping> getAttributeMappings(List<String> attrIdentifiers) {
-        Set<AttributeObjectMapping> attrMappings = this.getMappingsForAttrNames(attrIdentifiers);
+    private ResolvedAttributes resolveAttributes(List<String> attrIdentifiers) {
+        List<String> key = attrIdentifiers == null ? Collections.emptyList() : attrIdentifiers;
+        ResolvedAttributes resolved = resolvedAttributes.get(key);
+        if (resolved == null) {
+            Set<AttributeObjectMapping> mappings = this.getMappingsForAttrNames(key);
+            Set<AttributeObjectMapping> ldapMappings = this.getAttributeMappings(mappings);
+
+            Set<String> userLookupAttributes = new HashSet<>(Arrays.asList(PERUN_USER_REQUIRED_ATTRIBUTES));
+            userLookupAttributes.addAll(Arrays.asList(this.getAttributesFromMappings(ldapMappings)));
+            String[] userAttributes = this.constructUserAttributes(ldapMappings);
+            String[] userMembershipAttributes = Arrays.copyOf(userAttributes, userAttributes.length + 1);
+            userMembershipAttributes[userAttributes.length] = MEMBER_OF;
+
+            resolved = new ResolvedAttributes(Collections.unmodifiableSet(mappings),
+                    Collections.unmodifiableSet(ldapMappings), this.getAttributesFromMappings(mappings),
+                    userAttributes, userLookupAttributes.toArray(new String[0]), userMembershipAttributes);
+            // identifiers come from the configuration of the callers, the limit only guards against misuse
+            if (resolvedAttributes.size() < MAX_RESOLVED_ATTRIBUTES) {
+                resolvedAttributes.put(new ArrayList<>(key), resolved);
+            }
+        }
+        return resolved;
+    }
+
+    private Set<AttributeObjectMapping> getAttributeMappings(Set<AttributeObjectMapping> attrMappings) {
         if (attrMappings == null) {
             attrMappings = new HashSet<>();
         }
@@ -1004,6 +1081,16 @@ public class LdapAdapterImpl implements DataAdapter {
                 }).collect(Collectors.toSet());
     }
 
+    private LongHashSet groupIdsFromMemberOf(@NonNull Collection<String> memberOfValues) {
+        LongHashSet groupIds = new LongHashSet();
+        for (String memberOfValue: memberOfValues) {
+            String groupId = memberOfValue.split(",", 2)[0];
+            groupId = groupId.replace(PERUN_GROUP_ID + '=', "");
+            groupIds.add(Long.parseLong(groupId));
+        }
+        return groupIds;
+    }
+
     private String constructUserDn(@NonNull Long userId, String baseDn) {
         String dn = PERUN_USER_ID + '=' + userId + ',' + OU_PEOPLE;
         if (baseDn != null) {
@@ -1012,4 +1099,44 @@ public class LdapAdapterImpl implements DataAdapter {
         return dn;
     }
 
+    /**
+     * Mappings and LDAP attribute names for the list of requested attribute identifiers. Arrays are shared
+     * by all the calls and must not be modified.
+     */
+    @AllArgsConstructor
+    private static final class ResolvedAttributes {
+        // mappings of all the identifiers
+        private final Set<AttributeObjectMapping> mappings;
+        // mappings having the LDAP name
+        private final Set<AttributeObjectMapping> ldapMappings;
+        // LDAP names of the mappings
+        private final String[] ldapNames;
+        // LDAP names of the mappings and the attributes of user bean for the searches
+        private final String[] userAttributes;
+        // LDAP names of the mappings and the attributes required for the user lookup
+        private final String[] userLookupAttributes;
+        // userAttributes and memberOf
+        private final String[] userMembershipAttributes;
+    }
+
+    /**
+     * User with IDs of the groups where the user is a valid member.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class UserMemberships {
+        @NonNull private final User user;
+        @NonNull private final Set<Long> groupIds;
+    }
+
+    /**
+     * Resource of a facility with IDs of the assigned groups and the resource capabilities.
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class ResourceAssignment {
+        @NonNull private final Set<Long> assignedGroupIds;
+        @NonNull private final Set<String> capabilities;
+    }
+
 }
@@ -0,0 +1,186 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
+
+import cz.muni.ics.perunproxyapi.persistence.adapters.ExpiringCache;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap.LdapAdapterImpl.ResourceAssignment;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap.LdapAdapterImpl.UserMemberships;
+import cz.muni.ics.perunproxyapi.persistence.configs.LdapEntitlementsProperties;
+import cz.muni.ics.perunproxyapi.persistence.models.Facility;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
+import cz.muni.ics.perunproxyapi.persistence.models.User;
+import cz.muni.ics.perunproxyapi.persistence.models.UserEntitlementData;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the data for the entitlements of the user on the facility from Perun LDAP. The user entry is fetched
+ * with memberOf by a single search and the group IDs derived from it are joined locally against the index
+ * of the facility (resources with the assigned group IDs and capabilities, assigned groups and capabilities
+ * of the facility). Indexes of the facilities are cached, so the request costs one live LDAP operation while
+ * the index of the facility is cached.
+ *
+ * TTL 0 disables the cache, the index of the facility is built for each request.
+ */
+@Component
+@Slf4j
+public class LdapEntitlementResolver {
+
+    private static final int FACILITY_CACHE_SIZE = 1000;
+
+    private final ExpiringCache<FacilityKey, FacilityIndex> facilities;
+
+    @Autowired
+    public LdapEntitlementResolver(@NonNull LdapEntitlementsProperties properties) {
+        this(Duration.ofMillis(properties.getFacilityTtl()));
+    }
+
+    LdapEntitlementResolver(@NonNull Duration facilityTtl) {
+        this.facilities = new ExpiringCache<>(facilityTtl, FACILITY_CACHE_SIZE);
+    }
+
+    /**
+     * Resolve the data for the entitlements of the user on the facility.
+     * @param adapter LDAP adapter to be used.
+     * @param rpIdentifier Identifier of the RP (ClientID or EntityID).
+     * @param login Login of the user.
+     * @param forwardedEntitlementsAttrIdentifier Identifier of the attribute with forwarded entitlements, can be NULL.
+     * @param resourceCapabilitiesAttrIdentifier Identifier of the resource capabilities attribute, can be NULL.
+     * @param facilityCapabilitiesAttrIdentifier Identifier of the facility capabilities attribute, can be NULL.
+     * @return Data for the entitlements, user or facility is NULL when it has not been found.
+     */
+    public UserEntitlementData resolve(@NonNull LdapAdapterImpl adapter,
+                                       @NonNull String rpIdentifier,
+                                       @NonNull String login,
+                                       String forwardedEntitlementsAttrIdentifier,
+                                       String resourceCapabilitiesAttrIdentifier,
+                                       String facilityCapabilitiesAttrIdentifier)
+    {
+        List<String> userAttrIdentifiers = StringUtils.hasText(forwardedEntitlementsAttrIdentifier)
+                ? Collections.singletonList(forwardedEntitlementsAttrIdentifier)
+                : Collections.emptyList();
+        UserMemberships memberships = adapter.getUserMembershipsByLogin(login, userAttrIdentifiers);
+        if (memberships == null) {
+            return new UserEntitlementData(null, null, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+        User user = memberships.getUser();
+        List<String> forwardedEntitlements = this.getForwardedEntitlements(user,
+                forwardedEntitlementsAttrIdentifier);
+
+        FacilityIndex index = this.getFacilityIndex(new FacilityKey(adapter, rpIdentifier,
+                resourceCapabilitiesAttrIdentifier, facilityCapabilitiesAttrIdentifier));
+        if (index == null) {
+            return new UserEntitlementData(user, null, new ArrayList<>(), new ArrayList<>(), forwardedEntitlements);
+        }
+
+        List<Group> groups = new ArrayList<>();
+        for (Long groupId : memberships.getGroupIds()) {
+            Group group = index.groups.get(groupId);
+            if (group != null) {
+                groups.add(group);
+            }
+        }
+
+        Set<String> capabilities = new HashSet<>();
+        boolean hasAssignedResource = false;
+        for (ResourceAssignment resource : index.resources) {
+            if (!Collections.disjoint(resource.getAssignedGroupIds(), memberships.getGroupIds())) {
+                hasAssignedResource = true;
+                capabilities.addAll(resource.getCapabilities());
+            }
+        }
+        if (hasAssignedResource) {
+            capabilities.addAll(index.facilityCapabilities);
+        }
+
+        return new UserEntitlementData(user, index.facility, groups, new ArrayList<>(capabilities),
+                forwardedEntitlements);
+    }
+
+    public int size() {
+        return facilities.size();
+    }
+
+    private FacilityIndex getFacilityIndex(FacilityKey key) {
+        FacilityIndex index = facilities.get(key);
+        if (index == null) {
+            index = this.buildFacilityIndex(key);
+            if (index != null) {
+                facilities.put(key, index);
+            }
+        }
+        return index;
+    }
+
+    private FacilityIndex buildFacilityIndex(FacilityKey key) {
+        LdapAdapterImpl adapter = key.adapter;
+        Facility facility = adapter.getFacilityByRpIdentifier(key.rpIdentifier);
+        if (facility == null || facility.getId() == null) {
+            return null;
+        }
+
+        List<ResourceAssignment> resources = adapter.getFacilityResourceAssignments(facility.getId(),
+                key.resourceCapabilitiesAttrIdentifier);
+        Set<Long> assignedGroupIds = new HashSet<>();
+        resources.forEach(resource -> assignedGroupIds.addAll(resource.getAssignedGroupIds()));
+
+        Map<Long, Group> groups = new HashMap<>();
+        if (!assignedGroupIds.isEmpty()) {
+            adapter.getGroupsByIds(assignedGroupIds).forEach(group -> groups.put(group.getId(), group));
+        }
+
+        Set<String> facilityCapabilities = Collections.emptySet();
+        if (StringUtils.hasText(key.facilityCapabilitiesAttrIdentifier) && !resources.isEmpty()) {
+            facilityCapabilities = adapter.getFacilityCapabilities(facility.getId(),
+                    key.facilityCapabilitiesAttrIdentifier);
+        }
+
+        log.debug("Built entitlements index of facility {} with {} resources and {} groups", facility.getId(),
+                resources.size(), groups.size());
+        return new FacilityIndex(facility, resources, groups, facilityCapabilities);
+    }
+
+    private List<String> getForwardedEntitlements(User user, String forwardedEntitlementsAttrIdentifier) {
+        if (!StringUtils.hasText(forwardedEntitlementsAttrIdentifier) || user.getAttributes() == null) {
+            return new ArrayList<>();
+        }
+
+        PerunAttributeValue attributeValue = user.getAttributes().get(forwardedEntitlementsAttrIdentifier);
+        if (attributeValue != null && attributeValue.valueAsList() != null) {
+            return attributeValue.valueAsList();
+        }
+
+        return new ArrayList<>();
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class FacilityKey {
+        private final LdapAdapterImpl adapter;
+        private final String rpIdentifier;
+        private final String resourceCapabilitiesAttrIdentifier;
+        private final String facilityCapabilitiesAttrIdentifier;
+    }
+
+    @AllArgsConstructor
+    private static final class FacilityIndex {
+        private final Facility facility;
+        private final List<ResourceAssignment> resources;
+        private final Map<Long, Group> groups;
+        private final Set<String> facilityCapabilities;
+    }
+
+}
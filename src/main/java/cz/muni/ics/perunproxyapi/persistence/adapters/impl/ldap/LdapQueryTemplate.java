@@ -0,0 +1,258 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
+
+import lombok.NonNull;
+import org.springframework.ldap.filter.Filter;
+import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.query.SearchScope;
+import org.springframework.ldap.support.LdapEncoder;
+import org.springframework.ldap.support.LdapUtils;
+
+import javax.naming.Name;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * LDAP query with the filter compiled from a template once and bound to the parameters for each call.
+ * Placeholders {0}, {1}, ... in the filter template are replaced by the parameters:
+ *   - Filter parameters (i.e. from {@link #equal(String, Object)} or {@link #anyOf(String, Iterable)}) are inserted
+ *     as they are encoded
+ *   - other parameters are converted to String and escaped as assertion values (RFC 4515)
+ * Bound filter is a single string, no tree of filter objects is built for the call.
+ *
+ * Example: compile(OU_PEOPLE, ONELEVEL, attrs, "(&(objectClass=perunUser)(login={0}))").query(login)
+ */
+public final class LdapQueryTemplate {
+
+    private static final char PLACEHOLDER_START = '{';
+    private static final char PLACEHOLDER_END = '}';
+
+    private final Name base;
+    private final SearchScope searchScope;
+    private final String[] attributes;
+    // literal parts of the template, parameter with index paramIndexes[i] goes after the literal i
+    private final String[] literals;
+    private final int[] paramIndexes;
+    private final int literalsLength;
+
+    private LdapQueryTemplate(Name base, SearchScope searchScope, String[] attributes, String[] literals,
+                              int[] paramIndexes)
+    {
+        this.base = base;
+        this.searchScope = searchScope;
+        this.attributes = attributes;
+        this.literals = literals;
+        this.paramIndexes = paramIndexes;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * Compile the query template.
+     * @param base Base of the query relative to the base DN, null for the base DN.
+     * @param searchScope Scope of the search, null for the default (subtree) scope.
+     * @param attributes Attributes to be fetched, null when the attributes are passed for each call.
+     * @param filterTemplate Filter with the placeholders {0}, {1}, ...
+     * @return Compiled template.
+     */
+    public static LdapQueryTemplate compile(String base, SearchScope searchScope, String[] attributes,
+                                            @NonNull String filterTemplate)
+    {
+        List<String> literals = new ArrayList<>();
+        List<Integer> paramIndexes = new ArrayList<>();
+        int literalStart = 0;
+        int placeholderStart;
+        while ((placeholderStart = filterTemplate.indexOf(PLACEHOLDER_START, literalStart)) >= 0) {
+            int placeholderEnd = filterTemplate.indexOf(PLACEHOLDER_END, placeholderStart);
+            if (placeholderEnd < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in filter template " + filterTemplate);
+            }
+            literals.add(filterTemplate.substring(literalStart, placeholderStart));
+            try {
+                paramIndexes.add(Integer.parseInt(filterTemplate.substring(placeholderStart + 1, placeholderEnd)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid placeholder in filter template " + filterTemplate, e);
+            }
+            literalStart = placeholderEnd + 1;
+        }
+        literals.add(filterTemplate.substring(literalStart));
+
+        Name baseName = base == null ? LdapUtils.emptyLdapName() : LdapUtils.newLdapName(base);
+        return new LdapQueryTemplate(baseName, searchScope, attributes, literals.toArray(new String[0]),
+                paramIndexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Bind the parameters, fetched attributes are the ones from the template.
+     * @param params Parameters of the filter.
+     * @return Query.
+     */
+    public LdapQuery query(Object... params) {
+        return this.query(attributes, params);
+    }
+
+    /**
+     * Bind the parameters and the fetched attributes.
+     * @param attributes Attributes to be fetched.
+     * @param params Parameters of the filter.
+     * @return Query.
+     */
+    public LdapQuery query(String[] attributes, Object... params) {
+        return new BoundQuery(base, searchScope, attributes, new EncodedFilter(this.bind(params)));
+    }
+
+    /**
+     * Encoded equality filter, i.e. for the attribute names known only at runtime.
+     * @param attribute Name of the attribute.
+     * @param value Assertion value, will be escaped.
+     * @return Filter (attribute=value).
+     */
+    public static Filter equal(@NonNull String attribute, @NonNull Object value) {
+        StringBuilder sb = new StringBuilder(attribute.length() + 16);
+        appendEqual(sb, attribute, value);
+        return new EncodedFilter(sb.toString());
+    }
+
+    /**
+     * Encoded filter matching any of the values of the attribute. Single value produces equality filter, no values
+     * produce empty filter (left out from the enclosing filter, same as empty OrFilter).
+     * @param attribute Name of the attribute.
+     * @param values Assertion values, will be escaped.
+     * @return Filter (|(attribute=value1)(attribute=value2)...).
+     */
+    public static Filter anyOf(@NonNull String attribute, @NonNull Iterable<?> values) {
+        Iterator<?> it = values.iterator();
+        if (!it.hasNext()) {
+            return new EncodedFilter("");
+        }
+        Object first = it.next();
+        StringBuilder sb = new StringBuilder();
+        if (!it.hasNext()) {
+            appendEqual(sb, attribute, first);
+            return new EncodedFilter(sb.toString());
+        }
+        sb.append("(|");
+        appendEqual(sb, attribute, first);
+        while (it.hasNext()) {
+            appendEqual(sb, attribute, it.next());
+        }
+        return new EncodedFilter(sb.append(')').toString());
+    }
+
+    String bind(Object... params) {
+        String[] values = new String[params.length];
+        int length = literalsLength;
+        for (int i = 0; i < params.length; i++) {
+            values[i] = params[i] instanceof Filter
+                    ? ((Filter) params[i]).encode()
+                    : LdapEncoder.filterEncode(String.valueOf(params[i]));
+            length += values[i].length();
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < paramIndexes.length; i++) {
+            sb.append(literals[i]);
+            sb.append(values[paramIndexes[i]]);
+        }
+        return sb.append(literals[literals.length - 1]).toString();
+    }
+
+    private static void appendEqual(StringBuilder sb, String attribute, Object value) {
+        sb.append('(').append(attribute).append('=')
+                .append(LdapEncoder.filterEncode(String.valueOf(value)))
+                .append(')');
+    }
+
+    /**
+     * Already encoded filter, unlike HardcodedFilter the encoding does not copy it.
+     */
+    private static final class EncodedFilter implements Filter {
+
+        private final String encoded;
+
+        private EncodedFilter(String encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public String encode() {
+            return encoded;
+        }
+
+        @Override
+        public StringBuffer encode(StringBuffer buf) {
+            return buf.append(encoded);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EncodedFilter && encoded.equals(((EncodedFilter) o).encoded);
+        }
+
+        @Override
+        public int hashCode() {
+            return encoded.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return encoded;
+        }
+
+    }
+
+    private static final class BoundQuery implements LdapQuery {
+
+        private final Name base;
+        private final SearchScope searchScope;
+        private final String[] attributes;
+        private final Filter filter;
+
+        private BoundQuery(Name base, SearchScope searchScope, String[] attributes, Filter filter) {
+            this.base = base;
+            this.searchScope = searchScope;
+            this.attributes = attributes;
+            this.filter = filter;
+        }
+
+        @Override
+        public Name base() {
+            return base;
+        }
+
+        @Override
+        public SearchScope searchScope() {
+            return searchScope;
+        }
+
+        @Override
+        public Integer timeLimit() {
+            return null;
+        }
+
+        @Override
+        public Integer countLimit() {
+            return null;
+        }
+
+        @Override
+        public String[] attributes() {
+            return attributes;
+        }
+
+        @Override
+        public Filter filter() {
+            return filter;
+        }
+
+        @Override
+        public String toString() {
+            return "LdapQuery{base=" + base + ", scope=" + searchScope + ", filter=" + filter.encode() + '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
+
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.LdapReplica;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorLdapReplica;
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * LDAP adapter answering all the calls from the local replica of Perun LDAP. Should be used only when the replica
+ * is ready, see {@link #isReady()}.
+ */
+@Component("ldapReplicaAdapter")
+public class LdapReplicaAdapterImpl extends LdapAdapterImpl {
+
+    private final LdapReplica replica;
+
+    @Autowired
+    public LdapReplicaAdapterImpl(@NonNull LdapReplica replica,
+                                  @NonNull AttributeMappingService attributeMappingService,
+                                  @NonNull LdapProperties ldapProperties,
+                                  @NonNull AttributeMappingServiceProperties attributeMappingServiceProperties,
+                                  @NonNull LdapEntitlementResolver entitlementResolver)
+    {
+        super(new PerunConnectorLdapReplica(replica), attributeMappingService, ldapProperties,
+                attributeMappingServiceProperties, entitlementResolver);
+        this.replica = replica;
+    }
+
+    public boolean isReady() {
+        return replica.isReady();
+    }
+
+}
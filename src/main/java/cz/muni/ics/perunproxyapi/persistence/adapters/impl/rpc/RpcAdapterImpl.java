@@ -4,9 +4,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
 import cz.muni.ics.perunproxyapi.persistence.adapters.AdapterUtils;
+import cz.muni.ics.perunproxyapi.persistence.adapters.ExpiringCache;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.LongHashSet;
 import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
 import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpcAsync;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCall;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCallResult;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcResponseReader;
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.RpcConnectorProperties;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
 import cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.ConfigurationException;
@@ -27,11 +34,13 @@ import cz.muni.ics.perunproxyapi.persistence.models.User;
 import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
 import cz.muni.ics.perunproxyapi.persistence.models.Vo;
 import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -39,10 +48,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.FACILITY;
@@ -103,21 +115,92 @@ public class RpcAdapterImpl implements FullAdapter {
 
     // special
     public static final String NAME_MEMBERS = "members";
+    public static final String VO_SHORT_NAME_ATTR = "urn:perun:group:attribute-def:virt:voShortName";
+
+    private static final Duration DEFAULT_MEMBERS_GROUP_CACHE_TTL = Duration.ofHours(1);
+    private static final int MEMBERS_GROUP_CACHE_SIZE = 1000;
+    private static final int MEMBERSHIP_CACHE_SIZE = 10000;
 
     private final PerunConnectorRpc connectorRpc;
+    private final PerunConnectorRpcAsync connectorRpcAsync;
     private final AttributeMappingService attributeMappingService;
+    private final ExpiringCache<Long, Group> membersGroupCache;
+    private final ExpiringCache<Long, Long> membersGroupIdCache;
+    private final ExpiringCache<Long, Long> groupVoCache;
+    private final ExpiringCache<MemberKey, Long> memberIdCache;
+    private final boolean concurrentUidProbing;
 
     private final String rpIdentifierAttr;
     private final String additionalIdentifiersAttr;
     @NonNull private final String loginAttr;
 
-    @Autowired
     public RpcAdapterImpl(@NonNull PerunConnectorRpc perunConnectorRpc,
                           @NonNull AttributeMappingService attributeMappingService,
                           @NonNull AttributeMappingServiceProperties amsProperties)
+    {
+        this(perunConnectorRpc, null, attributeMappingService, amsProperties);
+    }
+
+    /**
+     * Create adapter. If the asynchronous connector is not given, asynchronous methods call the blocking ones.
+     */
+    public RpcAdapterImpl(@NonNull PerunConnectorRpc perunConnectorRpc,
+                          PerunConnectorRpcAsync perunConnectorRpcAsync,
+                          @NonNull AttributeMappingService attributeMappingService,
+                          @NonNull AttributeMappingServiceProperties amsProperties)
+    {
+        this(perunConnectorRpc, perunConnectorRpcAsync, attributeMappingService, amsProperties,
+                DEFAULT_MEMBERS_GROUP_CACHE_TTL);
+    }
+
+    @Autowired
+    public RpcAdapterImpl(@NonNull PerunConnectorRpc perunConnectorRpc,
+                          PerunConnectorRpcAsync perunConnectorRpcAsync,
+                          @NonNull AttributeMappingService attributeMappingService,
+                          @NonNull AttributeMappingServiceProperties amsProperties,
+                          @NonNull RpcConnectorProperties rpcProperties)
+    {
+        this(perunConnectorRpc, perunConnectorRpcAsync, attributeMappingService, amsProperties,
+                Duration.ofMillis(rpcProperties.getMembersGroupCacheTtl()),
+                Duration.ofMillis(rpcProperties.getMembershipCacheTtl()), rpcProperties.isConcurrentUidProbing());
+    }
+
+    /**
+     * Create adapter. VO members groups, VOs of the groups and members of the users are cached for the given time,
+     * zero disables the caches.
+     */
+    public RpcAdapterImpl(@NonNull PerunConnectorRpc perunConnectorRpc,
+                          PerunConnectorRpcAsync perunConnectorRpcAsync,
+                          @NonNull AttributeMappingService attributeMappingService,
+                          @NonNull AttributeMappingServiceProperties amsProperties,
+                          @NonNull Duration membersGroupCacheTtl)
+    {
+        this(perunConnectorRpc, perunConnectorRpcAsync, attributeMappingService, amsProperties,
+                membersGroupCacheTtl, membersGroupCacheTtl, false);
+    }
+
+    /**
+     * Create adapter. VO members groups are cached for the given time, VOs of the groups and members of the users
+     * for the membership cache TTL, zero disables the cache. If the concurrent UID probing is enabled and
+     * the asynchronous connector is given, all the UIDs of the user are looked up at once, otherwise they are tried
+     * one by one.
+     */
+    public RpcAdapterImpl(@NonNull PerunConnectorRpc perunConnectorRpc,
+                          PerunConnectorRpcAsync perunConnectorRpcAsync,
+                          @NonNull AttributeMappingService attributeMappingService,
+                          @NonNull AttributeMappingServiceProperties amsProperties,
+                          @NonNull Duration membersGroupCacheTtl,
+                          @NonNull Duration membershipCacheTtl,
+                          boolean concurrentUidProbing)
     {
         this.connectorRpc = perunConnectorRpc;
+        this.connectorRpcAsync = perunConnectorRpcAsync;
         this.attributeMappingService = attributeMappingService;
+        this.membersGroupCache = new ExpiringCache<>(membersGroupCacheTtl, MEMBERS_GROUP_CACHE_SIZE);
+        this.membersGroupIdCache = new ExpiringCache<>(membersGroupCacheTtl, MEMBERS_GROUP_CACHE_SIZE);
+        this.groupVoCache = new ExpiringCache<>(membershipCacheTtl, MEMBERSHIP_CACHE_SIZE);
+        this.memberIdCache = new ExpiringCache<>(membershipCacheTtl, MEMBERSHIP_CACHE_SIZE);
+        this.concurrentUidProbing = concurrentUidProbing;
 
         try {
             this.rpIdentifierAttr = AdapterUtils.getRpcNameFromMapping(this.attributeMappingService
@@ -144,19 +227,30 @@ public class RpcAdapterImpl implements FullAdapter {
         }
 
         Set<AttributeObjectMapping> mappings = attributeMappingService.getMappingsByIdentifiers(attrIdentifiers);
-
-        List<String> rpcNames = mappings.stream()
-                .map(AttributeObjectMapping::getRpcName)
-                .collect(Collectors.toList());
-
-        Map<String, Object> params = new LinkedHashMap<>();
-        params.put(entity.toString(), entityId);
-        params.put(PARAM_ATTR_NAMES, rpcNames);
+        Map<String, Object> params = this.getAttributesParams(entity, entityId, mappings);
 
         JsonNode perunResponse = connectorRpc.post(ATTRIBUTES_MANAGER, "getAttributes", params);
         return RpcMapper.mapAttributes(perunResponse, mappings);
     }
 
+    @Override
+    public CompletableFuture<Map<String, PerunAttributeValue>> getAttributesValuesAsync(@NonNull Entity entity,
+                                                                                       @NonNull Long entityId,
+                                                                                       @NonNull List<String> attributes)
+    {
+        if (connectorRpcAsync == null) {
+            return AdapterUtils.completedCall(() -> this.getAttributesValues(entity, entityId, attributes));
+        } else if (attributes.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        Set<AttributeObjectMapping> mappings = attributeMappingService.getMappingsByIdentifiers(attributes);
+        Map<String, Object> params = this.getAttributesParams(entity, entityId, mappings);
+
+        return connectorRpcAsync.post(ATTRIBUTES_MANAGER, "getAttributes", params)
+                .thenApply(response -> this.extractAttrValues(RpcMapper.mapAttributes(response, mappings)));
+    }
+
     @Override
     public PerunAttribute getAttribute(@NonNull Entity entity,
                                        @NonNull Long entityId,
@@ -190,8 +284,7 @@ public class RpcAdapterImpl implements FullAdapter {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_USER, userId);
 
-        JsonNode response = connectorRpc.post(USERS_MANAGER, "getUserExtSources", params);
-        return RpcMapper.mapUserExtSources(response);
+        return connectorRpc.post(USERS_MANAGER, "getUserExtSources", params, RpcStreamingMapper::mapUserExtSources);
     }
 
     @Override
@@ -247,6 +340,10 @@ public class RpcAdapterImpl implements FullAdapter {
     public User getPerunUser(@NonNull String idpEntityId, @NonNull List<String> uids, List<String> attrIdentifiers)
             throws PerunUnknownException, PerunConnectionException
     {
+        if (concurrentUidProbing && connectorRpcAsync != null && uids.size() > 1) {
+            return AdapterUtils.awaitResult(this.getPerunUserConcurrently(idpEntityId, uids, attrIdentifiers));
+        }
+
         User user = null;
         for (String uid : uids) {
             user = this.getUserByExtSourceNameAndExtLogin(idpEntityId, uid);
@@ -285,25 +382,71 @@ public class RpcAdapterImpl implements FullAdapter {
     @Override
     public List<Group> getUserGroups(@NonNull Long userId)
             throws PerunUnknownException, PerunConnectionException {
-        List<Member> userMembers = this.getMembersByUser(userId);
-        List<Group> groups = new LinkedList<>();
-        if (!userMembers.isEmpty()) {
-            for (Member member : userMembers) {
-                if (!VALID.equals(member.getStatus())) {
-                    continue;
-                } else if (member.getId() == null) {
-                    log.warn("No ID found for member {}", member);
-                    continue;
-                }
-                List<Group> memberGroups = this.getGroupsWhereMemberIsActive(member.getId());
-                groups.addAll(memberGroups);
-                Group memberSourceGroup = this.getGroupByName(member.getVoId(), NAME_MEMBERS);
-                groups.add(memberSourceGroup);
+        List<Member> validMembers = new ArrayList<>();
+        for (Member member : this.getMembersByUser(userId)) {
+            if (!VALID.equals(member.getStatus())) {
+                continue;
+            } else if (member.getId() == null) {
+                log.warn("No ID found for member {}", member);
+                continue;
+            }
+            validMembers.add(member);
+        }
+        if (validMembers.isEmpty()) {
+            return new LinkedList<>();
+        }
+
+        // groups of all the members and not cached VO members groups are fetched concurrently in one batch
+        List<RpcCall> calls = new ArrayList<>();
+        for (Member member : validMembers) {
+            calls.add(this.getGroupsWhereMemberIsActiveCall(member.getId()));
+        }
+        Map<Long, Group> membersGroups = new HashMap<>();
+        List<Long> fetchedVoIds = new ArrayList<>();
+        for (Member member : validMembers) {
+            Long voId = member.getVoId();
+            Group cached = membersGroupCache.get(voId);
+            if (cached != null) {
+                membersGroups.put(voId, this.copyGroup(cached));
+            } else if (!fetchedVoIds.contains(voId)) {
+                fetchedVoIds.add(voId);
+                calls.add(this.getGroupByNameCall(voId, NAME_MEMBERS));
+            }
+        }
+        List<JsonNode> responses = this.postBatch(calls);
+
+        List<Group> groupsToFill = new ArrayList<>();
+        List<List<Group>> memberGroups = new ArrayList<>(validMembers.size());
+        for (int i = 0; i < validMembers.size(); i++) {
+            List<Group> groups = RpcMapper.mapGroups(responses.get(i));
+            memberGroups.add(groups);
+            groupsToFill.addAll(groups);
+        }
+        List<Group> fetchedMembersGroups = new ArrayList<>();
+        for (int i = 0; i < fetchedVoIds.size(); i++) {
+            Group membersGroup = RpcMapper.mapGroup(responses.get(validMembers.size() + i));
+            if (membersGroup != null) {
+                membersGroups.put(fetchedVoIds.get(i), membersGroup);
+                fetchedMembersGroups.add(membersGroup);
             }
         }
+        groupsToFill.addAll(fetchedMembersGroups);
 
-        if (!groups.isEmpty()) {
-            this.fillGroupUniqueNames(groups);
+        if (!groupsToFill.isEmpty()) {
+            this.fillGroupUniqueNames(groupsToFill);
+        }
+        for (Group membersGroup : fetchedMembersGroups) {
+            membersGroupCache.put(membersGroup.getVoId(), this.copyGroup(membersGroup));
+            membersGroupIdCache.put(membersGroup.getVoId(), membersGroup.getId());
+        }
+
+        List<Group> groups = new LinkedList<>();
+        for (int i = 0; i < validMembers.size(); i++) {
+            groups.addAll(memberGroups.get(i));
+            Group membersGroup = membersGroups.get(validMembers.get(i).getVoId());
+            if (membersGroup != null) {
+                groups.add(membersGroup);
+            }
         }
 
         return groups;
@@ -324,12 +467,16 @@ public class RpcAdapterImpl implements FullAdapter {
         Facility facility = facilities.get(0);
         List<Resource> resources = this.getAssignedResources(facility.getId());
 
-        Set<Group> spGroups = new HashSet<>();
-        for (Resource resource : resources) {
-            List<Group> groups = this.getAssignedGroups(resource.getId());
-            this.fillGroupUniqueNames(groups);
-            spGroups.addAll(groups);
+        List<RpcCall> calls = resources.stream()
+                .map(resource -> this.getAssignedGroupsCall(resource.getId()))
+                .collect(Collectors.toList());
+        List<Group> groups = new ArrayList<>();
+        for (JsonNode response : this.postBatch(calls)) {
+            groups.addAll(RpcMapper.mapGroups(response));
         }
+        this.fillGroupUniqueNames(groups);
+
+        Set<Group> spGroups = new HashSet<>(groups);
 
         return new ArrayList<>(spGroups);
     }
@@ -374,6 +521,35 @@ public class RpcAdapterImpl implements FullAdapter {
         return this.extractAttrValues(attrs);
     }
 
+    @Override
+    public Map<Long, Map<String, PerunAttributeValue>> getAttributesValues(@NonNull Entity entity,
+                                                                           @NonNull Collection<Long> entityIds,
+                                                                           @NonNull List<String> attributes)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(entityIds));
+        Map<Long, Map<String, PerunAttributeValue>> result = new LinkedHashMap<>();
+        if (attributes.isEmpty()) {
+            log.debug("No attrs to fetch for {} entities", ids.size());
+            ids.forEach(id -> result.put(id, new HashMap<>()));
+            return result;
+        }
+
+        Set<AttributeObjectMapping> mappings = attributeMappingService.getMappingsByIdentifiers(attributes);
+        List<RpcCall> calls = ids.stream()
+                .map(id -> new RpcCall(ATTRIBUTES_MANAGER, "getAttributes",
+                        this.getAttributesParams(entity, id, mappings)))
+                .collect(Collectors.toList());
+        List<JsonNode> responses = this.postBatch(calls);
+
+        for (int i = 0; i < ids.size(); i++) {
+            Map<String, PerunAttribute> attrs = RpcMapper.mapAttributes(responses.get(i), mappings);
+            result.put(ids.get(i), this.extractAttrValues(attrs));
+        }
+
+        return result;
+    }
+
     @Override
     public PerunAttributeValue getAttributeValue(@NonNull Entity entity, @NonNull Long entityId,
                                                  @NonNull String attribute)
@@ -397,8 +573,8 @@ public class RpcAdapterImpl implements FullAdapter {
         params.put(PARAM_ATTRIBUTE_NAME, mapping.getRpcName());
         params.put(PARAM_ATTRIBUTE_VALUE, attrValue);
 
-        JsonNode perunResponse = connectorRpc.post(FACILITIES_MANAGER, "getFacilitiesByAttribute", params);
-        List<Facility> foundFacilities = RpcMapper.mapFacilities(perunResponse);
+        List<Facility> foundFacilities = connectorRpc.post(FACILITIES_MANAGER, "getFacilitiesByAttribute", params,
+                RpcStreamingMapper::mapFacilities);
         return this.returnFacilityList(foundFacilities);
     }
 
@@ -414,16 +590,27 @@ public class RpcAdapterImpl implements FullAdapter {
         params.put(PARAM_ATTRIBUTE_NAME, rpIdentifierAttr);
         params.put(PARAM_ATTRIBUTE_VALUE, rpIdentifier);
 
-        JsonNode perunResponse = connectorRpc.post(FACILITIES_MANAGER, "getFacilitiesByAttribute", params);
-        List<Facility> foundFacilities = RpcMapper.mapFacilities(perunResponse);
-        if (foundFacilities.size() > 1) {
-            log.error("Found more facilities for identifier than expected. Found {}, expected exactly", foundFacilities);
-            throw new InternalErrorException("Error when looking for the RP");
-        } else if (foundFacilities.size() == 0) {
-            return  null;
+        List<Facility> foundFacilities = connectorRpc.post(FACILITIES_MANAGER, "getFacilitiesByAttribute", params,
+                RpcStreamingMapper::mapFacilities);
+        return this.selectFacilityByRpIdentifier(foundFacilities, rpIdentifier);
+    }
+
+    @Override
+    public CompletableFuture<Facility> getFacilityByRpIdentifierAsync(@NonNull String rpIdentifier) {
+        if (connectorRpcAsync == null) {
+            return AdapterUtils.completedCall(() -> this.getFacilityByRpIdentifier(rpIdentifier));
+        } else if (rpIdentifierAttr == null) {
+            return CompletableFuture.failedFuture(
+                    new ConfigurationException("RP Identifier attr is not set, check your configuration"));
         }
+        Map<String, Object> params = new LinkedHashMap<>();
 
-        return this.returnFacility(foundFacilities.get(0), rpIdentifier);
+        params.put(PARAM_ATTRIBUTE_NAME, rpIdentifierAttr);
+        params.put(PARAM_ATTRIBUTE_VALUE, rpIdentifier);
+
+        return connectorRpcAsync.post(FACILITIES_MANAGER, "getFacilitiesByAttribute", params)
+                .thenApply(response -> this.selectFacilityByRpIdentifier(RpcMapper.mapFacilities(response),
+                        rpIdentifier));
     }
 
     @Override
@@ -434,8 +621,8 @@ public class RpcAdapterImpl implements FullAdapter {
         params.put(PARAM_USER, userId);
         params.put(PARAM_FACILITY, facilityId);
 
-        JsonNode perunResponse = connectorRpc.post(USERS_MANAGER, "getGroupsWhereUserIsActive", params);
-        List<Group> groups = RpcMapper.mapGroups(perunResponse);
+        List<Group> groups = connectorRpc.post(USERS_MANAGER, "getGroupsWhereUserIsActive", params,
+                RpcStreamingMapper::mapGroups);
         this.fillGroupUniqueNames(groups);
         return groups;
     }
@@ -464,40 +651,63 @@ public class RpcAdapterImpl implements FullAdapter {
                 .map(Group::getUniqueGroupName)
                 .collect(Collectors.toSet());
 
+        Set<String> facilityCapabilities = new HashSet<>();
         if (null != resourceCapabilitiesAttrIdentifier) {
-            List<Resource> assignedResources = this.getAssignedRichResources(facilityId);
-            for (Resource resource : assignedResources) {
-                PerunAttributeValue attrValue = this.getAttributeValue(RESOURCE, resource.getId(),
-                        resourceCapabilitiesAttrIdentifier);
-
-                List<String> resourceCapabilities = attrValue.valueAsList();
-                if (resourceCapabilities == null || resourceCapabilities.size() == 0) {
-                    continue;
+            // groups of the resources without VO cannot be matched by the unique name, such resources are skipped
+            List<Resource> assignedResources = this.getAssignedRichResources(facilityId).stream()
+                    .filter(resource -> resource.getVo() != null)
+                    .collect(Collectors.toList());
+            if (!assignedResources.isEmpty()) {
+                String capabilitiesAttrName = this.getMappingForAttrName(resourceCapabilitiesAttrIdentifier)
+                        .getRpcName();
+                List<RpcCall> capabilitiesCalls = new ArrayList<>(assignedResources.size());
+                for (Resource resource : assignedResources) {
+                    capabilitiesCalls.add(this.getAttributeCall(RESOURCE, resource.getId(), capabilitiesAttrName));
                 }
-                List<Group> resourceGroups = this.getAssignedGroups(resource.getId());
-                for (Group group : resourceGroups) {
-                    String groupName = group.getName();
-                    if (resource.getVo() == null) {
-                        log.warn("Could not get VO for resource ({}) assigned group, thus cannot construct unique name."
-                                 + " Skip this group {}. It might be the cause of capabilities {} not being in list.",
-                                   resource, group, resourceCapabilities);
+                List<JsonNode> capabilitiesResponses = this.postBatch(capabilitiesCalls);
+
+                // groups are fetched only for the resources with some capabilities, capabilities of the facility
+                // are needed only when there is such resource
+                List<Resource> resourcesWithCapabilities = new ArrayList<>();
+                List<List<String>> resourcesCapabilities = new ArrayList<>();
+                for (int i = 0; i < assignedResources.size(); i++) {
+                    PerunAttributeValue attrValue = this.extractAttrValue(
+                            RpcMapper.mapAttribute(capabilitiesResponses.get(i)));
+                    List<String> resourceCapabilities = attrValue == null ? null : attrValue.valueAsList();
+                    if (resourceCapabilities != null && !resourceCapabilities.isEmpty()) {
+                        resourcesWithCapabilities.add(assignedResources.get(i));
+                        resourcesCapabilities.add(resourceCapabilities);
                     }
-                    groupName = resource.getVo().getShortName() + ':' + groupName;
-                    group.setUniqueGroupName(groupName);
-                    if (userGroupNames.contains(groupName)) {
-                        log.trace("Group [{}] found in users groups, add capabilities [{}]", groupName,
-                                resourceCapabilities);
-                        resultCapabilities.addAll(resourceCapabilities);
-                    } else {
-                        log.trace("Group [{}] not found in users groups, continue to the next one", groupName);
+                }
+
+                if (!resourcesWithCapabilities.isEmpty()) {
+                    List<RpcCall> groupsCalls = new ArrayList<>(resourcesWithCapabilities.size() + 1);
+                    for (Resource resource : resourcesWithCapabilities) {
+                        groupsCalls.add(this.getAssignedGroupsCall(resource.getId()));
+                    }
+                    if (null != facilityCapabilitiesAttrIdentifier) {
+                        groupsCalls.add(this.getAttributeCall(FACILITY, facilityId,
+                                this.getMappingForAttrName(facilityCapabilitiesAttrIdentifier).getRpcName()));
+                    }
+                    List<JsonNode> groupsResponses = this.postBatch(groupsCalls);
+
+                    for (int i = 0; i < resourcesWithCapabilities.size(); i++) {
+                        this.processResourceGroups(resourcesWithCapabilities.get(i), resourcesCapabilities.get(i),
+                                RpcMapper.mapGroups(groupsResponses.get(i)), userGroupNames, resultCapabilities,
+                                resourceGroupNames);
+                    }
+                    if (null != facilityCapabilitiesAttrIdentifier) {
+                        PerunAttributeValue attrValue = this.extractAttrValue(
+                                RpcMapper.mapAttribute(groupsResponses.get(groupsCalls.size() - 1)));
+                        if (attrValue != null && attrValue.valueAsList() != null) {
+                            facilityCapabilities.addAll(attrValue.valueAsList());
+                        }
                     }
-                    resourceGroupNames.add(groupName);
                 }
             }
         }
 
         if (null != facilityCapabilitiesAttrIdentifier && !Collections.disjoint(userGroupNames, resourceGroupNames)) {
-            Set<String> facilityCapabilities = this.getFacilityCapabilities(facilityId, facilityCapabilitiesAttrIdentifier);
             resultCapabilities.addAll(facilityCapabilities);
         }
 
@@ -520,6 +730,32 @@ public class RpcAdapterImpl implements FullAdapter {
         return user;
     }
 
+    @Override
+    public CompletableFuture<User> getUserWithAttributesByLoginAsync(@NonNull String login,
+                                                                     @NonNull List<String> attrsToReturnIdentifiers)
+    {
+        if (connectorRpcAsync == null) {
+            return AdapterUtils.completedCall(() -> this.getUserWithAttributesByLogin(login, attrsToReturnIdentifiers));
+        }
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(PARAM_ATTRIBUTE_NAME, loginAttr);
+        params.put(PARAM_ATTRIBUTE_VALUE, login);
+
+        return connectorRpcAsync.post(USERS_MANAGER, "getUsersByAttributeValue", params)
+                .thenApply(response -> this.selectUserByLogin(RpcMapper.mapUsers(response), login))
+                .thenCompose(user -> {
+                    if (user == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return this.getAttributesValuesAsync(USER, user.getPerunId(), attrsToReturnIdentifiers)
+                            .thenApply(userAttributes -> {
+                                user.setAttributes(userAttributes);
+                                return user;
+                            });
+                });
+    }
+
     @Override
     public User findByIdentifiers(@NonNull String idpIdentifier,
                                   @NonNull List<String> identifiers,
@@ -541,23 +777,30 @@ public class RpcAdapterImpl implements FullAdapter {
 
         Set<AttributeObjectMapping> attributeMappings = new HashSet<>(Arrays.asList(affiliationMapping, orgUrlMapping));
 
-        for (UserExtSource ues : userExtSources) {
-            if (EXT_SOURCE_TYPE.equals(ues.getExtSource().getType())) {
-                Map<String, PerunAttributeValue> uesAttrValues = getUserExtSourceAttributeValues(
-                        ues.getId(), attributeMappings);
-                long asserted = ues.getLastAccess().getTime() / 1000L;
-                if (uesAttrValues.getOrDefault(affiliationMapping.getIdentifier(), null) != null
-                        && uesAttrValues.getOrDefault(orgUrlMapping.getIdentifier(), null) != null)
-                {
-                    String orgUrl = uesAttrValues.get(orgUrlMapping.getIdentifier()).valueAsString();
-                    String affs = uesAttrValues.get(affiliationMapping.getIdentifier()).valueAsString();
-                    if (affs != null) {
-                        for (String aff : affs.split(";")) {
-                            String source = (orgUrl != null) ? orgUrl : ues.getExtSource().getName();
-                            Affiliation affiliation = new Affiliation(source, aff, asserted);
-                            log.debug("found affiliation {}", affiliation);
-                            affiliations.add(affiliation);
-                        }
+        List<UserExtSource> idpUserExtSources = userExtSources.stream()
+                .filter(ues -> EXT_SOURCE_TYPE.equals(ues.getExtSource().getType()))
+                .collect(Collectors.toList());
+        List<RpcCall> calls = idpUserExtSources.stream()
+                .map(ues -> this.getUserExtSourceAttributesCall(ues.getId(), attributeMappings))
+                .collect(Collectors.toList());
+        List<JsonNode> responses = this.postBatch(calls);
+
+        for (int i = 0; i < idpUserExtSources.size(); i++) {
+            UserExtSource ues = idpUserExtSources.get(i);
+            Map<String, PerunAttributeValue> uesAttrValues = this.extractValues(
+                    RpcMapper.mapAttributes(responses.get(i), attributeMappings));
+            long asserted = ues.getLastAccess().getTime() / 1000L;
+            if (uesAttrValues.getOrDefault(affiliationMapping.getIdentifier(), null) != null
+                    && uesAttrValues.getOrDefault(orgUrlMapping.getIdentifier(), null) != null)
+            {
+                String orgUrl = uesAttrValues.get(orgUrlMapping.getIdentifier()).valueAsString();
+                String affs = uesAttrValues.get(affiliationMapping.getIdentifier()).valueAsString();
+                if (affs != null) {
+                    for (String aff : affs.split(";")) {
+                        String source = (orgUrl != null) ? orgUrl : ues.getExtSource().getName();
+                        Affiliation affiliation = new Affiliation(source, aff, asserted);
+                        log.debug("found affiliation {}", affiliation);
+                        affiliations.add(affiliation);
                     }
                 }
             }
@@ -568,29 +811,22 @@ public class RpcAdapterImpl implements FullAdapter {
 
     @Override
     public boolean isUserInGroup(Long userId, Long groupId) throws PerunUnknownException, PerunConnectionException {
-        Map<String, Object> groupParams = new LinkedHashMap<>();
-        groupParams.put(PARAM_ID, groupId);
-        JsonNode groupResponse = connectorRpc.post(GROUPS_MANAGER, "getGroupById", groupParams);
-        Group group = RpcMapper.mapGroup(groupResponse);
-
-        Map<String, Object> memberParams = new LinkedHashMap<>();
-
-        if (group != null) {
-            memberParams.put(PARAM_VO, group.getVoId());
-            memberParams.put(PARAM_USER, userId);
-            JsonNode memberResponse = connectorRpc.post(MEMBERS_MANAGER, "getMemberByUser", memberParams);
-            Member member = RpcMapper.mapMember(memberResponse);
+        // VO of the group and member of the user in the VO do not change, only the membership itself is checked
+        Long voId = this.getGroupVoId(groupId);
+        if (voId == null) {
+            return false;
+        }
 
-            if (member != null) {
-                Map<String, Object> isGroupMemberParams = new LinkedHashMap<>();
-                isGroupMemberParams.put(PARAM_GROUP, group.getId());
-                isGroupMemberParams.put(PARAM_MEMBER, member.getId());
-                JsonNode res = connectorRpc.post(GROUPS_MANAGER, "isGroupMember", isGroupMemberParams);
-                return res.asBoolean();
-            }
+        Long memberId = this.getMemberId(userId, voId);
+        if (memberId == null) {
+            return false;
         }
 
-        return false;
+        Map<String, Object> isGroupMemberParams = new LinkedHashMap<>();
+        isGroupMemberParams.put(PARAM_GROUP, groupId);
+        isGroupMemberParams.put(PARAM_MEMBER, memberId);
+        JsonNode res = connectorRpc.post(GROUPS_MANAGER, "isGroupMember", isGroupMemberParams);
+        return res.asBoolean();
     }
 
     @Override
@@ -599,21 +835,33 @@ public class RpcAdapterImpl implements FullAdapter {
     {
         List<Affiliation> affiliations = new ArrayList<>();
 
-        List<Member> userMembers = getMembersByUser(userId);
-        for (Member member : userMembers) {
-            if (VALID.equals(member.getStatus())) {
-                List<Group> memberGroups = getMemberGroups(member.getId());
-                for (Group group : memberGroups) {
-                    PerunAttributeValue attrValue = this.getAttributeValue(
-                            Entity.GROUP, group.getId(), groupAffiliationsAttr);
-                    if (attrValue != null && attrValue.valueAsString() != null) {
-                        long linuxTime = System.currentTimeMillis() / 1000L;
-                        for (String value : attrValue.valueAsList()) {
-                            Affiliation affiliation = new Affiliation(null, value, linuxTime);
-                            log.debug("found affiliation {} on group {}", affiliation, group.getName());
-                            affiliations.add(affiliation);
-                        }
-                    }
+        // groups of all the members first, then the attributes of all the groups, each as a single batch
+        List<RpcCall> memberGroupsCalls = getMembersByUser(userId).stream()
+                .filter(member -> VALID.equals(member.getStatus()))
+                .map(member -> this.getMemberGroupsCall(member.getId()))
+                .collect(Collectors.toList());
+        List<Group> groups = new ArrayList<>();
+        for (JsonNode response : this.postBatch(memberGroupsCalls)) {
+            groups.addAll(RpcMapper.mapGroups(response));
+        }
+        if (groups.isEmpty()) {
+            return affiliations;
+        }
+
+        String affiliationsAttrName = this.getMappingForAttrName(groupAffiliationsAttr).getRpcName();
+        List<RpcCall> calls = groups.stream()
+                .map(group -> this.getAttributeCall(Entity.GROUP, group.getId(), affiliationsAttrName))
+                .collect(Collectors.toList());
+        List<JsonNode> responses = this.postBatch(calls);
+        for (int i = 0; i < groups.size(); i++) {
+            Group group = groups.get(i);
+            PerunAttributeValue attrValue = this.extractAttrValue(RpcMapper.mapAttribute(responses.get(i)));
+            if (attrValue != null && attrValue.valueAsString() != null) {
+                long linuxTime = System.currentTimeMillis() / 1000L;
+                for (String value : attrValue.valueAsList()) {
+                    Affiliation affiliation = new Affiliation(null, value, linuxTime);
+                    log.debug("found affiliation {} on group {}", affiliation, group.getName());
+                    affiliations.add(affiliation);
                 }
             }
         }
@@ -660,55 +908,78 @@ public class RpcAdapterImpl implements FullAdapter {
     }
 
     @Override
-    public List<Group> getFacilityGroupsWhereUserIsValidMember(@NonNull Long userId, @NonNull Long facilityId)
+    public Set<Long> getVoIdsWhereUserIsValidMember(@NonNull Long userId)
             throws PerunUnknownException, PerunConnectionException
     {
-        Set<Long> userGroupIds = getGroupIdsWhereUserIsValidMember(userId);
-        if (userGroupIds == null || userGroupIds.isEmpty()) {
-            return new ArrayList<>();
-        }
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(PARAM_USER, userId);
 
-        List<Group> allowedGroups = getAllowedGroups(facilityId);
-        return allowedGroups.stream()
-                .filter(group -> userGroupIds.contains(group.getId()))
-                .collect(Collectors.toList());
+        // only VO IDs and statuses are read from the members
+        return connectorRpc.post(MEMBERS_MANAGER, "getMembersByUser", params,
+                parser -> RpcStreamingMapper.mapMemberVoIds(parser, VALID));
     }
 
     @Override
-    public boolean isValidMemberOfAnyProvidedVo(@NonNull Long userId, @NonNull List<Long> voIds)
+    public Set<Long> getGroupIdsWhereUserIsValidMember(@NonNull Long userId)
             throws PerunUnknownException, PerunConnectionException
     {
-        Set<Long> memberVoIds = getVoIdsWhereUserIsValidMember(userId);
-        if (memberVoIds == null || memberVoIds.isEmpty()) {
-            return false;
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(PARAM_USER, userId);
+
+        // only IDs, VO IDs and statuses are read from the members
+        Map<Long, Long> validMemberVoIds = connectorRpc.post(MEMBERS_MANAGER, "getMembersByUser", params,
+                parser -> RpcStreamingMapper.mapMemberIdsToVoIds(parser, VALID));
+        if (validMemberVoIds.isEmpty()) {
+            return new LongHashSet();
         }
-        return !Collections.disjoint(voIds, memberVoIds);
-    }
 
-    @Override
-    public Set<Long> getVoIdsWhereUserIsValidMember(@NonNull Long userId)
-            throws PerunUnknownException, PerunConnectionException
-    {
-        List<Member> members = getMembersByUser(userId);
-        if (members.isEmpty()) {
-            return new HashSet<>();
+        // same groups as returned by getUserGroups(), but only IDs are read from the streamed responses
+        LongHashSet groupIds = new LongHashSet();
+        List<RpcCall> calls = new ArrayList<>();
+        List<RpcResponseReader<LongHashSet>> readers = new ArrayList<>();
+        for (Long memberId : validMemberVoIds.keySet()) {
+            calls.add(this.getGroupsWhereMemberIsActiveCall(memberId));
+            readers.add(RpcStreamingMapper::mapIds);
+        }
+        List<Long> fetchedVoIds = new ArrayList<>();
+        for (Long voId : validMemberVoIds.values()) {
+            Long cached = membersGroupIdCache.get(voId);
+            if (cached != null) {
+                groupIds.add(cached.longValue());
+            } else if (!fetchedVoIds.contains(voId)) {
+                fetchedVoIds.add(voId);
+                calls.add(this.getGroupByNameCall(voId, NAME_MEMBERS));
+                readers.add(parser -> {
+                    Long membersGroupId = RpcStreamingMapper.mapId(parser);
+                    LongHashSet ids = new LongHashSet();
+                    if (membersGroupId != null) {
+                        ids.add(membersGroupId.longValue());
+                    }
+                    return ids;
+                });
+            }
         }
 
-        return members.stream()
-                .filter(member -> member.getStatus().equals(VALID))
-                .map(Member::getVoId)
-                .collect(Collectors.toSet());
+        List<LongHashSet> responses = connectorRpc.postBatch(calls, readers);
+        for (int i = 0; i < validMemberVoIds.size(); i++) {
+            groupIds.addAll(responses.get(i));
+        }
+        for (int i = 0; i < fetchedVoIds.size(); i++) {
+            // members group is read as a set with zero or one ID
+            for (long id : responses.get(validMemberVoIds.size() + i).toLongArray()) {
+                groupIds.add(id);
+                membersGroupIdCache.put(fetchedVoIds.get(i), id);
+            }
+        }
+
+        return groupIds;
     }
 
     @Override
-    public Set<Long> getGroupIdsWhereUserIsValidMember(@NonNull Long userId)
+    public Set<Long> getAllowedGroupIds(@NonNull Long facilityId)
             throws PerunUnknownException, PerunConnectionException
     {
-        List<Group> userGroups = getUserGroups(userId);
-        if (userGroups == null || userGroups.isEmpty()) {
-            return new HashSet<>();
-        }
-        return userGroups.stream()
+        return getAllowedGroups(facilityId).stream()
                 .map(Group::getId)
                 .collect(Collectors.toSet());
     }
@@ -720,24 +991,33 @@ public class RpcAdapterImpl implements FullAdapter {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put("attributesWithSearchingValues", param);
 
-        JsonNode perunResponse = connectorRpc.post(SEARCHER, "getFacilities", params);
-        return RpcMapper.mapFacilities(perunResponse);
+        return connectorRpc.post(SEARCHER, "getFacilities", params, RpcStreamingMapper::mapFacilities);
     }
 
     // private methods
 
-    private Set<String> getFacilityCapabilities(Long facilityId, @NonNull String capabilitiesAttrName)
-            throws PerunUnknownException, PerunConnectionException
+    private void processResourceGroups(@NonNull Resource resource, @NonNull List<String> resourceCapabilities,
+                                       @NonNull List<Group> resourceGroups, @NonNull Set<String> userGroupNames,
+                                       @NonNull Set<String> resultCapabilities, @NonNull Set<String> resourceGroupNames)
     {
-        Set<String> capabilities = new HashSet<>();
-        if (facilityId != null) {
-            PerunAttributeValue attr = this.getAttributeValue(FACILITY, facilityId, capabilitiesAttrName);
-            if (attr != null && attr.valueAsList() != null) {
-                capabilities = new HashSet<>(attr.valueAsList());
+        for (Group group : resourceGroups) {
+            if (resource.getVo() == null) {
+                log.warn("Could not get VO for resource ({}) assigned group, thus cannot construct unique name."
+                         + " Skip this group {}. It might be the cause of capabilities {} not being in list.",
+                           resource, group, resourceCapabilities);
+                continue;
             }
+            String groupName = resource.getVo().getShortName() + ':' + group.getName();
+            group.setUniqueGroupName(groupName);
+            if (userGroupNames.contains(groupName)) {
+                log.trace("Group [{}] found in users groups, add capabilities [{}]", groupName,
+                        resourceCapabilities);
+                resultCapabilities.addAll(resourceCapabilities);
+            } else {
+                log.trace("Group [{}] not found in users groups, continue to the next one", groupName);
+            }
+            resourceGroupNames.add(groupName);
         }
-
-        return capabilities;
     }
 
     private Map<String, PerunAttributeValue> extractAttrValues(Map<String, PerunAttribute> attributeMap) {
@@ -761,26 +1041,107 @@ public class RpcAdapterImpl implements FullAdapter {
         return attribute.toPerunAttributeValue();
     }
 
-    private List<Group> getAssignedGroups(@NonNull Long resourceId)
-            throws PerunUnknownException, PerunConnectionException
+    private Map<String, Object> getAttributesParams(@NonNull Entity entity, @NonNull Long entityId,
+                                                    @NonNull Set<AttributeObjectMapping> mappings)
     {
+        List<String> rpcNames = mappings.stream()
+                .map(AttributeObjectMapping::getRpcName)
+                .collect(Collectors.toList());
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(entity.toString(), entityId);
+        params.put(PARAM_ATTR_NAMES, rpcNames);
+        return params;
+    }
+
+    private RpcCall getAssignedGroupsCall(@NonNull Long resourceId) {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_RESOURCE, resourceId);
 
-        JsonNode perunResponse = connectorRpc.post(RESOURCES_MANAGER, "getAssignedGroups", params);
-        return RpcMapper.mapGroups(perunResponse);
+        return new RpcCall(RESOURCES_MANAGER, "getAssignedGroups", params);
     }
 
-    private void fillGroupUniqueNames(@NonNull List<Group> groups)
+    private RpcCall getGroupsWhereMemberIsActiveCall(@NonNull Long memberId) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(PARAM_MEMBER, memberId);
+
+        return new RpcCall(GROUPS_MANAGER, "getGroupsWhereMemberIsActive", params);
+    }
+
+    private RpcCall getGroupByNameCall(@NonNull Long voId, @NonNull String name) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(PARAM_VO, voId);
+        params.put(PARAM_NAME, name);
+
+        return new RpcCall(GROUPS_MANAGER, "getGroupByName", params);
+    }
+
+    private RpcCall getAttributeCall(@NonNull Entity entity, @NonNull Long entityId, @NonNull String attrName) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put(entity.toString(), entityId);
+        params.put(PARAM_ATTRIBUTE_NAME, attrName);
+
+        return new RpcCall(ATTRIBUTES_MANAGER, "getAttribute", params);
+    }
+
+    private List<JsonNode> postBatch(@NonNull List<RpcCall> calls)
             throws PerunUnknownException, PerunConnectionException
     {
-        for (Group group: groups) {
+        List<JsonNode> responses = new ArrayList<>(calls.size());
+        for (RpcCallResult result : connectorRpc.postBatch(calls)) {
+            responses.add(result.getResponseOrThrow());
+        }
+
+        return responses;
+    }
+
+    private Long getGroupVoId(@NonNull Long groupId) throws PerunUnknownException, PerunConnectionException {
+        Long voId = groupVoCache.get(groupId);
+        if (voId == null) {
             Map<String, Object> params = new LinkedHashMap<>();
-            params.put(PARAM_GROUP, group.getId());
-            params.put(PARAM_ATTRIBUTE_NAME, "urn:perun:group:attribute-def:virt:voShortName");
+            params.put(PARAM_ID, groupId);
+            Group group = RpcMapper.mapGroup(connectorRpc.post(GROUPS_MANAGER, "getGroupById", params));
+            if (group != null) {
+                voId = group.getVoId();
+                groupVoCache.put(groupId, voId);
+            }
+        }
 
-            JsonNode perunResponse = connectorRpc.post(ATTRIBUTES_MANAGER, "getAttribute", params);
-            PerunAttribute attribute = RpcMapper.mapAttribute(perunResponse);
+        return voId;
+    }
+
+    private Long getMemberId(@NonNull Long userId, @NonNull Long voId)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        MemberKey key = new MemberKey(userId, voId);
+        Long memberId = memberIdCache.get(key);
+        if (memberId == null) {
+            Member member = this.getMemberByUser(userId, voId);
+            if (member != null) {
+                memberId = member.getId();
+                memberIdCache.put(key, memberId);
+            }
+        }
+
+        return memberId;
+    }
+
+    private Group copyGroup(@NonNull Group group) {
+        return new Group(group.getId(), group.getParentGroupId(), group.getName(), group.getDescription(),
+                group.getUniqueGroupName(), group.getUuid(), group.getVoId());
+    }
+
+    private void fillGroupUniqueNames(@NonNull List<Group> groups)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        List<RpcCall> calls = groups.stream()
+                .map(group -> this.getAttributeCall(Entity.GROUP, group.getId(), VO_SHORT_NAME_ATTR))
+                .collect(Collectors.toList());
+        List<JsonNode> responses = this.postBatch(calls);
+
+        for (int i = 0; i < groups.size(); i++) {
+            Group group = groups.get(i);
+            PerunAttribute attribute = RpcMapper.mapAttribute(responses.get(i));
 
             if (attribute != null && attribute.valueAsString() != null) {
                 String uniqueName = attribute.valueAsString() + ":" + group.getName();
@@ -795,8 +1156,7 @@ public class RpcAdapterImpl implements FullAdapter {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_FACILITY, facilityId);
 
-        JsonNode perunResponse = connectorRpc.post(FACILITIES_MANAGER, "getAssignedResources", params);
-        return RpcMapper.mapResources(perunResponse);
+        return connectorRpc.post(FACILITIES_MANAGER, "getAssignedResources", params, RpcStreamingMapper::mapResources);
     }
 
     private List<Resource> getAssignedRichResources(@NonNull Long facilityId)
@@ -805,28 +1165,81 @@ public class RpcAdapterImpl implements FullAdapter {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_FACILITY, facilityId);
 
-        JsonNode perunResponse = connectorRpc.post(FACILITIES_MANAGER, "getAssignedRichResources", params);
-        return RpcMapper.mapResources(perunResponse);
+        return connectorRpc.post(FACILITIES_MANAGER, "getAssignedRichResources", params, RpcStreamingMapper::mapResources);
     }
 
     private User getUserByExtSourceNameAndExtLogin(@NonNull String extSourceName, @NonNull String extLogin)
             throws PerunUnknownException, PerunConnectionException
     {
-        Map<String, Object> map = new LinkedHashMap<>();
-        map.put(PARAM_EXT_SOURCE_NAME, extSourceName);
-        map.put(PARAM_EXT_LOGIN, extLogin);
+        Map<String, Object> map = this.getUserByExtLoginParams(extSourceName, extLogin);
 
         JsonNode perunResponse = connectorRpc.post(USERS_MANAGER, "getUserByExtSourceNameAndExtLogin", map);
         return this.returnUser(perunResponse);
     }
 
+    private CompletableFuture<User> getPerunUserConcurrently(@NonNull String idpEntityId, @NonNull List<String> uids,
+                                                             List<String> attrIdentifiers)
+    {
+        List<CompletableFuture<JsonNode>> probes = uids.stream()
+                .map(uid -> connectorRpcAsync.post(USERS_MANAGER, "getUserByExtSourceNameAndExtLogin",
+                        this.getUserByExtLoginParams(idpEntityId, uid)))
+                .collect(Collectors.toList());
+
+        // UIDs are in the order of priority, user found by the UID is used only when all the previous ones missed
+        // the remaining probes are not needed once the user is known, the lower priority ones are cancelled
+        CompletableFuture<User> found = this.firstFoundUser(probes, 0)
+                .whenComplete((user, error) -> probes.forEach(probe -> probe.cancel(true)));
+
+        List<String> attrs = attrIdentifiers == null ? new ArrayList<>() : attrIdentifiers;
+        return found.thenCompose(user -> {
+            if (user == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            RpcCall loginCall = this.getAttributeCall(USER, user.getPerunId(), loginAttr);
+            CompletableFuture<String> login = connectorRpcAsync
+                    .post(loginCall.getManager(), loginCall.getMethod(), loginCall.getParams())
+                    .thenApply(response -> this.extractLogin(user,
+                            this.extractAttrValue(RpcMapper.mapAttribute(response))));
+            return this.getAttributesValuesAsync(USER, user.getPerunId(), attrs)
+                    .thenCombine(login, (attrValues, userLogin) -> {
+                        user.setLogin(userLogin);
+                        user.setAttributes(attrValues);
+                        return user;
+                    });
+        });
+    }
+
+    private CompletableFuture<User> firstFoundUser(@NonNull List<CompletableFuture<JsonNode>> probes, int index) {
+        if (index >= probes.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return probes.get(index).thenCompose(response -> {
+            User user = RpcMapper.mapUser(response);
+            if (user != null) {
+                return CompletableFuture.completedFuture(user);
+            }
+            return this.firstFoundUser(probes, index + 1);
+        });
+    }
+
+    private Map<String, Object> getUserByExtLoginParams(@NonNull String extSourceName, @NonNull String extLogin) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(PARAM_EXT_SOURCE_NAME, extSourceName);
+        map.put(PARAM_EXT_LOGIN, extLogin);
+        return map;
+    }
+
     private User getUserByLogin(@NonNull String login) throws PerunUnknownException, PerunConnectionException {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_ATTRIBUTE_NAME, loginAttr);
         params.put(PARAM_ATTRIBUTE_VALUE, login);
 
         JsonNode perunResponse = connectorRpc.post(USERS_MANAGER, "getUsersByAttributeValue", params);
-        List<User> users = RpcMapper.mapUsers(perunResponse);
+        return this.selectUserByLogin(RpcMapper.mapUsers(perunResponse), login);
+    }
+
+    private User selectUserByLogin(@NonNull List<User> users, @NonNull String login) {
         if (users.size() < 1) {
             log.debug("No users with login {} stored in the attr {} found.", login, loginAttr);
             return null;
@@ -839,6 +1252,10 @@ public class RpcAdapterImpl implements FullAdapter {
 
     private String getLogin(@NonNull User user) throws PerunUnknownException, PerunConnectionException {
         PerunAttributeValue loginAttrValue = this.getAttributeValue(USER, user.getPerunId(), loginAttr);
+        return this.extractLogin(user, loginAttrValue);
+    }
+
+    private String extractLogin(@NonNull User user, PerunAttributeValue loginAttrValue) {
         if (loginAttrValue == null || loginAttrValue.valueAsString() == null) {
             log.error("Could not fetch login for user {}, login configured to be in attribute {}. Found login value {}",
                     user, loginAttr, loginAttrValue);
@@ -876,25 +1293,27 @@ public class RpcAdapterImpl implements FullAdapter {
         Map<String, Object> params = new LinkedHashMap<>();
         params.put(PARAM_FACILITY, facilityId);
 
-        JsonNode perunResponse = connectorRpc.post(FACILITIES_MANAGER, "getAllowedGroups", params);
-        return RpcMapper.mapGroups(perunResponse);
+        return connectorRpc.post(FACILITIES_MANAGER, "getAllowedGroups", params, RpcStreamingMapper::mapGroups);
     }
 
-    private List<Group> getGroupsWhereMemberIsActive(@NonNull Long memberId)
-            throws PerunUnknownException, PerunConnectionException {
+    private List<Member> getMembersByUser(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException {
         Map<String, Object> params = new LinkedHashMap<>();
-        params.put(PARAM_MEMBER, memberId);
+        params.put(PARAM_USER, userId);
 
-        JsonNode perunResponse = connectorRpc.post(GROUPS_MANAGER, "getGroupsWhereMemberIsActive", params);
-        return RpcMapper.mapGroups(perunResponse);
+        return connectorRpc.post(MEMBERS_MANAGER, "getMembersByUser", params, RpcStreamingMapper::mapMembers);
     }
 
-    private List<Member> getMembersByUser(@NonNull Long userId) throws PerunUnknownException, PerunConnectionException {
-        Map<String, Object> params = new LinkedHashMap<>();
-        params.put(PARAM_USER, userId);
+    private Facility selectFacilityByRpIdentifier(@NonNull List<Facility> foundFacilities,
+                                                  @NonNull String rpIdentifier)
+    {
+        if (foundFacilities.size() > 1) {
+            log.error("Found more facilities for identifier than expected. Found {}, expected exactly", foundFacilities);
+            throw new InternalErrorException("Error when looking for the RP");
+        } else if (foundFacilities.size() == 0) {
+            return  null;
+        }
 
-        JsonNode perunResponse = connectorRpc.post(MEMBERS_MANAGER, "getMembersByUser", params);
-        return RpcMapper.mapMembers(perunResponse);
+        return this.returnFacility(foundFacilities.get(0), rpIdentifier);
     }
 
     private Facility returnFacility(Facility facility, String rpIdentifier) {
@@ -908,14 +1327,19 @@ public class RpcAdapterImpl implements FullAdapter {
     private List<Facility> returnFacilityList(List<Facility> facilities)
             throws PerunUnknownException, PerunConnectionException
     {
-        if (facilities != null) {
-            for (Facility facility: facilities) {
-                if (facility != null) {
-                    PerunAttributeValue rpIdentifierAttrVal = this.getAttributeValue(FACILITY,
-                            facility.getId(), rpIdentifierAttr);
-                    if (rpIdentifierAttrVal != null && rpIdentifierAttrVal.valueAsString() != null) {
-                        facility.setRpIdentifier(rpIdentifierAttrVal.valueAsString());
-                    }
+        if (facilities != null && rpIdentifierAttr != null) {
+            List<Facility> nonNullFacilities = facilities.stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            List<RpcCall> calls = nonNullFacilities.stream()
+                    .map(facility -> this.getAttributeCall(FACILITY, facility.getId(), rpIdentifierAttr))
+                    .collect(Collectors.toList());
+            List<JsonNode> responses = this.postBatch(calls);
+            for (int i = 0; i < nonNullFacilities.size(); i++) {
+                PerunAttributeValue rpIdentifierAttrVal = this.extractAttrValue(
+                        RpcMapper.mapAttribute(responses.get(i)));
+                if (rpIdentifierAttrVal != null && rpIdentifierAttrVal.valueAsString() != null) {
+                    nonNullFacilities.get(i).setRpIdentifier(rpIdentifierAttrVal.valueAsString());
                 }
             }
         }
@@ -923,10 +1347,7 @@ public class RpcAdapterImpl implements FullAdapter {
         return facilities;
     }
 
-    private Map<String, PerunAttributeValue> getUserExtSourceAttributeValues(Long uesId,
-                                                                             Set<AttributeObjectMapping> attrMappings)
-            throws PerunUnknownException, PerunConnectionException
-    {
+    private RpcCall getUserExtSourceAttributesCall(Long uesId, Set<AttributeObjectMapping> attrMappings) {
         List<String> attrNames = attrMappings.stream()
                 .map(AttributeObjectMapping::getRpcName)
                 .collect(Collectors.toList());
@@ -936,9 +1357,7 @@ public class RpcAdapterImpl implements FullAdapter {
         map.put(PARAM_USER_EXT_SOURCE, uesId);
         map.put(PARAM_ATTR_NAMES, attrNames);
 
-        JsonNode response = connectorRpc.post(ATTRIBUTES_MANAGER, "getAttributes", map);
-        Map<String, PerunAttribute> attributeMap = RpcMapper.mapAttributes(response, attrMappings);
-        return extractValues(attributeMap);
+        return new RpcCall(ATTRIBUTES_MANAGER, "getAttributes", map);
     }
 
     private Map<String, PerunAttributeValue> extractValues(Map<String, PerunAttribute> attributeMap) {
@@ -954,12 +1373,11 @@ public class RpcAdapterImpl implements FullAdapter {
         return resultMap;
     }
 
-    private List<Group> getMemberGroups(Long memberId) throws PerunUnknownException, PerunConnectionException {
+    private RpcCall getMemberGroupsCall(Long memberId) {
         Map<String, Object> map = new LinkedHashMap<>();
         map.put(PARAM_MEMBER, memberId);
 
-        JsonNode response = connectorRpc.post(GROUPS_MANAGER, "getMemberGroups", map);
-        return RpcMapper.mapGroups(response);
+        return new RpcCall(GROUPS_MANAGER, "getMemberGroups", map);
     }
 
     private Set<AttributeObjectMapping> getMappingsForAttrNames(@NonNull Collection<String> attrsToFetch) {
@@ -970,4 +1388,10 @@ public class RpcAdapterImpl implements FullAdapter {
         return this.attributeMappingService.getMappingByIdentifier(attrToFetch);
     }
 
+    @Value
+    private static class MemberKey {
+        Long userId;
+        Long voId;
+    }
+
 }
@@ -459,7 +459,6 @@ public class RpcMapper {
             return new HashMap<>();
         }
 
-        Map<String, PerunAttribute> map = new HashMap<>(); //key is internal identifier
         Map<String, PerunAttribute> mappedAttrsMap = new HashMap<>(); //key is URN of the attribute
 
         for (int i = 0; i < jsonArray.size(); i++) {
@@ -471,6 +470,20 @@ public class RpcMapper {
             }
         }
 
+        return mapAttributesToIdentifiers(mappedAttrsMap, attrMappings);
+    }
+
+    /**
+     * Maps attributes identified by URNs to the internal identifiers.
+     *
+     * @param mappedAttrsMap Map of attributes, keys are URNs of the attributes.
+     * @param attrMappings Set of the AttributeObjectMapping objects that will be used for mapping of the attributes.
+     * @return Map<String, PerunAttribute>. If attribute for identifier has not been mapped, key contains NULL as value.
+     */
+    static Map<String, PerunAttribute> mapAttributesToIdentifiers(@NonNull Map<String, PerunAttribute> mappedAttrsMap,
+                                                                  @NonNull Set<AttributeObjectMapping> attrMappings)
+    {
+        Map<String, PerunAttribute> map = new HashMap<>(); //key is internal identifier
         for (AttributeObjectMapping mapping : attrMappings) {
             String attrKey = mapping.getRpcName();
             if (mappedAttrsMap.containsKey(attrKey)) {
@@ -0,0 +1,738 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import cz.muni.ics.perunproxyapi.persistence.adapters.LongHashSet;
+import cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.MissingFieldException;
+import cz.muni.ics.perunproxyapi.persistence.models.AttributeObjectMapping;
+import cz.muni.ics.perunproxyapi.persistence.models.ExtSource;
+import cz.muni.ics.perunproxyapi.persistence.models.Facility;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.Member;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.Resource;
+import cz.muni.ics.perunproxyapi.persistence.models.User;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import cz.muni.ics.perunproxyapi.persistence.models.Vo;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.BASE_FRIENDLY_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.DESCRIPTION;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.DISPLAY_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.ENTITY;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.EXT_SOURCE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.FACILITY_ID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.FIRST_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.FRIENDLY_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.FRIENDLY_NAME_PARAMETER;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.ID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.LAST_ACCESS;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.LAST_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.LOA;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.LOGIN;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.NAMESPACE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.PARENT_GROUP_ID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.PERSISTENT;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.SHORT_NAME;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.STATUS;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.TYPE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.UNIQUE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.USER_ID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.UUID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.VALUE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.VO_ID;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcMapper.WRITABLE;
+
+/**
+ * This class is mapping the stream of JSON tokens to object models. Produces the same objects as RpcMapper,
+ * but does not require building the JsonNode tree of the whole response first.
+ *
+ * Each method expects the parser to be positioned either before the value to be mapped (no current token)
+ * or at its first token. After the call, parser is positioned at the last token of the mapped value.
+ *
+ * Projection methods (mapId, mapIds, mapMemberVoIds, mapMemberIdsToVoIds) read only the fields they need and skip the rest of each object,
+ * no model objects are created.
+ */
+public class RpcStreamingMapper {
+
+    private static final String VO = "vo";
+
+    /**
+     * Maps JSON stream to User model.
+     *
+     * @param parser Parser over User in JSON format from Perun to be mapped.
+     * @return Mapped User object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static User mapUser(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String firstName = null;
+        String lastName = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case FIRST_NAME: firstName = readString(parser); break;
+                case LAST_NAME: lastName = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new User(required(id), required(firstName), required(lastName), new HashMap<>());
+    }
+
+    /**
+     * Maps JSON stream to List of Users.
+     *
+     * @param parser Parser over JSON array of users in JSON format from Perun to be mapped.
+     * @return List of users.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<User> mapUsers(@NonNull JsonParser parser) throws IOException {
+        List<User> users = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                users.add(mapUser(parser));
+            }
+        }
+
+        return users;
+    }
+
+    /**
+     * Maps JSON stream to Group model.
+     *
+     * @param parser Parser over Group in JSON format from Perun to be mapped.
+     * @return Mapped Group object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Group mapGroup(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        Long parentGroupId = 0L;
+        String name = null;
+        String description = "";
+        String uuid = "";
+        Long voId = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case PARENT_GROUP_ID: parentGroupId = readLong(parser); break;
+                case NAME: name = readString(parser); break;
+                case DESCRIPTION: description = readString(parser); break;
+                case UUID: uuid = readString(parser); break;
+                case VO_ID: voId = readLong(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new Group(required(id), parentGroupId, required(name), description, null, uuid, required(voId));
+    }
+
+    /**
+     * Maps JSON stream to List of Groups.
+     *
+     * @param parser Parser over JSON array of groups in JSON format from Perun to be mapped.
+     * @return List of groups.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<Group> mapGroups(@NonNull JsonParser parser) throws IOException {
+        List<Group> groups = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                groups.add(mapGroup(parser));
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Maps JSON stream to Facility model.
+     *
+     * @param parser Parser over Facility in JSON format from Perun to be mapped.
+     * @return Mapped Facility object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Facility mapFacility(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String name = null;
+        String description = "";
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case NAME: name = readString(parser); break;
+                case DESCRIPTION: description = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new Facility(required(id), required(name), description);
+    }
+
+    /**
+     * Maps JSON stream to List of Facilities.
+     *
+     * @param parser Parser over JSON array of facilities in JSON format from Perun to be mapped.
+     * @return List of facilities.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<Facility> mapFacilities(@NonNull JsonParser parser) throws IOException {
+        List<Facility> facilities = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                facilities.add(mapFacility(parser));
+            }
+        }
+
+        return facilities;
+    }
+
+    /**
+     * Maps JSON stream to Member model.
+     *
+     * @param parser Parser over Member in JSON format from Perun to be mapped.
+     * @return Mapped Member object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Member mapMember(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        Long userId = null;
+        Long voId = null;
+        String status = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case USER_ID: userId = readLong(parser); break;
+                case VO_ID: voId = readLong(parser); break;
+                case STATUS: status = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new Member(required(id), required(userId), required(voId),
+                MemberStatus.fromString(required(status)));
+    }
+
+    /**
+     * Maps JSON stream to List of Members.
+     *
+     * @param parser Parser over JSON array of members in JSON format from Perun to be mapped.
+     * @return List of members.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<Member> mapMembers(@NonNull JsonParser parser) throws IOException {
+        List<Member> members = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                members.add(mapMember(parser));
+            }
+        }
+
+        return members;
+    }
+
+    /**
+     * Maps JSON stream to Resource model.
+     *
+     * @param parser Parser over Resource in JSON format from Perun to be mapped.
+     * @return Mapped Resource object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Resource mapResource(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        Long voId = null;
+        Long facilityId = null;
+        String name = null;
+        String description = "";
+        Vo vo = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case VO_ID: voId = readLong(parser); break;
+                case FACILITY_ID: facilityId = readLong(parser); break;
+                case NAME: name = readString(parser); break;
+                case DESCRIPTION: description = readString(parser); break;
+                case VO: vo = mapVo(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new Resource(required(id), required(voId), required(facilityId), required(name), description, vo);
+    }
+
+    /**
+     * Maps JSON stream to List of Resources.
+     *
+     * @param parser Parser over JSON array of resources in JSON format from Perun to be mapped.
+     * @return List of resources.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<Resource> mapResources(@NonNull JsonParser parser) throws IOException {
+        List<Resource> resources = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                resources.add(mapResource(parser));
+            }
+        }
+
+        return resources;
+    }
+
+    /**
+     * Maps JSON stream to ExtSource model.
+     *
+     * @param parser Parser over ExtSource in JSON format from Perun to be mapped.
+     * @return Mapped ExtSource object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static ExtSource mapExtSource(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String name = null;
+        String type = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case NAME: name = readString(parser); break;
+                case TYPE: type = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new ExtSource(required(id), required(name), required(type));
+    }
+
+    /**
+     * Maps JSON stream to List of ExtSources.
+     *
+     * @param parser Parser over JSON array of extSources in JSON format from Perun to be mapped.
+     * @return List of extSources.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<ExtSource> mapExtSources(@NonNull JsonParser parser) throws IOException {
+        List<ExtSource> extSources = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                extSources.add(mapExtSource(parser));
+            }
+        }
+
+        return extSources;
+    }
+
+    /**
+     * Maps JSON stream to VO model.
+     *
+     * @param parser Parser over VO in JSON format from Perun to be mapped.
+     * @return Mapped VO object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Vo mapVo(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String name = null;
+        String shortName = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case NAME: name = readString(parser); break;
+                case SHORT_NAME: shortName = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new Vo(required(id), required(name), required(shortName));
+    }
+
+    /**
+     * Maps JSON stream to List of VOs.
+     *
+     * @param parser Parser over JSON array of VOs in JSON format from Perun to be mapped.
+     * @return List of VOs.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<Vo> mapVos(@NonNull JsonParser parser) throws IOException {
+        List<Vo> vos = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                vos.add(mapVo(parser));
+            }
+        }
+
+        return vos;
+    }
+
+    /**
+     * Maps JSON stream to UserExtSource model.
+     *
+     * @param parser Parser over UserExtSource in JSON format from Perun to be mapped.
+     * @return Mapped UserExtSource object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static UserExtSource mapUserExtSource(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String login = null;
+        ExtSource extSource = null;
+        Integer loa = null;
+        Boolean persistent = null;
+        String lastAccess = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case LOGIN: login = readString(parser); break;
+                case EXT_SOURCE: extSource = mapExtSource(parser); break;
+                case LOA: loa = readInt(parser); break;
+                case PERSISTENT: persistent = readBoolean(parser); break;
+                case LAST_ACCESS: lastAccess = readString(parser); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new UserExtSource(required(id), required(extSource), required(login), required(loa),
+                required(persistent), Timestamp.valueOf(required(lastAccess)));
+    }
+
+    /**
+     * Maps JSON stream to List of UserExtSources.
+     *
+     * @param parser Parser over JSON array of userExtSources in JSON format from Perun to be mapped.
+     * @return List of userExtSources.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static List<UserExtSource> mapUserExtSources(@NonNull JsonParser parser) throws IOException {
+        List<UserExtSource> userExtSources = new ArrayList<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                userExtSources.add(mapUserExtSource(parser));
+            }
+        }
+
+        return userExtSources;
+    }
+
+    /**
+     * Maps JSON stream to PerunAttribute model.
+     *
+     * @param parser Parser over PerunAttribute in JSON format from Perun to be mapped.
+     * @return Mapped PerunAttribute object.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static PerunAttribute mapAttribute(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+
+        Long id = null;
+        String friendlyName = null;
+        String namespace = null;
+        String description = "";
+        String type = null;
+        String displayName = null;
+        Boolean writable = null;
+        Boolean unique = null;
+        String entity = null;
+        String baseFriendlyName = "";
+        String friendlyNameParameter = "";
+        JsonNode value = null;
+
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case ID: id = readLong(parser); break;
+                case FRIENDLY_NAME: friendlyName = readString(parser); break;
+                case NAMESPACE: namespace = readString(parser); break;
+                case DESCRIPTION: description = readString(parser); break;
+                case TYPE: type = readString(parser); break;
+                case DISPLAY_NAME: displayName = readString(parser); break;
+                case WRITABLE: writable = readBoolean(parser); break;
+                case UNIQUE: unique = readBoolean(parser); break;
+                case ENTITY: entity = readString(parser); break;
+                case BASE_FRIENDLY_NAME: baseFriendlyName = readString(parser); break;
+                case FRIENDLY_NAME_PARAMETER: friendlyNameParameter = readString(parser); break;
+                case VALUE: value = parser.readValueAsTree(); break;
+                default: parser.skipChildren();
+            }
+        }
+
+        return new PerunAttribute(required(id), required(friendlyName), required(namespace), description,
+                required(type), required(displayName), required(writable), required(unique), required(entity),
+                baseFriendlyName, friendlyNameParameter, value);
+    }
+
+    /**
+     * Maps JSON stream to Map<String, PerunAttribute>.
+     * Keys are the internal identifiers of the attributes.
+     * Values are attributes corresponding to the names.
+     *
+     * @param parser       Parser over JSON array of perunAttributes in JSON format from Perun to be mapped.
+     * @param attrMappings Set of the AttributeObjectMapping objects that will be used for mapping of the attributes.
+     * @return Map<String, PerunAttribute>. If attribute for identifier has not been mapped, key contains NULL as value.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Map<String, PerunAttribute> mapAttributes(@NonNull JsonParser parser,
+                                                            @NonNull Set<AttributeObjectMapping> attrMappings)
+            throws IOException
+    {
+        if (!startArray(parser)) {
+            return new HashMap<>();
+        }
+
+        Map<String, PerunAttribute> mappedAttrsMap = new HashMap<>(); //key is URN of the attribute
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            PerunAttribute mappedAttribute = mapAttribute(parser);
+            if (mappedAttribute != null) {
+                mappedAttrsMap.put(mappedAttribute.getUrn(), mappedAttribute);
+            }
+        }
+
+        return RpcMapper.mapAttributesToIdentifiers(mappedAttrsMap, attrMappings);
+    }
+
+    /**
+     * Maps JSON stream to set of IDs of the objects (i.e. groups) in the array. Other fields are skipped.
+     *
+     * @param parser Parser over JSON array of objects in JSON format from Perun.
+     * @return Set of IDs.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static LongHashSet mapIds(@NonNull JsonParser parser) throws IOException {
+        LongHashSet ids = new LongHashSet();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (isNull(parser.currentToken())) {
+                    continue;
+                }
+                Long id = null;
+                while (nextField(parser)) {
+                    if (ID.equals(parser.getCurrentName())) {
+                        id = readLong(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                ids.add(required(id));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Maps JSON stream to ID of the object (i.e. group). Other fields are skipped.
+     *
+     * @param parser Parser over object in JSON format from Perun.
+     * @return ID of the object, NULL if the JSON is null.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Long mapId(@NonNull JsonParser parser) throws IOException {
+        if (isNull(currentToken(parser))) {
+            return null;
+        }
+        Long id = null;
+        while (nextField(parser)) {
+            if (ID.equals(parser.getCurrentName())) {
+                id = readLong(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return required(id);
+    }
+
+    /**
+     * Maps JSON stream of members to IDs of the members with the given status and the IDs of their VOs. Only id,
+     * voId and status fields are read.
+     *
+     * @param parser Parser over JSON array of members in JSON format from Perun.
+     * @param status Status of the members to be included.
+     * @return Map of member IDs to VO IDs.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static Map<Long, Long> mapMemberIdsToVoIds(@NonNull JsonParser parser, @NonNull MemberStatus status)
+            throws IOException
+    {
+        Map<Long, Long> voIds = new LinkedHashMap<>();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (isNull(parser.currentToken())) {
+                    continue;
+                }
+                Long id = null;
+                Long voId = null;
+                String memberStatus = null;
+                while (nextField(parser)) {
+                    switch (parser.getCurrentName()) {
+                        case ID: id = readLong(parser); break;
+                        case VO_ID: voId = readLong(parser); break;
+                        case STATUS: memberStatus = readString(parser); break;
+                        default: parser.skipChildren();
+                    }
+                }
+                if (status == MemberStatus.fromString(required(memberStatus))) {
+                    voIds.put(required(id), required(voId));
+                }
+            }
+        }
+
+        return voIds;
+    }
+
+    /**
+     * Maps JSON stream of members to set of IDs of VOs where the member has the given status. Only voId and status
+     * fields are read.
+     *
+     * @param parser Parser over JSON array of members in JSON format from Perun.
+     * @param status Status of the members to be included.
+     * @return Set of VO IDs.
+     * @throws IOException Thrown when the stream cannot be read.
+     */
+    public static LongHashSet mapMemberVoIds(@NonNull JsonParser parser, @NonNull MemberStatus status)
+            throws IOException
+    {
+        LongHashSet voIds = new LongHashSet();
+        if (startArray(parser)) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (isNull(parser.currentToken())) {
+                    continue;
+                }
+                Long voId = null;
+                String memberStatus = null;
+                while (nextField(parser)) {
+                    switch (parser.getCurrentName()) {
+                        case VO_ID: voId = readLong(parser); break;
+                        case STATUS: memberStatus = readString(parser); break;
+                        default: parser.skipChildren();
+                    }
+                }
+                if (status == MemberStatus.fromString(required(memberStatus))) {
+                    voIds.add(required(voId));
+                }
+            }
+        }
+
+        return voIds;
+    }
+
+    private static JsonToken currentToken(JsonParser parser) throws IOException {
+        if (!parser.hasCurrentToken()) {
+            parser.nextToken();
+        }
+        return parser.currentToken();
+    }
+
+    private static boolean isNull(JsonToken token) {
+        return token == null || token == JsonToken.VALUE_NULL;
+    }
+
+    private static boolean startArray(JsonParser parser) throws IOException {
+        JsonToken token = currentToken(parser);
+        if (isNull(token)) {
+            return false;
+        } else if (token != JsonToken.START_ARRAY) {
+            throw new MissingFieldException("Expected JSON array, got " + token);
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the value of the next field in current object. Fields with null values are skipped,
+     * the same way as RpcMapper treats them as missing.
+     */
+    private static boolean nextField(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (parser.nextToken() != JsonToken.VALUE_NULL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long readLong(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return 0L;
+        }
+        return parser.getValueAsLong();
+    }
+
+    private static Integer readInt(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return 0;
+        }
+        return parser.getValueAsInt();
+    }
+
+    private static Boolean readBoolean(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return false;
+        }
+        return parser.getValueAsBoolean();
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getValueAsString("");
+    }
+
+    private static <T> T required(T value) {
+        if (value == null) {
+            throw new MissingFieldException();
+        }
+        return value;
+    }
+
+}
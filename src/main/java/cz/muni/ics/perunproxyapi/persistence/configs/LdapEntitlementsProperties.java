@@ -0,0 +1,23 @@
+package cz.muni.ics.perunproxyapi.persistence.configs;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration properties of the entitlements resolved from Perun LDAP.
+ */
+@Component
+@ConfigurationProperties(prefix = "ldap-entitlements")
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class LdapEntitlementsProperties {
+
+    private long facilityTtl = 300000;
+
+}
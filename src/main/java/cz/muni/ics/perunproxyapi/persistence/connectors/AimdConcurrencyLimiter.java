@@ -0,0 +1,108 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent calls to Perun RPC. The limit is adapted using AIMD (additive increase,
+ * multiplicative decrease): each call finished in time increases the limit by 1/limit, each call which has
+ * failed on connection or has been slower than the latency threshold decreases the limit by the backoff ratio.
+ * When Perun slows down, the limit drops and the excess callers are rejected instead of waiting for a timeout.
+ */
+@Slf4j
+public class AimdConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+
+    private double limit;
+    private int inFlight = 0;
+
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Acquire the slot for a call, waiting at most the given time for the slot to be released. Each acquired
+     * slot has to be released by one of onSuccess(), onDropped(), onIgnored().
+     * @param maxWaitMillis Maximum time to wait for the slot.
+     * @return TRUE if the slot has been acquired, FALSE otherwise.
+     */
+    public synchronized boolean tryAcquire(long maxWaitMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Release the slot of the call which has been finished by Perun.
+     * @param latencyNanos Duration of the call.
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        release();
+        if (latencyNanos > latencyThresholdNanos) {
+            decrease();
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * Release the slot of the call which has failed on connection to Perun.
+     */
+    public synchronized void onDropped() {
+        release();
+        decrease();
+    }
+
+    /**
+     * Release the slot without adapting the limit.
+     */
+    public synchronized void onIgnored() {
+        release();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private void decrease() {
+        int previous = (int) limit;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        if ((int) limit != previous) {
+            log.debug("Limit of concurrent calls to Perun RPC decreased to {}", (int) limit);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection manager of the HTTP client used for calling Perun RPC. Delegates to the pooling connection manager
+ * and records how long the callers wait for the connection from the pool ("perun.rpc.pool.lease" timer) and how
+ * many times the pool has been exhausted, i.e. the connection has not been obtained in time
+ * ("perun.rpc.pool.lease.timeouts"). State of the pool (leased, available and pending connections) is published
+ * under "httpcomponents.httpclient.pool" with tag httpclient = perun-rpc.
+ */
+@Slf4j
+public class InstrumentedConnectionManager implements HttpClientConnectionManager, MeterBinder {
+
+    public static final String POOL_NAME = "perun-rpc";
+    public static final String LEASE_METRIC = "perun.rpc.pool.lease";
+    public static final String LEASE_TIMEOUTS_METRIC = "perun.rpc.pool.lease.timeouts";
+
+    @Getter
+    private final PoolingHttpClientConnectionManager pool;
+    private final LongAdder leaseTimeouts = new LongAdder();
+    private volatile Timer leaseTimer;
+
+    public InstrumentedConnectionManager(@NonNull PoolingHttpClientConnectionManager pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Open keep-alive connections to the given URL and return them to the pool, so the first calls do not have to
+     * establish the connection (and perform the TLS handshake). Number of connections is limited by the maximum
+     * of connections per route.
+     * @param url URL of the server.
+     * @param connections Number of connections to be opened.
+     * @param connectTimeout Connect timeout in milliseconds.
+     * @param keepAlive How long the opened connections can be kept in the pool.
+     * @return Number of opened connections.
+     */
+    public int warmUp(@NonNull String url, int connections, int connectTimeout, @NonNull Duration keepAlive) {
+        HttpRoute route = route(url);
+        int count = Math.min(connections, pool.getMaxPerRoute(route));
+        List<HttpClientConnection> leased = new ArrayList<>(count);
+        int opened = 0;
+        try {
+            // connections are held until all of them are opened, otherwise the same connection would be reused
+            for (int i = 0; i < count; i++) {
+                HttpClientConnection connection = requestConnection(route, null)
+                        .get(connectTimeout, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    connect(connection, route, connectTimeout, context);
+                    routeComplete(connection, route, context);
+                    opened++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while warming up connections to {}", url);
+        } catch (IOException | ExecutionException e) {
+            log.warn("Could not open connection to {} during warm-up", url, e);
+        } finally {
+            for (HttpClientConnection connection: leased) {
+                pool.releaseConnection(connection, null, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        log.info("Opened {} connections to {}", opened, url);
+        return opened;
+    }
+
+    public long getLeaseTimeouts() {
+        return leaseTimeouts.sum();
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        ConnectionRequest request = pool.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+            {
+                long startTime = System.nanoTime();
+                try {
+                    return request.get(timeout, timeUnit);
+                } catch (ConnectionPoolTimeoutException e) {
+                    leaseTimeouts.increment();
+                    log.warn("Timeout waiting for connection to Perun RPC from the pool, {}", pool.getTotalStats());
+                    throw e;
+                } finally {
+                    Timer timer = leaseTimer;
+                    if (timer != null) {
+                        timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        pool.releaseConnection(conn, newState, validDuration, timeUnit);
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+            throws IOException
+    {
+        pool.connect(conn, route, connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        pool.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        pool.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+        pool.closeIdleConnections(idletime, timeUnit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        pool.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        new PoolingHttpClientConnectionManagerMetricsBinder(pool, POOL_NAME).bindTo(registry);
+        leaseTimer = Timer.builder(LEASE_METRIC)
+                .description("Time spent waiting for the connection to Perun RPC from the pool")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+        FunctionCounter.builder(LEASE_TIMEOUTS_METRIC, leaseTimeouts, LongAdder::sum)
+                .description("Calls to Perun RPC which have not obtained the connection from the pool in time")
+                .register(registry);
+    }
+
+    private HttpRoute route(String url) {
+        // the same route as the one created by the client, the default port has to be resolved
+        HttpHost host = URIUtils.extractHost(URI.create(url));
+        if (host == null) {
+            throw new IllegalArgumentException("URL " + url + " does not contain host");
+        }
+        int port = host.getPort();
+        if (port <= 0) {
+            try {
+                port = DefaultSchemePortResolver.INSTANCE.resolve(host);
+            } catch (UnsupportedSchemeException e) {
+                throw new IllegalArgumentException("URL " + url + " has unsupported scheme", e);
+            }
+        }
+        HttpHost target = new HttpHost(host.getHostName(), port, host.getSchemeName());
+        return new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+    }
+
+}
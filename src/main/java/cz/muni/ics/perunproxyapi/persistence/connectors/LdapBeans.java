@@ -1,6 +1,7 @@
 package cz.muni.ics.perunproxyapi.persistence.connectors;
 
 import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
@@ -14,6 +15,10 @@ import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 public class LdapBeans {
 
@@ -27,8 +32,50 @@ public class LdapBeans {
     @Bean(name = "targetContextSource")
     @Autowired
     public ContextSource targetContextSource(LdapProperties ldapProperties) {
+        return this.createContextSource(ldapProperties.getLdapHosts());
+    }
+
+    @Bean(name = "contextSource")
+    @Autowired
+    public ContextSource contextSource(@Qualifier("targetContextSource") ContextSource targetContextSource) {
+        String[] hosts = ldapProperties.getLdapHosts();
+        if (!ldapProperties.isLoadBalancingEnabled() || hosts.length < 2) {
+            return this.createPooledContextSource(targetContextSource);
+        }
+
+        // each host gets the whole pool, it might have to handle all the traffic when the others are ejected
+        List<LoadBalancingContextSource.HostContextSource> hostSources = new ArrayList<>();
+        for (String host : hosts) {
+            ContextSource hostContextSource = this.createContextSource(new String[] { host });
+            hostSources.add(new LoadBalancingContextSource.HostContextSource(host,
+                    this.createPooledContextSource(hostContextSource), hostContextSource));
+        }
+        return new LoadBalancingContextSource(hostSources,
+                LoadBalancingContextSource.Strategy.valueOf(ldapProperties.getLoadBalancingStrategy().toUpperCase()),
+                Duration.ofMillis(ldapProperties.getHealthCheckInterval()), ldapProperties.getHostEjectErrorRate(),
+                Duration.ofMillis(ldapProperties.getHostEjectLatencyP99()), ldapProperties.getHostEjectMinRequests());
+    }
+
+    @Bean
+    @Autowired
+    public MeterBinder ldapHostMetrics(@Qualifier("contextSource") ContextSource contextSource) {
+        if (contextSource instanceof MeterBinder) {
+            return (MeterBinder) contextSource;
+        }
+        return registry -> { };
+    }
+
+    @Bean
+    @Autowired
+    public LdapTemplate ldapTemplate(@Qualifier("contextSource") ContextSource contextSource) {
+        LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
+        ldapTemplate.setDefaultTimeLimit(ldapProperties.getTimeout());
+        return ldapTemplate;
+    }
+
+    private ContextSource createContextSource(String[] urls) {
         LdapContextSource cs = new LdapContextSource();
-        cs.setUrls(ldapProperties.getLdapHosts());
+        cs.setUrls(urls);
         cs.setBase(ldapProperties.getBaseDn());
         if (StringUtils.hasText(ldapProperties.getLdapUser())) {
             cs.setUserDn(ldapProperties.getLdapUser());
@@ -47,9 +94,7 @@ public class LdapBeans {
         return cs;
     }
 
-    @Bean(name = "contextSource")
-    @Autowired
-    public ContextSource contextSource(@Qualifier("targetContextSource") ContextSource targetContextSource) {
+    private ContextSource createPooledContextSource(ContextSource targetContextSource) {
         PoolConfig poolConfig = new PoolConfig();
         poolConfig.setBlockWhenExhausted(true);
         poolConfig.setMaxTotal(ldapProperties.getConnectionPoolSize());
@@ -60,12 +105,4 @@ public class LdapBeans {
         return pcs;
     }
 
-    @Bean
-    @Autowired
-    public LdapTemplate ldapTemplate(@Qualifier("contextSource") ContextSource contextSource) {
-        LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
-        ldapTemplate.setDefaultTimeLimit(ldapProperties.getTimeout());
-        return ldapTemplate;
-    }
-
 }
@@ -0,0 +1,655 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.CaseIgnoreStringMatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.ChangeLogEntry;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.IntermediateResponseListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.LDAPURL;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoType;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.extensions.StartTLSExtendedRequest;
+import com.unboundid.util.ssl.SSLUtil;
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process replica of the Perun LDAP entries (users, VOs, groups, resources and facilities). The replica is
+ * bootstrapped with a paged search of the whole tree and kept up to date in the background by one of the sync modes:
+ *   - CONTENT_SYNC - RFC 4533 content synchronization in the refreshOnly mode, polled each sync interval
+ *   - CHANGELOG - polling of the cn=changelog entries, changed entries are read again from LDAP
+ *   - RELOAD - paged search of the whole tree each sync interval
+ * Lookups of the entries by DN and equality matches on the indexed attributes do not iterate over the entries.
+ * Replica which has not been synchronized for longer than the max staleness is not ready until the next successful
+ * sync, so the queries are answered by LDAP instead.
+ *
+ * Disabled replica does not connect to LDAP and is never ready. Max staleness 0 disables the bound.
+ */
+@Component
+@Slf4j
+public class LdapReplica implements DisposableBean {
+
+    public static final String ENTRY_UUID = "entryUUID";
+    public static final String CHANGELOG_BASE = "cn=changelog";
+    public static final String REPLICATED_ENTRIES_FILTER = "(|(objectClass=perunUser)(objectClass=perunVO)" +
+            "(objectClass=perunGroup)(objectClass=perunResource)(objectClass=perunFacility))";
+    public static final List<String> INDEXED_ATTRIBUTES = Collections.unmodifiableList(Arrays.asList(
+            "perunUserId", "perunVoId", "perunGroupId", "perunParentGroupId", "perunUniqueGroupName", "perunResourceId",
+            "perunFacilityId", "perunFacilityDn", "eduPersonPrincipalNames", "uniqueMember", "memberOf",
+            "assignedGroupId", "assignedToResourceId", "entityID"));
+
+    private static final String[] REPLICATED_ATTRIBUTES = new String[] { "*", ENTRY_UUID };
+    private static final String FIRST_CHANGE_NUMBER = "firstChangeNumber";
+    private static final String LAST_CHANGE_NUMBER = "lastChangeNumber";
+    private static final String CHANGE_NUMBER = "changeNumber";
+    private static final int E_SYNC_REFRESH_REQUIRED = 4096;
+
+    public enum SyncMode {
+        CONTENT_SYNC, CHANGELOG, RELOAD
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final DN baseDn;
+    private final Filter filter;
+    private final SyncMode syncMode;
+    private final int pageSize;
+    private final long maxStalenessNanos;
+    private final Set<String> indexedAttributes;
+    private final ScheduledExecutorService syncer;
+
+    private volatile Store store;
+    private volatile boolean loaded = false;
+    private volatile long lastSyncedAt;
+    private ASN1OctetString syncCookie;
+    private Long lastChangeNumber;
+
+    @Autowired
+    public LdapReplica(@NonNull LdapProperties ldapProperties) throws LDAPException {
+        this(ldapProperties.getReplica().isEnabled() ? () -> connect(ldapProperties) : null,
+                ldapProperties.getBaseDn(), SyncMode.valueOf(ldapProperties.getReplica().getSyncMode().toUpperCase()),
+                Duration.ofMillis(ldapProperties.getReplica().getSyncInterval()),
+                ldapProperties.getReplica().getPageSize(),
+                Duration.ofMillis(ldapProperties.getReplica().getMaxStaleness()),
+                ldapProperties.getReplica().getIndexedAttributes(), true);
+    }
+
+    LdapReplica(ConnectionFactory connectionFactory, @NonNull String baseDn, @NonNull SyncMode syncMode,
+                @NonNull Duration syncInterval, int pageSize, @NonNull Duration maxStaleness,
+                @NonNull Collection<String> indexedAttributes, boolean backgroundSync) throws LDAPException
+    {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        } else if (maxStaleness.isNegative()) {
+            throw new IllegalArgumentException("Max staleness cannot be negative");
+        }
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.connectionFactory = connectionFactory;
+        this.baseDn = new DN(baseDn);
+        this.filter = Filter.create(REPLICATED_ENTRIES_FILTER);
+        this.syncMode = syncMode;
+        this.pageSize = pageSize;
+        this.indexedAttributes = new LinkedHashSet<>(INDEXED_ATTRIBUTES);
+        indexedAttributes.stream().filter(StringUtils::hasText).forEach(this.indexedAttributes::add);
+        this.store = new Store(this.indexedAttributes);
+        if (backgroundSync && isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ldap-replica-");
+            threadFactory.setDaemon(true);
+            this.syncer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.syncer.scheduleWithFixedDelay(this::refresh, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return connectionFactory != null;
+    }
+
+    /**
+     * Check if the replica has been loaded, has been synchronized within the max staleness and can answer
+     * the queries.
+     * @return TRUE if the replica is ready, FALSE otherwise.
+     */
+    public boolean isReady() {
+        return loaded && !isStale();
+    }
+
+    public int size() {
+        return store.entries.size();
+    }
+
+    private boolean isStale() {
+        return maxStalenessNanos > 0 && System.nanoTime() - lastSyncedAt > maxStalenessNanos;
+    }
+
+    public DN getBaseDn() {
+        return baseDn;
+    }
+
+    /**
+     * Get entry by its DN.
+     * @param dn Full DN of the entry.
+     * @return Entry, NULL if not present in the replica.
+     */
+    public Entry getEntry(@NonNull DN dn) {
+        return store.entries.get(dn);
+    }
+
+    /**
+     * Search for the entries in the replica.
+     * @param base Full DN of the search base.
+     * @param scope Scope of the search.
+     * @param filter Filter the entries have to match.
+     * @return List of matching entries (filled or empty).
+     * @throws LDAPException Thrown when the filter cannot be evaluated.
+     */
+    public List<Entry> search(@NonNull DN base, @NonNull SearchScope scope, @NonNull Filter filter)
+            throws LDAPException
+    {
+        Store current = store;
+        Collection<DN> candidates = SearchScope.BASE.equals(scope)
+                ? Collections.singleton(base)
+                : current.candidates(filter);
+
+        List<Entry> result = new ArrayList<>();
+        if (candidates == null) {
+            for (Entry entry : current.entries.values()) {
+                if (matches(entry, base, scope, filter)) {
+                    result.add(entry);
+                }
+            }
+        } else {
+            for (DN dn : candidates) {
+                Entry entry = current.entries.get(dn);
+                if (entry != null && matches(entry, base, scope, filter)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+    }
+
+    /**
+     * Load the replica when it has not been loaded yet, synchronize the changes otherwise.
+     */
+    void refresh() {
+        try {
+            if (!loaded || SyncMode.RELOAD.equals(syncMode)) {
+                load();
+            } else if (SyncMode.CONTENT_SYNC.equals(syncMode)) {
+                syncContent();
+            } else {
+                syncChangelog();
+            }
+            this.lastSyncedAt = System.nanoTime();
+        } catch (LDAPException | RuntimeException e) {
+            if (loaded && isStale()) {
+                log.warn("Could not synchronize LDAP replica, it is stale and LDAP is used instead", e);
+            } else {
+                log.warn("Could not synchronize LDAP replica, keeping the current state", e);
+            }
+        }
+    }
+
+    /**
+     * Load all the entries with the paged search and replace the current content of the replica.
+     * @throws LDAPException Thrown when the entries cannot be read.
+     */
+    void load() throws LDAPException {
+        long startTime = System.currentTimeMillis();
+        Store content = new Store(indexedAttributes);
+        try (LDAPConnection connection = connectionFactory.connect()) {
+            Long changeNumber = SyncMode.CHANGELOG.equals(syncMode) ? readLastChangeNumber(connection) : null;
+            ASN1OctetString cookie = null;
+            do {
+                SearchRequest request = new SearchRequest(baseDn.toString(), SearchScope.SUB, filter,
+                        REPLICATED_ATTRIBUTES);
+                request.addControl(new SimplePagedResultsControl(pageSize, cookie));
+                SearchResult result = connection.search(request);
+                for (SearchResultEntry entry : result.getSearchEntries()) {
+                    content.put(entry, null);
+                }
+                SimplePagedResultsControl response = SimplePagedResultsControl.get(result);
+                cookie = (response != null && response.moreResultsToReturn()) ? response.getCookie() : null;
+            } while (cookie != null);
+            this.lastChangeNumber = changeNumber;
+        }
+        this.store = content;
+        this.syncCookie = null;
+        this.lastSyncedAt = System.nanoTime();
+        this.loaded = true;
+        log.info("LDAP replica loaded {} entries in {} ms", content.entries.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Apply the changes reported by the RFC 4533 content synchronization since the last sync.
+     * @throws LDAPException Thrown when the changes cannot be read.
+     */
+    void syncContent() throws LDAPException {
+        Store current = store;
+        ContentSyncListener listener = new ContentSyncListener(current);
+        SearchRequest request = new SearchRequest(listener, baseDn.toString(), SearchScope.SUB, filter,
+                REPLICATED_ATTRIBUTES);
+        request.addControl(new ContentSyncRequestControl(true, ContentSyncRequestMode.REFRESH_ONLY, syncCookie,
+                false));
+        request.setIntermediateResponseListener(listener);
+
+        SearchResult result;
+        try (LDAPConnection connection = connectionFactory.connect()) {
+            result = connection.search(request);
+        } catch (LDAPSearchException e) {
+            if (e.getResultCode().intValue() != E_SYNC_REFRESH_REQUIRED) {
+                throw e;
+            }
+            log.info("LDAP server requires full refresh of the replica, reloading it");
+            load();
+            return;
+        }
+        if (listener.failure != null) {
+            throw listener.failure;
+        }
+
+        ContentSyncDoneControl done = ContentSyncDoneControl.get(result);
+        if (listener.presentPhase) {
+            // entries not reported as present in the present phase have been deleted
+            current.retainUuids(listener.present);
+        }
+        if (done != null && done.getCookie() != null) {
+            listener.cookie = done.getCookie();
+        }
+        if (listener.cookie != null) {
+            this.syncCookie = listener.cookie;
+        }
+        log.debug("LDAP replica synchronized, {} entries updated, {} deleted", listener.updated, listener.deleted);
+    }
+
+    /**
+     * Apply the changes recorded in the changelog since the last sync. Entries added, modified or renamed are read
+     * again from LDAP. When there are more changes than the page size or the changelog does not contain all of them,
+     * the replica is loaded again instead.
+     * @throws LDAPException Thrown when the changes cannot be read.
+     */
+    void syncChangelog() throws LDAPException {
+        if (lastChangeNumber == null) {
+            log.warn("LDAP server does not provide the changelog, reloading the replica");
+            load();
+            return;
+        }
+        int applied = 0;
+        try (LDAPConnection connection = connectionFactory.connect()) {
+            RootDSE rootDSE = connection.getRootDSE();
+            Long firstChange = rootDSE == null ? null : rootDSE.getAttributeValueAsLong(FIRST_CHANGE_NUMBER);
+            Long lastChange = rootDSE == null ? null : rootDSE.getAttributeValueAsLong(LAST_CHANGE_NUMBER);
+            if (lastChange == null || lastChange <= lastChangeNumber) {
+                return;
+            } else if (lastChange - lastChangeNumber <= pageSize
+                    && (firstChange == null || firstChange <= lastChangeNumber + 1))
+            {
+                // changes are read one by one, ordering of the change numbers in filters is not reliable
+                for (long changeNumber = lastChangeNumber + 1; changeNumber <= lastChange; changeNumber++) {
+                    SearchResultEntry entry = connection.getEntry(CHANGE_NUMBER + '=' + changeNumber + ','
+                            + CHANGELOG_BASE);
+                    if (entry != null) {
+                        applyChange(connection, new ChangeLogEntry(entry));
+                        applied++;
+                    }
+                    this.lastChangeNumber = changeNumber;
+                }
+                log.debug("LDAP replica synchronized, {} changes applied", applied);
+                return;
+            }
+        }
+        log.info("Too many changes in LDAP changelog, reloading the replica");
+        load();
+    }
+
+    private void applyChange(LDAPConnection connection, ChangeLogEntry change) throws LDAPException {
+        DN target = new DN(change.getTargetDN());
+        if (!target.isDescendantOf(baseDn, true)) {
+            return;
+        }
+        switch (change.getChangeType()) {
+            case DELETE:
+                store.remove(target);
+                break;
+            case MODIFY_DN:
+                store.remove(target);
+                reloadEntry(connection, new DN(change.getNewDN()));
+                break;
+            default:
+                reloadEntry(connection, target);
+        }
+    }
+
+    private void reloadEntry(LDAPConnection connection, DN dn) throws LDAPException {
+        SearchResultEntry entry;
+        try {
+            entry = connection.searchForEntry(dn.toString(), SearchScope.BASE, filter, REPLICATED_ATTRIBUTES);
+        } catch (LDAPSearchException e) {
+            if (!ResultCode.NO_SUCH_OBJECT.equals(e.getResultCode())) {
+                throw e;
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            store.remove(dn);
+        } else {
+            store.put(entry, null);
+        }
+    }
+
+    private static Long readLastChangeNumber(LDAPConnection connection) throws LDAPException {
+        RootDSE rootDSE = connection.getRootDSE();
+        return rootDSE == null ? null : rootDSE.getAttributeValueAsLong(LAST_CHANGE_NUMBER);
+    }
+
+    private static boolean matches(Entry entry, DN base, SearchScope scope, Filter filter) throws LDAPException {
+        DN dn = entry.getParsedDN();
+        boolean inScope;
+        if (SearchScope.BASE.equals(scope)) {
+            inScope = dn.equals(base);
+        } else if (SearchScope.ONE.equals(scope)) {
+            inScope = base.equals(dn.getParent());
+        } else {
+            inScope = dn.isDescendantOf(base, true);
+        }
+        return inScope && filter.matchesEntry(entry);
+    }
+
+    private static String normalize(String value) {
+        return CaseIgnoreStringMatchingRule.getInstance().normalize(new ASN1OctetString(value)).stringValue();
+    }
+
+    private static LDAPConnection connect(LdapProperties ldapProperties) throws LDAPException {
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setConnectTimeoutMillis(ldapProperties.getTimeout());
+        options.setResponseTimeoutMillis(ldapProperties.getTimeout());
+
+        LDAPException lastException = null;
+        for (String host : ldapProperties.getLdapHosts()) {
+            LDAPURL url = new LDAPURL(host);
+            try {
+                LDAPConnection connection;
+                if ("ldaps".equalsIgnoreCase(url.getScheme())) {
+                    connection = new LDAPConnection(new SSLUtil().createSSLSocketFactory(), options,
+                            url.getHost(), url.getPort());
+                } else {
+                    connection = new LDAPConnection(options, url.getHost(), url.getPort());
+                    if (ldapProperties.isUseTLS()) {
+                        connection.processExtendedOperation(
+                                new StartTLSExtendedRequest(new SSLUtil().createSSLContext()));
+                    }
+                }
+                if (StringUtils.hasText(ldapProperties.getLdapUser())) {
+                    connection.bind(ldapProperties.getLdapUser(), ldapProperties.getLdapPassword());
+                }
+                return connection;
+            } catch (LDAPException e) {
+                log.debug("Could not connect LDAP replica to {}", host, e);
+                lastException = e;
+            } catch (GeneralSecurityException e) {
+                lastException = new LDAPException(ResultCode.CONNECT_ERROR, "Could not initialize TLS", e);
+            }
+        }
+        throw lastException != null ? lastException
+                : new LDAPException(ResultCode.CONNECT_ERROR, "No LDAP hosts configured");
+    }
+
+    /**
+     * Creates connections to the replicated LDAP.
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+        LDAPConnection connect() throws LDAPException;
+    }
+
+    private static final class Store {
+        private final ConcurrentMap<DN, Entry> entries = new ConcurrentHashMap<>();
+        private final ConcurrentMap<UUID, DN> dnsByUuid = new ConcurrentHashMap<>();
+        private final ConcurrentMap<DN, UUID> uuidsByDn = new ConcurrentHashMap<>();
+        private final Map<String, ConcurrentMap<String, Set<DN>>> indexes = new HashMap<>();
+
+        private Store(Collection<String> indexedAttributes) {
+            indexedAttributes.forEach(attr -> indexes.put(attr.toLowerCase(), new ConcurrentHashMap<>()));
+        }
+
+        private void put(Entry entry, UUID uuid) throws LDAPException {
+            DN dn = entry.getParsedDN();
+            index(dn, entry);
+            Entry previous = entries.put(dn, entry);
+            if (previous != null) {
+                unindex(dn, previous, entry);
+            }
+            if (uuid == null && entry.hasAttribute(ENTRY_UUID)) {
+                uuid = UUID.fromString(entry.getAttributeValue(ENTRY_UUID));
+            }
+            if (uuid != null) {
+                dnsByUuid.put(uuid, dn);
+                uuidsByDn.put(dn, uuid);
+            }
+        }
+
+        private void remove(DN dn) {
+            Entry removed = entries.remove(dn);
+            if (removed != null) {
+                unindex(dn, removed, null);
+            }
+            UUID uuid = uuidsByDn.remove(dn);
+            if (uuid != null) {
+                dnsByUuid.remove(uuid, dn);
+            }
+        }
+
+        private void removeByUuid(UUID uuid) {
+            DN dn = dnsByUuid.remove(uuid);
+            if (dn != null) {
+                remove(dn);
+            }
+        }
+
+        private void retainUuids(Set<UUID> present) {
+            for (UUID uuid : new ArrayList<>(dnsByUuid.keySet())) {
+                if (!present.contains(uuid)) {
+                    removeByUuid(uuid);
+                }
+            }
+        }
+
+        /**
+         * Get DNs of the entries which can match the filter.
+         * @return Candidate DNs, NULL when the filter cannot be resolved from the indexes.
+         */
+        private Collection<DN> candidates(Filter filter) {
+            switch (filter.getFilterType()) {
+                case Filter.FILTER_TYPE_EQUALITY: {
+                    Map<String, Set<DN>> index = indexes.get(filter.getAttributeName().toLowerCase());
+                    if (index == null) {
+                        return null;
+                    }
+                    return index.getOrDefault(normalize(filter.getAssertionValue()), Collections.emptySet());
+                }
+                case Filter.FILTER_TYPE_AND: {
+                    Collection<DN> best = null;
+                    for (Filter component : filter.getComponents()) {
+                        Collection<DN> candidates = candidates(component);
+                        if (candidates != null && (best == null || candidates.size() < best.size())) {
+                            best = candidates;
+                        }
+                    }
+                    return best;
+                }
+                case Filter.FILTER_TYPE_OR: {
+                    Set<DN> union = new HashSet<>();
+                    for (Filter component : filter.getComponents()) {
+                        Collection<DN> candidates = candidates(component);
+                        if (candidates == null) {
+                            return null;
+                        }
+                        union.addAll(candidates);
+                    }
+                    return union;
+                }
+                default:
+                    return null;
+            }
+        }
+
+        private void index(DN dn, Entry entry) {
+            for (Attribute attribute : entry.getAttributes()) {
+                Map<String, Set<DN>> index = indexes.get(attribute.getName().toLowerCase());
+                if (index != null) {
+                    for (String value : attribute.getValues()) {
+                        index.computeIfAbsent(normalize(value), k -> ConcurrentHashMap.newKeySet()).add(dn);
+                    }
+                }
+            }
+        }
+
+        private void unindex(DN dn, Entry previous, Entry current) {
+            for (Attribute attribute : previous.getAttributes()) {
+                Map<String, Set<DN>> index = indexes.get(attribute.getName().toLowerCase());
+                if (index == null) {
+                    continue;
+                }
+                for (String value : attribute.getValues()) {
+                    if (current != null && current.hasAttributeValue(attribute.getName(), value)) {
+                        continue;
+                    }
+                    index.computeIfPresent(normalize(value), (k, dns) -> {
+                        dns.remove(dn);
+                        return dns.isEmpty() ? null : dns;
+                    });
+                }
+            }
+        }
+    }
+
+    private static final class ContentSyncListener implements SearchResultListener, IntermediateResponseListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Store current;
+        private final Set<UUID> present = new HashSet<>();
+        private boolean presentPhase = false;
+        private ASN1OctetString cookie;
+        private LDAPException failure;
+        private int updated = 0;
+        private int deleted = 0;
+
+        private ContentSyncListener(Store current) {
+            this.current = current;
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry entry) {
+            try {
+                ContentSyncStateControl state = ContentSyncStateControl.get(entry);
+                if (state == null) {
+                    return;
+                }
+                if (state.getCookie() != null) {
+                    cookie = state.getCookie();
+                }
+                switch (state.getState()) {
+                    case DELETE:
+                        current.removeByUuid(state.getEntryUUID());
+                        deleted++;
+                        break;
+                    case PRESENT:
+                        present.add(state.getEntryUUID());
+                        presentPhase = true;
+                        break;
+                    default:
+                        present.add(state.getEntryUUID());
+                        current.put(entry, state.getEntryUUID());
+                        updated++;
+                }
+            } catch (LDAPException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference reference) {
+            // references are not followed
+        }
+
+        @Override
+        public void intermediateResponseReturned(IntermediateResponse response) {
+            try {
+                ContentSyncInfoIntermediateResponse info = ContentSyncInfoIntermediateResponse.decode(response);
+                if (info.getCookie() != null) {
+                    cookie = info.getCookie();
+                }
+                if (ContentSyncInfoType.REFRESH_PRESENT.equals(info.getType())) {
+                    presentPhase = true;
+                } else if (ContentSyncInfoType.SYNC_ID_SET.equals(info.getType())) {
+                    if (info.refreshDeletes()) {
+                        info.getEntryUUIDs().forEach(current::removeByUuid);
+                        deleted += info.getEntryUUIDs().size();
+                    } else {
+                        present.addAll(info.getEntryUUIDs());
+                        presentPhase = true;
+                    }
+                }
+            } catch (LDAPException e) {
+                failure = e;
+            }
+        }
+    }
+
+}
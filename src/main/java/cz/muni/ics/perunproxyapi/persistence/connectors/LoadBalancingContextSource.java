@@ -0,0 +1,388 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.DirContextProxy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
+
+import javax.naming.CommunicationException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.TimeLimitExceededException;
+import javax.naming.directory.DirContext;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Context source spreading the LDAP operations across all the configured hosts. Each host has its own (pooled)
+ * context source, the host is selected for each obtained context by the strategy:
+ *   - LEAST_OUTSTANDING - host with the least contexts in use, ties are broken by the latency
+ *   - LATENCY_WEIGHTED - better of two random hosts, scored by the latency and the contexts in use
+ * Latency of the host is the time the context has been in use, so the whole LDAP operation is measured. Contexts
+ * whose target connection is used directly (i.e. by the paged searches) are held across all the pages and
+ * the processing of the results, they are left out of the latency. When the context cannot be obtained from the
+ * host, next host is tried.
+ *
+ * Hosts are checked in the background each health check interval. Host with error rate or 99th percentile of the
+ * latency over the thresholds or failing the probe (new context from the probe context source) is ejected until
+ * it passes the probe again. When all the hosts are ejected, all of them are used.
+ *
+ * Metrics for each host (tag "host") are published as "ldap.host.latency", "ldap.host.errors",
+ * "ldap.host.outstanding" and "ldap.host.available".
+ */
+@Slf4j
+public class LoadBalancingContextSource implements ContextSource, MeterBinder, DisposableBean {
+
+    public static final String LATENCY_METRIC = "ldap.host.latency";
+    public static final String ERRORS_METRIC = "ldap.host.errors";
+    public static final String OUTSTANDING_METRIC = "ldap.host.outstanding";
+    public static final String AVAILABLE_METRIC = "ldap.host.available";
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
+
+    public enum Strategy {
+        LEAST_OUTSTANDING, LATENCY_WEIGHTED
+    }
+
+    private final List<Host> hosts;
+    private final Strategy strategy;
+    private final double ejectErrorRate;
+    private final long ejectLatencyP99Nanos;
+    private final int ejectMinRequests;
+    private final ScheduledExecutorService healthChecker;
+
+    public LoadBalancingContextSource(@NonNull List<HostContextSource> hosts, @NonNull Strategy strategy,
+                                      @NonNull Duration healthCheckInterval, double ejectErrorRate,
+                                      @NonNull Duration ejectLatencyP99, int ejectMinRequests)
+    {
+        this(hosts, strategy, healthCheckInterval, ejectErrorRate, ejectLatencyP99, ejectMinRequests, true);
+    }
+
+    LoadBalancingContextSource(List<HostContextSource> hosts, Strategy strategy, Duration healthCheckInterval,
+                               double ejectErrorRate, Duration ejectLatencyP99, int ejectMinRequests,
+                               boolean backgroundHealthCheck)
+    {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("At least one LDAP host has to be configured");
+        }
+        List<Host> hostList = new ArrayList<>();
+        hosts.forEach(source -> hostList.add(new Host(source)));
+        this.hosts = Collections.unmodifiableList(hostList);
+        this.strategy = strategy;
+        this.ejectErrorRate = ejectErrorRate;
+        this.ejectLatencyP99Nanos = ejectLatencyP99.toNanos();
+        this.ejectMinRequests = ejectMinRequests;
+        if (backgroundHealthCheck && healthCheckInterval.toMillis() > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ldap-health-check-");
+            threadFactory.setDaemon(true);
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval.toMillis(),
+                    healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.healthChecker = null;
+        }
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() {
+        return this.getContext(host -> host.source.getContextSource()::getReadOnlyContext);
+    }
+
+    @Override
+    public DirContext getReadWriteContext() {
+        return this.getContext(host -> host.source.getContextSource()::getReadWriteContext);
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) {
+        return this.getContext(host -> () -> host.source.getContextSource().getContext(principal, credentials));
+    }
+
+    /**
+     * Get URLs of the hosts which are currently not ejected.
+     * @return List of URLs.
+     */
+    public List<String> getAvailableHosts() {
+        List<String> available = new ArrayList<>();
+        for (Host host : hosts) {
+            if (host.available) {
+                available.add(host.source.getUrl());
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (Host host : hosts) {
+            String url = host.source.getUrl();
+            host.latencyTimer = Timer.builder(LATENCY_METRIC)
+                    .description("Duration of the LDAP operations on the host")
+                    .tag("host", url)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+            FunctionCounter.builder(ERRORS_METRIC, host.totalErrors, LongAdder::sum)
+                    .description("Failed LDAP operations and probes of the host")
+                    .tag("host", url)
+                    .register(registry);
+            Gauge.builder(OUTSTANDING_METRIC, host.outstanding, AtomicInteger::get)
+                    .description("LDAP contexts of the host in use")
+                    .tag("host", url)
+                    .register(registry);
+            Gauge.builder(AVAILABLE_METRIC, host, h -> h.available ? 1 : 0)
+                    .description("Availability of the host, 0 when ejected")
+                    .tag("host", url)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Host host : hosts) {
+            if (host.source.getContextSource() instanceof DisposableBean) {
+                ((DisposableBean) host.source.getContextSource()).destroy();
+            }
+        }
+    }
+
+    /**
+     * Eject hosts with too many errors or too high latency since the last check and probe all the hosts.
+     */
+    void checkHealth() {
+        for (Host host : hosts) {
+            long requests = host.requests.sumThenReset();
+            long errors = host.errors.sumThenReset();
+            long p99 = host.latencyPercentileThenReset(0.99);
+            boolean probeSucceeded = this.probe(host);
+
+            if (!host.available) {
+                if (probeSucceeded) {
+                    log.info("LDAP host {} passed the probe, returning it to the rotation", host.source.getUrl());
+                    host.available = true;
+                }
+            } else if (!probeSucceeded) {
+                log.warn("LDAP host {} failed the probe, ejecting it", host.source.getUrl());
+                host.available = false;
+            } else if (requests >= ejectMinRequests && requests > 0
+                    && ((double) errors / requests > ejectErrorRate || p99 > ejectLatencyP99Nanos))
+            {
+                log.warn("LDAP host {} ejected, {} errors in {} operations, p99 latency {} ms",
+                        host.source.getUrl(), errors, requests, TimeUnit.NANOSECONDS.toMillis(p99));
+                host.available = false;
+            }
+        }
+    }
+
+    private boolean probe(Host host) {
+        try {
+            host.source.getProbeContextSource().getReadOnlyContext().close();
+            return true;
+        } catch (NamingException | javax.naming.NamingException e) {
+            log.debug("Probe of LDAP host {} failed", host.source.getUrl(), e);
+            host.totalErrors.increment();
+            return false;
+        }
+    }
+
+    private DirContext getContext(Function<Host, Supplier<DirContext>> contextGetter) {
+        Set<Host> tried = new HashSet<>();
+        NamingException lastException = null;
+        Host host;
+        while ((host = this.select(tried)) != null) {
+            tried.add(host);
+            host.outstanding.incrementAndGet();
+            long startTime = System.nanoTime();
+            try {
+                return this.wrap(host, contextGetter.apply(host).get(), startTime);
+            } catch (NamingException e) {
+                host.release(System.nanoTime() - startTime, true, true);
+                log.debug("Could not obtain LDAP context from host {}, trying next one", host.source.getUrl(), e);
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    private Host select(Set<Host> excluded) {
+        List<Host> candidates = new ArrayList<>(hosts.size());
+        for (Host host : hosts) {
+            if (host.available && !excluded.contains(host)) {
+                candidates.add(host);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // no healthy host left, better to try the ejected ones than to fail
+            for (Host host : hosts) {
+                if (!excluded.contains(host)) {
+                    candidates.add(host);
+                }
+            }
+        }
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (Strategy.LATENCY_WEIGHTED.equals(strategy)) {
+            int first = random.nextInt(candidates.size());
+            int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+            Host a = candidates.get(first);
+            Host b = candidates.get(second);
+            return a.score() <= b.score() ? a : b;
+        }
+
+        // random start spreads the ties among the hosts
+        int start = random.nextInt(candidates.size());
+        Host best = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Host host = candidates.get((start + i) % candidates.size());
+            if (best == null || host.outstanding.get() < best.outstanding.get()
+                    || (host.outstanding.get() == best.outstanding.get() && host.ewmaNanos < best.ewmaNanos))
+            {
+                best = host;
+            }
+        }
+        return best;
+    }
+
+    private DirContext wrap(Host host, DirContext context, long startTime) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicBoolean measured = new AtomicBoolean(true);
+        Set<Class<?>> interfaces = new LinkedHashSet<>(Arrays.asList(ClassUtils.getAllInterfaces(context)));
+        interfaces.add(DirContextProxy.class);
+        return (DirContext) Proxy.newProxyInstance(context.getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "getTargetContext":
+                            measured.set(false);
+                            return context;
+                        case "close":
+                            if (closed.compareAndSet(false, true)) {
+                                host.release(System.nanoTime() - startTime, failed.get(), measured.get());
+                            }
+                            break;
+                        default:
+                    }
+                    try {
+                        return method.invoke(context, args);
+                    } catch (InvocationTargetException e) {
+                        if (isHostFailure(e.getCause())) {
+                            failed.set(true);
+                        }
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static boolean isHostFailure(Throwable e) {
+        return e instanceof CommunicationException || e instanceof ServiceUnavailableException
+                || e instanceof TimeLimitExceededException;
+    }
+
+    /**
+     * Context sources of a single LDAP host.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class HostContextSource {
+        @NonNull private final String url;
+        // context source used by the operations, usually pooled
+        @NonNull private final ContextSource contextSource;
+        // context source used by the health probes, should not be pooled
+        @NonNull private final ContextSource probeContextSource;
+    }
+
+    private static final class Host {
+        private final HostContextSource source;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalErrors = new LongAdder();
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount = 0;
+        private volatile long ewmaNanos = 0;
+        private volatile boolean available = true;
+        private volatile Timer latencyTimer;
+
+        private Host(HostContextSource source) {
+            this.source = source;
+        }
+
+        private void release(long durationNanos, boolean failed, boolean measured) {
+            outstanding.decrementAndGet();
+            requests.increment();
+            if (failed) {
+                errors.increment();
+                totalErrors.increment();
+            }
+            if (!measured) {
+                return;
+            }
+            // races of the concurrent updates only make the average less precise
+            long ewma = ewmaNanos;
+            ewmaNanos = ewma == 0 ? durationNanos : ewma + (long) (LATENCY_EWMA_WEIGHT * (durationNanos - ewma));
+            synchronized (latencies) {
+                latencies[latencyCount % LATENCY_SAMPLES] = durationNanos;
+                latencyCount++;
+            }
+            Timer timer = latencyTimer;
+            if (timer != null) {
+                timer.record(durationNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private long latencyPercentileThenReset(double percentile) {
+            long[] samples;
+            synchronized (latencies) {
+                samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+                latencyCount = 0;
+            }
+            if (samples.length == 0) {
+                return 0;
+            }
+            Arrays.sort(samples);
+            return samples[(int) Math.ceil(percentile * samples.length) - 1];
+        }
+
+        private double score() {
+            return (outstanding.get() + 1) * (double) Math.max(ewmaNanos, 1);
+        }
+    }
+
+}
@@ -1,17 +1,34 @@
 package cz.muni.ics.perunproxyapi.persistence.connectors;
 
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.LookupException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.ldap.NamingException;
+import org.springframework.ldap.control.PagedResultsDirContextProcessor;
 import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextProxy;
 import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.NameClassPairCallbackHandler;
+import org.springframework.ldap.core.support.SingleContextSource;
+import org.springframework.ldap.pool2.DelegatingLdapContext;
 import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.support.LdapUtils;
 import org.springframework.stereotype.Component;
 
+import javax.naming.Binding;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapContext;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static java.lang.System.currentTimeMillis;
 
@@ -26,11 +43,28 @@ import static java.lang.System.currentTimeMillis;
 @Slf4j
 public class PerunConnectorLdap {
 
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final Set<String> REQUEST_CONTROLS_METHODS = new HashSet<>(Arrays.asList(
+            "setRequestControls", "getRequestControls", "getResponseControls"));
+
     private final LdapTemplate ldapTemplate;
+    private final int pageSize;
+    private final int timeLimit;
 
     @Autowired
+    public PerunConnectorLdap(LdapTemplate ldapTemplate, @NonNull LdapProperties ldapProperties) {
+        this(ldapTemplate, ldapProperties.getPageSize(), ldapProperties.getTimeout());
+    }
+
     public PerunConnectorLdap(LdapTemplate ldapTemplate) {
+        this(ldapTemplate, DEFAULT_PAGE_SIZE, 0);
+    }
+
+    PerunConnectorLdap(LdapTemplate ldapTemplate, int pageSize, int timeLimit) {
         this.ldapTemplate = ldapTemplate;
+        this.pageSize = pageSize;
+        this.timeLimit = timeLimit;
     }
 
     /**
@@ -79,6 +113,55 @@ public class PerunConnectorLdap {
         return result;
     }
 
+    /**
+     * Search for the entries satisfying criteria page by page (RFC 2696) and pass each of them to the consumer
+     * as soon as it is mapped. Found entries are not collected, so the memory stays bounded by the page size.
+     * Meant only for the searches which can return large results, others should use {@link #search}.
+     *
+     * All the pages are fetched over single connection, as required by the paged results control. The connection
+     * is taken from the context source of the template (pooled and load balanced), the paged results control is
+     * set on the underlying connection and cleared before the connection is returned to the pool.
+     * @param query Query object.
+     * @param mapper Mapper for the result.
+     * @param consumer Consumer of the mapped entries, might get null when the mapper returns it.
+     * @param <T> Class that the result should be mapped to.
+     */
+    public <T> void searchPaged(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper,
+                                @NonNull Consumer<T> consumer)
+    {
+        log.trace("searchPaged(\nbase: {},\nscope: {},\nfilters: {},\n attributes: {},\n)",
+                query.base(), query.searchScope(), query.filter(), query.attributes());
+        long startTime = currentTimeMillis();
+        String filter = query.filter().encode();
+        SearchControls controls = this.searchControls(query);
+        NameClassPairCallbackHandler handler = nameClassPair ->
+                consumer.accept(mapper.mapFromContext(((Binding) nameClassPair).getObject()));
+
+        DirContext context = ldapTemplate.getContextSource().getReadOnlyContext();
+        LdapContext connection = connection(context);
+        SingleContextSource contextSource = new SingleContextSource(withRequestControls(context, connection));
+        int pages = 0;
+        try {
+            LdapTemplate operations = new LdapTemplate(contextSource);
+            PagedResultsDirContextProcessor processor = new PagedResultsDirContextProcessor(pageSize);
+            do {
+                operations.search(query.base(), filter, controls, handler, processor);
+                pages++;
+            } while (processor.hasMore());
+        } finally {
+            // closing the context returns the connection to the pool, SingleContextSource is not destroyed
+            try {
+                connection.setRequestControls(null);
+            } catch (javax.naming.NamingException e) {
+                log.warn("Could not clear request controls of the LDAP connection", e);
+            }
+            LdapUtils.closeContext(context);
+        }
+        long endTime = currentTimeMillis();
+        long responseTime = endTime - startTime;
+        log.trace("searchPaged query proceeded in {} ms, fetched {} pages.", responseTime, pages);
+    }
+
     /**
      * Perform lookup for the entry that satisfies criteria.
      * @param <T> Class that the result should be mapped to.
@@ -106,4 +189,53 @@ public class PerunConnectorLdap {
         }
     }
 
+    /**
+     * Find the underlying connection of the context, pooled and load balanced contexts do not accept
+     * the request controls.
+     */
+    private static LdapContext connection(DirContext context) {
+        DirContext target = context;
+        while (true) {
+            if (target instanceof DirContextProxy) {
+                target = ((DirContextProxy) target).getTargetContext();
+            } else if (target instanceof DelegatingLdapContext) {
+                target = ((DelegatingLdapContext) target).getInnermostDelegateLdapContext();
+            } else if (target instanceof LdapContext) {
+                return (LdapContext) target;
+            } else {
+                throw new UnsupportedOperationException("LDAP context does not support request controls: " + target);
+            }
+        }
+    }
+
+    /**
+     * Context passing the request and response controls to the connection, other calls go through the context,
+     * so the pool and the load balancer see the whole operation.
+     */
+    private static DirContext withRequestControls(DirContext context, LdapContext connection) {
+        return (DirContext) Proxy.newProxyInstance(PerunConnectorLdap.class.getClassLoader(),
+                new Class<?>[] { LdapContext.class }, (proxy, method, args) -> {
+                    Object target = REQUEST_CONTROLS_METHODS.contains(method.getName()) ? connection : context;
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private SearchControls searchControls(LdapQuery query) {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(query.searchScope() != null
+                ? query.searchScope().getId() : SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(query.attributes());
+        controls.setTimeLimit(query.timeLimit() != null ? query.timeLimit() : timeLimit);
+        if (query.countLimit() != null) {
+            controls.setCountLimit(query.countLimit());
+        }
+        // mapper needs the DirContextAdapter
+        controls.setReturningObjFlag(true);
+        return controls;
+    }
+
 }
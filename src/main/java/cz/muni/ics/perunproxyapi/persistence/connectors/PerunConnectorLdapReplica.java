@@ -0,0 +1,158 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.LookupException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ldap.UncategorizedLdapException;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.support.LdapUtils;
+
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Connector answering the LDAP queries from the local replica of Perun LDAP instead of calling the LDAP server.
+ * Query bases and DNs are relative to the base DN of the replica, same as for the connector calling the server.
+ */
+@Slf4j
+public class PerunConnectorLdapReplica extends PerunConnectorLdap {
+
+    private final LdapReplica replica;
+    private final Name baseName;
+
+    public PerunConnectorLdapReplica(@NonNull LdapReplica replica) {
+        // all the operations are answered by the replica, LDAP template is not used
+        super(null);
+        this.replica = replica;
+        this.baseName = LdapUtils.newLdapName(replica.getBaseDn().toString());
+    }
+
+    @Override
+    public <T> T searchForObject(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper) {
+        List<T> result = this.search(query, mapper);
+        // same as for LDAP template, no result or more than one result is not an object
+        return result.size() == 1 ? result.get(0) : null;
+    }
+
+    @Override
+    public <T> List<T> search(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper) {
+        log.trace("search in replica(\nbase: {},\nscope: {},\nfilters: {},\n attributes: {}\n)",
+                query.base(), query.searchScope(), query.filter(), query.attributes());
+        List<Entry> entries = this.entries(query);
+        Set<String> attributes = requestedAttributes(query.attributes());
+        List<T> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(map(entry, attributes, mapper));
+        }
+        return result;
+    }
+
+    @Override
+    public <T> void searchPaged(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper,
+                                @NonNull Consumer<T> consumer)
+    {
+        log.trace("searchPaged in replica(\nbase: {},\nscope: {},\nfilters: {},\n attributes: {}\n)",
+                query.base(), query.searchScope(), query.filter(), query.attributes());
+        // entries are held by the replica anyway, only the mapped results are not collected
+        Set<String> attributes = requestedAttributes(query.attributes());
+        for (Entry entry : this.entries(query)) {
+            consumer.accept(map(entry, attributes, mapper));
+        }
+    }
+
+    @Override
+    public <T> T lookup(@NonNull String dn, @NonNull String[] attributes, @NonNull ContextMapper<T> mapper)
+            throws LookupException
+    {
+        Entry entry;
+        try {
+            entry = replica.getEntry(absoluteDn(dn));
+        } catch (LDAPException e) {
+            throw new LookupException("Invalid DN " + dn, e);
+        }
+        if (entry == null) {
+            throw new LookupException();
+        }
+        return map(entry, requestedAttributes(attributes), mapper);
+    }
+
+    private List<Entry> entries(LdapQuery query) {
+        try {
+            return replica.search(absoluteDn(query.base().toString()), scope(query),
+                    Filter.create(query.filter().encode()));
+        } catch (LDAPException e) {
+            throw new UncategorizedLdapException("Could not evaluate query in LDAP replica", e);
+        }
+    }
+
+    private DN absoluteDn(String relativeDn) throws LDAPException {
+        if (relativeDn == null || relativeDn.isEmpty()) {
+            return replica.getBaseDn();
+        }
+        return new DN(relativeDn + ',' + replica.getBaseDn());
+    }
+
+    private <T> T map(Entry entry, Set<String> attributes, ContextMapper<T> mapper) {
+        BasicAttributes ldapAttributes = new BasicAttributes(true);
+        for (Attribute attribute : entry.getAttributes()) {
+            if (attributes != null && !attributes.contains(attribute.getName().toLowerCase())
+                    && !attributes.contains(attribute.getBaseName().toLowerCase()))
+            {
+                continue;
+            }
+            BasicAttribute ldapAttribute = new BasicAttribute(attribute.getName());
+            for (String value : attribute.getValues()) {
+                ldapAttribute.add(value);
+            }
+            ldapAttributes.put(ldapAttribute);
+        }
+
+        Name dn = LdapUtils.removeFirst(LdapUtils.newLdapName(entry.getDN()), baseName);
+        try {
+            return mapper.mapFromContext(new DirContextAdapter(ldapAttributes, dn, baseName));
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+
+    private static SearchScope scope(LdapQuery query) {
+        if (query.searchScope() == null) {
+            return SearchScope.SUB;
+        }
+        switch (query.searchScope()) {
+            case OBJECT:
+                return SearchScope.BASE;
+            case ONELEVEL:
+                return SearchScope.ONE;
+            default:
+                return SearchScope.SUB;
+        }
+    }
+
+    private static Set<String> requestedAttributes(String[] attributes) {
+        if (attributes == null || attributes.length == 0 || Arrays.asList(attributes).contains("*")) {
+            return null;
+        }
+        return Collections.unmodifiableSet(Arrays.stream(attributes)
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet()));
+    }
+
+}
@@ -1,24 +1,40 @@
 package cz.muni.ics.perunproxyapi.persistence.connectors;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcMetrics.Outcome;
 import cz.muni.ics.perunproxyapi.persistence.connectors.properties.RpcConnectorProperties;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.MissingFieldException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-
-import static java.lang.System.currentTimeMillis;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Connector for calling Perun RPC
@@ -30,28 +46,67 @@ import static java.lang.System.currentTimeMillis;
 @Slf4j
 public class PerunConnectorRpc {
 
+    private static final String NULL_RESPONSE = "null";
+    private static final byte[] NULL_RESPONSE_BYTES = NULL_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
     private final boolean enabled;
     private final String perunUrl;
     private final RestTemplate restTemplate;
+    private final ExecutorService batchExecutor;
+    private final RpcCallCoalescer coalescer;
+    private final RpcCallGuard guard;
+    private final RpcHedger hedger;
+    private final RpcMetrics metrics;
 
     @Autowired
-    public PerunConnectorRpc(RestTemplate restTemplate, RpcConnectorProperties properties) {
+    public PerunConnectorRpc(RestTemplate restTemplate,
+                             RpcConnectorProperties properties,
+                             @Qualifier("rpcBatchExecutor") ExecutorService batchExecutor,
+                             RpcCallCoalescer coalescer,
+                             RpcCallGuard guard,
+                             RpcHedger hedger,
+                             RpcMetrics metrics)
+    {
         this.restTemplate = restTemplate;
         this.enabled = properties.isEnabled();
         this.perunUrl = properties.getPerunUrl() + '/' + properties.getSerializer();
+        this.batchExecutor = batchExecutor;
+        this.coalescer = properties.isCoalesceReads() ? coalescer : null;
+        this.guard = guard;
+        this.hedger = properties.isHedgingEnabled() ? hedger : null;
+        this.metrics = metrics;
     }
 
     public PerunConnectorRpc(boolean enabled, @NonNull RestTemplate restTemplate, @NonNull String perunUrl) {
+        this(enabled, restTemplate, perunUrl, null, null, null, null, null);
+    }
+
+    /**
+     * Create connector. If no batch executor is given, calls in the batch are executed sequentially.
+     * If no coalescer is given, identical concurrent read calls are not coalesced. If no guard is given,
+     * calls are neither limited nor protected by the circuit breaker. If no hedger is given, read calls are
+     * not hedged. If no metrics are given, calls are not measured.
+     */
+    public PerunConnectorRpc(boolean enabled, @NonNull RestTemplate restTemplate, @NonNull String perunUrl,
+                             ExecutorService batchExecutor, RpcCallCoalescer coalescer, RpcCallGuard guard,
+                             RpcHedger hedger, RpcMetrics metrics)
+    {
         if (!StringUtils.hasText(perunUrl)) {
             throw new IllegalArgumentException("PerunURL cannot be null nor empty");
         }
         this.enabled = enabled;
         this.restTemplate = restTemplate;
         this.perunUrl = perunUrl;
+        this.batchExecutor = batchExecutor;
+        this.coalescer = coalescer;
+        this.guard = guard;
+        this.hedger = hedger;
+        this.metrics = metrics;
     }
 
     /**
-     * Make post call to Perun RPC
+     * Make post call to Perun RPC. Identical concurrent read calls share one request to Perun, the returned
+     * JSON must not be modified.
      * @param manager String value representing manager to be called. Use constants from this class.
      * @param method Method to be called (i.e. getUserById)
      * @param map Map of parameters to be passed as request body
@@ -63,28 +118,290 @@ public class PerunConnectorRpc {
             throws PerunUnknownException, PerunConnectionException {
         if (!enabled) {
             return JsonNodeFactory.instance.nullNode();
+        } else if (!RpcCallCoalescer.isReadMethod(method)) {
+            return guarded(() -> postForJson(manager, method, map));
         }
 
+        RpcSupplier<JsonNode> read = () -> hedged(manager, method,
+                () -> guarded(() -> postForJson(manager, method, map)));
+        return coalescer == null ? read.get()
+                : coalescer.execute(new RpcCall(manager, method, map), JsonNode.class, read);
+    }
+
+    private JsonNode postForJson(String manager, String method, Map<String, Object> map)
+            throws PerunUnknownException, PerunConnectionException
+    {
         String actionUrl = this.perunUrl + '/' + manager + '/' + method;
 
         // make the call
+        long startTime = callStarted();
+        Outcome outcome = Outcome.CONNECTION_ERROR;
         try {
             log.trace("Calling perun RPC:\n URL: {},\n params: {}", actionUrl, map);
-            long startTime = currentTimeMillis();
             JsonNode result = restTemplate.postForObject(actionUrl, map, JsonNode.class);
-            long endTime = currentTimeMillis();
-            long responseTime = endTime - startTime;
-            log.trace("POST call proceeded in {} ms.",responseTime);
+            outcome = Outcome.SUCCESS;
+            log.trace("POST call proceeded in {} ms.", elapsedMillis(startTime));
             log.trace("Calling perun RPC:\n URL: {},\n params: {}\n returns: {}", actionUrl, map, result);
             return result;
         } catch (HttpClientErrorException ex) {
-            return handleHttpClientErrorException(ex, actionUrl);
+            outcome = Outcome.PERUN_ERROR;
+            JsonNode result = handleHttpClientErrorException(ex, actionUrl);
+            outcome = Outcome.NOT_EXISTS;
+            return result;
+        } catch (Exception e) {
+            throw new PerunConnectionException("Error when contacting Perun RPC", e);
+        } finally {
+            callFinished(manager, method, outcome, startTime);
+        }
+    }
+
+    /**
+     * Make post call to Perun RPC and read the response body as a stream of JSON tokens. Response is passed to
+     * the reader without building the JsonNode tree. Use for calls returning large responses.
+     * @param manager String value representing manager to be called. Use constants from this class.
+     * @param method Method to be called (i.e. getUserById)
+     * @param map Map of parameters to be passed as request body
+     * @param reader Reader mapping the response body to the result object.
+     * @param <T> Type of the result.
+     * @return Object produced by the reader. If the entity does not exist in Perun or the connector is disabled,
+     * reader is given JSON null.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public <T> T post(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> map,
+                      @NonNull RpcResponseReader<T> reader)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        if (!enabled) {
+            return readNullResponse(reader);
+        } else if (!RpcCallCoalescer.isReadMethod(method)) {
+            return guarded(() -> postForObject(manager, method, map, reader));
+        } else if (coalescer != null) {
+            // the raw body is shared, so each caller maps its own instances of the models
+            byte[] body = coalescer.execute(new RpcCall(manager, method, map), byte[].class,
+                    () -> hedged(manager, method, () -> guarded(() -> postForBytes(manager, method, map))));
+            try {
+                return readResponse(new ByteArrayInputStream(body), reader);
+            } catch (IOException e) {
+                throw new PerunConnectionException("Error when reading Perun RPC response", e);
+            }
+        }
+
+        return hedged(manager, method, () -> guarded(() -> postForObject(manager, method, map, reader)));
+    }
+
+    private <T> T postForObject(String manager, String method, Map<String, Object> map, RpcResponseReader<T> reader)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        String actionUrl = this.perunUrl + '/' + manager + '/' + method;
+
+        // make the call
+        long startTime = callStarted();
+        Outcome outcome = Outcome.CONNECTION_ERROR;
+        try {
+            log.trace("Calling perun RPC (streaming):\n URL: {},\n params: {}", actionUrl, map);
+            RequestCallback requestCallback = restTemplate.httpEntityCallback(map, JsonNode.class);
+            ResponseExtractor<T> responseExtractor = response -> readResponse(response.getBody(), reader);
+            T result = restTemplate.execute(actionUrl, HttpMethod.POST, requestCallback, responseExtractor);
+            outcome = Outcome.SUCCESS;
+            log.trace("POST call proceeded in {} ms.", elapsedMillis(startTime));
+            log.trace("Calling perun RPC (streaming):\n URL: {},\n params: {}\n returns: {}", actionUrl, map, result);
+            return result;
+        } catch (HttpClientErrorException ex) {
+            outcome = Outcome.PERUN_ERROR;
+            handleHttpClientErrorException(ex, actionUrl);
+            outcome = Outcome.NOT_EXISTS;
+            return readNullResponse(reader);
+        } catch (MissingFieldException e) {
+            outcome = Outcome.PERUN_ERROR;
+            throw e;
+        } catch (Exception e) {
+            throw new PerunConnectionException("Error when contacting Perun RPC", e);
+        } finally {
+            callFinished(manager, method, outcome, startTime);
+        }
+    }
+
+    /**
+     * Make multiple independent post calls to Perun RPC. Calls are executed concurrently on the bounded executor,
+     * so the number of parallel requests to Perun is limited. Failure of one call does not affect other calls,
+     * the exception is stored in the corresponding result.
+     * @param calls Calls to be made. Calls must not depend on each other.
+     * @return Results of the calls, in the same order as the calls have been passed.
+     */
+    public List<RpcCallResult> postBatch(@NonNull List<RpcCall> calls) {
+        if (batchExecutor == null || calls.size() <= 1) {
+            return calls.stream()
+                    .map(this::postIsolated)
+                    .collect(Collectors.toList());
+        }
+
+        log.trace("Calling perun RPC batch of {} calls", calls.size());
+        List<CompletableFuture<RpcCallResult>> futures = calls.stream()
+                .map(call -> CompletableFuture.supplyAsync(() -> postIsolated(call), batchExecutor))
+                .collect(Collectors.toList());
+
+        List<RpcCallResult> results = new ArrayList<>(calls.size());
+        for (CompletableFuture<RpcCallResult> future : futures) {
+            results.add(future.join());
+        }
+
+        return results;
+    }
+
+    /**
+     * Make multiple independent post calls to Perun RPC and read each response body as a stream of JSON tokens
+     * by the reader given for the call. Calls are executed concurrently the same way as in
+     * {@link #postBatch(List)}, no JsonNode trees are built.
+     * @param calls Calls to be made. Calls must not depend on each other.
+     * @param readers Readers of the responses, one for each call.
+     * @param <T> Type of the results.
+     * @return Objects produced by the readers, in the same order as the calls have been passed.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public <T> List<T> postBatch(@NonNull List<RpcCall> calls, @NonNull List<RpcResponseReader<T>> readers)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        if (calls.size() != readers.size()) {
+            throw new IllegalArgumentException("Number of readers does not match number of calls");
+        }
+
+        boolean concurrent = batchExecutor != null && calls.size() > 1;
+        List<CompletableFuture<T>> futures = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            RpcCall call = calls.get(i);
+            RpcResponseReader<T> reader = readers.get(i);
+            RpcSupplier<T> read = () -> post(call.getManager(), call.getMethod(), call.getParams(), reader);
+            futures.add(concurrent ? CompletableFuture.supplyAsync(() -> readIsolated(read), batchExecutor)
+                    : completedRead(read));
+        }
+
+        // all the calls are finished before the first failure is thrown
+        List<T> results = new ArrayList<>(calls.size());
+        Exception error = null;
+        RpcCall failedCall = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException e) {
+                if (error == null) {
+                    error = (Exception) e.getCause();
+                    failedCall = calls.get(i);
+                }
+            }
+        }
+        if (error != null) {
+            log.debug("Call {} in the batch has failed", failedCall, error);
+            RpcCallResult.failure(failedCall, error).getResponseOrThrow();
+        }
+
+        return results;
+    }
+
+    private byte[] postForBytes(String manager, String method, Map<String, Object> map)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        String actionUrl = this.perunUrl + '/' + manager + '/' + method;
+
+        long startTime = callStarted();
+        Outcome outcome = Outcome.CONNECTION_ERROR;
+        try {
+            log.trace("Calling perun RPC (raw):\n URL: {},\n params: {}", actionUrl, map);
+            RequestCallback requestCallback = restTemplate.httpEntityCallback(map, JsonNode.class);
+            ResponseExtractor<byte[]> responseExtractor = response -> StreamUtils.copyToByteArray(response.getBody());
+            byte[] result = restTemplate.execute(actionUrl, HttpMethod.POST, requestCallback, responseExtractor);
+            outcome = Outcome.SUCCESS;
+            log.trace("POST call proceeded in {} ms.", elapsedMillis(startTime));
+            return result == null || result.length == 0 ? NULL_RESPONSE_BYTES : result;
+        } catch (HttpClientErrorException ex) {
+            outcome = Outcome.PERUN_ERROR;
+            handleHttpClientErrorException(ex, actionUrl);
+            outcome = Outcome.NOT_EXISTS;
+            return NULL_RESPONSE_BYTES;
         } catch (Exception e) {
             throw new PerunConnectionException("Error when contacting Perun RPC", e);
+        } finally {
+            callFinished(manager, method, outcome, startTime);
+        }
+    }
+
+    private long callStarted() {
+        return metrics == null ? System.nanoTime() : metrics.start();
+    }
+
+    private void callFinished(String manager, String method, Outcome outcome, long startTime) {
+        if (metrics != null) {
+            // aborted attempts of the hedged calls fail with the interrupted thread
+            if (outcome == Outcome.CONNECTION_ERROR && Thread.currentThread().isInterrupted()) {
+                outcome = Outcome.CANCELLED;
+            }
+            metrics.record(manager, method, outcome, startTime);
+        }
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private <T> T guarded(RpcSupplier<T> call) throws PerunUnknownException, PerunConnectionException {
+        return guard == null ? call.get() : guard.execute(call);
+    }
+
+    private <T> T hedged(String manager, String method, RpcSupplier<T> call)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        return hedger == null ? call.get() : hedger.execute(manager + '/' + method, call);
+    }
+
+    private RpcCallResult postIsolated(RpcCall call) {
+        try {
+            return RpcCallResult.success(call, post(call.getManager(), call.getMethod(), call.getParams()));
+        } catch (Exception e) {
+            log.debug("Call {} in the batch has failed", call, e);
+            return RpcCallResult.failure(call, e);
+        }
+    }
+
+    private <T> T readIsolated(RpcSupplier<T> read) {
+        try {
+            return read.get();
+        } catch (PerunUnknownException | PerunConnectionException e) {
+            throw new CompletionException(e);
         }
     }
 
-    private JsonNode handleHttpClientErrorException(HttpClientErrorException ex, String actionUrl)
+    private <T> CompletableFuture<T> completedRead(RpcSupplier<T> read) {
+        try {
+            return CompletableFuture.completedFuture(read.get());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> T readResponse(InputStream body, RpcResponseReader<T> reader) throws IOException {
+        try (JsonParser parser = JsonCodec.getMapper().getFactory().createParser(body)) {
+            return reader.read(parser);
+        }
+    }
+
+    private <T> T readNullResponse(RpcResponseReader<T> reader) throws PerunConnectionException {
+        try (JsonParser parser = JsonCodec.getMapper().getFactory().createParser(NULL_RESPONSE)) {
+            return reader.read(parser);
+        } catch (IOException e) {
+            throw new PerunConnectionException("Error when reading empty Perun RPC response", e);
+        }
+    }
+
+    /**
+     * Map client error response of Perun RPC. Errors caused by not existing entities are mapped to JSON null,
+     * all other errors are thrown as PerunUnknownException.
+     * @param ex Exception representing the error response.
+     * @param actionUrl Called URL.
+     * @return JSON null node.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     */
+    static JsonNode handleHttpClientErrorException(HttpClientErrorException ex, String actionUrl)
             throws PerunUnknownException
     {
         MediaType contentType = null;
@@ -96,7 +413,7 @@ public class PerunConnectorRpc {
 
         if (contentType != null && "json".equalsIgnoreCase(contentType.getSubtype())) {
             try {
-                JsonNode json = new ObjectMapper().readValue(body,JsonNode.class);
+                JsonNode json = JsonCodec.readTree(body);
                 if (json.has("errorId") && json.has("name")) {
                     switch (json.get("name").asText()) {
                         case "ExtSourceNotExistsException":
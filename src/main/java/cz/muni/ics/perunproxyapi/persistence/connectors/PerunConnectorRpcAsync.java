@@ -0,0 +1,266 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcMetrics.Outcome;
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.RpcConnectorProperties;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Non-blocking connector for calling Perun RPC. Calls do not block the calling thread, the response is provided
+ * via CompletableFuture. Errors are mapped the same way as in the PerunConnectorRpc, the future completes
+ * exceptionally with PerunUnknownException or PerunConnectionException. Cancelling the returned future cancels
+ * the HTTP exchange and releases the permission of the guard.
+ */
+@Component
+@Slf4j
+public class PerunConnectorRpcAsync {
+
+    private final boolean enabled;
+    private final String perunUrl;
+    private final HttpClient httpClient;
+    private final String authorizationHeader;
+    private final RpcMethodTimeouts methodTimeouts;
+    private final RpcCallGuard guard;
+    private final boolean compressionEnabled;
+    private final RpcMetrics metrics;
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    @Autowired
+    public PerunConnectorRpcAsync(@Qualifier("perunAsyncHttpClient") HttpClient httpClient,
+                                  RpcConnectorProperties properties,
+                                  RpcCallGuard guard,
+                                  RpcMetrics metrics)
+    {
+        this(properties.isEnabled(), httpClient, properties.getPerunUrl() + '/' + properties.getSerializer(),
+                properties.getPerunUser(), properties.getPerunPassword(),
+                new RpcMethodTimeouts(properties.getMethodTimeouts(), properties.getSocketTimeout()), guard,
+                properties.isCompressionEnabled(), metrics);
+    }
+
+    public PerunConnectorRpcAsync(boolean enabled, @NonNull HttpClient httpClient, @NonNull String perunUrl,
+                                  String perunUser, String perunPassword, @NonNull Duration requestTimeout)
+    {
+        this(enabled, httpClient, perunUrl, perunUser, perunPassword, requestTimeout, null);
+    }
+
+    /**
+     * Create connector. If no guard is given, calls are neither limited nor protected by the circuit breaker.
+     * Compressed responses are accepted.
+     */
+    public PerunConnectorRpcAsync(boolean enabled, @NonNull HttpClient httpClient, @NonNull String perunUrl,
+                                  String perunUser, String perunPassword, @NonNull Duration requestTimeout,
+                                  RpcCallGuard guard)
+    {
+        this(enabled, httpClient, perunUrl, perunUser, perunPassword,
+                new RpcMethodTimeouts(null, (int) requestTimeout.toMillis()), guard, true, null);
+    }
+
+    private PerunConnectorRpcAsync(boolean enabled, @NonNull HttpClient httpClient, @NonNull String perunUrl,
+                                   String perunUser, String perunPassword, @NonNull RpcMethodTimeouts methodTimeouts,
+                                   RpcCallGuard guard, boolean compressionEnabled, RpcMetrics metrics)
+    {
+        if (!StringUtils.hasText(perunUrl)) {
+            throw new IllegalArgumentException("PerunURL cannot be null nor empty");
+        }
+        this.enabled = enabled;
+        this.httpClient = httpClient;
+        this.perunUrl = perunUrl;
+        this.methodTimeouts = methodTimeouts;
+        this.guard = guard;
+        this.compressionEnabled = compressionEnabled;
+        this.metrics = metrics;
+        if (perunUser != null && perunPassword != null) {
+            this.authorizationHeader = "Basic " +
+                    HttpHeaders.encodeBasicAuth(perunUser, perunPassword, StandardCharsets.ISO_8859_1);
+        } else {
+            this.authorizationHeader = null;
+        }
+    }
+
+    /**
+     * Make asynchronous post call to Perun RPC
+     * @param manager String value representing manager to be called. Use constants from this class.
+     * @param method Method to be called (i.e. getUserById)
+     * @param map Map of parameters to be passed as request body
+     * @return Future of the response from Perun. Completes exceptionally with PerunUnknownException
+     * (unknown exception thrown by Perun interface) or PerunConnectionException (problem with connection
+     * to Perun interface).
+     */
+    public CompletableFuture<JsonNode> post(@NonNull String manager, @NonNull String method,
+                                            @NonNull Map<String, Object> map)
+    {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(JsonNodeFactory.instance.nullNode());
+        }
+
+        String actionUrl = this.perunUrl + '/' + manager + '/' + method;
+
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(actionUrl))
+                    .timeout(Duration.ofMillis(methodTimeouts.getTimeout(manager, method)))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(JsonCodec.writer().writeValueAsBytes(map)));
+            if (authorizationHeader != null) {
+                builder.header(HttpHeaders.AUTHORIZATION, authorizationHeader);
+            }
+            if (compressionEnabled) {
+                builder.header(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+            }
+            request = builder.build();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(
+                    new PerunConnectionException("Error when contacting Perun RPC", e));
+        }
+
+        if (guard != null) {
+            HttpRequest guardedRequest = request;
+            return guard.executeAsync(() -> send(guardedRequest, manager, method, map));
+        }
+        return send(request, manager, method, map);
+    }
+
+    private CompletableFuture<JsonNode> send(HttpRequest request, String manager, String method,
+                                             Map<String, Object> map)
+    {
+        String actionUrl = request.uri().toString();
+        log.trace("Calling perun RPC asynchronously:\n URL: {},\n params: {}", actionUrl, map);
+        long startTime = metrics == null ? System.nanoTime() : metrics.start();
+        // body is received without blocking any thread, only the (possibly compressed) bytes are buffered
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<JsonNode> result = exchange
+                .handle((response, error) -> {
+                    if (error instanceof CancellationException) {
+                        callFinished(manager, method, Outcome.CANCELLED, startTime);
+                        throw (CancellationException) error;
+                    } else if (error != null) {
+                        callFinished(manager, method, Outcome.CONNECTION_ERROR, startTime);
+                        throw new CompletionException(
+                                new PerunConnectionException("Error when contacting Perun RPC", error));
+                    }
+                    log.trace("Async POST call proceeded in {} ms.",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                    JsonNode json;
+                    try {
+                        json = processResponse(response, actionUrl);
+                    } catch (CompletionException e) {
+                        callFinished(manager, method, e.getCause() instanceof PerunUnknownException
+                                ? Outcome.PERUN_ERROR : Outcome.CONNECTION_ERROR, startTime);
+                        throw e;
+                    }
+                    callFinished(manager, method, response.statusCode() < 300
+                            ? Outcome.SUCCESS : Outcome.NOT_EXISTS, startTime);
+                    log.trace("Calling perun RPC asynchronously:\n URL: {},\n params: {}\n returns: {}",
+                            actionUrl, map, json);
+                    return json;
+                });
+        // cancelling the call cancels the HTTP exchange instead of just the stage reading its response
+        result.whenComplete((json, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private void callFinished(String manager, String method, Outcome outcome, long startTime) {
+        if (metrics != null) {
+            metrics.record(manager, method, outcome, startTime);
+        }
+    }
+
+    private JsonNode processResponse(HttpResponse<byte[]> response, String actionUrl) {
+        int statusCode = response.statusCode();
+        String contentEncoding = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null);
+
+        // compressed body is decompressed while it is being parsed, decompressed content is not buffered
+        try (InputStream content = decodedContent(response.body(), contentEncoding)) {
+            if (statusCode >= 200 && statusCode < 300) {
+                JsonNode result = JsonCodec.readerFor(JsonNode.class).readTree(content);
+                return result == null || result.isMissingNode() ? JsonNodeFactory.instance.nullNode() : result;
+            }
+
+            HttpStatus status = HttpStatus.resolve(statusCode);
+            if (status != null && status.is4xxClientError()) {
+                HttpHeaders headers = new HttpHeaders();
+                response.headers().map().forEach(headers::addAll);
+                HttpClientErrorException ex = HttpClientErrorException.create(status, status.getReasonPhrase(),
+                        headers, readErrorBody(content), StandardCharsets.UTF_8);
+                try {
+                    return PerunConnectorRpc.handleHttpClientErrorException(ex, actionUrl);
+                } catch (PerunUnknownException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        } catch (IOException e) {
+            throw new CompletionException(new PerunConnectionException("Error when contacting Perun RPC", e));
+        }
+
+        log.error("HTTP ERROR {} URL {}", statusCode, actionUrl);
+        throw new CompletionException(new PerunConnectionException("Error when contacting Perun RPC, HTTP status "
+                + statusCode));
+    }
+
+    private byte[] readErrorBody(InputStream content) {
+        try {
+            return content.readAllBytes();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private InputStream decodedContent(byte[] body, String contentEncoding) throws IOException {
+        // empty body is not encoded even if the encoding is declared
+        if (body == null || body.length == 0) {
+            return InputStream.nullInputStream();
+        }
+
+        InputStream content = new ByteArrayInputStream(body);
+        if (contentEncoding == null) {
+            return content;
+        }
+        switch (contentEncoding.trim().toLowerCase()) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(content);
+            case "deflate":
+                return new InflaterInputStream(content);
+            default:
+                return content;
+        }
+    }
+
+}
@@ -4,27 +4,46 @@ import cz.muni.ics.perunproxyapi.persistence.connectors.properties.RpcConnectorP
 import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.protocol.HTTP;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.client.InterceptingClientHttpRequestFactory;
 import org.springframework.http.client.support.BasicAuthenticationInterceptor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class RpcBeans {
 
+    private static final long DEFAULT_KEEP_ALIVE = 20000L;
+
     private final RpcConnectorProperties rpcConnectorProperties;
 
     @Autowired
@@ -32,18 +51,24 @@ public class RpcBeans {
         this.rpcConnectorProperties = rpcConnectorProperties;
     }
 
+    @Bean(destroyMethod = "shutdown")
+    public InstrumentedConnectionManager rpcConnectionManager() {
+        PoolingHttpClientConnectionManager poolingConnectionManager = new PoolingHttpClientConnectionManager();
+        poolingConnectionManager.setMaxTotal(rpcConnectorProperties.getMaxConnections()); // max total connections
+        poolingConnectionManager.setDefaultMaxPerRoute(rpcConnectorProperties.getMaxConnectionsPerRoute());
+        // connections idle for longer time are checked before being leased, stale ones are reopened
+        poolingConnectionManager.setValidateAfterInactivity(rpcConnectorProperties.getPoolValidateAfterInactivity());
+        return new InstrumentedConnectionManager(poolingConnectionManager);
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
+    public RestTemplate restTemplate(InstrumentedConnectionManager rpcConnectionManager) {
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectionRequestTimeout(rpcConnectorProperties.getRequestTimeout()) // The timeout when requesting a connection from the connection manager
                 .setConnectTimeout(rpcConnectorProperties.getConnectTimeout()) // Determines the timeout in milliseconds until a connection is established
                 .setSocketTimeout(rpcConnectorProperties.getSocketTimeout()) // The timeout for waiting for data
                 .build();
 
-        PoolingHttpClientConnectionManager poolingConnectionManager = new PoolingHttpClientConnectionManager();
-        poolingConnectionManager.setMaxTotal(rpcConnectorProperties.getMaxConnections()); // max total connections
-        poolingConnectionManager.setDefaultMaxPerRoute(rpcConnectorProperties.getMaxConnectionsPerRoute());
-
         ConnectionKeepAliveStrategy connectionKeepAliveStrategy = (response, context) -> {
             HeaderElementIterator it = new BasicHeaderElementIterator
                     (response.headerIterator(HTTP.CONN_KEEP_ALIVE));
@@ -56,18 +81,46 @@ public class RpcBeans {
                     return Long.parseLong(value) * 1000;
                 }
             }
-            return 20000L;
+            return DEFAULT_KEEP_ALIVE;
         };
 
-        CloseableHttpClient httpClient = HttpClients.custom()
+        HttpClientBuilder httpClientBuilder = HttpClients.custom()
                 .setDefaultRequestConfig(requestConfig)
-                .setConnectionManager(poolingConnectionManager)
+                .setConnectionManager(rpcConnectionManager)
                 .setKeepAliveStrategy(connectionKeepAliveStrategy)
-                .build();
+                // background eviction of expired connections and connections idle for too long
+                .evictExpiredConnections()
+                .evictIdleConnections(rpcConnectorProperties.getPoolIdleTimeout(), TimeUnit.MILLISECONDS);
+        if (!rpcConnectorProperties.isCompressionEnabled()) {
+            // by default, gzip and deflate are accepted and responses are decompressed while being read
+            httpClientBuilder.disableContentCompression();
+        }
+        CloseableHttpClient httpClient = httpClientBuilder.build();
 
-        HttpComponentsClientHttpRequestFactory poolingRequestFactory = new HttpComponentsClientHttpRequestFactory();
+        HttpComponentsClientHttpRequestFactory poolingRequestFactory = new HttpComponentsClientHttpRequestFactory() {
+            @Override
+            protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+                HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+                // requests of the losing hedged attempts are aborted instead of being left to finish
+                RpcHedger.registerAbort(request::abort);
+                return request;
+            }
+        };
         poolingRequestFactory.setHttpClient(httpClient);
 
+        // per method socket timeouts
+        RpcMethodTimeouts methodTimeouts = new RpcMethodTimeouts(rpcConnectorProperties.getMethodTimeouts(),
+                rpcConnectorProperties.getSocketTimeout());
+        if (!methodTimeouts.isEmpty()) {
+            poolingRequestFactory.setHttpContextFactory((httpMethod, uri) -> {
+                HttpClientContext context = HttpClientContext.create();
+                context.setRequestConfig(RequestConfig.copy(requestConfig)
+                        .setSocketTimeout(methodTimeouts.getTimeoutForPath(uri.getPath()))
+                        .build());
+                return context;
+            });
+        }
+
         // basic auth
         List<ClientHttpRequestInterceptor> interceptors =
                 Collections.singletonList(new BasicAuthenticationInterceptor(rpcConnectorProperties.getPerunUser(),
@@ -78,4 +131,70 @@ public class RpcBeans {
         restTemplate.setRequestFactory(authenticatingRequestFactory);
         return restTemplate;
     }
+
+    /**
+     * Opens connections to Perun RPC before the application starts accepting traffic (runners are executed before
+     * the application is reported as ready).
+     */
+    @Bean
+    public ApplicationRunner rpcConnectionPoolWarmUp(InstrumentedConnectionManager rpcConnectionManager) {
+        return args -> {
+            int connections = rpcConnectorProperties.getPoolWarmUpConnections();
+            if (rpcConnectorProperties.isEnabled() && connections > 0) {
+                rpcConnectionManager.warmUp(rpcConnectorProperties.getPerunUrl(), connections,
+                        rpcConnectorProperties.getConnectTimeout(), Duration.ofMillis(DEFAULT_KEEP_ALIVE));
+            }
+        };
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService rpcBatchExecutor() {
+        int threads = rpcConnectorProperties.getBatchThreads();
+        // when the queue is full, the call is executed by the calling thread instead of being rejected
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(rpcConnectorProperties.getBatchQueueSize()),
+                new CustomizableThreadFactory("perun-rpc-batch-"),
+                callerRunsUnlessShutdown());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService rpcHedgeExecutor() {
+        int threads = rpcConnectorProperties.getHedgingThreads();
+        // calls are handed over directly, when all threads are busy the call is executed by the calling thread
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new CustomizableThreadFactory("perun-rpc-hedge-"),
+                callerRunsUnlessShutdown());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Bean
+    public RpcHedger rpcHedger(@Qualifier("rpcHedgeExecutor") ExecutorService rpcHedgeExecutor) {
+        return new RpcHedger(rpcHedgeExecutor, rpcConnectorProperties.getHedgingMinDelay());
+    }
+
+    @Bean
+    public HttpClient perunAsyncHttpClient() {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(rpcConnectorProperties.getConnectTimeout()))
+                .build();
+    }
+
+    /**
+     * Rejection handler executing the rejected task by the calling thread. After the executor has been shut down,
+     * the task is rejected, so the callers do not wait for it and the calls are not made during the shutdown.
+     *
+     * @return Rejection handler.
+     */
+    static RejectedExecutionHandler callerRunsUnlessShutdown() {
+        return (task, pool) -> {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            task.run();
+        };
+    }
+
 }
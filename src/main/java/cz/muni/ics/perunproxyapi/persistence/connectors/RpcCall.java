@@ -0,0 +1,30 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Single call of Perun RPC to be executed as a part of the batch.
+ *
+ * @see PerunConnectorRpc#postBatch(java.util.List)
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class RpcCall {
+
+    @NonNull private final String manager;
+    @NonNull private final String method;
+    @NonNull private final Map<String, Object> params;
+
+    public RpcCall(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> params) {
+        this.manager = manager;
+        this.method = method;
+        this.params = params;
+    }
+
+}
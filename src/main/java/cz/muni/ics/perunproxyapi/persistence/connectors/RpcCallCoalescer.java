@@ -0,0 +1,145 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical concurrent read calls to Perun RPC (single-flight). The first caller executes the call,
+ * callers arriving while the call is in progress wait for it and get the same result (or exception). Calls are
+ * identical when the manager, the method and the parameters are equal. Parameters are compared as maps, so the
+ * order in which they have been inserted does not matter.
+ *
+ * Only read methods are coalesced, see {@link #isReadMethod(String)}. Results are shared between the callers
+ * and must be treated as read-only.
+ */
+@Component
+@Slf4j
+public class RpcCallCoalescer implements MeterBinder {
+
+    public static final String METRIC_NAME = "perun.rpc.coalescing.calls";
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executedCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    /**
+     * Check if the method of Perun RPC only reads data and therefore can be coalesced.
+     * @param method Name of the method.
+     * @return TRUE if the method is a read method (getX, isX), FALSE otherwise.
+     */
+    public static boolean isReadMethod(@NonNull String method) {
+        return method.startsWith("get") || method.startsWith("is");
+    }
+
+    /**
+     * Execute the call, or wait for the result of the identical call already in progress.
+     * @param call Call to be executed, used as the key.
+     * @param resultType Type of the result. Calls with the same key but different result type are not coalesced.
+     * @param supplier Supplier making the actual call.
+     * @param <T> Type of the result.
+     * @return Result of the call.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public <T> T execute(@NonNull RpcCall call, @NonNull Class<T> resultType, @NonNull RpcSupplier<T> supplier)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        Key key = new Key(call, resultType);
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalescedCalls.increment();
+            log.trace("Call {} coalesced with the call in progress", call);
+            return resultType.cast(awaitRunning(running));
+        }
+
+        executedCalls.increment();
+        try {
+            T result = supplier.get();
+            own.complete(result);
+            return result;
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Get number of calls which have been actually executed.
+     * @return Number of executed calls.
+     */
+    public long getExecutedCalls() {
+        return executedCalls.sum();
+    }
+
+    /**
+     * Get number of calls which have been deduplicated, i.e. have got the result of the identical call
+     * in progress.
+     * @return Number of deduplicated calls.
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder(METRIC_NAME, executedCalls, LongAdder::sum)
+                .tag("result", "executed")
+                .description("Read calls to Perun RPC actually executed")
+                .register(registry);
+        FunctionCounter.builder(METRIC_NAME, coalescedCalls, LongAdder::sum)
+                .tag("result", "coalesced")
+                .description("Read calls to Perun RPC served by the identical call in progress")
+                .register(registry);
+    }
+
+    private Object awaitRunning(CompletableFuture<Object> running)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PerunConnectionException("Interrupted while waiting for Perun RPC call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PerunUnknownException) {
+                throw (PerunUnknownException) cause;
+            } else if (cause instanceof PerunConnectionException) {
+                throw (PerunConnectionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PerunConnectionException("Error when contacting Perun RPC", cause);
+        }
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+        private final RpcCall call;
+        private final Class<?> resultType;
+
+        private Key(RpcCall call, Class<?> resultType) {
+            this.call = call;
+            this.resultType = resultType;
+        }
+    }
+
+}
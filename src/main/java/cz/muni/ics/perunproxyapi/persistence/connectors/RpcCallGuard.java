@@ -0,0 +1,219 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.RpcConnectorProperties;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunCallRejectedException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Guards the calls to Perun RPC by the circuit breaker and the adaptive concurrency limiter. Calls are rejected
+ * with PerunCallRejectedException without contacting Perun when the circuit is open or when the limit of
+ * concurrent calls has been reached. Only connection failures (PerunConnectionException) are considered as
+ * failures, errors reported by Perun mean that Perun is responding.
+ */
+@Component
+@Slf4j
+public class RpcCallGuard implements MeterBinder {
+
+    private final RpcCircuitBreaker circuitBreaker;
+    private final AimdConcurrencyLimiter limiter;
+    private final long limiterMaxWait;
+    @Getter private final boolean failoverToLdap;
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    @Autowired
+    public RpcCallGuard(@NonNull RpcConnectorProperties properties) {
+        this(properties.isCircuitBreakerEnabled()
+                        ? new RpcCircuitBreaker(properties.getCircuitBreakerFailureThreshold(),
+                                properties.getCircuitBreakerOpenDuration())
+                        : null,
+                properties.isConcurrencyLimitEnabled()
+                        ? new AimdConcurrencyLimiter(properties.getConcurrencyLimitInitial(),
+                                properties.getConcurrencyLimitMin(), properties.getConcurrencyLimitMax(),
+                                properties.getConcurrencyLimitLatencyThreshold())
+                        : null,
+                properties.getConcurrencyLimitMaxWait(),
+                properties.isFailoverToLdap());
+    }
+
+    /**
+     * Create guard. Pass NULL as circuit breaker or limiter to disable it.
+     */
+    public RpcCallGuard(RpcCircuitBreaker circuitBreaker, AimdConcurrencyLimiter limiter, long limiterMaxWait,
+                        boolean failoverToLdap)
+    {
+        this.circuitBreaker = circuitBreaker;
+        this.limiter = limiter;
+        this.limiterMaxWait = limiterMaxWait;
+        this.failoverToLdap = failoverToLdap;
+    }
+
+    /**
+     * Execute the call if it is permitted.
+     * @param call Call to Perun RPC.
+     * @param <T> Type of the result.
+     * @return Result of the call.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs,
+     * PerunCallRejectedException when the call has been rejected.
+     */
+    public <T> T execute(@NonNull RpcSupplier<T> call) throws PerunUnknownException, PerunConnectionException {
+        acquire();
+        long startTime = System.nanoTime();
+        boolean connectionFailed = false;
+        boolean cancelled = false;
+        try {
+            return call.get();
+        } catch (PerunConnectionException e) {
+            // call aborted by interrupting its thread (i.e. losing hedged attempt) is not a failure of Perun
+            cancelled = Thread.currentThread().isInterrupted();
+            connectionFailed = !cancelled;
+            throw e;
+        } finally {
+            if (cancelled) {
+                releaseIgnored();
+            } else {
+                release(startTime, connectionFailed);
+            }
+        }
+    }
+
+    /**
+     * Execute the asynchronous call if it is permitted. Permission is held until the returned future completes.
+     * Cancelling the returned future cancels the future of the call and releases the permission.
+     * @param call Call to Perun RPC.
+     * @param <T> Type of the result.
+     * @return Future of the result of the call. Completes exceptionally with PerunCallRejectedException when
+     * the call has been rejected.
+     */
+    public <T> CompletableFuture<T> executeAsync(@NonNull Supplier<CompletableFuture<T>> call) {
+        try {
+            acquire();
+        } catch (PerunCallRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startTime = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            release(startTime, false);
+            throw e;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        CompletableFuture<T> guarded = future.whenComplete((result, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (cause instanceof CancellationException) {
+                releaseIgnored();
+            } else {
+                release(startTime, cause instanceof PerunConnectionException);
+            }
+        });
+        // cancelling the returned future cancels the call and releases the permission without waiting for it
+        guarded.whenComplete((result, e) -> {
+            if (guarded.isCancelled()) {
+                future.cancel(true);
+                if (released.compareAndSet(false, true)) {
+                    releaseIgnored();
+                }
+            }
+        });
+        return guarded;
+    }
+
+    /**
+     * Check if Perun RPC is considered available, i.e. the calls are not rejected by the circuit breaker.
+     * @return TRUE if available, FALSE otherwise.
+     */
+    public boolean isAvailable() {
+        return circuitBreaker == null || circuitBreaker.isCallPermitted();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("perun.rpc.rejected.calls", rejectedCalls, LongAdder::sum)
+                .description("Calls to Perun RPC rejected by the circuit breaker or the concurrency limiter")
+                .register(registry);
+        if (circuitBreaker != null) {
+            Gauge.builder("perun.rpc.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+                    .description("State of the Perun RPC circuit breaker (0 - closed, 1 - open, 2 - half open)")
+                    .register(registry);
+        }
+        if (limiter != null) {
+            Gauge.builder("perun.rpc.concurrency.limit", limiter, AimdConcurrencyLimiter::getLimit)
+                    .description("Current limit of concurrent calls to Perun RPC")
+                    .register(registry);
+            Gauge.builder("perun.rpc.concurrency.in_flight", limiter, AimdConcurrencyLimiter::getInFlight)
+                    .description("Calls to Perun RPC in progress")
+                    .register(registry);
+        }
+    }
+
+    private void acquire() throws PerunCallRejectedException {
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            rejectedCalls.increment();
+            throw new PerunCallRejectedException("Perun RPC is unavailable, circuit breaker is open");
+        }
+        if (limiter != null && !limiter.tryAcquire(limiterMaxWait)) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onIgnored();
+            }
+            rejectedCalls.increment();
+            log.warn("Call to Perun RPC rejected, limit of {} concurrent calls reached", limiter.getLimit());
+            throw new PerunCallRejectedException("Limit of concurrent calls to Perun RPC has been reached");
+        }
+    }
+
+    private void releaseIgnored() {
+        if (circuitBreaker != null) {
+            circuitBreaker.onIgnored();
+        }
+        if (limiter != null) {
+            limiter.onIgnored();
+        }
+    }
+
+    private void release(long startTime, boolean connectionFailed) {
+        if (connectionFailed) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure();
+            }
+            if (limiter != null) {
+                limiter.onDropped();
+            }
+        } else {
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess();
+            }
+            if (limiter != null) {
+                limiter.onSuccess(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+}
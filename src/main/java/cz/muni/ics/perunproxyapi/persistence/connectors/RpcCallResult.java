@@ -0,0 +1,64 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Result of the single call executed as a part of the batch. Contains either the response from Perun, or
+ * the exception the call has failed with. Failure of one call does not affect other calls in the batch.
+ *
+ * @see PerunConnectorRpc#postBatch(java.util.List)
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class RpcCallResult {
+
+    @NonNull private final RpcCall call;
+    private final JsonNode response;
+    private final Exception error;
+
+    private RpcCallResult(@NonNull RpcCall call, JsonNode response, Exception error) {
+        this.call = call;
+        this.response = response;
+        this.error = error;
+    }
+
+    public static RpcCallResult success(@NonNull RpcCall call, JsonNode response) {
+        return new RpcCallResult(call, response, null);
+    }
+
+    public static RpcCallResult failure(@NonNull RpcCall call, @NonNull Exception error) {
+        return new RpcCallResult(call, null, error);
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Get response of the call, or rethrow the exception the call has failed with.
+     * @return Response from Perun.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public JsonNode getResponseOrThrow() throws PerunUnknownException, PerunConnectionException {
+        if (error instanceof PerunUnknownException) {
+            throw (PerunUnknownException) error;
+        } else if (error instanceof PerunConnectionException) {
+            throw (PerunConnectionException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw new PerunConnectionException("Error when contacting Perun RPC", error);
+        }
+
+        return response;
+    }
+
+}
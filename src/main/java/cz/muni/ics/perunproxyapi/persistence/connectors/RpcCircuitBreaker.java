@@ -0,0 +1,126 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker protecting the callers from waiting for unavailable Perun RPC.
+ *
+ * CLOSED - calls are permitted, consecutive connection failures are counted. When the threshold is reached,
+ * the circuit opens.
+ * OPEN - calls are rejected until the open duration elapses, then the circuit becomes HALF_OPEN.
+ * HALF_OPEN - single trial call is permitted. If it succeeds, the circuit closes, otherwise it opens again.
+ */
+@Slf4j
+public class RpcCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialInProgress = false;
+
+    public RpcCircuitBreaker(int failureThreshold, long openDurationMillis) {
+        this(failureThreshold, openDurationMillis, System::nanoTime);
+    }
+
+    RpcCircuitBreaker(int failureThreshold, long openDurationMillis, LongSupplier nanoClock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Acquire permission to make the call. Each acquired permission has to be followed by a call of one of
+     * onSuccess(), onFailure(), onIgnored().
+     * @return TRUE if the call can be made, FALSE if it has to be rejected.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && openDurationElapsed()) {
+            log.info("Perun RPC circuit breaker is half open, trying a call");
+            state = State.HALF_OPEN;
+            trialInProgress = false;
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!trialInProgress) {
+                    trialInProgress = true;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check if the call would be permitted, without acquiring the permission.
+     * @return TRUE if the call would be permitted, FALSE otherwise.
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                return !trialInProgress;
+            default:
+                return openDurationElapsed();
+        }
+    }
+
+    /**
+     * Record the successful call (Perun has responded).
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInProgress = false;
+        if (state != State.CLOSED) {
+            log.info("Perun RPC circuit breaker is closed");
+            state = State.CLOSED;
+        }
+    }
+
+    /**
+     * Record the failed call (Perun could not be contacted).
+     */
+    public synchronized void onFailure() {
+        trialInProgress = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Perun RPC circuit breaker is open after {} consecutive failures", consecutiveFailures);
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+        }
+    }
+
+    /**
+     * Record the call which has not been made even though the permission has been acquired.
+     */
+    public synchronized void onIgnored() {
+        trialInProgress = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private boolean openDurationElapsed() {
+        return nanoClock.getAsLong() - openedAt >= openDurationNanos;
+    }
+
+}
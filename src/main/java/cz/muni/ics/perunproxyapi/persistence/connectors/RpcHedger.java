@@ -0,0 +1,214 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes idempotent read calls to Perun RPC with hedging. When the call does not finish within the delay
+ * computed from the 95th percentile of recent latencies of the same method, a duplicate call is fired.
+ * The first successful response wins and the other call is cancelled. Requests registered by the losing call
+ * via {@link #registerAbort(Runnable)} are aborted, so the HTTP exchange does not keep running in the background.
+ *
+ * No call is hedged until enough latencies of the method have been observed.
+ */
+@Slf4j
+public class RpcHedger implements MeterBinder {
+
+    private static final int WINDOW_SIZE = 128;
+    private static final int MIN_SAMPLES = 20;
+    private static final ThreadLocal<Attempt<?>> CURRENT_ATTEMPT = new ThreadLocal<>();
+
+    private final ExecutorService executor;
+    private final long minDelayMillis;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final LongAdder hedgedCalls = new LongAdder();
+
+    public RpcHedger(@NonNull ExecutorService executor, long minDelayMillis) {
+        this.executor = executor;
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    /**
+     * Execute the call, hedging it when it is slow.
+     * @param methodKey Key of the method (manager/method) the latencies are tracked for.
+     * @param call Call to be executed. Must be idempotent.
+     * @param <T> Type of the result.
+     * @return Result of the first successful call.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    public <T> T execute(@NonNull String methodKey, @NonNull RpcSupplier<T> call)
+            throws PerunUnknownException, PerunConnectionException
+    {
+        LatencyWindow window = latencies.computeIfAbsent(methodKey, k -> new LatencyWindow());
+        long delay = window.getHedgingDelay(minDelayMillis);
+
+        ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Attempt<T>> attempts = new ArrayList<>(2);
+        long startTime = System.nanoTime();
+        try {
+            attempts.add(new Attempt<>(completionService, call));
+            Future<T> finished = delay < 0 ? completionService.take()
+                    : completionService.poll(delay, TimeUnit.MILLISECONDS);
+            if (finished == null) {
+                log.debug("Call of {} is slower than {} ms, hedging", methodKey, delay);
+                hedgedCalls.increment();
+                attempts.add(new Attempt<>(completionService, call));
+                finished = completionService.take();
+            }
+
+            T result;
+            try {
+                result = finished.get();
+            } catch (ExecutionException e) {
+                if (attempts.size() == 1) {
+                    throw e;
+                }
+                // first attempt has failed, result of the other one is used
+                result = completionService.take().get();
+            }
+            window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PerunConnectionException("Interrupted while waiting for Perun RPC call", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            attempts.forEach(Attempt::cancel);
+        }
+    }
+
+    /**
+     * Register the abort of the request made by the current thread. When the thread is executing an attempt
+     * of the hedged call and the attempt is cancelled, the abort is run. Does nothing outside of the attempts.
+     * @param abort Action aborting the request.
+     */
+    public static void registerAbort(@NonNull Runnable abort) {
+        Attempt<?> attempt = CURRENT_ATTEMPT.get();
+        if (attempt != null) {
+            attempt.registerAbort(abort);
+        }
+    }
+
+    public long getHedgedCalls() {
+        return hedgedCalls.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("perun.rpc.hedged.calls", hedgedCalls, LongAdder::sum)
+                .description("Read calls to Perun RPC for which a hedged request has been fired")
+                .register(registry);
+    }
+
+    private PerunConnectionException unwrap(Throwable cause) throws PerunUnknownException {
+        if (cause instanceof PerunUnknownException) {
+            throw (PerunUnknownException) cause;
+        } else if (cause instanceof PerunConnectionException) {
+            return (PerunConnectionException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new PerunConnectionException("Error when contacting Perun RPC", cause);
+    }
+
+    /**
+     * Single attempt of the hedged call with the aborts of the requests it has made.
+     */
+    private static class Attempt<T> {
+
+        private final List<Runnable> aborts = new ArrayList<>(1);
+        private final Future<T> future;
+        private boolean cancelled = false;
+
+        Attempt(ExecutorCompletionService<T> completionService, RpcSupplier<T> call) {
+            this.future = completionService.submit(() -> this.run(call));
+        }
+
+        private T run(RpcSupplier<T> call) throws PerunUnknownException, PerunConnectionException {
+            Attempt<?> previous = CURRENT_ATTEMPT.get();
+            CURRENT_ATTEMPT.set(this);
+            try {
+                return call.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT_ATTEMPT.remove();
+                } else {
+                    CURRENT_ATTEMPT.set(previous);
+                }
+            }
+        }
+
+        synchronized void registerAbort(Runnable abort) {
+            if (cancelled) {
+                abort.run();
+            } else {
+                aborts.add(abort);
+            }
+        }
+
+        void cancel() {
+            if (future.isDone()) {
+                return;
+            }
+            future.cancel(true);
+            synchronized (this) {
+                cancelled = true;
+                aborts.forEach(Runnable::run);
+                aborts.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Sliding window of the recent latencies of a method.
+     */
+    private static class LatencyWindow {
+
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count = 0;
+        private int next = 0;
+
+        synchronized void record(long latencyMillis) {
+            samples[next] = latencyMillis;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+        }
+
+        /**
+         * @return Delay in milliseconds, negative when the call should not be hedged.
+         */
+        synchronized long getHedgingDelay(long minDelayMillis) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            long p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            return Math.max(minDelayMillis, p95);
+        }
+
+    }
+
+}
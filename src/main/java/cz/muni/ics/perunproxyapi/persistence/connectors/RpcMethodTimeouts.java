@@ -0,0 +1,61 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Timeouts (in milliseconds) configured for particular managers or methods of Perun RPC. Keys are either
+ * "manager/method" (i.e. searcher/getFacilities) or "manager" (i.e. searcher). Configuration for the method
+ * takes precedence over the configuration for the manager, when none matches, the default timeout is used.
+ */
+public class RpcMethodTimeouts {
+
+    private final Map<String, Integer> timeouts;
+    private final int defaultTimeout;
+
+    public RpcMethodTimeouts(Map<String, Integer> timeouts, int defaultTimeout) {
+        this.timeouts = timeouts == null ? new HashMap<>() : new HashMap<>(timeouts);
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * Get timeout for the method.
+     * @param manager Manager of the method.
+     * @param method Name of the method.
+     * @return Timeout in milliseconds.
+     */
+    public int getTimeout(@NonNull String manager, @NonNull String method) {
+        Integer timeout = timeouts.get(manager + '/' + method);
+        if (timeout == null) {
+            timeout = timeouts.get(manager);
+        }
+
+        return timeout == null ? defaultTimeout : timeout;
+    }
+
+    /**
+     * Get timeout for the method called via URL path (ending with .../manager/method).
+     * @param path Path of the URL.
+     * @return Timeout in milliseconds.
+     */
+    public int getTimeoutForPath(@NonNull String path) {
+        int methodStart = path.lastIndexOf('/');
+        int managerStart = methodStart > 0 ? path.lastIndexOf('/', methodStart - 1) : -1;
+        if (methodStart < 0 || managerStart < 0) {
+            return defaultTimeout;
+        }
+
+        return getTimeout(path.substring(managerStart + 1, methodStart), path.substring(methodStart + 1));
+    }
+
+    /**
+     * Check if any timeout other than the default one has been configured.
+     * @return TRUE if there is no specific timeout, FALSE otherwise.
+     */
+    public boolean isEmpty() {
+        return timeouts.isEmpty();
+    }
+
+}
@@ -0,0 +1,150 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of the calls to Perun RPC. For each manager and method, latency histogram (timer "perun.rpc.calls")
+ * is recorded with the outcome of the call, failed calls are also counted by "perun.rpc.errors". Number of calls
+ * in progress is published as gauge "perun.rpc.in_flight".
+ *
+ * Meters are created on the first call with the given manager, method and outcome and then reused, so recording
+ * of the call does not allocate.
+ */
+@Component
+public class RpcMetrics {
+
+    public static final String CALLS_METRIC = "perun.rpc.calls";
+    public static final String ERRORS_METRIC = "perun.rpc.errors";
+    public static final String IN_FLIGHT_METRIC = "perun.rpc.in_flight";
+
+    private static final Duration MIN_EXPECTED_LATENCY = Duration.ofMillis(1);
+    private static final Duration MAX_EXPECTED_LATENCY = Duration.ofMinutes(2);
+
+    /**
+     * Outcome of the call.
+     */
+    public enum Outcome {
+        SUCCESS("success"),
+        NOT_EXISTS("not_exists"),
+        PERUN_ERROR("perun_error"),
+        CONNECTION_ERROR("connection_error"),
+        // call aborted by the caller, e.g. the losing attempt of the hedged call, is not an error
+        CANCELLED("cancelled");
+
+        @Getter
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<String, ConcurrentMap<String, MethodMeters>> meters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RpcMetrics(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder(IN_FLIGHT_METRIC, inFlight, AtomicInteger::get)
+                .description("Calls to Perun RPC in progress")
+                .register(registry);
+    }
+
+    /**
+     * Mark the start of the call.
+     * @return Start time of the call to be passed to {@link #record(String, String, Outcome, long)}.
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the finished call.
+     * @param manager Called manager.
+     * @param method Called method.
+     * @param outcome Outcome of the call.
+     * @param startTime Start time returned by {@link #start()}.
+     */
+    public void record(@NonNull String manager, @NonNull String method, @NonNull Outcome outcome, long startTime) {
+        long duration = System.nanoTime() - startTime;
+        inFlight.decrementAndGet();
+        getMethodMeters(manager, method).record(outcome, duration);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private MethodMeters getMethodMeters(String manager, String method) {
+        // plain get first, computeIfAbsent with capturing lambda allocates on each call
+        ConcurrentMap<String, MethodMeters> managerMeters = meters.get(manager);
+        if (managerMeters == null) {
+            managerMeters = meters.computeIfAbsent(manager, m -> new ConcurrentHashMap<>());
+        }
+        MethodMeters methodMeters = managerMeters.get(method);
+        if (methodMeters == null) {
+            methodMeters = managerMeters.computeIfAbsent(method, m -> new MethodMeters(manager, m));
+        }
+        return methodMeters;
+    }
+
+    private class MethodMeters {
+
+        private final String manager;
+        private final String method;
+        // meters are created lazily, registering the same meter twice returns the already registered one
+        private final Timer[] timers = new Timer[Outcome.values().length];
+        private final Counter[] errors = new Counter[Outcome.values().length];
+
+        MethodMeters(String manager, String method) {
+            this.manager = manager;
+            this.method = method;
+        }
+
+        void record(Outcome outcome, long durationNanos) {
+            int i = outcome.ordinal();
+            Timer timer = timers[i];
+            if (timer == null) {
+                timer = Timer.builder(CALLS_METRIC)
+                        .description("Latency of the calls to Perun RPC")
+                        .tags("manager", manager, "method", method, "outcome", outcome.getTag())
+                        .publishPercentileHistogram()
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .minimumExpectedValue(MIN_EXPECTED_LATENCY)
+                        .maximumExpectedValue(MAX_EXPECTED_LATENCY)
+                        .register(registry);
+                timers[i] = timer;
+            }
+            timer.record(durationNanos, TimeUnit.NANOSECONDS);
+
+            if (outcome != Outcome.SUCCESS && outcome != Outcome.CANCELLED) {
+                Counter counter = errors[i];
+                if (counter == null) {
+                    counter = Counter.builder(ERRORS_METRIC)
+                            .description("Failed calls to Perun RPC and calls for not existing entities")
+                            .tags("manager", manager, "method", method, "type", outcome.getTag())
+                            .register(registry);
+                    errors[i] = counter;
+                }
+                counter.increment();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reader consuming the body of Perun RPC response as a stream of JSON tokens.
+ * Allows mapping the response to the object models without building an intermediate JsonNode tree.
+ *
+ * @param <T> Type of the object produced from the response.
+ */
+@FunctionalInterface
+public interface RpcResponseReader<T> {
+
+    /**
+     * Read the response. Parser is positioned before the first token of the response body. Responses
+     * representing "no result" (disabled connector, not existing entity) are passed as JSON null.
+     *
+     * @param parser Parser over the response body.
+     * @return Object read from the response.
+     * @throws IOException Thrown when the response cannot be read or parsed.
+     */
+    T read(JsonParser parser) throws IOException;
+
+}
@@ -0,0 +1,22 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+
+/**
+ * Call to Perun RPC executed by the connector infrastructure (coalescing, circuit breaker, ...).
+ *
+ * @param <T> Type of the result.
+ */
+@FunctionalInterface
+public interface RpcSupplier<T> {
+
+    /**
+     * Make the call.
+     * @return Result of the call.
+     * @throws PerunUnknownException Thrown as wrapper of unknown exception thrown by Perun interface.
+     * @throws PerunConnectionException Thrown when problem with connection to Perun interface occurs.
+     */
+    T get() throws PerunUnknownException, PerunConnectionException;
+
+}
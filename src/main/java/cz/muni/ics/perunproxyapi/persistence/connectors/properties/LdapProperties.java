@@ -3,6 +3,7 @@ package cz.muni.ics.perunproxyapi.persistence.connectors.properties;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -10,7 +11,9 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Configuration properties for LDAP Connector.
@@ -32,6 +35,14 @@ public class LdapProperties {
     private int timeout = 30000;
     private boolean useTLS = false;
     private int connectionPoolSize = 20;
+    private int pageSize = 500;
+    private boolean loadBalancingEnabled = false;
+    private String loadBalancingStrategy = "least_outstanding";
+    private long healthCheckInterval = 10000;
+    private double hostEjectErrorRate = 0.5;
+    private long hostEjectLatencyP99 = 5000;
+    private int hostEjectMinRequests = 20;
+    @NotNull private Replica replica = new Replica();
 
     @PostConstruct
     public void afterInit() {
@@ -49,7 +60,31 @@ public class LdapProperties {
                 ", timeout=" + timeout +
                 ", useTLS=" + useTLS +
                 ", connectionPoolSize=" + connectionPoolSize +
+                ", pageSize=" + pageSize +
+                ", loadBalancingEnabled=" + loadBalancingEnabled +
+                ", loadBalancingStrategy='" + loadBalancingStrategy + '\'' +
+                ", healthCheckInterval=" + healthCheckInterval +
+                ", hostEjectErrorRate=" + hostEjectErrorRate +
+                ", hostEjectLatencyP99=" + hostEjectLatencyP99 +
+                ", hostEjectMinRequests=" + hostEjectMinRequests +
+                ", replica=" + replica +
                 '}';
     }
 
+    /**
+     * Configuration properties of the local replica of LDAP.
+     */
+    @Getter
+    @Setter
+    @ToString
+    @EqualsAndHashCode
+    public static class Replica {
+        private boolean enabled = false;
+        private String syncMode = "content_sync";
+        private long syncInterval = 60000;
+        private int pageSize = 500;
+        private long maxStaleness = 600000;
+        @NotNull private List<String> indexedAttributes = new ArrayList<>();
+    }
+
 }
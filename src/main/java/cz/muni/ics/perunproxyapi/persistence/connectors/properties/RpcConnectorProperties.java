@@ -11,6 +11,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties(prefix = "connector.rpc")
@@ -31,6 +33,30 @@ public class RpcConnectorProperties {
     private int socketTimeout = 60000;
     private int maxConnections = 20;
     private int maxConnectionsPerRoute = 18;
+    private long poolIdleTimeout = 30000;
+    private int poolValidateAfterInactivity = 2000;
+    private int poolWarmUpConnections = 0;
+    private int batchThreads = 10;
+    private int batchQueueSize = 200;
+    private boolean coalesceReads = true;
+    private boolean circuitBreakerEnabled = false;
+    private int circuitBreakerFailureThreshold = 5;
+    private long circuitBreakerOpenDuration = 30000;
+    private boolean concurrencyLimitEnabled = false;
+    private int concurrencyLimitInitial = 18;
+    private int concurrencyLimitMin = 2;
+    private int concurrencyLimitMax = 18;
+    private long concurrencyLimitLatencyThreshold = 5000;
+    private long concurrencyLimitMaxWait = 1000;
+    private boolean failoverToLdap = false;
+    private Map<String, Integer> methodTimeouts = new HashMap<>();
+    private boolean hedgingEnabled = false;
+    private long hedgingMinDelay = 50;
+    private int hedgingThreads = 20;
+    private boolean compressionEnabled = true;
+    private long membersGroupCacheTtl = 3600000;
+    private long membershipCacheTtl = 3600000;
+    private boolean concurrentUidProbing = false;
 
     public void setPerunUrl(@NonNull String perunUrl) {
         if (perunUrl.endsWith("/")) {
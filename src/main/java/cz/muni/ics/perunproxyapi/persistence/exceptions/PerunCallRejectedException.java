@@ -0,0 +1,21 @@
+package cz.muni.ics.perunproxyapi.persistence.exceptions;
+
+/**
+ * Represents a call to Perun interface which has been rejected without contacting Perun, because the interface
+ * is considered unavailable (open circuit breaker) or overloaded (limit of concurrent calls reached).
+ */
+public class PerunCallRejectedException extends PerunConnectionException {
+
+    public PerunCallRejectedException() {
+        super();
+    }
+
+    public PerunCallRejectedException(String s) {
+        super(s);
+    }
+
+    public PerunCallRejectedException(String s, Throwable throwable) {
+        super(s, throwable);
+    }
+
+}
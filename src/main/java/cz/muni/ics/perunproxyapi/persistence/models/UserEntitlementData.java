@@ -0,0 +1,29 @@
+package cz.muni.ics.perunproxyapi.persistence.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Data the entitlements of the user on the facility are built from. User or facility is NULL when it has not been
+ * found, the lists are empty in such case.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class UserEntitlementData {
+
+    private final User user;
+    private final Facility facility;
+    // groups of the user assigned to the facility
+    @NonNull private final List<Group> groups;
+    // capabilities of the facility resources assigned to the groups and of the facility itself
+    @NonNull private final List<String> capabilities;
+    @NonNull private final List<String> forwardedEntitlements;
+
+}
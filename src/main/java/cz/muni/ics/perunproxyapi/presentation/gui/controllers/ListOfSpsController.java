@@ -1,8 +1,8 @@
 package cz.muni.ics.perunproxyapi.presentation.gui.controllers;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.muni.ics.perunproxyapi.application.facade.GuiFacade;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
 import cz.muni.ics.perunproxyapi.persistence.models.listOfServices.ListOfServicesDAO;
@@ -55,11 +55,9 @@ public class ListOfSpsController {
     public ModelAndView getListOfSps() throws PerunUnknownException, PerunConnectionException, IOException {
         ListOfServicesDAO listOfSps = facade.getListOfSps();
 
-        ObjectMapper mapper = new ObjectMapper();
-
         ModelAndView mav = new ModelAndView(LIST_OF_SPS);
         mav.addObject("statistics", listOfSps.getStatistics());
-        mav.addObject("statisticsJson", mapper.convertValue(listOfSps.getStatistics(), JsonNode.class));
+        mav.addObject("statisticsJson", JsonCodec.valueToTree(listOfSps.getStatistics()));
         mav.addObject("services", listOfSps.getServices());
         mav.addObject("attributes", listOfSps.getAttributesToShow());
         mav.addObject("showOidc", listOfSps.isShowOidc());
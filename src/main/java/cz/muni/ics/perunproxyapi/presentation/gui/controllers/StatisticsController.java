@@ -1,8 +1,8 @@
 package cz.muni.ics.perunproxyapi.presentation.gui.controllers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import cz.muni.ics.perunproxyapi.application.facade.GuiFacade;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.EntityNotFoundException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.InvalidRequestParameterException;
 import cz.muni.ics.perunproxyapi.presentation.DTOModels.statistics.StatisticsDTO;
@@ -104,13 +104,12 @@ public class StatisticsController {
     }
 
     private void addDataToModel(ModelAndView mav, StatisticsDTO data) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        mav.addObject(IDP_DATA, mapper.writeValueAsString(data.getIdpData()));
+        mav.addObject(IDP_DATA, JsonCodec.writeValueAsString(data.getIdpData()));
         mav.addObject(IDP_LOGINS_CNT, data.getLoginsIdpTotal());
-        mav.addObject(RP_DATA, mapper.writeValueAsString(data.getRpData()));
+        mav.addObject(RP_DATA, JsonCodec.writeValueAsString(data.getRpData()));
         mav.addObject(RP_LOGINS_CNT, data.getLoginsRpTotal());
-        mav.addObject(LOGINS_DATA, mapper.writeValueAsString(data.getLoginsData()));
-        mav.addObject(LABEL, mapper.writeValueAsString(data.getLabel()));
+        mav.addObject(LOGINS_DATA, JsonCodec.writeValueAsString(data.getLoginsData()));
+        mav.addObject(LABEL, JsonCodec.writeValueAsString(data.getLabel()));
     }
 
 }
@@ -0,0 +1,120 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import cz.muni.ics.perunproxyapi.application.service.impl.RelyingPartyServiceImpl;
+import cz.muni.ics.perunproxyapi.application.service.models.FacilityAccessDescriptor;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.enums.AttributeType;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static cz.muni.ics.perunproxyapi.persistence.enums.Entity.FACILITY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FacilityAccessIndexTest {
+
+    private static final String CHECK_GROUP_MEMBERSHIP = "urn:perun:facility:attribute-def:def:checkGroupMembership";
+    private static final String IS_TEST_SP = "urn:perun:facility:attribute-def:def:isTestSp";
+    private static final Long FACILITY_ID = 1L;
+    private static final Long USER_ID = 2L;
+    private static final List<Long> TEST_VO_IDS = Collections.singletonList(10L);
+    private static final List<Long> PROD_VO_IDS = Collections.singletonList(20L);
+
+    private final FullAdapter adapter = mock(RpcAdapterImpl.class);
+
+    private FacilityAccessIndex index;
+
+    @BeforeEach
+    public void setUp() throws PerunUnknownException, PerunConnectionException {
+        this.index = new FacilityAccessIndex(Duration.ofMinutes(5), Duration.ofMinutes(1), false);
+
+        when(adapter.getAttributesValues(eq(FACILITY), eq(FACILITY_ID), anyList()))
+                .thenReturn(facilityAttributes(false, true));
+        when(adapter.getAllowedGroupIds(FACILITY_ID)).thenReturn(new HashSet<>(Arrays.asList(100L, 101L)));
+        when(adapter.getVoIdsWhereUserIsValidMember(USER_ID)).thenReturn(new HashSet<>(PROD_VO_IDS));
+        when(adapter.getGroupIdsWhereUserIsValidMember(USER_ID)).thenReturn(new HashSet<>(Arrays.asList(5L, 101L)));
+    }
+
+    @Test
+    public void testHasAccessToServiceUsesIndexedDescriptor() throws PerunUnknownException, PerunConnectionException {
+        RelyingPartyService service = new RelyingPartyServiceImpl(index);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(service.hasAccessToService(adapter, FACILITY_ID, USER_ID, TEST_VO_IDS, PROD_VO_IDS,
+                    CHECK_GROUP_MEMBERSHIP, IS_TEST_SP));
+        }
+
+        verify(adapter, times(1)).getAttributesValues(eq(FACILITY), eq(FACILITY_ID), anyList());
+        verify(adapter, times(1)).getAllowedGroupIds(FACILITY_ID);
+        verify(adapter, times(1)).getVoIdsWhereUserIsValidMember(USER_ID);
+        verify(adapter, times(1)).getGroupIdsWhereUserIsValidMember(USER_ID);
+    }
+
+    @Test
+    public void testHasAccessToServiceDeniedOutsideOfAllowedVosAndGroups()
+            throws PerunUnknownException, PerunConnectionException
+    {
+        RelyingPartyService service = new RelyingPartyServiceImpl(index);
+        when(adapter.getAttributesValues(eq(FACILITY), eq(FACILITY_ID), anyList()))
+                .thenReturn(facilityAttributes(true, false));
+
+        assertFalse(service.hasAccessToService(adapter, FACILITY_ID, USER_ID, TEST_VO_IDS, PROD_VO_IDS,
+                CHECK_GROUP_MEMBERSHIP, IS_TEST_SP));
+
+        when(adapter.getGroupIdsWhereUserIsValidMember(3L)).thenReturn(Collections.singleton(5L));
+        when(adapter.getVoIdsWhereUserIsValidMember(3L)).thenReturn(Collections.singleton(10L));
+        assertTrue(service.hasAccessToService(adapter, FACILITY_ID, 3L, TEST_VO_IDS, PROD_VO_IDS,
+                CHECK_GROUP_MEMBERSHIP, IS_TEST_SP));
+        verify(adapter, times(0)).getAllowedGroupIds(FACILITY_ID);
+    }
+
+    @Test
+    public void testRefreshRebuildsDescriptorAndKeepsItOnFailure()
+            throws PerunUnknownException, PerunConnectionException
+    {
+        FacilityAccessDescriptor descriptor = index.getDescriptor(adapter, FACILITY_ID, CHECK_GROUP_MEMBERSHIP,
+                IS_TEST_SP);
+        assertEquals(new FacilityAccessDescriptor(false, true, new HashSet<>(Arrays.asList(100L, 101L))), descriptor);
+
+        when(adapter.getAllowedGroupIds(FACILITY_ID)).thenReturn(Collections.singleton(102L));
+        index.refresh();
+        assertEquals(Collections.singleton(102L), index.getDescriptor(adapter, FACILITY_ID, CHECK_GROUP_MEMBERSHIP,
+                IS_TEST_SP).getAllowedGroupIds());
+
+        when(adapter.getAllowedGroupIds(FACILITY_ID)).thenThrow(new PerunConnectionException("Perun unavailable"));
+        index.refresh();
+        assertEquals(Collections.singleton(102L), index.getDescriptor(adapter, FACILITY_ID, CHECK_GROUP_MEMBERSHIP,
+                IS_TEST_SP).getAllowedGroupIds());
+        assertEquals(1, index.size());
+    }
+
+    private Map<String, PerunAttributeValue> facilityAttributes(boolean testSp, boolean checkGroupMembership) {
+        Map<String, PerunAttributeValue> values = new HashMap<>();
+        values.put(IS_TEST_SP, new PerunAttributeValue(IS_TEST_SP, AttributeType.BOOLEAN,
+                BooleanNode.valueOf(testSp)));
+        values.put(CHECK_GROUP_MEMBERSHIP, new PerunAttributeValue(CHECK_GROUP_MEMBERSHIP,
+                AttributeType.BOOLEAN, BooleanNode.valueOf(checkGroupMembership)));
+        return values;
+    }
+
+}
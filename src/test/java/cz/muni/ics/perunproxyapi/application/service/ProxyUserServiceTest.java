@@ -13,6 +13,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -45,7 +46,8 @@ public class ProxyUserServiceTest {
 
     @BeforeEach
     public void setUp() {
-        this.service = new ProxyUserServiceImpl();
+        this.service = new ProxyUserServiceImpl(new UserIdentityUpdater(Duration.ZERO, 1, Duration.ZERO, false),
+                new UserIdentityIndex(Duration.ZERO));
         sampleUser = TestUtils.createSampleUser(USER_LOGIN);
     }
 
@@ -0,0 +1,149 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.TestUtils;
+import cz.muni.ics.perunproxyapi.application.service.impl.ProxyUserServiceImpl;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.ExtSource;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.UpdateAttributeMappingEntry;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserIdentityIndexTest {
+
+    private static final String LOGIN = "john";
+    private static final String IDP = "https://idp.muni.cz";
+    private static final String EPPN = "eppn";
+    private static final String EPPN_ATTR = "urn:perun:ues:attribute-def:def:eppn";
+    private static final List<String> SEARCH_ATTRS = Collections.singletonList(EPPN_ATTR);
+
+    private final FullAdapter adapter = mock(RpcAdapterImpl.class);
+    private final UserExtSource ues = userExtSource(1L, "john@muni.cz");
+    private final UserExtSource other = userExtSource(2L, "john@cesnet.cz");
+    private final List<UserExtSource> identities = Arrays.asList(ues, other);
+
+    private UserIdentityIndex index;
+
+    @BeforeEach
+    public void setUp() throws PerunUnknownException, PerunConnectionException {
+        this.index = new UserIdentityIndex(Duration.ofHours(1));
+
+        when(adapter.getUserWithAttributesByLogin(eq(LOGIN), anyList()))
+                .thenReturn(TestUtils.createSampleUser(LOGIN));
+        when(adapter.getUserExtSources(1L)).thenReturn(Arrays.asList(ues, other));
+        when(adapter.getAttributes(eq(Entity.USER_EXT_SOURCE), eq(1L), anyList()))
+                .thenReturn(Collections.singletonMap(EPPN_ATTR, eppnAttribute()));
+        when(adapter.setAttributes(eq(Entity.USER_EXT_SOURCE), eq(1L), anyList())).thenReturn(true);
+        when(adapter.updateUserExtSourceLastAccess(ues)).thenReturn(true);
+    }
+
+    @Test
+    public void testIdentityIsResolvedFromIndex() throws PerunUnknownException, PerunConnectionException {
+        ProxyUserService service = new ProxyUserServiceImpl(
+                new UserIdentityUpdater(Duration.ZERO, 1, Duration.ZERO, false), index);
+        Map<String, UpdateAttributeMappingEntry> mapping = Collections.singletonMap(EPPN_ATTR,
+                new UpdateAttributeMappingEntry(Collections.singletonList(EPPN), false, false));
+        Map<String, String> externalToInternal = Collections.singletonMap(EPPN, EPPN_ATTR);
+        Map<String, JsonNode> request = Collections.singletonMap(EPPN,
+                JsonNodeFactory.instance.textNode("john@muni.cz"));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(service.updateUserIdentityAttributes(LOGIN, IDP, adapter, request, mapping,
+                    externalToInternal, SEARCH_ATTRS));
+        }
+
+        verify(adapter, times(3)).getUserExtSources(1L);
+        verify(adapter, times(3)).getUserWithAttributesByLogin(anyString(), anyList());
+        verify(adapter, times(3)).updateUserExtSourceLastAccess(ues);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testEntriesAreReplacedAndBoundToUser() {
+        index.put(1L, ues, identities, values("john@muni.cz;jdoe@muni.cz"), SEARCH_ATTRS);
+        assertEquals(ues, index.find(1L, IDP, identities, values("jdoe@muni.cz"), SEARCH_ATTRS));
+        assertNull(index.find(2L, IDP, identities, values("jdoe@muni.cz"), SEARCH_ATTRS));
+        assertNull(index.find(1L, "https://idp.cesnet.cz", identities, values("jdoe@muni.cz"), SEARCH_ATTRS));
+
+        index.put(1L, ues, identities, values("john@muni.cz"), SEARCH_ATTRS);
+        assertNull(index.find(1L, IDP, identities, values("jdoe@muni.cz"), SEARCH_ATTRS));
+
+        index.put(1L, other, identities, values("john@cesnet.cz"), SEARCH_ATTRS);
+        assertNull(index.find(1L, IDP, identities, values("john@muni.cz;john@cesnet.cz"), SEARCH_ATTRS));
+
+        index.invalidate(1L);
+        assertNull(index.find(1L, IDP, identities, values("john@muni.cz"), SEARCH_ATTRS));
+        assertEquals(other, index.find(1L, IDP, identities, values("john@cesnet.cz"), SEARCH_ATTRS));
+    }
+
+    @Test
+    public void testSharedValueIsAmbiguous() {
+        index.put(1L, ues, identities, values("john@muni.cz;shared@muni.cz"), SEARCH_ATTRS);
+        index.put(1L, other, identities, values("john@cesnet.cz;shared@muni.cz"), SEARCH_ATTRS);
+
+        assertNull(index.find(1L, IDP, identities, values("shared@muni.cz"), SEARCH_ATTRS));
+        assertEquals(ues, index.find(1L, IDP, identities, values("john@muni.cz"), SEARCH_ATTRS));
+        assertEquals(other, index.find(1L, IDP, identities, values("john@cesnet.cz"), SEARCH_ATTRS));
+
+        index.put(1L, ues, identities, values("john@muni.cz;shared@muni.cz"), SEARCH_ATTRS);
+        assertNull(index.find(1L, IDP, identities, values("shared@muni.cz"), SEARCH_ATTRS));
+        assertEquals(ues, index.find(1L, IDP, identities, values("john@muni.cz"), SEARCH_ATTRS));
+    }
+
+    @Test
+    public void testIndexIsNotUsedWhenIdentitiesHaveChanged() {
+        index.put(1L, ues, identities, values("john@muni.cz"), SEARCH_ATTRS);
+        assertEquals(ues, index.find(1L, IDP, identities, values("john@muni.cz"), SEARCH_ATTRS));
+
+        List<UserExtSource> created = Arrays.asList(ues, other, userExtSource(3L, "jdoe@muni.cz"));
+        assertNull(index.find(1L, IDP, created, values("john@muni.cz"), SEARCH_ATTRS));
+        assertEquals(0, index.size());
+
+        index.put(1L, ues, identities, values("john@muni.cz"), SEARCH_ATTRS);
+        assertNull(index.find(1L, IDP, Collections.singletonList(other), values("john@muni.cz"), SEARCH_ATTRS));
+    }
+
+    private Map<String, JsonNode> values(String eppn) {
+        Map<String, JsonNode> values = new HashMap<>();
+        values.put(EPPN_ATTR, JsonNodeFactory.instance.textNode(eppn));
+        return values;
+    }
+
+    private PerunAttribute eppnAttribute() {
+        return new PerunAttribute(1L, EPPN, "urn:perun:ues:attribute-def:def", "description",
+                "java.lang.String", EPPN, true, false, "ues", EPPN, "",
+                JsonNodeFactory.instance.textNode("john@muni.cz"));
+    }
+
+    private UserExtSource userExtSource(Long id, String login) {
+        return new UserExtSource(id, new ExtSource(1L, IDP, "IdP"), login, 0, true,
+                Timestamp.valueOf("2020-01-01 00:00:00"));
+    }
+
+}
@@ -0,0 +1,137 @@
+package cz.muni.ics.perunproxyapi.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.ExtSource;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.UpdateAttributeMappingEntry;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserIdentityUpdaterTest {
+
+    private static final String NAME_ATTR = "urn:perun:ues:attribute-def:def:displayName";
+    private static final String AFFILIATION_ATTR = "urn:perun:ues:attribute-def:def:affiliation";
+
+    private final FullAdapter adapter = mock(RpcAdapterImpl.class);
+    private final Map<String, UpdateAttributeMappingEntry> mapping = new HashMap<>();
+    private final UserExtSource ues = userExtSource(1L);
+
+    @BeforeEach
+    public void setUp() throws PerunUnknownException, PerunConnectionException {
+        mapping.put(NAME_ATTR, new UpdateAttributeMappingEntry(Collections.singletonList("name"), false, false));
+        mapping.put(AFFILIATION_ATTR, new UpdateAttributeMappingEntry(Collections.singletonList("affiliation"),
+                true, false));
+
+        when(adapter.getAttributes(eq(Entity.USER_EXT_SOURCE), anyLong(), anyList()))
+                .thenAnswer(invocation -> currentAttributes());
+        when(adapter.setAttributes(eq(Entity.USER_EXT_SOURCE), anyLong(), anyList())).thenReturn(true);
+        when(adapter.updateUserExtSourceLastAccess(any())).thenReturn(true);
+    }
+
+    @Test
+    public void testUnchangedAttributesAndLastAccessAreNotWritten()
+            throws PerunUnknownException, PerunConnectionException
+    {
+        UserIdentityUpdater updater = new UserIdentityUpdater(Duration.ZERO, 10, Duration.ofHours(1), false);
+
+        assertTrue(updater.update(adapter, ues, newValues("John Doe", "staff@muni.cz"), mapping));
+        assertTrue(updater.update(adapter, ues, newValues("John Doe", "member@muni.cz"), mapping));
+
+        verify(adapter, never()).setAttributes(any(), anyLong(), anyList());
+        verify(adapter, times(1)).updateUserExtSourceLastAccess(ues);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testUpdatesOfSameIdentityAreCoalesced() throws PerunUnknownException, PerunConnectionException {
+        UserIdentityUpdater updater = new UserIdentityUpdater(Duration.ofMinutes(1), 10, Duration.ZERO, false);
+
+        assertTrue(updater.update(adapter, ues, newValues("Johnny Doe", "student@muni.cz"), mapping));
+        assertTrue(updater.update(adapter, ues, newValues("John Doe", "alum@muni.cz"), mapping));
+        assertEquals(1, updater.getPendingUpdates());
+        verify(adapter, never()).getAttributes(any(), anyLong(), anyList());
+
+        updater.flush();
+
+        ArgumentCaptor<List<PerunAttribute>> written = ArgumentCaptor.forClass(List.class);
+        verify(adapter, times(1)).getAttributes(eq(Entity.USER_EXT_SOURCE), eq(1L), anyList());
+        verify(adapter, times(1)).setAttributes(eq(Entity.USER_EXT_SOURCE), eq(1L), written.capture());
+        verify(adapter, times(1)).updateUserExtSourceLastAccess(ues);
+        assertEquals(1, written.getValue().size());
+        PerunAttribute affiliation = written.getValue().get(0);
+        assertEquals(AFFILIATION_ATTR, affiliation.getUrn());
+        assertEquals(new HashSet<>(Arrays.asList("member@muni.cz", "staff@muni.cz", "student@muni.cz",
+                "alum@muni.cz")), new HashSet<>(Arrays.asList(affiliation.getValue().textValue().split(";"))));
+        assertEquals(0, updater.getPendingUpdates());
+    }
+
+    @Test
+    public void testFullQueueWritesDirectly() throws PerunUnknownException, PerunConnectionException {
+        UserIdentityUpdater updater = new UserIdentityUpdater(Duration.ofMinutes(1), 1, Duration.ZERO, false);
+        UserExtSource other = userExtSource(2L);
+
+        assertTrue(updater.update(adapter, ues, newValues("Johnny Doe", null), mapping));
+        assertTrue(updater.update(adapter, other, newValues("Johnny Doe", null), mapping));
+
+        assertEquals(1, updater.getPendingUpdates());
+        verify(adapter, times(1)).setAttributes(eq(Entity.USER_EXT_SOURCE), eq(2L), anyList());
+        verify(adapter, never()).setAttributes(eq(Entity.USER_EXT_SOURCE), eq(1L), anyList());
+    }
+
+    private Map<String, PerunAttribute> currentAttributes() {
+        Map<String, PerunAttribute> attributes = new HashMap<>();
+        attributes.put(NAME_ATTR, attribute(1L, "displayName", "John Doe"));
+        attributes.put(AFFILIATION_ATTR, attribute(2L, "affiliation", "staff@muni.cz;member@muni.cz"));
+        return attributes;
+    }
+
+    private PerunAttribute attribute(Long id, String friendlyName, String value) {
+        return new PerunAttribute(id, friendlyName, "urn:perun:ues:attribute-def:def", "description",
+                "java.lang.String", friendlyName, true, false, "ues", friendlyName, "",
+                JsonNodeFactory.instance.textNode(value));
+    }
+
+    private Map<String, JsonNode> newValues(String name, String affiliation) {
+        Map<String, JsonNode> values = new HashMap<>();
+        values.put(NAME_ATTR, JsonNodeFactory.instance.textNode(name));
+        if (affiliation != null) {
+            values.put(AFFILIATION_ATTR, JsonNodeFactory.instance.arrayNode().add(affiliation));
+        }
+        return values;
+    }
+
+    private UserExtSource userExtSource(Long id) {
+        return new UserExtSource(id, new ExtSource(1L, "https://idp.muni.cz", "IdP"), "login" + id, 0, true,
+                Timestamp.valueOf("2020-01-01 00:00:00"));
+    }
+
+}
@@ -0,0 +1,184 @@
+package cz.muni.ics.perunproxyapi.benchmarks;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcResponseReader;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures RpcAdapterImpl.getUserExtSourcesAffiliations and getGroupAffiliations (the affiliations used for GA4GH
+ * passports) against a stubbed connector simulating constant Perun latency. Without the batch executor the calls
+ * are executed one by one as before, with the executor the attributes of all the user ext sources and groups are
+ * fetched concurrently. Not executed as a part of the tests, run the main method from the IDE or by
+ * "mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...".
+ */
+public class AffiliationsBenchmark {
+
+    private static final int USER_EXT_SOURCES = 6;
+    private static final int VOS = 5;
+    private static final int GROUPS_PER_VO = 8;
+    private static final long LATENCY_MILLIS = 20;
+    private static final int ITERATIONS = 10;
+
+    private static final String AFFILIATION_ATTR = "user:Attr1";
+    private static final String ORG_URL_ATTR = "urn:perun:user:attribute-def:def:login-namespace-example";
+
+    public static void main(String[] args) throws Exception {
+        AttributeMappingServiceProperties amsProperties = attributeMappingServiceProperties();
+        AttributeMappingService attributeMappingService = new AttributeMappingService(amsProperties);
+        attributeMappingService.postInit();
+
+        ExecutorService batchExecutor = Executors.newFixedThreadPool(VOS * GROUPS_PER_VO);
+        try {
+            run("sequential calls", new RpcAdapterImpl(new StubbedConnector(null),
+                    attributeMappingService, amsProperties));
+            run("concurrent batches", new RpcAdapterImpl(new StubbedConnector(batchExecutor),
+                    attributeMappingService, amsProperties));
+        } finally {
+            batchExecutor.shutdown();
+        }
+        System.out.printf("simulated latency of each call: %d ms%n", LATENCY_MILLIS);
+    }
+
+    private static void run(String name, RpcAdapterImpl adapter) throws Exception {
+        int affiliations = affiliations(adapter);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            affiliations(adapter);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-24s %6d ms/op (%d affiliations)%n", name,
+                TimeUnit.NANOSECONDS.toMillis(elapsed / ITERATIONS), affiliations);
+    }
+
+    private static int affiliations(RpcAdapterImpl adapter) throws Exception {
+        return adapter.getUserExtSourcesAffiliations(1L, AFFILIATION_ATTR, ORG_URL_ATTR).size()
+                + adapter.getGroupAffiliations(1L, AFFILIATION_ATTR).size();
+    }
+
+    private static AttributeMappingServiceProperties attributeMappingServiceProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("attributes.paths[0]", "src/test/resources/configs/attributes/attributes.yml");
+        properties.put("attributes.identifiers.relying_party", "urn:perun:facility:attribute-def:def:rp_identifier");
+        properties.put("attributes.identifiers.login", "urn:perun:user:attribute-def:def:login-namespace-example");
+        properties.put("attributes.identifiers.additional_identifiers",
+                "urn:perun:user:attribute-def:def:additional-identifiers-example");
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bind("attributes", AttributeMappingServiceProperties.class)
+                .get();
+    }
+
+    /**
+     * Connector answering the calls without contacting Perun, each call takes the same time. All the user ext
+     * sources are from IdPs and have affiliations, groups have no affiliations.
+     */
+    private static class StubbedConnector extends PerunConnectorRpc {
+
+        StubbedConnector(ExecutorService batchExecutor) {
+            super(true, new RestTemplate(), "http://localhost/rpc", batchExecutor, null, null, null, null);
+        }
+
+        @Override
+        public JsonNode post(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> map)
+                throws PerunConnectionException
+        {
+            sleep();
+            switch (method) {
+                case "getAttributes": {
+                    long id = (Long) map.get("userExtSource");
+                    return uesAttributes(id);
+                }
+                case "getMemberGroups": {
+                    long memberId = (Long) map.get("member");
+                    ArrayNode groups = JsonNodeFactory.instance.arrayNode();
+                    for (long i = 0; i < GROUPS_PER_VO; i++) {
+                        groups.addObject()
+                                .put("id", memberId * 100 + i)
+                                .put("name", "group" + i)
+                                .put("voId", memberId);
+                    }
+                    return groups;
+                }
+                default:
+                    return JsonNodeFactory.instance.nullNode();
+            }
+        }
+
+        @Override
+        public <T> T post(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> map,
+                          @NonNull RpcResponseReader<T> reader) throws PerunConnectionException
+        {
+            sleep();
+            ArrayNode response = JsonNodeFactory.instance.arrayNode();
+            if ("getUserExtSources".equals(method)) {
+                for (long id = 1; id <= USER_EXT_SOURCES; id++) {
+                    ObjectNode ues = response.addObject()
+                            .put("id", id)
+                            .put("login", "login" + id)
+                            .put("loa", 0)
+                            .put("persistent", true)
+                            .put("lastAccess", "2018-02-13 21:30:55.0");
+                    ues.putObject("extSource")
+                            .put("id", id)
+                            .put("name", "https://idp" + id + ".example.org")
+                            .put("type", RpcAdapterImpl.EXT_SOURCE_TYPE);
+                }
+            } else if ("getMembersByUser".equals(method)) {
+                for (long id = 1; id <= VOS; id++) {
+                    response.addObject()
+                            .put("id", id)
+                            .put("userId", 1L)
+                            .put("voId", id)
+                            .put("status", "VALID");
+                }
+            }
+            try (JsonParser parser = JsonCodec.getMapper().getFactory().createParser(response.toString())) {
+                return reader.read(parser);
+            } catch (IOException e) {
+                throw new PerunConnectionException("Could not read stubbed response", e);
+            }
+        }
+
+        private static JsonNode uesAttributes(long id) {
+            ArrayNode attributes = JsonNodeFactory.instance.arrayNode();
+            attributes.add(new PerunAttribute(11L, "Attr1Rpc", "user", "", "java.lang.String", "Affiliation", true, false,
+                    "user", "Attr1Rpc", "", JsonNodeFactory.instance.textNode("member@org" + id + ";staff@org" + id))
+                    .toJson());
+            attributes.add(new PerunAttribute(12L, "login-namespace-example", "urn:perun:user:attribute-def:def", "",
+                    "java.lang.String", "Organization URL", true, false, "user", "login-namespace-example", "",
+                    JsonNodeFactory.instance.textNode("https://org" + id + ".example.org")).toJson());
+            return attributes;
+        }
+
+        private static void sleep() throws PerunConnectionException {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PerunConnectionException("Interrupted", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package cz.muni.ics.perunproxyapi.benchmarks;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcResponseReader;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures RpcAdapterImpl.getUserGroups for the user being member of many VOs against a stubbed connector,
+ * where each call for the particular VO takes different time. With the calls fanned out, the latency follows
+ * the slowest VO instead of the sum of all the calls. Not executed as a part of the tests, run the main method
+ * from the IDE or by "mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...".
+ */
+public class GetUserGroupsBenchmark {
+
+    private static final int VOS = 15;
+    private static final long SLOWEST_CALL_MILLIS = 30;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        AttributeMappingServiceProperties amsProperties = attributeMappingServiceProperties();
+        AttributeMappingService attributeMappingService = new AttributeMappingService(amsProperties);
+        attributeMappingService.postInit();
+
+        ExecutorService batchExecutor = Executors.newFixedThreadPool(2 * VOS);
+        try {
+            run("sequential calls", new RpcAdapterImpl(new StubbedConnector(null), null,
+                    attributeMappingService, amsProperties, Duration.ZERO));
+            run("fan-out, no cache", new RpcAdapterImpl(new StubbedConnector(batchExecutor), null,
+                    attributeMappingService, amsProperties, Duration.ZERO));
+            run("fan-out, members groups cached", new RpcAdapterImpl(new StubbedConnector(batchExecutor), null,
+                    attributeMappingService, amsProperties, Duration.ofHours(1)));
+        } finally {
+            batchExecutor.shutdown();
+        }
+        System.out.printf("sum of calls per VO: %d ms, slowest VO: %d ms%n", sumOfCallsMillis(), SLOWEST_CALL_MILLIS);
+    }
+
+    private static void run(String name, RpcAdapterImpl adapter) throws Exception {
+        adapter.getUserGroups(1L);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            adapter.getUserGroups(1L);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-32s %6d ms/op%n", name, TimeUnit.NANOSECONDS.toMillis(elapsed / ITERATIONS));
+    }
+
+    private static long sumOfCallsMillis() {
+        long sum = 0;
+        for (long voId = 1; voId <= VOS; voId++) {
+            // groups of member, members group and unique names of both groups
+            sum += 4 * latency(voId);
+        }
+        return sum;
+    }
+
+    private static long latency(long voId) {
+        return SLOWEST_CALL_MILLIS * voId / VOS;
+    }
+
+    private static AttributeMappingServiceProperties attributeMappingServiceProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("attributes.paths[0]", "src/test/resources/configs/attributes/attributes.yml");
+        properties.put("attributes.identifiers.relying_party", "urn:perun:facility:attribute-def:def:rp_identifier");
+        properties.put("attributes.identifiers.login", "urn:perun:user:attribute-def:def:login-namespace-example");
+        properties.put("attributes.identifiers.additional_identifiers",
+                "urn:perun:user:attribute-def:def:additional-identifiers-example");
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bind("attributes", AttributeMappingServiceProperties.class)
+                .get();
+    }
+
+    /**
+     * Connector answering the calls without contacting Perun. Member ID, VO ID and group ID are the same number,
+     * calls for the VO with higher ID take longer.
+     */
+    private static class StubbedConnector extends PerunConnectorRpc {
+
+        StubbedConnector(ExecutorService batchExecutor) {
+            super(true, new RestTemplate(), "http://localhost/rpc", batchExecutor, null, null, null, null);
+        }
+
+        @Override
+        public JsonNode post(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> map)
+                throws PerunConnectionException
+        {
+            switch (method) {
+                case "getGroupsWhereMemberIsActive": {
+                    long id = (Long) map.get("member");
+                    sleep(latency(id));
+                    return JsonNodeFactory.instance.arrayNode().add(group(id, "group" + id, id));
+                }
+                case "getGroupByName": {
+                    long id = (Long) map.get("vo");
+                    sleep(latency(id));
+                    return group(1000 + id, "members", id);
+                }
+                case "getAttribute": {
+                    long id = (Long) map.get("group");
+                    sleep(latency(id % 1000));
+                    return JsonNodeFactory.instance.nullNode();
+                }
+                default:
+                    return JsonNodeFactory.instance.nullNode();
+            }
+        }
+
+        @Override
+        public <T> T post(@NonNull String manager, @NonNull String method, @NonNull Map<String, Object> map,
+                          @NonNull RpcResponseReader<T> reader) throws PerunConnectionException
+        {
+            ArrayNode members = JsonNodeFactory.instance.arrayNode();
+            for (long id = 1; id <= VOS; id++) {
+                members.addObject()
+                        .put("id", id)
+                        .put("userId", 1L)
+                        .put("voId", id)
+                        .put("status", "VALID");
+            }
+            try (JsonParser parser = JsonCodec.getMapper().getFactory().createParser(members.toString())) {
+                return reader.read(parser);
+            } catch (IOException e) {
+                throw new PerunConnectionException("Could not read stubbed response", e);
+            }
+        }
+
+        private static ObjectNode group(long id, String name, long voId) {
+            ObjectNode group = JsonNodeFactory.instance.objectNode();
+            group.put("id", id);
+            group.put("name", name);
+            group.put("voId", voId);
+            return group;
+        }
+
+        private static void sleep(long millis) throws PerunConnectionException {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PerunConnectionException("Interrupted", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package cz.muni.ics.perunproxyapi.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.muni.ics.perunproxyapi.persistence.JsonCodec;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing of the Perun RPC error response by a new ObjectMapper (as done before on each error)
+ * with the shared reader of the JsonCodec. Not executed as a part of the tests, run the main method
+ * from the IDE or by "mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...".
+ */
+public class JsonCodecBenchmark {
+
+    private static final String ERROR_RESPONSE = "{\"errorId\":\"17a6e8a2c1f\",\"name\":\"UserNotExistsException\"," +
+            "\"type\":\"UserNotExistsException\",\"message\":\"User not exists in the database.\"}";
+
+    private static final int WARM_UP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        run("new ObjectMapper per call", () -> new ObjectMapper().readValue(ERROR_RESPONSE, JsonNode.class));
+        run("shared JsonCodec reader", () -> JsonCodec.readTree(ERROR_RESPONSE));
+    }
+
+    private static void run(String name, Parse parse) throws Exception {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            consume(parse.parse());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            consume(parse.parse());
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-30s %10d ns/op (%d ms total)%n", name, elapsed / MEASURED_ITERATIONS,
+                TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private static int sink;
+
+    private static void consume(JsonNode node) {
+        sink += node.size();
+    }
+
+    @FunctionalInterface
+    private interface Parse {
+        JsonNode parse() throws Exception;
+    }
+
+}
@@ -0,0 +1,181 @@
+package cz.muni.ics.perunproxyapi.benchmarks;
+
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap.LdapAdapterImpl;
+import cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap.LdapEntitlementResolver;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.configs.LdapEntitlementsProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorLdap;
+import cz.muni.ics.perunproxyapi.persistence.connectors.properties.LdapProperties;
+import cz.muni.ics.perunproxyapi.persistence.models.AttributeObjectMapping;
+import lombok.NonNull;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.filter.AndFilter;
+import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.Filter;
+import org.springframework.ldap.query.LdapQuery;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.ldap.query.LdapQueryBuilder.query;
+import static org.springframework.ldap.query.SearchScope.ONELEVEL;
+
+/**
+ * Compares allocation and time per call of building the LDAP queries by the filter builders (as done before
+ * in LdapAdapterImpl for each call) with the compiled query templates and the resolved attributes used by
+ * the adapter now. The connector is stubbed, it only encodes the filter, so the numbers cover building
+ * of the query only. Not executed as a part of the tests, run the main method from the IDE or by
+ * "mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=...".
+ */
+public class LdapQueryBenchmark {
+
+    private static final String LOGIN_ATTR = "urn:perun:user:attribute-def:def:login-namespace-example";
+    private static final List<String> USER_ATTRS = Arrays.asList("user:Attr1", "user:Attr2", "user:Attr3");
+
+    private static final int WARM_UP_ITERATIONS = 50_000;
+    private static final int MEASURED_ITERATIONS = 500_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        AttributeMappingServiceProperties amsProperties = attributeMappingServiceProperties();
+        AttributeMappingService attributeMappingService = new AttributeMappingService(amsProperties);
+        attributeMappingService.postInit();
+        LdapProperties ldapProperties = new LdapProperties();
+        ldapProperties.setBaseDn("dc=perun,dc=cesnet,dc=cz");
+
+        LdapEntitlementsProperties entitlementsProperties = new LdapEntitlementsProperties();
+        entitlementsProperties.setFacilityTtl(0);
+
+        StubbedConnector connector = new StubbedConnector();
+        LdapAdapterImpl adapter = new LdapAdapterImpl(connector, attributeMappingService, ldapProperties,
+                amsProperties, new LdapEntitlementResolver(entitlementsProperties));
+        String loginAttr = attributeMappingService.getMappingByIdentifier(LOGIN_ATTR).getLdapName();
+        FilterBuilders builders = new FilterBuilders(connector, attributeMappingService, loginAttr);
+
+        run("user by login, filter builders", i -> builders.getUserWithAttributesByLogin("user" + (i & 1023)));
+        run("user by login, query templates",
+                i -> adapter.getUserWithAttributesByLogin("user" + (i & 1023), USER_ATTRS));
+        run("VO by ID, filter builders", i -> builders.getVoById((long) (i & 1023)));
+        run("VO by ID, query templates", i -> adapter.getVoById((long) (i & 1023)));
+        System.out.printf("(sink %d)%n", connector.sink);
+    }
+
+    private static void run(String name, Call call) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            call.call(i);
+        }
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            call.call(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - startBytes;
+        System.out.printf("%-34s %8d ns/op %8d B/op%n", name, elapsed / MEASURED_ITERATIONS,
+                allocated / MEASURED_ITERATIONS);
+    }
+
+    private static AttributeMappingServiceProperties attributeMappingServiceProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("attributes.paths[0]", "src/test/resources/configs/attributes/attributes.yml");
+        properties.put("attributes.identifiers.relying_party", "urn:perun:facility:attribute-def:def:rp_identifier");
+        properties.put("attributes.identifiers.login", LOGIN_ATTR);
+        properties.put("attributes.identifiers.additional_identifiers",
+                "urn:perun:user:attribute-def:def:additional-identifiers-example");
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bind("attributes", AttributeMappingServiceProperties.class)
+                .get();
+    }
+
+    private interface Call {
+        void call(int i);
+    }
+
+    /**
+     * Queries built the way LdapAdapterImpl built them before the query templates.
+     */
+    private static class FilterBuilders {
+
+        private final PerunConnectorLdap connector;
+        private final AttributeMappingService attributeMappingService;
+        private final String loginAttr;
+
+        FilterBuilders(PerunConnectorLdap connector, AttributeMappingService attributeMappingService,
+                       String loginAttr)
+        {
+            this.connector = connector;
+            this.attributeMappingService = attributeMappingService;
+            this.loginAttr = loginAttr;
+        }
+
+        void getUserWithAttributesByLogin(String login) {
+            Set<AttributeObjectMapping> mappings = attributeMappingService.getMappingsByIdentifiers(USER_ATTRS)
+                    .stream()
+                    .filter(mapping -> StringUtils.hasText(mapping.getLdapName()))
+                    .collect(Collectors.toSet());
+            String[] attrs = new String[mappings.size() + 4];
+            int i = 0;
+            for (AttributeObjectMapping mapping : mappings) {
+                attrs[i++] = mapping.getLdapName();
+            }
+            attrs[i++] = LdapAdapterImpl.PERUN_USER_ID;
+            attrs[i++] = LdapAdapterImpl.GIVEN_NAME;
+            attrs[i++] = LdapAdapterImpl.SN;
+            attrs[i] = loginAttr;
+
+            Filter filter = new AndFilter()
+                    .and(new EqualsFilter(LdapAdapterImpl.OBJECT_CLASS, LdapAdapterImpl.PERUN_USER))
+                    .and(new EqualsFilter(loginAttr, login));
+            LdapQuery query = query()
+                    .base(LdapAdapterImpl.OU_PEOPLE)
+                    .searchScope(ONELEVEL)
+                    .attributes(attrs)
+                    .filter(filter);
+            connector.searchForObject(query, ctx -> mappings);
+        }
+
+        void getVoById(Long id) {
+            Filter filter = new AndFilter()
+                    .and(new EqualsFilter(LdapAdapterImpl.OBJECT_CLASS, LdapAdapterImpl.PERUN_VO))
+                    .and(new EqualsFilter(LdapAdapterImpl.PERUN_VO_ID, String.valueOf(id)));
+            LdapQuery query = query()
+                    .attributes(LdapAdapterImpl.PERUN_VO_ID, LdapAdapterImpl.O, LdapAdapterImpl.DESCRIPTION)
+                    .searchScope(ONELEVEL)
+                    .filter(filter);
+            connector.searchForObject(query, ctx -> null);
+        }
+
+    }
+
+    /**
+     * Connector only encoding the filter of the query, as the real connector does, and finding nothing.
+     */
+    private static class StubbedConnector extends PerunConnectorLdap {
+
+        private int sink;
+
+        StubbedConnector() {
+            super(null);
+        }
+
+        @Override
+        public <T> T searchForObject(@NonNull LdapQuery query, @NonNull ContextMapper<T> mapper) {
+            sink += query.filter().encode().length() + query.attributes().length;
+            return null;
+        }
+
+    }
+
+}
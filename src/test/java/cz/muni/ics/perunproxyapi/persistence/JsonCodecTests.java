@@ -0,0 +1,59 @@
+package cz.muni.ics.perunproxyapi.persistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonCodecTests {
+
+    @Test
+    public void testReadersAreCachedPerType() {
+        assertSame(JsonCodec.readerFor(JsonNode.class), JsonCodec.readerFor(JsonNode.class));
+        assertSame(JsonCodec.readerFor(Long[].class), JsonCodec.readerFor(Long[].class));
+        assertSame(JsonCodec.readerFor(new TypeReference<List<String>>() {}),
+                JsonCodec.readerFor(new TypeReference<List<String>>() {}));
+    }
+
+    @Test
+    public void testReadTree() throws JsonProcessingException {
+        JsonNode json = JsonCodec.readTree("{\"errorId\":\"1\",\"name\":\"UserNotExistsException\"}");
+        assertEquals("UserNotExistsException", json.get("name").asText());
+    }
+
+    @Test
+    public void testReadObjectRejectsArray() {
+        assertThrows(JsonProcessingException.class, () -> JsonCodec.readObject("[1, 2]"));
+    }
+
+    @Test
+    public void testReadGenericValue() throws JsonProcessingException {
+        Map<String, List<Long>> value = JsonCodec.readValue("{\"ids\":[1,2]}", new TypeReference<>() {});
+        assertEquals(List.of(1L, 2L), value.get("ids"));
+    }
+
+    @Test
+    public void testTreeToValue() throws IOException {
+        JsonNode node = JsonNodeFactory.instance.arrayNode().add(1).add(2);
+        assertArrayEquals(new Long[] {1L, 2L}, JsonCodec.treeToValue(node, Long[].class));
+    }
+
+    @Test
+    public void testValueToTreeAndWrite() throws JsonProcessingException {
+        ObjectNode node = JsonCodec.valueToTree(Map.of("saml", 1));
+        assertEquals(1, node.get("saml").asInt());
+        assertEquals("{\"saml\":1}", JsonCodec.writeValueAsString(node));
+    }
+
+}
@@ -0,0 +1,79 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for the expiring cache used by the adapters.
+ */
+public class ExpiringCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testValueExpires() {
+        ExpiringCache<Long, String> cache = new ExpiringCache<>(Duration.ofSeconds(10), 10, clock::get);
+        cache.put(1L, "members");
+
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertEquals("members", cache.get(1L));
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ExpiringCache<Long, String> cache = new ExpiringCache<>(Duration.ofSeconds(10), 2, clock::get);
+        cache.put(1L, "a");
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        cache.put(2L, "b");
+        cache.put(3L, "c");
+
+        // expired entry is evicted first
+        assertNull(cache.get(1L));
+        assertEquals("b", cache.get(2L));
+        assertEquals("c", cache.get(3L));
+
+        cache.put(4L, "d");
+        assertEquals(2, cache.size());
+        assertEquals("d", cache.get(4L));
+    }
+
+    @Test
+    public void testEntriesAreEvictedInBatches() {
+        ExpiringCache<Long, String> cache = new ExpiringCache<>(Duration.ofSeconds(10), 100, clock::get);
+        for (long i = 0; i < 100; i++) {
+            cache.put(i, "value");
+        }
+        assertEquals(100, cache.size());
+
+        cache.put(100L, "value");
+        assertEquals(91, cache.size());
+        assertEquals("value", cache.get(100L));
+
+        // no eviction is needed until the cache is full again
+        for (long i = 101; i < 110; i++) {
+            cache.put(i, "value");
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testZeroTtlDisablesCache() {
+        ExpiringCache<Long, String> cache = new ExpiringCache<>(Duration.ZERO, 10, clock::get);
+        cache.put(1L, "a");
+
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,62 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the set of primitive longs. Results are compared to HashSet.
+ */
+public class LongHashSetTest {
+
+    @Test
+    public void testAddContainsRemove() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(0L));
+        assertTrue(set.add(5L));
+        assertTrue(set.add(-5L));
+        assertFalse(set.add(5L));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(Long.valueOf(-5L)));
+        assertFalse(set.contains(6L));
+        assertFalse(set.contains("5"));
+
+        assertTrue(set.remove(0L));
+        assertFalse(set.remove(0L));
+        assertEquals(new HashSet<>(Arrays.asList(5L, -5L)), set);
+    }
+
+    @Test
+    public void testBehavesAsHashSet() {
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        LongHashSet set = new LongHashSet(4);
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        assertEquals(expected, set);
+        assertEquals(expected.hashCode(), set.hashCode());
+        assertEquals(expected.size(), set.toLongArray().length);
+
+        Set<Long> retained = new HashSet<>(Arrays.asList(1L, 2L, 3L, 5000L));
+        expected.retainAll(retained);
+        set.retainAll(retained);
+        assertEquals(expected, set);
+    }
+
+}
@@ -0,0 +1,101 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
+
+import cz.muni.ics.perunproxyapi.persistence.models.Facility;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.User;
+import cz.muni.ics.perunproxyapi.persistence.models.UserEntitlementData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LdapEntitlementResolverTest {
+
+    private static final String RP_IDENTIFIER = "https://sp.example.org";
+    private static final String LOGIN = "john";
+    private static final String RESOURCE_CAPABILITIES = "urn:perun:resource:attribute-def:def:capabilities";
+    private static final String FACILITY_CAPABILITIES = "urn:perun:facility:attribute-def:def:capabilities";
+
+    private final Facility facility = new Facility(1L, "facility", "", RP_IDENTIFIER);
+    private final Group group1 = new Group(11L, null, "g1", "", "vo:g1", "uuid-11", 100L);
+    private final Group group2 = new Group(12L, null, "g2", "", "vo:g2", "uuid-12", 100L);
+
+    private LdapAdapterImpl adapter;
+
+    @BeforeEach
+    public void setUp() {
+        adapter = mock(LdapAdapterImpl.class);
+        when(adapter.getFacilityByRpIdentifier(RP_IDENTIFIER)).thenReturn(facility);
+        when(adapter.getFacilityResourceAssignments(1L, RESOURCE_CAPABILITIES)).thenReturn(Arrays.asList(
+                new LdapAdapterImpl.ResourceAssignment(new HashSet<>(Collections.singletonList(11L)),
+                        new HashSet<>(Collections.singletonList("res:cap1"))),
+                new LdapAdapterImpl.ResourceAssignment(new HashSet<>(Arrays.asList(12L, 13L)),
+                        new HashSet<>(Collections.singletonList("res:cap2")))));
+        when(adapter.getGroupsByIds(new HashSet<>(Arrays.asList(11L, 12L, 13L))))
+                .thenReturn(Arrays.asList(group1, group2));
+        when(adapter.getFacilityCapabilities(1L, FACILITY_CAPABILITIES))
+                .thenReturn(new HashSet<>(Collections.singletonList("fac:cap")));
+    }
+
+    @Test
+    public void testUserGroupsAreJoinedWithCachedFacilityIndex() {
+        mockUser(11L, 99L);
+        LdapEntitlementResolver resolver = new LdapEntitlementResolver(Duration.ofMinutes(5));
+
+        UserEntitlementData data = resolve(resolver);
+        assertEquals(LOGIN, data.getUser().getLogin());
+        assertEquals(facility, data.getFacility());
+        assertEquals(Collections.singletonList(group1), data.getGroups());
+        assertEquals(new HashSet<>(Arrays.asList("res:cap1", "fac:cap")), new HashSet<>(data.getCapabilities()));
+
+        resolve(resolver);
+        verify(adapter, times(2)).getUserMembershipsByLogin(LOGIN, Collections.emptyList());
+        verify(adapter, times(1)).getFacilityByRpIdentifier(RP_IDENTIFIER);
+        verify(adapter, times(1)).getFacilityResourceAssignments(1L, RESOURCE_CAPABILITIES);
+        assertEquals(1, resolver.size());
+    }
+
+    @Test
+    public void testUserWithoutGroupsOnFacility() {
+        mockUser(99L);
+        UserEntitlementData data = resolve(new LdapEntitlementResolver(Duration.ZERO));
+
+        assertEquals(facility, data.getFacility());
+        assertEquals(Collections.emptyList(), data.getGroups());
+        assertEquals(Collections.emptyList(), data.getCapabilities());
+    }
+
+    @Test
+    public void testFacilityIsNotLookedUpForUnknownUser() {
+        UserEntitlementData data = resolve(new LdapEntitlementResolver(Duration.ofMinutes(5)));
+
+        assertNull(data.getUser());
+        assertNull(data.getFacility());
+        verify(adapter, never()).getFacilityByRpIdentifier(any());
+    }
+
+    private void mockUser(Long... groupIds) {
+        User user = new User(1L, "John", "Doe", LOGIN, new HashMap<>());
+        when(adapter.getUserMembershipsByLogin(LOGIN, Collections.emptyList()))
+                .thenReturn(new LdapAdapterImpl.UserMemberships(user, new HashSet<>(Arrays.asList(groupIds))));
+    }
+
+    private UserEntitlementData resolve(LdapEntitlementResolver resolver) {
+        return resolver.resolve(adapter, RP_IDENTIFIER, LOGIN, null, RESOURCE_CAPABILITIES, FACILITY_CAPABILITIES);
+    }
+
+}
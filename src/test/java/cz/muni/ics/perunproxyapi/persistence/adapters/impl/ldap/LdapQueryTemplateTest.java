@@ -0,0 +1,60 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.ldap;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.filter.AndFilter;
+import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.OrFilter;
+import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.query.SearchScope;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LdapQueryTemplateTest {
+
+    private static final String[] ATTRIBUTES = new String[] { "perunUserId", "sn" };
+
+    @Test
+    public void testBoundFilterMatchesFilterBuilders() {
+        LdapQueryTemplate template = LdapQueryTemplate.compile("ou=People", SearchScope.ONELEVEL, ATTRIBUTES,
+                "(&(objectClass=perunUser)(login={0}){1})");
+
+        LdapQuery query = template.query("jo*hn (admin)\\", LdapQueryTemplate.anyOf("eppn",
+                Arrays.asList("john@muni.cz", "*")));
+
+        String expected = new AndFilter()
+                .and(new EqualsFilter("objectClass", "perunUser"))
+                .and(new EqualsFilter("login", "jo*hn (admin)\\"))
+                .and(new OrFilter()
+                        .or(new EqualsFilter("eppn", "john@muni.cz"))
+                        .or(new EqualsFilter("eppn", "*")))
+                .encode();
+        assertEquals(expected, query.filter().encode());
+        assertEquals("ou=People", query.base().toString());
+        assertEquals(SearchScope.ONELEVEL, query.searchScope());
+        assertArrayEquals(ATTRIBUTES, query.attributes());
+    }
+
+    @Test
+    public void testParametersAndAttributesPerCall() {
+        LdapQueryTemplate template = LdapQueryTemplate.compile(null, null, null, "(&(objectClass={0}){1}{0})");
+        String[] attributes = new String[] { "cn" };
+
+        LdapQuery query = template.query(attributes, "perunVO", LdapQueryTemplate.anyOf("perunVoId",
+                Collections.singletonList(1L)));
+        assertEquals("(&(objectClass=perunVO)(perunVoId=1)perunVO)", query.filter().encode());
+        assertEquals("", query.base().toString());
+        assertArrayEquals(attributes, query.attributes());
+
+        assertEquals("(&(objectClass=perunVO)perunVO)",
+                template.query("perunVO", LdapQueryTemplate.anyOf("perunVoId", Collections.emptyList()))
+                        .filter().encode());
+        assertEquals("(o=a\\2ab)", LdapQueryTemplate.equal("o", "a*b").encode());
+        assertThrows(IllegalArgumentException.class, () -> LdapQueryTemplate.compile(null, null, null, "(cn={x})"));
+    }
+
+}
@@ -0,0 +1,163 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCall;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCallResult;
+import cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.Affiliation;
+import cz.muni.ics.perunproxyapi.persistence.models.ExtSource;
+import cz.muni.ics.perunproxyapi.persistence.models.Member;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.UserExtSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.EXT_SOURCE_TYPE;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.MEMBERS_MANAGER;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.USERS_MANAGER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+public class RpcAdapterImplAffiliationsTest {
+
+    private static final String AFFILIATION_ATTR = "user:Attr1";
+    private static final String ORG_URL_ATTR = "urn:perun:user:attribute-def:def:login-namespace-example";
+    private static final Long USER_ID = 1L;
+
+    private final PerunConnectorRpc connector = mock(PerunConnectorRpc.class);
+    private FullAdapter rpcAdapter;
+
+    @Autowired
+    private AttributeMappingService attributeMappingService;
+
+    @Autowired
+    private AttributeMappingServiceProperties attributeMappingServiceProperties;
+
+    @BeforeEach
+    public void setUp() {
+        this.rpcAdapter = new RpcAdapterImpl(connector, this.attributeMappingService, attributeMappingServiceProperties);
+    }
+
+    @Test
+    public void testGetUserExtSourcesAffiliationsInOneBatch() throws PerunUnknownException, PerunConnectionException {
+        Timestamp lastAccess = Timestamp.valueOf("2018-02-13 21:30:55");
+        List<UserExtSource> userExtSources = Arrays.asList(
+                new UserExtSource(1L, new ExtSource(1L, "https://idp-a.cz", EXT_SOURCE_TYPE), "a", 0, true, lastAccess),
+                new UserExtSource(2L, new ExtSource(2L, "internal", "INTERNAL"), "b", 0, true, lastAccess),
+                new UserExtSource(3L, new ExtSource(3L, "https://idp-c.cz", EXT_SOURCE_TYPE), "c", 0, true, lastAccess));
+        Map<Long, JsonNode> uesAttributes = new HashMap<>();
+        uesAttributes.put(1L, uesAttributes("member@a.cz;staff@a.cz", "https://a.cz"));
+        uesAttributes.put(3L, uesAttributes("member@c.cz", null));
+
+        when(connector.post(eq(USERS_MANAGER), eq("getUserExtSources"), anyMap(), any())).thenReturn(userExtSources);
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                Long uesId = (Long) call.getParams().get(RpcAdapterImpl.PARAM_USER_EXT_SOURCE);
+                results.add(RpcCallResult.success(call, uesAttributes.get(uesId)));
+            }
+            return results;
+        });
+
+        List<Affiliation> result = rpcAdapter.getUserExtSourcesAffiliations(USER_ID, AFFILIATION_ATTR, ORG_URL_ATTR);
+
+        long asserted = lastAccess.getTime() / 1000L;
+        assertEquals(Arrays.asList(new Affiliation("https://a.cz", "member@a.cz", asserted),
+                new Affiliation("https://a.cz", "staff@a.cz", asserted),
+                new Affiliation("https://idp-c.cz", "member@c.cz", asserted)), result);
+        verify(connector, times(1)).postBatch(anyList());
+    }
+
+    @Test
+    public void testGetGroupAffiliationsFetchesGroupsOfAllMembersAtOnce()
+            throws PerunUnknownException, PerunConnectionException
+    {
+        when(connector.post(eq(MEMBERS_MANAGER), eq("getMembersByUser"), anyMap(), any())).thenReturn(Arrays.asList(
+                new Member(1L, USER_ID, 10L, MemberStatus.VALID),
+                new Member(2L, USER_ID, 20L, MemberStatus.EXPIRED),
+                new Member(3L, USER_ID, 30L, MemberStatus.VALID)));
+        List<RpcCall> calledGroups = new ArrayList<>();
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                JsonNode response = JsonNodeFactory.instance.nullNode();
+                if ("getMemberGroups".equals(call.getMethod())) {
+                    Long memberId = (Long) call.getParams().get(RpcAdapterImpl.PARAM_MEMBER);
+                    response = JsonNodeFactory.instance.arrayNode()
+                            .add(groupJson(memberId * 100, memberId * 10))
+                            .add(groupJson(memberId * 100 + 1, memberId * 10));
+                } else {
+                    calledGroups.add(call);
+                }
+                results.add(RpcCallResult.success(call, response));
+            }
+            return results;
+        });
+
+        List<Affiliation> result = rpcAdapter.getGroupAffiliations(USER_ID, AFFILIATION_ATTR);
+
+        assertTrue(result.isEmpty());
+        assertEquals(4, calledGroups.size());
+        verify(connector, times(2)).postBatch(anyList());
+    }
+
+    @Test
+    public void testGetGroupAffiliationsWithoutValidMembers() throws PerunUnknownException, PerunConnectionException {
+        when(connector.post(eq(MEMBERS_MANAGER), eq("getMembersByUser"), anyMap(), any()))
+                .thenReturn(Collections.singletonList(new Member(1L, USER_ID, 10L, MemberStatus.INVALID)));
+        when(connector.postBatch(anyList())).thenReturn(new ArrayList<>());
+
+        assertTrue(rpcAdapter.getGroupAffiliations(USER_ID, AFFILIATION_ATTR).isEmpty());
+    }
+
+    private JsonNode uesAttributes(String affiliations, String orgUrl) {
+        ArrayNode attributes = JsonNodeFactory.instance.arrayNode();
+        attributes.add(new PerunAttribute(11L, "Attr1Rpc", "user", "description", "java.lang.String", "Affiliation",
+                true, false, "user", "Attr1Rpc", "", JsonNodeFactory.instance.textNode(affiliations)).toJson());
+        JsonNode orgUrlValue = orgUrl == null
+                ? JsonNodeFactory.instance.nullNode() : JsonNodeFactory.instance.textNode(orgUrl);
+        attributes.add(new PerunAttribute(12L, "login-namespace-example", "urn:perun:user:attribute-def:def",
+                "description", "java.lang.String", "Organization URL", true, false, "user",
+                "login-namespace-example", "", orgUrlValue).toJson());
+        return attributes;
+    }
+
+    private ObjectNode groupJson(Long id, Long voId) {
+        ObjectNode group = JsonNodeFactory.instance.objectNode();
+        group.put(RpcMapper.ID, id);
+        group.put(RpcMapper.NAME, "group" + id);
+        group.put(RpcMapper.VO_ID, voId);
+        return group;
+    }
+
+}
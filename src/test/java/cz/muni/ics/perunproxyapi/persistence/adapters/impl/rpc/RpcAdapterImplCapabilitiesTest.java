@@ -0,0 +1,155 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
+import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
+import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCall;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCallResult;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.Resource;
+import cz.muni.ics.perunproxyapi.persistence.models.Vo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.FACILITIES_MANAGER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+public class RpcAdapterImplCapabilitiesTest {
+
+    private static final String RESOURCE_CAPABILITIES = "user:Attr2";
+    private static final String FACILITY_CAPABILITIES = "urn:perun:facility:attribute-def:def:checkGroupMembership";
+    private static final Long FACILITY_ID = 1L;
+
+    private final PerunConnectorRpc connector = mock(PerunConnectorRpc.class);
+    private FullAdapter rpcAdapter;
+
+    @Autowired
+    private AttributeMappingService attributeMappingService;
+
+    @Autowired
+    private AttributeMappingServiceProperties attributeMappingServiceProperties;
+
+    @BeforeEach
+    public void setUp() {
+        this.rpcAdapter = new RpcAdapterImpl(connector, this.attributeMappingService, attributeMappingServiceProperties);
+    }
+
+    @Test
+    public void testGetCapabilitiesFetchesGroupsOfResourcesWithCapabilities() throws PerunUnknownException, PerunConnectionException {
+        Vo vo = new Vo(10L, "VO", "vo");
+        List<Resource> resources = Arrays.asList(
+                new Resource(1L, 10L, FACILITY_ID, "withCapabilities", "", vo),
+                new Resource(2L, 20L, FACILITY_ID, "withoutVo", "", null),
+                new Resource(3L, 10L, FACILITY_ID, "withoutCapabilities", "", vo));
+        Map<Long, JsonNode> capabilities = new HashMap<>();
+        capabilities.put(1L, capabilitiesAttribute("res:cap1"));
+        capabilities.put(2L, capabilitiesAttribute("res:cap2"));
+        capabilities.put(3L, JsonNodeFactory.instance.nullNode());
+        Map<Long, JsonNode> groups = new HashMap<>();
+        groups.put(1L, groupsJson(100L, "group"));
+        groups.put(2L, groupsJson(200L, "group"));
+        groups.put(3L, groupsJson(300L, "other"));
+
+        when(connector.post(eq(FACILITIES_MANAGER), eq("getAssignedRichResources"), anyMap(), any()))
+                .thenReturn(resources);
+        List<RpcCall> calledCalls = new ArrayList<>();
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            calledCalls.addAll(calls);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                JsonNode response;
+                if ("getAssignedGroups".equals(call.getMethod())) {
+                    response = groups.get((Long) call.getParams().get(RpcAdapterImpl.PARAM_RESOURCE));
+                } else if (call.getParams().containsKey(RpcAdapterImpl.PARAM_FACILITY)) {
+                    response = capabilitiesAttribute("fac:cap");
+                } else {
+                    response = capabilities.get((Long) call.getParams().get(RpcAdapterImpl.PARAM_RESOURCE));
+                }
+                results.add(RpcCallResult.success(call, response));
+            }
+            return results;
+        });
+
+        Group userGroup = new Group(100L, null, "group", "", "vo:group", null, 10L);
+        List<String> result = rpcAdapter.getCapabilities(FACILITY_ID, 1L, Collections.singletonList(userGroup),
+                RESOURCE_CAPABILITIES, FACILITY_CAPABILITIES);
+
+        assertEquals(new HashSet<>(Arrays.asList("res:cap1", "fac:cap")), new HashSet<>(result));
+        verify(connector, times(2)).postBatch(anyList());
+        assertEquals(Collections.singletonList(1L), calledCalls.stream()
+                .filter(call -> "getAssignedGroups".equals(call.getMethod()))
+                .map(call -> call.getParams().get(RpcAdapterImpl.PARAM_RESOURCE))
+                .collect(Collectors.toList()));
+        assertTrue(calledCalls.stream().noneMatch(call -> Long.valueOf(2L)
+                .equals(call.getParams().get(RpcAdapterImpl.PARAM_RESOURCE))));
+    }
+
+    @Test
+    public void testGetCapabilitiesWithoutUserInResourceGroups() throws PerunUnknownException, PerunConnectionException {
+        Vo vo = new Vo(10L, "VO", "vo");
+        when(connector.post(eq(FACILITIES_MANAGER), eq("getAssignedRichResources"), anyMap(), any()))
+                .thenReturn(Collections.singletonList(new Resource(1L, 10L, FACILITY_ID, "res", "", vo)));
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                JsonNode response = "getAssignedGroups".equals(call.getMethod())
+                        ? groupsJson(100L, "group") : capabilitiesAttribute("cap");
+                results.add(RpcCallResult.success(call, response));
+            }
+            return results;
+        });
+
+        Group userGroup = new Group(500L, null, "another", "", "vo:another", null, 10L);
+        List<String> result = rpcAdapter.getCapabilities(FACILITY_ID, 1L, Collections.singletonList(userGroup),
+                RESOURCE_CAPABILITIES, FACILITY_CAPABILITIES);
+
+        assertEquals(Collections.emptyList(), result);
+    }
+
+    private JsonNode capabilitiesAttribute(String... values) {
+        ArrayNode value = JsonNodeFactory.instance.arrayNode();
+        Arrays.stream(values).forEach(value::add);
+        return new PerunAttribute(1L, "capabilities", "urn:perun:resource:attribute-def:def", "description",
+                "java.util.ArrayList", "Capabilities", true, false, "resource", "capabilities", "", value).toJson();
+    }
+
+    private JsonNode groupsJson(Long id, String name) {
+        ObjectNode group = JsonNodeFactory.instance.objectNode();
+        group.put(RpcMapper.ID, id);
+        group.put(RpcMapper.NAME, name);
+        group.put(RpcMapper.VO_ID, 10L);
+        return JsonNodeFactory.instance.arrayNode().add(group);
+    }
+
+}
@@ -1,6 +1,8 @@
 package cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc;
 
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -10,11 +12,18 @@ import cz.muni.ics.perunproxyapi.persistence.AttributeMappingService;
 import cz.muni.ics.perunproxyapi.persistence.adapters.FullAdapter;
 import cz.muni.ics.perunproxyapi.persistence.configs.AttributeMappingServiceProperties;
 import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpc;
+import cz.muni.ics.perunproxyapi.persistence.connectors.PerunConnectorRpcAsync;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCall;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcCallResult;
+import cz.muni.ics.perunproxyapi.persistence.connectors.RpcResponseReader;
 import cz.muni.ics.perunproxyapi.persistence.enums.Entity;
+import cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.InternalErrorException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
 import cz.muni.ics.perunproxyapi.persistence.models.AttributeObjectMapping;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.Member;
 import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
 import cz.muni.ics.perunproxyapi.persistence.models.PerunAttributeValue;
 import cz.muni.ics.perunproxyapi.persistence.models.User;
@@ -24,24 +33,39 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.ATTRIBUTES_MANAGER;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.GROUPS_MANAGER;
+import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.MEMBERS_MANAGER;
 import static cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc.RpcAdapterImpl.USERS_MANAGER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -72,6 +96,7 @@ public class RpcAdapterImplUserRelatedTest {
     private JsonNode sampleUserJson;
     private UserExtSource sampleUserExtSource;
     private JsonNode sampleUserExtSourceJson;
+    private JsonNode loginAttributeJson;
 
     private final PerunConnectorRpc connector = mock(PerunConnectorRpc.class);
     private FullAdapter rpcAdapter;
@@ -103,7 +128,7 @@ public class RpcAdapterImplUserRelatedTest {
         // attributes
         PerunAttribute loginAttribute = new PerunAttribute(1L, name, namespace, "description", "java.lang.String",
                 "Login NS Example", true, true, "user", "baseFriendlyName", "", JsonNodeFactory.instance.textNode(USER_LOGIN));
-        JsonNode loginAttributeJson = loginAttribute.toJson();
+        this.loginAttributeJson = loginAttribute.toJson();
 
         when(connector.post(eq(ATTRIBUTES_MANAGER), eq(GET_ATTRIBUTE), anyMap())).thenReturn(loginAttributeJson);
     }
@@ -138,6 +163,61 @@ public class RpcAdapterImplUserRelatedTest {
         assertNull(rpcAdapter.getPerunUser(TEST_IDP_ENTITY_ID, uids, new ArrayList<>()));
     }
 
+    @Test
+    public void testGetPerunUserProbesUidsConcurrently() throws PerunUnknownException, PerunConnectionException {
+        PerunConnectorRpcAsync connectorAsync = mock(PerunConnectorRpcAsync.class);
+        FullAdapter adapter = new RpcAdapterImpl(connector, connectorAsync, attributeMappingService,
+                attributeMappingServiceProperties, Duration.ZERO, Duration.ZERO, true);
+        CompletableFuture<JsonNode> uid1Probe = new CompletableFuture<>();
+        CompletableFuture<JsonNode> uid3Probe = new CompletableFuture<>();
+        when(connectorAsync.post(eq(USERS_MANAGER), eq(GET_USER_BY_EXT_SOURCE_NAME_AND_EXT_LOGIN), anyMap()))
+                .thenAnswer(invocation -> {
+                    Map<String, Object> params = invocation.getArgument(2);
+                    Object uid = params.get(RpcAdapterImpl.PARAM_EXT_LOGIN);
+                    if (uid1.equals(uid)) {
+                        return uid1Probe;
+                    } else if (uid2.equals(uid)) {
+                        return CompletableFuture.completedFuture(this.userJson(2L));
+                    }
+                    return uid3Probe;
+                });
+        when(connectorAsync.post(eq(ATTRIBUTES_MANAGER), eq(GET_ATTRIBUTE), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(this.loginAttributeJson));
+
+        // the first UID resolves last and misses, the user found by the second one has to be used
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)
+                .execute(() -> uid1Probe.complete(JsonNodeFactory.instance.nullNode()));
+        User actual = adapter.getPerunUser(TEST_IDP_ENTITY_ID, uids, new ArrayList<>());
+
+        assertNotNull(actual, "Expected non-null user to be found.");
+        assertEquals(2L, actual.getPerunId());
+        assertEquals(USER_LOGIN, actual.getLogin());
+        assertTrue(uid3Probe.isCancelled(), "Probe of the lower priority UID should be cancelled");
+        verify(connector, never()).post(eq(USERS_MANAGER), eq(GET_USER_BY_EXT_SOURCE_NAME_AND_EXT_LOGIN), anyMap());
+    }
+
+    @Test
+    public void testGetPerunUserProbesUidsConcurrentlyPrefersFirstUid()
+            throws PerunUnknownException, PerunConnectionException
+    {
+        PerunConnectorRpcAsync connectorAsync = mock(PerunConnectorRpcAsync.class);
+        FullAdapter adapter = new RpcAdapterImpl(connector, connectorAsync, attributeMappingService,
+                attributeMappingServiceProperties, Duration.ZERO, Duration.ZERO, true);
+        when(connectorAsync.post(eq(USERS_MANAGER), eq(GET_USER_BY_EXT_SOURCE_NAME_AND_EXT_LOGIN), anyMap()))
+                .thenAnswer(invocation -> {
+                    Map<String, Object> params = invocation.getArgument(2);
+                    long id = uids.indexOf((String) params.get(RpcAdapterImpl.PARAM_EXT_LOGIN)) + 1;
+                    return CompletableFuture.completedFuture(this.userJson(id));
+                });
+        when(connectorAsync.post(eq(ATTRIBUTES_MANAGER), eq(GET_ATTRIBUTE), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(this.loginAttributeJson));
+
+        User actual = adapter.getPerunUser(TEST_IDP_ENTITY_ID, uids, new ArrayList<>());
+
+        assertNotNull(actual, "Expected non-null user to be found.");
+        assertEquals(1L, actual.getPerunId());
+    }
+
     @Test
     public void testGetAttributesForUser() throws PerunUnknownException, PerunConnectionException {
         when(connector.post(anyString(), anyString(), anyMap())).thenReturn(this.userAttributesJsonArray);
@@ -184,6 +264,31 @@ public class RpcAdapterImplUserRelatedTest {
         assertTrue(result.isEmpty(), "Should return empty map, nonempty map returned instead");
     }
 
+    @Test
+    public void testGetAttributesValuesForMultipleUsers() throws PerunUnknownException, PerunConnectionException {
+        List<Long> calledUserIds = new ArrayList<>();
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                Long userId = (Long) call.getParams().get(Entity.USER.toString());
+                calledUserIds.add(userId);
+                JsonNode response = userId == 1L ? this.userAttributesJsonArray : JsonNodeFactory.instance.arrayNode();
+                results.add(RpcCallResult.success(call, response));
+            }
+            return results;
+        });
+
+        Map<Long, Map<String, PerunAttributeValue>> result = rpcAdapter.getAttributesValues(Entity.USER,
+                Arrays.asList(1L, 2L, 1L), userAttrIdentifiers);
+
+        assertEquals(Arrays.asList(1L, 2L), calledUserIds, "Each user should be fetched once");
+        assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(result.keySet()), "Expected result for each user");
+        assertEquals(userAttributesValues, result.get(1L), "Expected and actual results differ");
+        assertTrue(result.get(2L).values().stream().allMatch(Objects::isNull),
+                "Should return null values for user without attributes");
+    }
+
     @Test
     public void testFindPerunUserById() throws PerunUnknownException, PerunConnectionException {
         when(connector.post(eq(USERS_MANAGER), eq(GET_USER_BY_ID), anyMap())).thenReturn(sampleUserJson);
@@ -274,4 +379,116 @@ public class RpcAdapterImplUserRelatedTest {
         assertTrue(response);
     }
 
+    @Test
+    public void testGetUserGroupsFetchesVoMembersGroupOnce() throws PerunUnknownException, PerunConnectionException {
+        List<Member> members = Arrays.asList(new Member(1L, sampleUser.getPerunId(), 10L, MemberStatus.VALID),
+                new Member(2L, sampleUser.getPerunId(), 20L, MemberStatus.VALID),
+                new Member(3L, sampleUser.getPerunId(), 30L, MemberStatus.EXPIRED));
+        Map<Long, Long> memberVos = new HashMap<>();
+        members.forEach(member -> memberVos.put(member.getId(), member.getVoId()));
+        when(connector.post(eq(MEMBERS_MANAGER), eq("getMembersByUser"), anyMap(), any())).thenReturn(members);
+
+        List<String> calledMethods = new ArrayList<>();
+        when(connector.postBatch(anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcCallResult> results = new ArrayList<>();
+            for (RpcCall call : calls) {
+                calledMethods.add(call.getMethod());
+                JsonNode response = JsonNodeFactory.instance.nullNode();
+                if ("getGroupsWhereMemberIsActive".equals(call.getMethod())) {
+                    Long memberId = (Long) call.getParams().get(RpcAdapterImpl.PARAM_MEMBER);
+                    response = JsonNodeFactory.instance.arrayNode()
+                            .add(groupJson(memberId * 100, "group" + memberId, memberVos.get(memberId)));
+                } else if ("getGroupByName".equals(call.getMethod())) {
+                    Long voId = (Long) call.getParams().get(RpcAdapterImpl.PARAM_VO);
+                    response = groupJson(voId * 1000, RpcAdapterImpl.NAME_MEMBERS, voId);
+                }
+                results.add(RpcCallResult.success(call, response));
+            }
+            return results;
+        });
+
+        List<Group> groups = rpcAdapter.getUserGroups(sampleUser.getPerunId());
+        assertEquals(Arrays.asList(100L, 10000L, 200L, 20000L),
+                groups.stream().map(Group::getId).collect(Collectors.toList()));
+        assertEquals(2, calledMethods.stream().filter("getGroupByName"::equals).count());
+
+        calledMethods.clear();
+        groups = rpcAdapter.getUserGroups(sampleUser.getPerunId());
+        assertEquals(Arrays.asList(100L, 10000L, 200L, 20000L),
+                groups.stream().map(Group::getId).collect(Collectors.toList()));
+        assertEquals(0, calledMethods.stream().filter("getGroupByName"::equals).count());
+    }
+
+    @Test
+    public void testIsUserInGroupCachesGroupVoAndMember() throws PerunUnknownException, PerunConnectionException {
+        ObjectNode memberJson = JsonNodeFactory.instance.objectNode();
+        memberJson.put(RpcMapper.ID, 7L);
+        memberJson.put(RpcMapper.USER_ID, sampleUser.getPerunId());
+        memberJson.put(RpcMapper.VO_ID, 10L);
+        memberJson.put(RpcMapper.STATUS, MemberStatus.VALID.toString());
+        when(connector.post(eq(GROUPS_MANAGER), eq("getGroupById"), anyMap())).thenReturn(groupJson(5L, "group", 10L));
+        when(connector.post(eq(MEMBERS_MANAGER), eq("getMemberByUser"), anyMap())).thenReturn(memberJson);
+        when(connector.post(eq(GROUPS_MANAGER), eq("isGroupMember"), anyMap()))
+                .thenReturn(JsonNodeFactory.instance.booleanNode(true));
+
+        assertTrue(rpcAdapter.isUserInGroup(sampleUser.getPerunId(), 5L));
+        assertTrue(rpcAdapter.isUserInGroup(sampleUser.getPerunId(), 5L));
+
+        verify(connector, times(1)).post(eq(GROUPS_MANAGER), eq("getGroupById"), anyMap());
+        verify(connector, times(1)).post(eq(MEMBERS_MANAGER), eq("getMemberByUser"), anyMap());
+        verify(connector, times(2)).post(eq(GROUPS_MANAGER), eq("isGroupMember"), anyMap());
+    }
+
+    @Test
+    public void testGetGroupIdsWhereUserIsValidMemberCachesMembersGroup() throws PerunUnknownException, PerunConnectionException {
+        when(connector.post(eq(MEMBERS_MANAGER), eq("getMembersByUser"), anyMap(), any()))
+                .thenReturn(Collections.singletonMap(1L, 10L));
+        List<String> calledMethods = new ArrayList<>();
+        when(connector.postBatch(anyList(), anyList())).thenAnswer(invocation -> {
+            List<RpcCall> calls = invocation.getArgument(0);
+            List<RpcResponseReader<?>> readers = invocation.getArgument(1);
+            List<Object> results = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i++) {
+                RpcCall call = calls.get(i);
+                calledMethods.add(call.getMethod());
+                JsonNode response = JsonNodeFactory.instance.nullNode();
+                if ("getGroupsWhereMemberIsActive".equals(call.getMethod())) {
+                    response = JsonNodeFactory.instance.arrayNode().add(groupJson(100L, "group", 10L));
+                } else if ("getGroupByName".equals(call.getMethod())) {
+                    response = groupJson(1000L, RpcAdapterImpl.NAME_MEMBERS, 10L);
+                }
+                try (JsonParser parser = new JsonFactory().createParser(response.toString())) {
+                    results.add(readers.get(i).read(parser));
+                }
+            }
+            return results;
+        });
+
+        Set<Long> groupIds = rpcAdapter.getGroupIdsWhereUserIsValidMember(sampleUser.getPerunId());
+        assertEquals(new HashSet<>(Arrays.asList(100L, 1000L)), new HashSet<>(groupIds));
+        assertEquals(1, calledMethods.stream().filter("getGroupByName"::equals).count());
+
+        calledMethods.clear();
+        groupIds = rpcAdapter.getGroupIdsWhereUserIsValidMember(sampleUser.getPerunId());
+        assertEquals(new HashSet<>(Arrays.asList(100L, 1000L)), new HashSet<>(groupIds));
+        assertEquals(0, calledMethods.stream().filter("getGroupByName"::equals).count());
+    }
+
+    private ObjectNode userJson(Long id) {
+        ObjectNode userJson = JsonNodeFactory.instance.objectNode();
+        userJson.put("id", id);
+        userJson.put("firstName", sampleUser.getFirstName());
+        userJson.put("lastName", sampleUser.getLastName());
+        return userJson;
+    }
+
+    private ObjectNode groupJson(Long id, String name, Long voId) {
+        ObjectNode group = JsonNodeFactory.instance.objectNode();
+        group.put(RpcMapper.ID, id);
+        group.put(RpcMapper.NAME, name);
+        group.put(RpcMapper.VO_ID, voId);
+        return group;
+    }
+
 }
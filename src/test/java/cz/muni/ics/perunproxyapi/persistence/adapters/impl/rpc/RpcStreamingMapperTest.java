@@ -0,0 +1,167 @@
+package cz.muni.ics.perunproxyapi.persistence.adapters.impl.rpc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.muni.ics.perunproxyapi.persistence.enums.AttributeType;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.MissingFieldException;
+import cz.muni.ics.perunproxyapi.persistence.models.AttributeObjectMapping;
+import cz.muni.ics.perunproxyapi.persistence.models.Group;
+import cz.muni.ics.perunproxyapi.persistence.models.PerunAttribute;
+import cz.muni.ics.perunproxyapi.persistence.models.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus.EXPIRED;
+import static cz.muni.ics.perunproxyapi.persistence.enums.MemberStatus.VALID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the streaming mapper. Results are compared to the results of RpcMapper for the same JSON.
+ */
+public class RpcStreamingMapperTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String USERS = "[{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Doe\",\"middleName\":null," +
+            "\"beanName\":\"User\"},{\"id\":\"2\",\"firstName\":\"Joanne\",\"lastName\":\"Doe\"}]";
+
+    private static final String GROUPS = "[{\"id\":1,\"name\":\"group1\",\"description\":\"desc\",\"uuid\":\"u1\"," +
+            "\"voId\":2,\"parentGroupId\":3,\"beanName\":\"Group\"},{\"id\":4,\"name\":\"group2\",\"voId\":2," +
+            "\"parentGroupId\":null,\"description\":null}]";
+
+    private static final String FACILITIES = "[{\"id\":1,\"name\":\"facility\",\"description\":\"desc\"," +
+            "\"createdAt\":\"2020-01-01\"}]";
+
+    private static final String MEMBERS = "[{\"id\":1,\"userId\":2,\"voId\":3,\"status\":\"VALID\"," +
+            "\"sponsored\":false},{\"id\":4,\"userId\":2,\"voId\":5,\"status\":\"EXPIRED\"}]";
+
+    private static final String RICH_RESOURCES = "[{\"id\":1,\"voId\":2,\"facilityId\":3,\"name\":\"res\"," +
+            "\"description\":\"desc\",\"vo\":{\"id\":2,\"name\":\"VO\",\"shortName\":\"vo\",\"beanName\":\"Vo\"}," +
+            "\"facility\":{\"id\":3,\"name\":\"facility\",\"tags\":[{\"id\":1}]},\"resourceTags\":[]}]";
+
+    private static final String USER_EXT_SOURCES = "[{\"id\":1,\"login\":\"login@idp\",\"loa\":2," +
+            "\"persistent\":true,\"lastAccess\":\"2020-10-10 10:10:10.0\",\"extSource\":{\"id\":5," +
+            "\"name\":\"https://idp.org/\",\"type\":\"cz.metacentrum.perun.core.impl.ExtSourceIdp\"}}]";
+
+    private static final String ATTRIBUTES = "[{\"id\":1,\"friendlyName\":\"login\",\"namespace\":" +
+            "\"urn:perun:user:attribute-def:def\",\"description\":\"d\",\"type\":\"java.lang.String\"," +
+            "\"displayName\":\"Login\",\"writable\":true,\"unique\":false,\"entity\":\"user\"," +
+            "\"baseFriendlyName\":\"login\",\"friendlyNameParameter\":\"\",\"value\":\"john\"}," +
+            "{\"id\":2,\"friendlyName\":\"entitlements\",\"namespace\":\"urn:perun:user:attribute-def:def\"," +
+            "\"description\":\"d\",\"type\":\"java.util.ArrayList\",\"displayName\":\"Ent\",\"writable\":true," +
+            "\"unique\":false,\"entity\":\"user\",\"baseFriendlyName\":\"entitlements\"," +
+            "\"friendlyNameParameter\":\"\",\"value\":[\"a\",\"b\"]}]";
+
+    @Test
+    public void testMapUsers() throws IOException {
+        assertEquals(RpcMapper.mapUsers(mapper.readTree(USERS)), RpcStreamingMapper.mapUsers(parser(USERS)));
+    }
+
+    @Test
+    public void testMapGroups() throws IOException {
+        List<Group> groups = RpcStreamingMapper.mapGroups(parser(GROUPS));
+        assertEquals(RpcMapper.mapGroups(mapper.readTree(GROUPS)), groups);
+        assertEquals(0L, groups.get(1).getParentGroupId());
+        assertEquals("", groups.get(1).getDescription());
+    }
+
+    @Test
+    public void testMapIds() throws IOException {
+        Set<Long> expected = new HashSet<>();
+        for (Group group : RpcMapper.mapGroups(mapper.readTree(GROUPS))) {
+            expected.add(group.getId());
+        }
+        assertEquals(expected, RpcStreamingMapper.mapIds(parser(GROUPS)));
+        assertTrue(RpcStreamingMapper.mapIds(parser("null")).isEmpty());
+        assertThrows(MissingFieldException.class, () -> RpcStreamingMapper.mapIds(parser("[{\"name\":\"g\"}]")));
+    }
+
+    @Test
+    public void testMapMemberVoIds() throws IOException {
+        assertEquals(Collections.singleton(3L), RpcStreamingMapper.mapMemberVoIds(parser(MEMBERS), VALID));
+        assertEquals(Collections.singleton(5L), RpcStreamingMapper.mapMemberVoIds(parser(MEMBERS), EXPIRED));
+    }
+
+    @Test
+    public void testMapMemberIdsToVoIds() throws IOException {
+        assertEquals(Collections.singletonMap(1L, 3L), RpcStreamingMapper.mapMemberIdsToVoIds(parser(MEMBERS), VALID));
+        assertEquals(Collections.singletonMap(4L, 5L),
+                RpcStreamingMapper.mapMemberIdsToVoIds(parser(MEMBERS), EXPIRED));
+    }
+
+    @Test
+    public void testMapId() throws IOException {
+        assertEquals(1L, RpcStreamingMapper.mapId(parser("{\"id\":1,\"name\":\"members\",\"voId\":2}")));
+        assertNull(RpcStreamingMapper.mapId(parser("null")));
+    }
+
+    @Test
+    public void testMapFacilities() throws IOException {
+        assertEquals(RpcMapper.mapFacilities(mapper.readTree(FACILITIES)),
+                RpcStreamingMapper.mapFacilities(parser(FACILITIES)));
+    }
+
+    @Test
+    public void testMapMembers() throws IOException {
+        assertEquals(RpcMapper.mapMembers(mapper.readTree(MEMBERS)), RpcStreamingMapper.mapMembers(parser(MEMBERS)));
+    }
+
+    @Test
+    public void testMapRichResources() throws IOException {
+        List<Resource> resources = RpcStreamingMapper.mapResources(parser(RICH_RESOURCES));
+        assertEquals(RpcMapper.mapResources(mapper.readTree(RICH_RESOURCES)), resources);
+        assertNotNull(resources.get(0).getVo());
+        assertEquals("vo", resources.get(0).getVo().getShortName());
+    }
+
+    @Test
+    public void testMapUserExtSources() throws IOException {
+        assertEquals(RpcMapper.mapUserExtSources(mapper.readTree(USER_EXT_SOURCES)),
+                RpcStreamingMapper.mapUserExtSources(parser(USER_EXT_SOURCES)));
+    }
+
+    @Test
+    public void testMapAttributes() throws IOException {
+        Set<AttributeObjectMapping> mappings = new HashSet<>();
+        mappings.add(new AttributeObjectMapping("login", "urn:perun:user:attribute-def:def:login", "login",
+                AttributeType.STRING, ","));
+        mappings.add(new AttributeObjectMapping("entitlements", "urn:perun:user:attribute-def:def:entitlements",
+                "entitlements", AttributeType.ARRAY, ","));
+        mappings.add(new AttributeObjectMapping("missing", "urn:perun:user:attribute-def:def:missing", "missing",
+                AttributeType.STRING, ","));
+
+        Map<String, PerunAttribute> attributes = RpcStreamingMapper.mapAttributes(parser(ATTRIBUTES), mappings);
+        assertEquals(RpcMapper.mapAttributes(mapper.readTree(ATTRIBUTES), mappings), attributes);
+        assertEquals(2, attributes.get("entitlements").valueAsList().size());
+        assertTrue(attributes.containsKey("missing"));
+        assertNull(attributes.get("missing"));
+    }
+
+    @Test
+    public void testMapNullResponse() throws IOException {
+        assertTrue(RpcStreamingMapper.mapGroups(parser("null")).isEmpty());
+        assertTrue(RpcStreamingMapper.mapResources(parser("")).isEmpty());
+        assertNull(RpcStreamingMapper.mapUser(parser("null")));
+    }
+
+    @Test
+    public void testMapMissingRequiredField() {
+        String json = "[{\"id\":1,\"name\":\"group1\"}]";
+        assertThrows(MissingFieldException.class, () -> RpcStreamingMapper.mapGroups(parser(json)));
+    }
+
+    private JsonParser parser(String json) throws IOException {
+        return mapper.getFactory().createParser(json);
+    }
+
+}
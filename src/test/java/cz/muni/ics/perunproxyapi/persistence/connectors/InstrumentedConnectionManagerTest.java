@@ -0,0 +1,88 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the instrumented connection manager of the RPC connector.
+ */
+public class InstrumentedConnectionManagerTest {
+
+    private ServerSocket server;
+    private PoolingHttpClientConnectionManager pool;
+    private InstrumentedConnectionManager connectionManager;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // connections are only opened, backlog of the socket is enough to accept them
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        pool = new PoolingHttpClientConnectionManager();
+        pool.setDefaultMaxPerRoute(2);
+        connectionManager = new InstrumentedConnectionManager(pool);
+        registry = new SimpleMeterRegistry();
+        connectionManager.bindTo(registry);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connectionManager.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testWarmUpOpensConnectionsUpToMaxPerRoute() {
+        int opened = connectionManager.warmUp(url(), 5, 1000, Duration.ofSeconds(20));
+
+        assertEquals(2, opened);
+        assertEquals(2, pool.getTotalStats().getAvailable());
+        assertEquals(0, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testWarmUpOfUnreachableServerDoesNotFail() {
+        int opened = connectionManager.warmUp("http://127.0.0.1:1/rpc", 2, 1000, Duration.ofSeconds(20));
+
+        assertEquals(0, opened);
+        assertEquals(0, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testLeaseIsTimedAndExhaustionCounted() throws Exception {
+        HttpRoute route = new HttpRoute(new HttpHost("127.0.0.1", server.getLocalPort()));
+        HttpClientConnection first = connectionManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        HttpClientConnection second = connectionManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+
+        assertThrows(ConnectionPoolTimeoutException.class,
+                () -> connectionManager.requestConnection(route, null).get(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, connectionManager.getLeaseTimeouts());
+        assertEquals(3, registry.get(InstrumentedConnectionManager.LEASE_METRIC).timer().count());
+        assertEquals(1.0, registry.get(InstrumentedConnectionManager.LEASE_TIMEOUTS_METRIC)
+                .functionCounter().count());
+        assertEquals(2.0, registry.get("httpcomponents.httpclient.pool.total.connections")
+                .tag("state", "leased").gauge().value());
+
+        connectionManager.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+        connectionManager.releaseConnection(second, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/rpc";
+    }
+
+}
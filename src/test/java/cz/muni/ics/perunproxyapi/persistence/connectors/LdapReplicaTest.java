@@ -0,0 +1,145 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldif.LDIFException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.LookupException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.filter.AndFilter;
+import org.springframework.ldap.filter.EqualsFilter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.ldap.query.LdapQueryBuilder.query;
+
+public class LdapReplicaTest {
+
+    private static final String BASE_DN = "dc=perun,dc=cesnet,dc=cz";
+    private static final String OU_PEOPLE = "ou=People";
+    private static final ContextMapper<String> CN_MAPPER = ctx -> ((DirContextAdapter) ctx).getStringAttribute("cn");
+
+    private InMemoryDirectoryServer server;
+
+    @BeforeEach
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.setSchema(null);
+        config.setMaxChangeLogEntries(100);
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+        server.add("dn: " + BASE_DN, "objectClass: top", "objectClass: domain", "dc: perun");
+        server.add("dn: ou=People," + BASE_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: People");
+        server.add("dn: perunVoId=1," + BASE_DN, "objectClass: perunVO", "perunVoId: 1", "o: vo");
+        server.add(group(10, "vo:members", 1));
+        server.add(group(11, "vo:staff", 1, 2));
+        server.add(user(1, "john@muni.cz"));
+        server.add(user(2, "jane@muni.cz"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.shutDown(true);
+    }
+
+    @Test
+    public void testQueriesAreAnsweredFromReplica() throws LDAPException, LookupException {
+        LdapReplica replica = replica(LdapReplica.SyncMode.RELOAD, 2);
+        assertFalse(replica.isReady());
+        replica.load();
+        assertTrue(replica.isReady());
+        assertEquals(5, replica.size());
+
+        PerunConnectorLdap connector = new PerunConnectorLdapReplica(replica);
+        server.shutDown(true);
+
+        assertEquals("John", connector.searchForObject(query().base(OU_PEOPLE)
+                .filter(new EqualsFilter("eduPersonPrincipalNames", "JOHN@muni.cz")), CN_MAPPER));
+        assertEquals(new HashSet<>(Arrays.asList("vo:members", "vo:staff")), new HashSet<>(connector.search(
+                query().filter(new AndFilter()
+                        .and(new EqualsFilter("objectClass", "perunGroup"))
+                        .and(new EqualsFilter("uniqueMember", "perunUserId=1,ou=People," + BASE_DN))),
+                CN_MAPPER)));
+        assertNull(connector.searchForObject(query().filter(new EqualsFilter("objectClass", "perunGroup")),
+                CN_MAPPER));
+        assertEquals("Jane", connector.lookup("perunUserId=2,ou=People", new String[] { "cn" }, CN_MAPPER));
+        assertNull(connector.lookup("perunUserId=2,ou=People", new String[] { "sn" }, CN_MAPPER));
+        assertThrows(LookupException.class,
+                () -> connector.lookup("perunUserId=3,ou=People", new String[] { "cn" }, CN_MAPPER));
+    }
+
+    @Test
+    public void testChangesAreSynchronizedFromChangelog() throws LDAPException, LDIFException {
+        LdapReplica replica = replica(LdapReplica.SyncMode.CHANGELOG, 500);
+        replica.load();
+        PerunConnectorLdap connector = new PerunConnectorLdapReplica(replica);
+
+        server.modify("perunGroupId=11,perunVoId=1," + BASE_DN, new Modification(ModificationType.DELETE,
+                "uniqueMember", "perunUserId=1,ou=People," + BASE_DN));
+        server.delete("perunUserId=2,ou=People," + BASE_DN);
+        server.add(user(3, "joe@muni.cz"));
+        replica.syncChangelog();
+
+        assertEquals(Collections.singletonList("vo:members"), connector.search(query().filter(
+                new EqualsFilter("uniqueMember", "perunUserId=1,ou=People," + BASE_DN)), CN_MAPPER));
+        assertNull(connector.searchForObject(query().filter(new EqualsFilter("perunUserId", "2")), CN_MAPPER));
+        assertEquals("Joe", connector.searchForObject(query().filter(
+                new EqualsFilter("eduPersonPrincipalNames", "joe@muni.cz")), CN_MAPPER));
+        assertEquals(5, replica.size());
+    }
+
+    @Test
+    public void testStaleReplicaIsNotReady() throws LDAPException, InterruptedException {
+        LdapReplica replica = new LdapReplica(server::getConnection, BASE_DN, LdapReplica.SyncMode.CHANGELOG,
+                Duration.ofMinutes(1), 500, Duration.ofMillis(200), Collections.emptyList(), false);
+        replica.load();
+        assertTrue(replica.isReady());
+
+        server.shutDown(true);
+        Thread.sleep(300);
+        replica.refresh();
+        assertFalse(replica.isReady());
+
+        server.startListening();
+        replica.refresh();
+        assertTrue(replica.isReady());
+    }
+
+    private LdapReplica replica(LdapReplica.SyncMode syncMode, int pageSize) throws LDAPException {
+        return new LdapReplica(server::getConnection, BASE_DN, syncMode, Duration.ofMinutes(1), pageSize,
+                Duration.ZERO, Collections.emptyList(), false);
+    }
+
+    private static String[] user(long id, String eppn) {
+        String name = Character.toUpperCase(eppn.charAt(0)) + eppn.substring(1, eppn.indexOf('@'));
+        return new String[] { "dn: perunUserId=" + id + ",ou=People," + BASE_DN, "objectClass: perunUser",
+                "perunUserId: " + id, "cn: " + name, "sn: Doe", "eduPersonPrincipalNames: " + eppn };
+    }
+
+    private static String[] group(long id, String name, long... memberIds) {
+        String[] group = new String[4 + memberIds.length];
+        group[0] = "dn: perunGroupId=" + id + ",perunVoId=1," + BASE_DN;
+        group[1] = "objectClass: perunGroup";
+        group[2] = "perunGroupId: " + id;
+        group[3] = "cn: " + name;
+        for (int i = 0; i < memberIds.length; i++) {
+            group[4 + i] = "uniqueMember: perunUserId=" + memberIds[i] + ",ou=People," + BASE_DN;
+        }
+        return group;
+    }
+
+}
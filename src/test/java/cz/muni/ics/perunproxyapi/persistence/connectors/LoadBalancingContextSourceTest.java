@@ -0,0 +1,125 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.CommunicationException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.DirContextProxy;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoadBalancingContextSourceTest {
+
+    private static final String HOST_A = "ldap://a";
+    private static final String HOST_B = "ldap://b";
+
+    private final ContextSource sourceA = mock(ContextSource.class);
+    private final ContextSource sourceB = mock(ContextSource.class);
+    private final DirContext contextA = mock(DirContext.class);
+    private final DirContext contextB = mock(DirContext.class);
+
+    @BeforeEach
+    public void setUp() {
+        reset(sourceA, sourceB, contextA, contextB);
+        when(sourceA.getReadOnlyContext()).thenReturn(contextA);
+        when(sourceB.getReadOnlyContext()).thenReturn(contextB);
+    }
+
+    @Test
+    public void testLeastOutstandingHostIsSelected() throws NamingException {
+        LoadBalancingContextSource source = source(LoadBalancingContextSource.Strategy.LEAST_OUTSTANDING);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        source.bindTo(registry);
+
+        DirContext first = source.getReadOnlyContext();
+        DirContext second = source.getReadOnlyContext();
+        first.getAttributes("cn=x");
+        second.getAttributes("cn=x");
+        verify(contextA).getAttributes("cn=x");
+        verify(contextB).getAttributes("cn=x");
+
+        first.close();
+        second.close();
+        assertEquals(1, registry.get(LoadBalancingContextSource.LATENCY_METRIC).tag("host", HOST_A).timer().count());
+        assertEquals(0, registry.get(LoadBalancingContextSource.OUTSTANDING_METRIC).tag("host", HOST_B)
+                .gauge().value());
+    }
+
+    @Test
+    public void testFailingHostIsEjectedAndReturned() throws NamingException {
+        LoadBalancingContextSource source = source(LoadBalancingContextSource.Strategy.LATENCY_WEIGHTED);
+        when(sourceA.getReadOnlyContext()).thenThrow(new CommunicationException(
+                new javax.naming.CommunicationException("connection refused")));
+
+        for (int i = 0; i < 4; i++) {
+            DirContext context = source.getReadOnlyContext();
+            context.getAttributes("cn=x");
+            context.close();
+        }
+        verify(contextB, times(4)).getAttributes("cn=x");
+
+        source.checkHealth();
+        assertEquals(Collections.singletonList(HOST_B), source.getAvailableHosts());
+
+        reset(sourceA);
+        when(sourceA.getReadOnlyContext()).thenReturn(contextA);
+        source.checkHealth();
+        assertEquals(Arrays.asList(HOST_A, HOST_B), source.getAvailableHosts());
+    }
+
+    @Test
+    public void testAllHostsAreUsedWhenAllAreEjected() throws NamingException {
+        LoadBalancingContextSource source = source(LoadBalancingContextSource.Strategy.LEAST_OUTSTANDING);
+        when(sourceB.getReadOnlyContext()).thenThrow(new CommunicationException(
+                new javax.naming.CommunicationException("connection refused")));
+        reset(sourceA);
+        when(sourceA.getReadOnlyContext()).thenThrow(new CommunicationException(
+                new javax.naming.CommunicationException("connection refused"))).thenReturn(contextA);
+
+        source.checkHealth();
+        assertEquals(Collections.emptyList(), source.getAvailableHosts());
+        DirContext context = source.getReadOnlyContext();
+        context.getAttributes("cn=x");
+        verify(contextA).getAttributes("cn=x");
+    }
+
+    @Test
+    public void testContextsUsedDirectlyAreNotMeasured() throws NamingException, InterruptedException {
+        LoadBalancingContextSource source = new LoadBalancingContextSource(Collections.singletonList(
+                new LoadBalancingContextSource.HostContextSource(HOST_A, sourceA, sourceA)),
+                LoadBalancingContextSource.Strategy.LEAST_OUTSTANDING, Duration.ZERO, 0.5, Duration.ofMillis(1), 1,
+                false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        source.bindTo(registry);
+
+        // paged search holds the target connection across all the pages
+        DirContext context = source.getReadOnlyContext();
+        ((DirContextProxy) context).getTargetContext();
+        Thread.sleep(20);
+        context.close();
+
+        source.checkHealth();
+        assertEquals(Collections.singletonList(HOST_A), source.getAvailableHosts());
+        assertEquals(0, registry.get(LoadBalancingContextSource.LATENCY_METRIC).tag("host", HOST_A).timer().count());
+    }
+
+    private LoadBalancingContextSource source(LoadBalancingContextSource.Strategy strategy) {
+        return new LoadBalancingContextSource(Arrays.asList(
+                new LoadBalancingContextSource.HostContextSource(HOST_A, sourceA, sourceA),
+                new LoadBalancingContextSource.HostContextSource(HOST_B, sourceB, sourceB)),
+                strategy, Duration.ZERO, 0.5, Duration.ofSeconds(5), 1, false);
+    }
+
+}
@@ -1,6 +1,7 @@
 package cz.muni.ics.perunproxyapi.persistence.connectors;
 
 import cz.muni.ics.perunproxyapi.persistence.exceptions.LookupException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -8,21 +9,34 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.ldap.UncategorizedLdapException;
 import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.DirContextAdapter;
 import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.filter.PresentFilter;
+import org.springframework.ldap.pool2.factory.PoolConfig;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+import org.springframework.ldap.query.LdapQuery;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.ldap.query.LdapQueryBuilder.query;
 
 /**
  * Tests for the LDAP connector.
@@ -37,6 +51,7 @@ public class PerunConnectorLdapTest {
 
     private static final String ATTR1 = "attr1";
     private static final String ATTR2 = "attr2";
+    private static final String HOST = "ldap://localhost:8389";
 
     private static final LdapTemplate ldapTemplateMock = mock(LdapTemplate.class);
     private static final PerunConnectorLdap connectorMock = new PerunConnectorLdap(ldapTemplateMock);
@@ -44,6 +59,10 @@ public class PerunConnectorLdapTest {
     @Autowired
     private LdapTemplate ldapTemplate;
 
+    @Autowired
+    @Qualifier("targetContextSource")
+    private ContextSource targetContextSource;
+
     @Autowired
     private PerunConnectorLdap connector;
 
@@ -58,12 +77,56 @@ public class PerunConnectorLdapTest {
             String[] attr2 = context.getStringAttributes(ATTR2);
             return new TestObject(attr1, Arrays.asList(attr2));
         };
-        when(ldapTemplateMock.lookup(anyString(), any(String[].class), any(ContextMapper.class)))
+        when(ldapTemplateMock.lookup(anyString(), any(String[].class),
+                ArgumentMatchers.<ContextMapper<TestObject>>any()))
                 .thenThrow(new UncategorizedLdapException("Test exception"));
 
         assertThrows(LookupException.class, () -> connectorMock.lookup(dn, attributes, mapper));
     }
 
+    @Test
+    public void testSearchPagedReturnsAllPages() {
+        PerunConnectorLdap pagedConnector = new PerunConnectorLdap(ldapTemplate, 1, 0);
+        LdapQuery query = query().filter(new PresentFilter("objectClass"));
+        ContextMapper<String> mapper = ctx -> ((DirContextAdapter) ctx).getDn().toString();
+
+        List<String> found = new ArrayList<>();
+        pagedConnector.searchPaged(query, mapper, found::add);
+
+        assertEquals(4, found.size());
+        assertEquals(new HashSet<>(connector.search(query, mapper)), new HashSet<>(found));
+    }
+
+    @Test
+    public void testSearchPagedUsesPooledBalancedConnection() {
+        PooledContextSource pooled = new PooledContextSource(new PoolConfig());
+        pooled.setContextSource(targetContextSource);
+        LoadBalancingContextSource balanced = new LoadBalancingContextSource(Collections.singletonList(
+                new LoadBalancingContextSource.HostContextSource(HOST, pooled, targetContextSource)),
+                LoadBalancingContextSource.Strategy.LEAST_OUTSTANDING, Duration.ZERO, 0.5, Duration.ofSeconds(5), 1,
+                false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        balanced.bindTo(registry);
+        LdapTemplate balancedTemplate = new LdapTemplate(balanced);
+        PerunConnectorLdap pagedConnector = new PerunConnectorLdap(balancedTemplate, 1, 0);
+        LdapQuery query = query().filter(new PresentFilter("objectClass"));
+        ContextMapper<String> mapper = ctx -> ((DirContextAdapter) ctx).getDn().toString();
+
+        List<String> found = new ArrayList<>();
+        pagedConnector.searchPaged(query, mapper, found::add);
+        assertEquals(4, found.size());
+        // the paged search is not part of the host latency
+        assertEquals(0, registry.get(LoadBalancingContextSource.LATENCY_METRIC).tag("host", HOST).timer().count());
+        assertEquals(0, registry.get(LoadBalancingContextSource.OUTSTANDING_METRIC).tag("host", HOST)
+                .gauge().value());
+
+        // the connection is back in the pool without the paged results control
+        assertEquals(1, pooled.getNumIdle());
+        assertEquals(4, new PerunConnectorLdap(balancedTemplate).search(query, mapper).size());
+        assertEquals(1, pooled.getNumIdle());
+        assertEquals(1, registry.get(LoadBalancingContextSource.LATENCY_METRIC).tag("host", HOST).timer().count());
+    }
+
     @Getter
     @Setter
     @ToString
@@ -0,0 +1,145 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpServer;
+import cz.muni.ics.perunproxyapi.persistence.adapters.AdapterUtils;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the asynchronous RPC connector.
+ */
+public class PerunConnectorRpcAsyncTest {
+
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private final String usersManager = "usersManager";
+    private final String getUserByIdMethod = "getUserById";
+
+    @Test
+    public void testDisabledConnectorReturnsNullNode() throws PerunUnknownException, PerunConnectionException {
+        PerunConnectorRpcAsync connector = new PerunConnectorRpcAsync(false, httpClient, "http://somewhere.com",
+                null, null, Duration.ofSeconds(1));
+
+        JsonNode result = AdapterUtils.awaitResult(
+                connector.post(usersManager, getUserByIdMethod, Collections.emptyMap()));
+        assertTrue(result.isNull());
+    }
+
+    @Test
+    public void testGzipResponseIsDecompressed() throws Exception {
+        byte[] compressed = gzip("{\"id\":1,\"name\":\"vo\"}");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzipAccepted = acceptEncoding != null && acceptEncoding.contains("gzip");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzipAccepted) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(gzipAccepted ? 200 : 406, compressed.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(compressed);
+            }
+        });
+        server.start();
+        try {
+            PerunConnectorRpcAsync connector = new PerunConnectorRpcAsync(true, httpClient,
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/rpc/json", null, null,
+                    Duration.ofSeconds(5));
+
+            JsonNode result = AdapterUtils.awaitResult(
+                    connector.post("vosManager", "getVoById", Collections.emptyMap()));
+            assertEquals("vo", result.get("name").asText());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testEmptyEncodedResponseIsNullNode() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            PerunConnectorRpcAsync connector = new PerunConnectorRpcAsync(true, httpClient,
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/rpc/json", null, null,
+                    Duration.ofSeconds(5));
+
+            JsonNode result = AdapterUtils.awaitResult(
+                    connector.post("vosManager", "getVoById", Collections.emptyMap()));
+            assertTrue(result.isNull());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testConnectionErrorCompletesExceptionally() {
+        PerunConnectorRpcAsync connector = new PerunConnectorRpcAsync(true, httpClient, "http://127.0.0.1:1/rpc",
+                "user", "pass", Duration.ofSeconds(1));
+
+        CompletableFuture<JsonNode> result = connector.post(usersManager, getUserByIdMethod, Collections.emptyMap());
+        assertThrows(PerunConnectionException.class, () -> AdapterUtils.awaitResult(result));
+    }
+
+    @Test
+    public void testCancelledCallReleasesPermitAndCancelsExchange() {
+        HttpClient client = mock(HttpClient.class);
+        CompletableFuture<HttpResponse<Object>> exchange = new CompletableFuture<>();
+        doReturn(exchange, new CompletableFuture<>()).when(client).sendAsync(any(), any());
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(1, 1, 1, 5000);
+        RpcCircuitBreaker circuitBreaker = new RpcCircuitBreaker(1, 1000);
+        PerunConnectorRpcAsync connector = new PerunConnectorRpcAsync(true, client, "http://somewhere.com",
+                null, null, Duration.ofSeconds(1), new RpcCallGuard(circuitBreaker, limiter, 0, false));
+
+        CompletableFuture<JsonNode> probe = connector.post(usersManager, getUserByIdMethod, Collections.emptyMap());
+        assertEquals(1, limiter.getInFlight());
+
+        probe.cancel(true);
+        assertEquals(0, limiter.getInFlight());
+        assertTrue(exchange.isCancelled(), "HTTP exchange of the cancelled call should be cancelled");
+        assertEquals(RpcCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        // the freed permission can be used by the next call
+        CompletableFuture<JsonNode> next = connector.post(usersManager, getUserByIdMethod, Collections.emptyMap());
+        assertFalse(next.isDone());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    private byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -1,17 +1,29 @@
 package cz.muni.ics.perunproxyapi.persistence.connectors;
 
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -39,4 +51,42 @@ public class PerunConnectorRpcTest {
                 () -> connectorMock.post(usersManager, getUserByIdMethod, Collections.emptyMap()));
     }
 
+    @Test
+    public void testStreamingPostDisabledConnectorReadsNull() throws PerunUnknownException, PerunConnectionException {
+        PerunConnectorRpc disabledConnector = new PerunConnectorRpc(false, restTemplateMock, mockUrl);
+
+        boolean isNull = disabledConnector.post(usersManager, getUserByIdMethod, Collections.emptyMap(),
+                parser -> parser.nextToken() == JsonToken.VALUE_NULL);
+        assertTrue(isNull);
+    }
+
+    @Test
+    public void testPostBatchKeepsOrderAndIsolatesErrors() throws PerunUnknownException, PerunConnectionException {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.postForObject(eq(mockUrl + "/usersManager/getUserById"), anyMap(), any()))
+                .thenReturn(JsonNodeFactory.instance.numberNode(1));
+        when(restTemplate.postForObject(eq(mockUrl + "/vosManager/getVoById"), anyMap(), any()))
+                .thenThrow(new RestClientException("Test exception"));
+        when(restTemplate.postForObject(eq(mockUrl + "/groupsManager/getGroupById"), anyMap(), any()))
+                .thenReturn(JsonNodeFactory.instance.numberNode(3));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PerunConnectorRpc connector = new PerunConnectorRpc(true, restTemplate, mockUrl, executor, null, null, null, null);
+            List<RpcCallResult> results = connector.postBatch(Arrays.asList(
+                    new RpcCall(usersManager, getUserByIdMethod, Collections.emptyMap()),
+                    new RpcCall("vosManager", "getVoById", Collections.emptyMap()),
+                    new RpcCall("groupsManager", "getGroupById", Collections.emptyMap())));
+
+            assertEquals(3, results.size());
+            JsonNode first = results.get(0).getResponseOrThrow();
+            assertEquals(1, first.asInt());
+            assertFalse(results.get(1).isSuccessful());
+            assertThrows(PerunConnectionException.class, () -> results.get(1).getResponseOrThrow());
+            assertEquals(3, results.get(2).getResponseOrThrow().asInt());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,48 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the executors used by the Perun RPC connector.
+ */
+public class RpcBeansTest {
+
+    @Test
+    public void testRejectedTaskRunsOnCallerUntilShutdown() throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), RpcBeans.callerRunsUnlessShutdown());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> awaitQuietly(release));
+
+            AtomicReference<Thread> runBy = new AtomicReference<>();
+            executor.execute(() -> runBy.set(Thread.currentThread()));
+            assertEquals(Thread.currentThread(), runBy.get());
+
+            executor.shutdown();
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
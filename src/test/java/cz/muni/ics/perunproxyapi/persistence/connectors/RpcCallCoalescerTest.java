@@ -0,0 +1,122 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for coalescing of identical concurrent calls to Perun RPC.
+ */
+public class RpcCallCoalescerTest {
+
+    private static final String MANAGER = "facilitiesManager";
+    private static final String METHOD = "getFacilitiesByAttribute";
+
+    @Test
+    public void testIsReadMethod() {
+        assertTrue(RpcCallCoalescer.isReadMethod("getVoById"));
+        assertTrue(RpcCallCoalescer.isReadMethod("isGroupMember"));
+        assertFalse(RpcCallCoalescer.isReadMethod("setAttributes"));
+        assertFalse(RpcCallCoalescer.isReadMethod("createMember"));
+    }
+
+    @Test
+    public void testIdenticalConcurrentCallsShareResult() throws Exception {
+        RpcCallCoalescer coalescer = new RpcCallCoalescer();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        JsonNode response = JsonNodeFactory.instance.textNode("facility");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<JsonNode> leader = CompletableFuture.supplyAsync(() -> call(coalescer,
+                    params("entityId", "https://sp.org/"), () -> {
+                        executions.incrementAndGet();
+                        awaitLatch(release);
+                        return response;
+                    }), executor);
+            while (executions.get() == 0) {
+                Thread.sleep(5);
+            }
+
+            // the parameters are inserted in a different order, but represent the same call
+            Map<String, Object> followerParams = new LinkedHashMap<>();
+            followerParams.put("attributeValue", "https://sp.org/");
+            followerParams.put("attributeName", "entityId");
+            CompletableFuture<JsonNode> follower = CompletableFuture.supplyAsync(() -> call(coalescer,
+                    followerParams, () -> {
+                        executions.incrementAndGet();
+                        return JsonNodeFactory.instance.nullNode();
+                    }), executor);
+            while (coalescer.getCoalescedCalls() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertSame(response, leader.get(5, TimeUnit.SECONDS));
+            assertSame(response, follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+            assertEquals(1, coalescer.getExecutedCalls());
+            assertEquals(1, coalescer.getCoalescedCalls());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedCallIsNotCached() throws Exception {
+        RpcCallCoalescer coalescer = new RpcCallCoalescer();
+        RpcCall call = new RpcCall(MANAGER, METHOD, params("entityId", "https://sp.org/"));
+
+        assertThrows(PerunConnectionException.class, () -> coalescer.execute(call, JsonNode.class, () -> {
+            throw new PerunConnectionException("Test exception");
+        }));
+
+        JsonNode result = coalescer.execute(call, JsonNode.class, () -> JsonNodeFactory.instance.numberNode(1));
+        assertEquals(1, result.asInt());
+        assertEquals(2, coalescer.getExecutedCalls());
+        assertEquals(0, coalescer.getCoalescedCalls());
+    }
+
+    private JsonNode call(RpcCallCoalescer coalescer, Map<String, Object> params,
+                          RpcSupplier<JsonNode> supplier)
+    {
+        try {
+            return coalescer.execute(new RpcCall(MANAGER, METHOD, params), JsonNode.class, supplier);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Object> params(String attrName, String attrValue) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("attributeName", attrName);
+        params.put("attributeValue", attrValue);
+        return params;
+    }
+
+    private void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
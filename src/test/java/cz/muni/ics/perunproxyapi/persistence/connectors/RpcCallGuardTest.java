@@ -0,0 +1,88 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunCallRejectedException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunUnknownException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the circuit breaker and the concurrency limiter guarding the calls to Perun RPC.
+ */
+public class RpcCallGuardTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        RpcCircuitBreaker circuitBreaker = new RpcCircuitBreaker(2, 1000, clock::get);
+        RpcCallGuard guard = new RpcCallGuard(circuitBreaker, null, 0, false);
+
+        assertThrows(PerunConnectionException.class, () -> guard.execute(this::failingCall));
+        assertEquals(RpcCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertThrows(PerunConnectionException.class, () -> guard.execute(this::failingCall));
+        assertEquals(RpcCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        assertFalse(guard.isAvailable());
+        assertThrows(PerunCallRejectedException.class, () -> guard.execute(() -> "result"));
+        assertEquals(1, guard.getRejectedCalls());
+    }
+
+    @Test
+    public void testHalfOpenCircuitClosesAfterSuccessfulTrial() throws Exception {
+        RpcCircuitBreaker circuitBreaker = new RpcCircuitBreaker(1, 1000, clock::get);
+        RpcCallGuard guard = new RpcCallGuard(circuitBreaker, null, 0, false);
+
+        assertThrows(PerunConnectionException.class, () -> guard.execute(this::failingCall));
+        assertEquals(RpcCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(guard.isAvailable());
+        assertEquals("result", guard.execute(() -> "result"));
+        assertEquals(RpcCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testPerunErrorIsNotConnectionFailure() {
+        RpcCircuitBreaker circuitBreaker = new RpcCircuitBreaker(1, 1000, clock::get);
+        RpcCallGuard guard = new RpcCallGuard(circuitBreaker, null, 0, false);
+
+        assertThrows(PerunUnknownException.class, () -> guard.execute(() -> {
+            throw new PerunUnknownException("Test exception");
+        }));
+        assertEquals(RpcCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testLimiterRejectsCallsOverLimitAndBacksOff() throws Exception {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 2, 5000);
+        RpcCallGuard guard = new RpcCallGuard(null, limiter, 0, false);
+
+        assertTrue(limiter.tryAcquire(0));
+        assertTrue(limiter.tryAcquire(0));
+        assertThrows(PerunCallRejectedException.class, () -> guard.execute(() -> "result"));
+        limiter.onIgnored();
+        limiter.onIgnored();
+
+        assertThrows(PerunConnectionException.class, () -> guard.execute(this::failingCall));
+        assertEquals(1, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        for (int i = 0; i < 2; i++) {
+            guard.execute(() -> "result");
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    private String failingCall() throws PerunConnectionException {
+        throw new PerunConnectionException("Test exception");
+    }
+
+}
@@ -0,0 +1,101 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for hedging of slow read calls to Perun RPC.
+ */
+public class RpcHedgerTest {
+
+    private static final String METHOD_KEY = "vosManager/getVoById";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNoHedgingWithoutEnoughSamples() throws Exception {
+        RpcHedger hedger = new RpcHedger(executor, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.execute(METHOD_KEY, () -> {
+            attempts.incrementAndGet();
+            sleep(50);
+            return "result";
+        });
+
+        assertEquals("result", result);
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedger.getHedgedCalls());
+    }
+
+    @Test
+    public void testSlowCallIsHedged() throws Exception {
+        RpcHedger hedger = new RpcHedger(executor, 10);
+        for (int i = 0; i < 20; i++) {
+            hedger.execute(METHOD_KEY, () -> "warm-up");
+        }
+
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        String result = hedger.execute(METHOD_KEY, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(5000);
+                return "slow";
+            }
+            return "hedged";
+        });
+
+        assertEquals("hedged", result);
+        assertEquals(2, attempts.get());
+        assertEquals(1, hedger.getHedgedCalls());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testRequestOfLosingAttemptIsAborted() throws Exception {
+        RpcHedger hedger = new RpcHedger(executor, 10);
+        for (int i = 0; i < 20; i++) {
+            hedger.execute(METHOD_KEY, () -> "warm-up");
+        }
+
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch slowAborted = new CountDownLatch(1);
+        AtomicInteger hedgedAborts = new AtomicInteger();
+        String result = hedger.execute(METHOD_KEY, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                RpcHedger.registerAbort(slowAborted::countDown);
+                sleep(5000);
+                return "slow";
+            }
+            RpcHedger.registerAbort(hedgedAborts::incrementAndGet);
+            return "hedged";
+        });
+
+        assertEquals("hedged", result);
+        assertTrue(slowAborted.await(1, TimeUnit.SECONDS), "Request of the losing attempt should be aborted");
+        assertEquals(0, hedgedAborts.get());
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for resolving the timeouts of Perun RPC methods.
+ */
+public class RpcMethodTimeoutsTest {
+
+    @Test
+    public void testMethodTimeoutTakesPrecedence() {
+        Map<String, Integer> timeouts = new HashMap<>();
+        timeouts.put("searcher", 90000);
+        timeouts.put("searcher/getFacilities", 120000);
+        RpcMethodTimeouts methodTimeouts = new RpcMethodTimeouts(timeouts, 60000);
+
+        assertEquals(120000, methodTimeouts.getTimeout("searcher", "getFacilities"));
+        assertEquals(90000, methodTimeouts.getTimeout("searcher", "getMembers"));
+        assertEquals(60000, methodTimeouts.getTimeout("vosManager", "getVoById"));
+    }
+
+    @Test
+    public void testTimeoutForPath() {
+        Map<String, Integer> timeouts = new HashMap<>();
+        timeouts.put("vosManager/getVoById", 5000);
+        RpcMethodTimeouts methodTimeouts = new RpcMethodTimeouts(timeouts, 60000);
+
+        assertEquals(5000, methodTimeouts.getTimeoutForPath("/ba/rpc/json/vosManager/getVoById"));
+        assertEquals(60000, methodTimeouts.getTimeoutForPath("/ba/rpc/json/vosManager/getVoByShortName"));
+        assertEquals(60000, methodTimeouts.getTimeoutForPath("getVoById"));
+    }
+
+}
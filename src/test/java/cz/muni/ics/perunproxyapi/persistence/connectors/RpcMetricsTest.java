@@ -0,0 +1,101 @@
+package cz.muni.ics.perunproxyapi.persistence.connectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import cz.muni.ics.perunproxyapi.persistence.exceptions.PerunConnectionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the metrics of the calls to Perun RPC.
+ */
+public class RpcMetricsTest {
+
+    private static final String MANAGER = "usersManager";
+    private static final String METHOD = "getUserByExtSourceNameAndExtLogin";
+
+    @Test
+    public void testRecordOutcomes() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RpcMetrics metrics = new RpcMetrics(registry);
+
+        long startTime = metrics.start();
+        assertEquals(1, metrics.getInFlight());
+        metrics.record(MANAGER, METHOD, RpcMetrics.Outcome.SUCCESS, startTime);
+        metrics.record(MANAGER, METHOD, RpcMetrics.Outcome.CONNECTION_ERROR, metrics.start());
+        metrics.record(MANAGER, METHOD, RpcMetrics.Outcome.CONNECTION_ERROR, metrics.start());
+
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, registry.get(RpcMetrics.CALLS_METRIC)
+                .tags("manager", MANAGER, "method", METHOD, "outcome", "success").timer().count());
+        assertEquals(2, registry.get(RpcMetrics.CALLS_METRIC)
+                .tags("manager", MANAGER, "method", METHOD, "outcome", "connection_error").timer().count());
+        assertEquals(2.0, registry.get(RpcMetrics.ERRORS_METRIC)
+                .tags("manager", MANAGER, "method", METHOD, "type", "connection_error").counter().count());
+        assertTrue(registry.find(RpcMetrics.ERRORS_METRIC).tags("type", "success").counters().isEmpty());
+    }
+
+    @Test
+    public void testNotExistsResponseIsCounted() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RpcMetrics metrics = new RpcMetrics(registry);
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        byte[] body = "{\"errorId\":\"1\",\"name\":\"UserNotExistsException\"}".getBytes(StandardCharsets.UTF_8);
+        when(restTemplate.postForObject(anyString(), anyMap(), any())).thenThrow(
+                HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", headers, body,
+                        StandardCharsets.UTF_8));
+
+        PerunConnectorRpc connector = new PerunConnectorRpc(true, restTemplate, "http://somewhere.com",
+                null, null, null, null, metrics);
+        JsonNode result = connector.post(MANAGER, METHOD, Collections.emptyMap());
+
+        assertTrue(result.isNull());
+        assertEquals(1.0, registry.get(RpcMetrics.ERRORS_METRIC)
+                .tags("manager", MANAGER, "method", METHOD, "type", "not_exists").counter().count());
+    }
+
+    @Test
+    public void testAbortedCallIsNotCountedAsError() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RpcMetrics metrics = new RpcMetrics(registry);
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.postForObject(anyString(), anyMap(), any()))
+                .thenThrow(new ResourceAccessException("Request aborted"));
+
+        PerunConnectorRpc connector = new PerunConnectorRpc(true, restTemplate, "http://somewhere.com",
+                null, null, null, null, metrics);
+        // losing attempt of the hedged call is aborted with the interrupted thread
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(PerunConnectionException.class, () -> connector.post(MANAGER, METHOD, Collections.emptyMap()));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, registry.get(RpcMetrics.CALLS_METRIC)
+                .tags("manager", MANAGER, "method", METHOD, "outcome", "cancelled").timer().count());
+        assertTrue(registry.find(RpcMetrics.ERRORS_METRIC).counters().isEmpty());
+    }
+
+}